@@ -110,8 +110,9 @@ public final class CloneAccumulator {
     }
 
     public synchronized void accumulate(ClonalSequence data, VDJCAlignments alignment, boolean mapped) {
-        //Increment count
-        ++count;
+        //Increment count (alignment of UMI consensus read counts for all collapsed reads)
+        final long multiplicity = alignment.getMultiplicity();
+        count += multiplicity;
 
         if (!mapped) {
             // Accumulate information about V-D-J alignments only for strictly clustered reads
@@ -128,7 +129,7 @@ public final class CloneAccumulator {
                     geneScores.put(geneType, alleleScores = new TObjectFloatHashMap<>());
                 for (VDJCHit hit : hits) {
                     // Calculating sum of natural logarithms of scores
-                    score = hit.getScore();
+                    score = hit.getScore() * multiplicity;
                     alleleScores.adjustOrPutValue(hit.getAllele().getId(), score, score);
                 }
             }
@@ -142,6 +143,6 @@ public final class CloneAccumulator {
                     ++pointer;
                 }
             }
-        } else ++countMapped;
+        } else countMapped += multiplicity;
     }
 }
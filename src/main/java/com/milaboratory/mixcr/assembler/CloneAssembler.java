@@ -28,6 +28,7 @@
  */
 package com.milaboratory.mixcr.assembler;
 
+import cc.redberry.pipe.OutputPort;
 import cc.redberry.pipe.OutputPortCloseable;
 import cc.redberry.pipe.VoidProcessor;
 import cc.redberry.primitives.Filter;
@@ -171,7 +172,17 @@ public final class CloneAssembler implements CanReportProgress, AutoCloseable {
     }
 
     public VoidProcessor<VDJCAlignments> getInitialAssembler() {
-        return new InitialAssembler();
+        return new InitialAssembler(null);
+    }
+
+    /**
+     * Returns initial assembler that additionally passes all alignments to the spill, which keeps deferred ones for
+     * the mapping stage (see {@link #getDeferredAlignmentsPort(OutputPort)}).
+     *
+     * @param spill storage of deferred alignments
+     */
+    public VoidProcessor<VDJCAlignments> getInitialAssembler(DeferredAlignmentsSpill spill) {
+        return new InitialAssembler(spill);
     }
 
     public boolean beginMapping() {
@@ -193,6 +204,36 @@ public final class CloneAssembler implements CanReportProgress, AutoCloseable {
         return new DeferredAlignmentsFilter();
     }
 
+    /**
+     * Returns port of alignments to be mapped, created from the port of deferred alignments only (in the order they
+     * were passed to initial assembler, e.g. read from {@link DeferredAlignmentsSpill}). Equivalent to filtering of all
+     * alignments with {@link #getDeferredAlignmentsFilter()}. Returned port must be read in a single thread.
+     *
+     * @param deferredAlignments deferred alignments
+     */
+    public OutputPort<VDJCAlignments> getDeferredAlignmentsPort(final OutputPort<VDJCAlignments> deferredAlignments) {
+        final Iterator<AssemblerEvent> events = globalLogger.events().iterator();
+        return new OutputPort<VDJCAlignments>() {
+            @Override
+            public synchronized VDJCAlignments take() {
+                while (events.hasNext()) {
+                    AssemblerEvent event = events.next();
+                    if (event.cloneIndex != AssemblerEvent.DEFERRED) {
+                        deferredAlignmentsLogger.newEvent(new AssemblerEvent(event.alignmentsIndex, event.readId,
+                                AssemblerEvent.DROPPED));
+                        continue;
+                    }
+                    VDJCAlignments alignments = deferredAlignments.take();
+                    if (alignments == null || alignments.getReadId() != event.readId)
+                        throw new IllegalArgumentException("Deferred alignments doesn't match assembler events.");
+                    alignments.setAlignmentsIndex(event.alignmentsIndex);
+                    return alignments;
+                }
+                return null;
+            }
+        };
+    }
+
     public VoidProcessor<VDJCAlignments> getDeferredAlignmentsMapper() {
         if (mappingTree == null)
             throw new IllegalStateException("Mapping tree not yet created.");
@@ -306,6 +347,12 @@ public final class CloneAssembler implements CanReportProgress, AutoCloseable {
     }
 
     private final class InitialAssembler implements VoidProcessor<VDJCAlignments> {
+        final DeferredAlignmentsSpill spill;
+
+        InitialAssembler(DeferredAlignmentsSpill spill) {
+            this.spill = spill;
+        }
+
         private void log(AssemblerEvent event) {
             if (globalLogger != null)
                 globalLogger.newEvent(event);
@@ -313,13 +360,22 @@ public final class CloneAssembler implements CanReportProgress, AutoCloseable {
 
         @Override
         public void process(VDJCAlignments input) {
+            boolean deferred = process0(input);
+            if (spill != null)
+                spill.put(input, deferred);
+        }
+
+        /**
+         * Returns {@code true} if alignment was deferred
+         */
+        private boolean process0(VDJCAlignments input) {
             totalAlignments.incrementAndGet();
             final ClonalSequence target = extractClonalSequence(input);
             if (target == null) {
                 log(new AssemblerEvent(input.getAlignmentsIndex(), input.getReadId(), AssemblerEvent.DROPPED));
                 droppedAlignments.incrementAndGet();
                 onFailedToExtractTarget(input);
-                return;
+                return false;
             }
             //Calculating number of bad points
             int badPoints = numberOfBadPoints(target);
@@ -329,12 +385,12 @@ public final class CloneAssembler implements CanReportProgress, AutoCloseable {
                 log(new AssemblerEvent(input.getAlignmentsIndex(), input.getReadId(), AssemblerEvent.DROPPED));
                 droppedAlignments.incrementAndGet();
                 onTooManyLowQualityPoints(input);
-                return;
+                return false;
             } else if (badPoints > 0) {
                 // Has some number of bad points but not greater then maxBadPointsToMap
                 log(new AssemblerEvent(input.getAlignmentsIndex(), input.getReadId(), AssemblerEvent.DEFERRED));
                 onAlignmentDeferred(input);
-                return;
+                return true;
             }
             //Getting or creating accumulator from map
             CloneAccumulatorContainer container = clones.get(target);
@@ -356,6 +412,7 @@ public final class CloneAssembler implements CanReportProgress, AutoCloseable {
             //Incrementing corresponding counter
             successfullyAssembledAlignments.incrementAndGet();
             onAlignmentAddedToClone(input, acc);
+            return false;
         }
     }
 
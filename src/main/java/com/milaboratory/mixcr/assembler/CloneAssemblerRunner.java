@@ -33,6 +33,7 @@ import cc.redberry.pipe.OutputPortCloseable;
 import cc.redberry.pipe.blocks.FilteringPort;
 import com.milaboratory.mixcr.basictypes.CloneSet;
 import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+import com.milaboratory.mixcr.util.PipelineScheduler;
 import com.milaboratory.util.CanReportProgress;
 import com.milaboratory.util.CanReportProgressAndStage;
 
@@ -40,6 +41,8 @@ public class CloneAssemblerRunner implements CanReportProgressAndStage {
     final AlignmentsProvider alignmentsProvider;
     final CloneAssembler assembler;
     final int threads;
+    final PipelineScheduler scheduler;
+    volatile DeferredAlignmentsSpill deferredAlignmentsSpill;
     volatile String stage = "Initialization";
     volatile CanReportProgress innerProgress;
     volatile boolean isFinished = false;
@@ -48,6 +51,26 @@ public class CloneAssemblerRunner implements CanReportProgressAndStage {
         this.alignmentsProvider = alignmentsProvider;
         this.assembler = assembler;
         this.threads = Math.min(threads, Runtime.getRuntime().availableProcessors());
+        this.scheduler = new PipelineScheduler(1, 1, 1, 128, Math.min(this.threads, 128), 1 << 14);
+    }
+
+    /**
+     * Returns scheduler that controls depth of the alignments queue (measurements can be written to report).
+     *
+     * @return pipeline scheduler
+     */
+    public PipelineScheduler getPipelineScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Makes runner keep deferred alignments in the spill during initial assembly and take alignments for the mapping
+     * stage from it, so alignments provider is used only once (may be a one-shot port, e.g. output of aligner).
+     *
+     * @param deferredAlignmentsSpill storage of deferred alignments
+     */
+    public void setDeferredAlignmentsSpill(DeferredAlignmentsSpill deferredAlignmentsSpill) {
+        this.deferredAlignmentsSpill = deferredAlignmentsSpill;
     }
 
     @Override
@@ -76,7 +99,10 @@ public class CloneAssemblerRunner implements CanReportProgressAndStage {
                     innerProgress = (CanReportProgress) alignmentsPort;
             }
             try {
-                CUtils.processAllInParallel(CUtils.buffered(alignmentsPort, 128), assembler.getInitialAssembler(), threads);
+                CUtils.processAllInParallel(scheduler.buffered(alignmentsPort),
+                        scheduler.measured(deferredAlignmentsSpill == null ?
+                                assembler.getInitialAssembler() :
+                                assembler.getInitialAssembler(deferredAlignmentsSpill)), threads);
             } catch (InterruptedException e) {
                 throw new RuntimeException(e);
             }
@@ -88,17 +114,18 @@ public class CloneAssemblerRunner implements CanReportProgressAndStage {
                 innerProgress = null;
             }
             if (assembler.beginMapping()) {
-                try (OutputPortCloseable<VDJCAlignments> alignmentsPort = alignmentsProvider.create()) {
+                try (OutputPortCloseable<VDJCAlignments> alignmentsPort = deferredAlignmentsSpill == null ?
+                        alignmentsProvider.create() : deferredAlignmentsSpill.createPort()) {
                     synchronized (this) {
                         stage = "Mapping low quality reads";
                         if (alignmentsPort instanceof CanReportProgress)
                             innerProgress = (CanReportProgress) alignmentsPort;
                     }
                     try {
-                        CUtils.processAllInParallel(CUtils.buffered(
-                                        new FilteringPort<>(alignmentsPort,
-                                                assembler.getDeferredAlignmentsFilter()), 128),
-                                assembler.getDeferredAlignmentsMapper(), threads);
+                        CUtils.processAllInParallel(scheduler.buffered(deferredAlignmentsSpill == null ?
+                                        new FilteringPort<>(alignmentsPort, assembler.getDeferredAlignmentsFilter()) :
+                                        assembler.getDeferredAlignmentsPort(alignmentsPort)),
+                                scheduler.measured(assembler.getDeferredAlignmentsMapper()), threads);
                     } catch (InterruptedException e) {
                         throw new RuntimeException(e);
                     }
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.assembler;
+
+import cc.redberry.pipe.OutputPortCloseable;
+import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+import com.milaboratory.mixcr.basictypes.VDJCAlignmentsReader;
+import com.milaboratory.mixcr.basictypes.VDJCAlignmentsWriter;
+import com.milaboratory.mixcr.reference.Allele;
+import com.milaboratory.mixcr.reference.AlleleResolver;
+import com.milaboratory.mixcr.util.TempFileManager;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignerParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Temporary storage of alignments deferred by initial assembler, used for the mapping stage when alignments are not
+ * available from a file (e.g. assembling directly from the output of aligner). Alignments are accepted in any order
+ * and written in the order of alignment indices, so the mapping stage can match them with assembler events (see
+ * {@link CloneAssembler#getDeferredAlignmentsPort(cc.redberry.pipe.OutputPort)}).
+ */
+public final class DeferredAlignmentsSpill implements AutoCloseable {
+    final File file;
+    final AlleleResolver alleleResolver;
+    final VDJCAlignmentsWriter writer;
+    // Alignments received ahead of the next expected index (null values for not deferred ones)
+    final TreeMap<Long, VDJCAlignments> buffer = new TreeMap<>();
+    long counter = 0, deferred = 0;
+    boolean finished = false;
+
+    public DeferredAlignmentsSpill(VDJCAlignerParameters parameters, List<Allele> alleles,
+                                   AlleleResolver alleleResolver) {
+        try {
+            this.file = TempFileManager.getTempFile();
+            this.writer = new VDJCAlignmentsWriter(file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        this.alleleResolver = alleleResolver;
+        writer.header(parameters, alleles);
+    }
+
+    /**
+     * Accepts next alignment processed by initial assembler. Must be invoked for each alignment with consecutive
+     * alignment indices starting from 0.
+     *
+     * @param alignments alignment
+     * @param deferred   whether alignment was deferred
+     */
+    public synchronized void put(VDJCAlignments alignments, boolean deferred) {
+        if (finished)
+            throw new IllegalStateException();
+        long index = alignments.getAlignmentsIndex();
+        if (index != counter) {
+            if (index < counter || buffer.containsKey(index))
+                throw new IllegalArgumentException("Duplicate alignment index.");
+            buffer.put(index, deferred ? alignments : null);
+            return;
+        }
+        write(deferred ? alignments : null);
+        Map.Entry<Long, VDJCAlignments> entry;
+        while ((entry = buffer.firstEntry()) != null && entry.getKey() == counter) {
+            buffer.pollFirstEntry();
+            write(entry.getValue());
+        }
+    }
+
+    private void write(VDJCAlignments alignments) {
+        if (alignments != null) {
+            writer.write(alignments);
+            ++deferred;
+        }
+        ++counter;
+    }
+
+    /**
+     * Returns number of stored deferred alignments.
+     */
+    public synchronized long getNumberOfDeferred() {
+        return deferred;
+    }
+
+    /**
+     * Closes storage for writing.
+     */
+    public synchronized void finish() {
+        if (finished)
+            return;
+        if (!buffer.isEmpty())
+            throw new IllegalStateException("Missing alignments: next expected index is " + counter + ".");
+        writer.setNumberOfProcessedReads(counter);
+        writer.close();
+        finished = true;
+    }
+
+    /**
+     * Returns port of stored deferred alignments in the order of their alignment indices (indices themselves are
+     * restored by {@link CloneAssembler#getDeferredAlignmentsPort(cc.redberry.pipe.OutputPort)}).
+     */
+    public OutputPortCloseable<VDJCAlignments> createPort() {
+        finish();
+        try {
+            return new VDJCAlignmentsReader(file, alleleResolver);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!finished) {
+            writer.close();
+            finished = true;
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.assembler;
+
+import com.milaboratory.mixcr.util.TempFileManager;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Read-only index of read to clone mappings sorted by alignment id ({@link Ordering#ByAlignments}) or by clone
+ * ({@link Ordering#ByClones}). Mappings are stored as fixed-width records in a memory-mapped temporary file; every
+ * {@link #SPARSE_STEP}-th key is kept in memory, so lookup is a binary search over in-memory sparse keys followed by a
+ * binary search inside a single block of records.
+ *
+ * <p>All lookup methods are thread-safe and independent of the order of requests.</p>
+ */
+public final class ReadToCloneIndex implements Closeable {
+    /**
+     * alignmentsId (8 bytes), readId (8 bytes), cloneIndex (4 bytes), mappingType (1 byte)
+     */
+    static final int RECORD_SIZE = 21;
+    static final int SPARSE_STEP = 256;
+    static final int SEGMENT_RECORDS = Integer.MAX_VALUE / RECORD_SIZE;
+
+    final Ordering ordering;
+    final File file;
+    final MappedByteBuffer[] segments;
+    final long size;
+    final long[] sparseKeys;
+
+    /**
+     * Creates index from mappings sorted according to {@code ordering} (e.g. iterator of the corresponding MapDB tree
+     * set written by assemble action).
+     */
+    public ReadToCloneIndex(Iterator<ReadToCloneMapping> sortedMappings, Ordering ordering) throws IOException {
+        this.ordering = ordering;
+        this.file = TempFileManager.getTempFile();
+        TLongArrayList sparse = new TLongArrayList();
+        long count = 0, previousKey = Long.MIN_VALUE;
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 65536))) {
+            while (sortedMappings.hasNext()) {
+                ReadToCloneMapping mapping = sortedMappings.next();
+                long key = ordering.key(mapping);
+                if (key < previousKey)
+                    throw new IllegalArgumentException("Mappings are not sorted.");
+                previousKey = key;
+                if (count % SPARSE_STEP == 0)
+                    sparse.add(key);
+                output.writeLong(mapping.alignmentsId);
+                output.writeLong(mapping.readId);
+                output.writeInt(mapping.cloneIndex);
+                output.writeByte(mapping.mappingType);
+                ++count;
+            }
+        }
+        this.size = count;
+        this.sparseKeys = sparse.toArray();
+
+        List<MappedByteBuffer> segments = new ArrayList<>();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            for (long from = 0; from < count; from += SEGMENT_RECORDS) {
+                long records = Math.min(SEGMENT_RECORDS, count - from);
+                segments.add(channel.map(FileChannel.MapMode.READ_ONLY, from * RECORD_SIZE, records * RECORD_SIZE));
+            }
+        }
+        this.segments = segments.toArray(new MappedByteBuffer[segments.size()]);
+    }
+
+    public Ordering getOrdering() {
+        return ordering;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns mapping of the alignment or {@code null} if there is no mapping for the alignment (e.g. alignment was
+     * dropped).
+     */
+    public ReadToCloneMapping getByAlignmentsId(long alignmentsId) {
+        checkOrdering(Ordering.ByAlignments);
+        long record = lowerBound(alignmentsId);
+        if (record == size || getAlignmentsId(record) != alignmentsId)
+            return null;
+        return get(record);
+    }
+
+    /**
+     * Returns ids of reads mapped to the clone, in order of alignment ids.
+     */
+    public long[] getReadIdsByClone(int cloneIndex) {
+        checkOrdering(Ordering.ByClones);
+        TLongArrayList result = new TLongArrayList();
+        for (long record = lowerBound(cloneIndex); record < size && getCloneIndex(record) == cloneIndex; ++record)
+            result.add(getReadId(record));
+        return result.toArray();
+    }
+
+    /**
+     * Returns mapping stored at specified position.
+     */
+    public ReadToCloneMapping get(long record) {
+        MappedByteBuffer segment = segments[(int) (record / SEGMENT_RECORDS)];
+        int offset = (int) (record % SEGMENT_RECORDS) * RECORD_SIZE;
+        return new ReadToCloneMapping(segment.getLong(offset), segment.getLong(offset + 8),
+                segment.getInt(offset + 16), segment.get(offset + 20));
+    }
+
+    private long getAlignmentsId(long record) {
+        return segments[(int) (record / SEGMENT_RECORDS)].getLong((int) (record % SEGMENT_RECORDS) * RECORD_SIZE);
+    }
+
+    private long getReadId(long record) {
+        return segments[(int) (record / SEGMENT_RECORDS)].getLong((int) (record % SEGMENT_RECORDS) * RECORD_SIZE + 8);
+    }
+
+    private int getCloneIndex(long record) {
+        return segments[(int) (record / SEGMENT_RECORDS)].getInt((int) (record % SEGMENT_RECORDS) * RECORD_SIZE + 16);
+    }
+
+    private long key(long record) {
+        return ordering == Ordering.ByAlignments ? getAlignmentsId(record) : getCloneIndex(record);
+    }
+
+    /**
+     * Returns position of the first record with key greater than or equal to {@code key}, or {@link #size()} if
+     * there is no such record.
+     */
+    long lowerBound(long key) {
+        // First sparse key greater than or equal to key
+        int lo = 0, hi = sparseKeys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sparseKeys[mid] < key)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        // Result lies in ((lo - 1) * SPARSE_STEP, lo * SPARSE_STEP]
+        long from = lo == 0 ? 0 : (long) (lo - 1) * SPARSE_STEP + 1,
+                to = Math.min(size, (long) lo * SPARSE_STEP);
+        while (from < to) {
+            long mid = (from + to) >>> 1;
+            if (key(mid) < key)
+                from = mid + 1;
+            else
+                to = mid;
+        }
+        return from;
+    }
+
+    private void checkOrdering(Ordering required) {
+        if (ordering != required)
+            throw new IllegalStateException("Index is sorted " + ordering + ".");
+    }
+
+    @Override
+    public void close() {
+        file.delete();
+    }
+
+    public enum Ordering {
+        ByAlignments {
+            @Override
+            long key(ReadToCloneMapping mapping) {
+                return mapping.alignmentsId;
+            }
+        },
+        ByClones {
+            @Override
+            long key(ReadToCloneMapping mapping) {
+                return mapping.cloneIndex;
+            }
+        };
+
+        abstract long key(ReadToCloneMapping mapping);
+    }
+}
@@ -141,4 +141,28 @@ public final class CloneSet implements Iterable<Clone> {
         }
         return new CloneSet(newClones, in.usedAlleles, in.alignedFeatures, in.assemblingFeatures);
     }
+
+    /**
+     * Creates a new clone set with copies of clones accepted by the filter, so fractions of clones are calculated
+     * relative to the new set. Unlike {@link #transform(CloneSet, Filter)}, {@code in} stays unchanged.
+     */
+    public static CloneSet filter(CloneSet in, Filter<Clone> filter) {
+        List<Clone> newClones = new ArrayList<>();
+        for (Clone c : in)
+            if (filter.accept(c))
+                newClones.add(new Clone(c.targets, c.hits, c.assemblingFeatures, c.count, c.id));
+        return new CloneSet(newClones, in.usedAlleles, in.alignedFeatures, in.assemblingFeatures);
+    }
+
+    /**
+     * Creates a new clone set with counts of all clones multiplied by {@code factor} (rounded to the nearest integer,
+     * but not less than one). Used to restore absolute counts of clones assembled from subsampled reads.
+     */
+    public static CloneSet scale(CloneSet in, double factor) {
+        List<Clone> newClones = new ArrayList<>(in.size());
+        for (Clone c : in)
+            newClones.add(new Clone(c.targets, c.hits, c.assemblingFeatures,
+                    Math.max(1, Math.round(c.count * factor)), c.id));
+        return new CloneSet(newClones, in.usedAlleles, in.alignedFeatures, in.assemblingFeatures);
+    }
 }
@@ -88,6 +88,7 @@ class IO {
                 output.writeObject(entry.getValue());
             }
             output.writeLong(object.readId);
+            output.writeLong(object.multiplicity);
         }
 
         @Override
@@ -104,6 +105,7 @@ class IO {
             VDJCAlignments vdjcAlignments = new VDJCAlignments(input.readLong(), hits, targets);
             vdjcAlignments.setDescriptions(descriptions);
             vdjcAlignments.setOriginalSequences(originalSequences);
+            vdjcAlignments.setMultiplicity(input.readLong());
             return vdjcAlignments;
         }
 
@@ -49,6 +49,15 @@ public class IOUtil {
         for (Allele allele : alleles)
             output.writeObject(allele.getId());
 
+        putAlleleReferences(output, alleles, featuresToAlign);
+    }
+
+    /**
+     * Registers alleles as known references without writing their ids (e.g. to continue writing of the stream which
+     * header was written by {@link #writeAlleleReferences(PrimitivO, List, HasFeatureToAlign)} earlier).
+     */
+    public static void putAlleleReferences(PrimitivO output, List<Allele> alleles,
+                                           HasFeatureToAlign featuresToAlign) {
         // Putting alleles references and feature sequences to be serialized/deserialized as references
         for (Allele allele : alleles) {
             output.putKnownReference(allele);
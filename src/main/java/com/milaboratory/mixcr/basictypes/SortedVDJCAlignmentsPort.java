@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.basictypes;
+
+import cc.redberry.pipe.OutputPortCloseable;
+import com.milaboratory.util.CanReportProgress;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Returns alignments from a .vdjca file in the order of read ids. Alignments written without ordering (see {@link
+ * VDJCAlignmentsReader#getReorderWindow()}) are sorted using a buffer of the size of the reorder window, so memory
+ * footprint is bounded; files with ordered alignments are passed through as is.
+ *
+ * <p>Alignment indices ({@link VDJCAlignments#getAlignmentsIndex()}) are left unchanged and correspond to the position
+ * of alignments in the file.</p>
+ */
+public final class SortedVDJCAlignmentsPort implements OutputPortCloseable<VDJCAlignments>, CanReportProgress {
+    final VDJCAlignmentsReader reader;
+    final int window;
+    final PriorityQueue<VDJCAlignments> buffer;
+    boolean readerDrained = false;
+
+    public SortedVDJCAlignmentsPort(VDJCAlignmentsReader reader) {
+        this.reader = reader;
+        this.window = reader.getReorderWindow();
+        this.buffer = window == 0 ? null : new PriorityQueue<>(window, READ_ID_COMPARATOR);
+    }
+
+    /**
+     * Returns the underlying reader.
+     *
+     * @return the underlying reader
+     */
+    public VDJCAlignmentsReader getReader() {
+        return reader;
+    }
+
+    @Override
+    public synchronized VDJCAlignments take() {
+        if (buffer == null)
+            return reader.take();
+
+        // Each alignment is preceded in the file by at most (window - 1) alignments with greater read ids, so the
+        // minimal element of a full buffer is the next alignment in the order of read ids
+        VDJCAlignments alignments;
+        while (!readerDrained && buffer.size() < window)
+            if ((alignments = reader.take()) == null)
+                readerDrained = true;
+            else
+                buffer.add(alignments);
+
+        return buffer.poll();
+    }
+
+    @Override
+    public double getProgress() {
+        return reader.getProgress();
+    }
+
+    @Override
+    public boolean isFinished() {
+        return reader.isFinished();
+    }
+
+    @Override
+    public void close() {
+        reader.close();
+    }
+
+    private static final Comparator<VDJCAlignments> READ_ID_COMPARATOR = new Comparator<VDJCAlignments>() {
+        @Override
+        public int compare(VDJCAlignments o1, VDJCAlignments o2) {
+            return Long.compare(o1.getReadId(), o2.getReadId());
+        }
+    };
+}
@@ -33,6 +33,7 @@ import com.milaboratory.mixcr.reference.GeneType;
 import com.milaboratory.primitivio.annotations.Serializable;
 
 import java.util.EnumMap;
+import java.util.Map;
 
 @Serializable(by = IO.VDJCAlignmentsSerializer.class)
 public final class VDJCAlignments extends VDJCObject {
@@ -40,12 +41,36 @@ public final class VDJCAlignments extends VDJCObject {
     volatile NSequenceWithQuality[] originalSequences;
     final long readId;
     private volatile long alignmentsIndex = -1;
+    volatile long multiplicity = 1;
 
     public VDJCAlignments(long readId, long alignmentsIndex, VDJCAlignments alignments) {
         super(alignments.hits, alignments.targets);
         this.readId = readId;
         this.alignmentsIndex = alignmentsIndex;
         this.descriptions = alignments.descriptions;
+        this.multiplicity = alignments.multiplicity;
+    }
+
+    /**
+     * Creates a copy of alignments with the same hits, but with different read id and targets. Targets must have
+     * exactly the same sequences as the targets of {@code alignments} (qualities may differ).
+     *
+     * @param readId     new read id
+     * @param alignments template alignments
+     * @param targets    new targets
+     */
+    public VDJCAlignments(long readId, VDJCAlignments alignments, NSequenceWithQuality... targets) {
+        super(copyHits(alignments.hits), targets);
+        assert targets.length == alignments.targets.length;
+        this.readId = readId;
+        this.multiplicity = alignments.multiplicity;
+    }
+
+    private static EnumMap<GeneType, VDJCHit[]> copyHits(EnumMap<GeneType, VDJCHit[]> hits) {
+        EnumMap<GeneType, VDJCHit[]> result = new EnumMap<>(GeneType.class);
+        for (Map.Entry<GeneType, VDJCHit[]> entry : hits.entrySet())
+            result.put(entry.getKey(), entry.getValue().clone());
+        return result;
     }
 
     public VDJCAlignments(long readId, EnumMap<GeneType, VDJCHit[]> hits, NSequenceWithQuality target) {
@@ -76,6 +101,20 @@ public final class VDJCAlignments extends VDJCObject {
         this.alignmentsIndex = alignmentsIndex;
     }
 
+    /**
+     * Returns number of original reads represented by this alignment (greater than one for alignments of UMI
+     * consensus reads).
+     */
+    public long getMultiplicity() {
+        return multiplicity;
+    }
+
+    public void setMultiplicity(long multiplicity) {
+        if (multiplicity <= 0)
+            throw new IllegalArgumentException();
+        this.multiplicity = multiplicity;
+    }
+
     public void setDescriptions(String[] description) {
         this.descriptions = description;
     }
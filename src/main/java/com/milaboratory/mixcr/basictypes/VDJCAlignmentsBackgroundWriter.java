@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.basictypes;
+
+import com.milaboratory.mixcr.reference.Allele;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignerParameters;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writer that serializes and writes alignments in a separate thread, so writing of .vdjca file does not slow down
+ * the thread producing alignments (until the bounded queue is full).
+ */
+public final class VDJCAlignmentsBackgroundWriter implements VDJCAlignmentsWriterI {
+    static final int QUEUE_SIZE = 4096;
+    private static final Object END = new Object();
+
+    final VDJCAlignmentsWriterI writer;
+    final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    final Thread thread;
+    volatile Throwable error;
+    boolean closed = false;
+
+    public VDJCAlignmentsBackgroundWriter(VDJCAlignmentsWriterI writer) {
+        this.writer = writer;
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Object alignments;
+                    while ((alignments = queue.take()) != END)
+                        VDJCAlignmentsBackgroundWriter.this.writer.write((VDJCAlignments) alignments);
+                } catch (Throwable e) {
+                    error = e;
+                    // Unblocking producer
+                    queue.clear();
+                }
+            }
+        }, "VDJCAlignmentsBackgroundWriter");
+        this.thread.setDaemon(true);
+    }
+
+    @Override
+    public void setNumberOfProcessedReads(long numberOfProcessedReads) {
+        writer.setNumberOfProcessedReads(numberOfProcessedReads);
+    }
+
+    @Override
+    public void setSamplingRate(double samplingRate) {
+        writer.setSamplingRate(samplingRate);
+    }
+
+    @Override
+    public void header(VDJCAlignerParameters parameters, List<Allele> alleles) {
+        writer.header(parameters, alleles);
+        thread.start();
+    }
+
+    @Override
+    public void write(VDJCAlignments alignment) {
+        if (alignment == null)
+            throw new NullPointerException();
+        checkError();
+        try {
+            queue.put(alignment);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void checkError() {
+        if (error != null)
+            throw new RuntimeException("Error writing alignments.", error);
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            if (thread.isAlive()) {
+                if (error == null)
+                    queue.put(END);
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } finally {
+            writer.close();
+        }
+        checkError();
+    }
+}
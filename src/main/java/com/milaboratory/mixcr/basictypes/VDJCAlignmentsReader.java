@@ -43,6 +43,7 @@ import java.util.List;
 
 import static com.milaboratory.mixcr.basictypes.CompatibilityIO.registerV3Serializers;
 import static com.milaboratory.mixcr.basictypes.CompatibilityIO.registerV5Serializers;
+import static com.milaboratory.mixcr.basictypes.CompatibilityIO.registerV6Serializers;
 import static com.milaboratory.mixcr.basictypes.VDJCAlignmentsWriter.*;
 
 public class VDJCAlignmentsReader implements OutputPortCloseable<VDJCAlignments>, CanReportProgress {
@@ -53,6 +54,8 @@ public class VDJCAlignmentsReader implements OutputPortCloseable<VDJCAlignments>
     String versionInfo;
     String magic;
     long numberOfReads = -1;
+    int reorderWindow = 0;
+    double samplingRate = 1.0;
     boolean closed = false;
     long counter = 0;
     final long size;
@@ -102,6 +105,9 @@ public class VDJCAlignmentsReader implements OutputPortCloseable<VDJCAlignments>
             case MAGIC_V5:
                 registerV5Serializers(serializersManager);
                 break;
+            case MAGIC_V6:
+                registerV6Serializers(serializersManager);
+                break;
             case MAGIC:
                 break;
             default:
@@ -111,6 +117,11 @@ public class VDJCAlignmentsReader implements OutputPortCloseable<VDJCAlignments>
         if (magicString.compareTo(MAGIC_V5) >= 0)
             versionInfo = input.readUTF();
 
+        if (magicString.compareTo(MAGIC_V7) >= 0) {
+            reorderWindow = input.readInt();
+            samplingRate = input.readDouble();
+        }
+
         parameters = input.readObject(VDJCAlignerParameters.class);
 
         this.usedAlleles = IOUtil.readAlleleReferences(input, alleleResolver, parameters);
@@ -144,6 +155,29 @@ public class VDJCAlignmentsReader implements OutputPortCloseable<VDJCAlignments>
         return magic;
     }
 
+    /**
+     * Returns maximal displacement of alignments in this file from the order of read ids (alignments were written as
+     * soon as they were produced). Zero means that alignments are sorted by read id. See {@link
+     * SortedVDJCAlignmentsPort} to restore the order.
+     *
+     * @return maximal displacement of alignments from the order of read ids
+     */
+    public synchronized int getReorderWindow() {
+        init();
+        return reorderWindow;
+    }
+
+    /**
+     * Returns the fraction of input reads that were passed to aligner (less than 1 if reads were subsampled). Counts
+     * of reads and alignments in this file can be divided by this value to estimate counts for the whole input.
+     *
+     * @return fraction of input reads passed to aligner
+     */
+    public synchronized double getSamplingRate() {
+        init();
+        return samplingRate;
+    }
+
     public long getNumberOfReads() {
         return numberOfReads;
     }
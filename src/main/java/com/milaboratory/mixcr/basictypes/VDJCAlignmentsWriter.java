@@ -28,15 +28,14 @@
  */
 package com.milaboratory.mixcr.basictypes;
 
+import com.google.common.io.CountingOutputStream;
 import com.milaboratory.mixcr.reference.Allele;
 import com.milaboratory.mixcr.util.VersionInfoProvider;
 import com.milaboratory.mixcr.vdjaligners.VDJCAligner;
 import com.milaboratory.mixcr.vdjaligners.VDJCAlignerParameters;
 import com.milaboratory.primitivio.PrimitivO;
 
-import java.io.File;
-import java.io.IOException;
-import java.io.OutputStream;
+import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 
@@ -45,11 +44,19 @@ public final class VDJCAlignmentsWriter implements VDJCAlignmentsWriterI {
     static final String MAGIC_V4 = "MiXCR.VDJC.V04";
     static final String MAGIC_V5 = "MiXCR.VDJC.V05";
     static final String MAGIC_V6 = "MiXCR.VDJC.V06";
-    static final String MAGIC = MAGIC_V6;
+    static final String MAGIC_V7 = "MiXCR.VDJC.V07";
+    static final String MAGIC = MAGIC_V7;
     static final int MAGIC_LENGTH = 14;
     static final byte[] MAGIC_BYTES = MAGIC.getBytes(StandardCharsets.US_ASCII);
     final PrimitivO output;
+    /**
+     * Counts bytes written to the file (not null only for writers supporting checkpoints)
+     */
+    final CountingOutputStream counter;
+    final long initialPosition;
     long numberOfProcessedReads = -1;
+    int reorderWindow = 0;
+    double samplingRate = 1.0;
     boolean header = false, closed = false;
 
     public VDJCAlignmentsWriter(String fileName) throws IOException {
@@ -62,6 +69,59 @@ public final class VDJCAlignmentsWriter implements VDJCAlignmentsWriterI {
 
     public VDJCAlignmentsWriter(OutputStream output) {
         this.output = new PrimitivO(output);
+        this.counter = null;
+        this.initialPosition = 0;
+    }
+
+    private VDJCAlignmentsWriter(FileOutputStream output, long initialPosition) {
+        this.counter = new CountingOutputStream(output);
+        this.output = new PrimitivO(new BufferedOutputStream(counter, 65536));
+        this.initialPosition = initialPosition;
+    }
+
+    /**
+     * Creates writer supporting checkpoints (see {@link #checkpoint()}). Output is not compressed.
+     */
+    public static VDJCAlignmentsWriter createResumable(File file) throws IOException {
+        return new VDJCAlignmentsWriter(new FileOutputStream(file), 0);
+    }
+
+    /**
+     * Continues writing of the file created by {@link #createResumable(File)} from the checkpoint: file is truncated
+     * to the position returned by {@link #checkpoint()}, header is considered to be already written.
+     *
+     * @param file       file to continue
+     * @param position   position returned by {@link #checkpoint()}
+     * @param parameters aligner parameters (same as written to the header)
+     * @param alleles    alleles (same as written to the header)
+     */
+    public static VDJCAlignmentsWriter resume(File file, long position,
+                                              VDJCAlignerParameters parameters, List<Allele> alleles)
+            throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < position)
+                throw new IOException("File " + file + " is shorter than checkpoint position.");
+            raf.setLength(position);
+        }
+        VDJCAlignmentsWriter writer = new VDJCAlignmentsWriter(new FileOutputStream(file, true), position);
+        IOUtil.putAlleleReferences(writer.output, alleles, parameters);
+        writer.header = true;
+        return writer;
+    }
+
+    /**
+     * Flushes all written alignments to the file and returns current position in the file, that can be later passed
+     * to {@link #resume(File, long, VDJCAlignerParameters, List)}.
+     *
+     * @return position in the file after the last written alignment
+     */
+    public long checkpoint() {
+        if (counter == null)
+            throw new IllegalStateException("Writer doesn't support checkpoints.");
+        if (!header)
+            throw new IllegalStateException();
+        output.flush();
+        return initialPosition + counter.getCount();
     }
 
     @Override
@@ -69,6 +129,36 @@ public final class VDJCAlignmentsWriter implements VDJCAlignmentsWriterI {
         this.numberOfProcessedReads = numberOfProcessedReads;
     }
 
+    /**
+     * Sets the maximal displacement of alignments from the read id order (see {@link
+     * VDJCAlignmentsReader#getReorderWindow()}). Zero (default) means that alignments are written in the order of read
+     * ids. Must be invoked before the header is written.
+     *
+     * @param reorderWindow maximal displacement of alignments from the read id order
+     */
+    public void setReorderWindow(int reorderWindow) {
+        if (header)
+            throw new IllegalStateException("Header already written.");
+        if (reorderWindow < 0)
+            throw new IllegalArgumentException();
+        this.reorderWindow = reorderWindow;
+    }
+
+    /**
+     * Sets the fraction of input reads that were aligned (if reads were subsampled before alignment, see {@link
+     * VDJCAlignmentsReader#getSamplingRate()}). Must be invoked before the header is written.
+     *
+     * @param samplingRate fraction of input reads passed to aligner
+     */
+    @Override
+    public void setSamplingRate(double samplingRate) {
+        if (header)
+            throw new IllegalStateException("Header already written.");
+        if (samplingRate <= 0 || samplingRate > 1)
+            throw new IllegalArgumentException();
+        this.samplingRate = samplingRate;
+    }
+
     public void header(VDJCAligner aligner) {
         header(aligner.getParameters(), aligner.getUsedAlleles());
     }
@@ -90,6 +180,12 @@ public final class VDJCAlignmentsWriter implements VDJCAlignmentsWriterI {
                 VersionInfoProvider.getVersionString(
                         VersionInfoProvider.OutputType.ToFile));
 
+        // Writing order information
+        output.writeInt(reorderWindow);
+
+        // Writing subsampling information
+        output.writeDouble(samplingRate);
+
         // Writing parameters
         output.writeObject(parameters);
 
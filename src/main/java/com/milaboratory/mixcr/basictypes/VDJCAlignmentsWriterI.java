@@ -12,6 +12,8 @@ import java.util.List;
 public interface VDJCAlignmentsWriterI extends AutoCloseable {
     void setNumberOfProcessedReads(long numberOfProcessedReads);
 
+    void setSamplingRate(double samplingRate);
+
     void header(VDJCAlignerParameters parameters, List<Allele> alleles);
 
     void write(VDJCAlignments alignment);
@@ -29,6 +31,10 @@ public interface VDJCAlignmentsWriterI extends AutoCloseable {
         public void setNumberOfProcessedReads(long numberOfProcessedReads) {
         }
 
+        @Override
+        public void setSamplingRate(double samplingRate) {
+        }
+
         @Override
         public void header(VDJCAlignerParameters parameters, List<Allele> alleles) {
         }
@@ -30,8 +30,9 @@ package com.milaboratory.mixcr.cli;
 
 import cc.redberry.pipe.CUtils;
 import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.OutputPortCloseable;
+import cc.redberry.pipe.Processor;
 import cc.redberry.pipe.blocks.ParallelProcessor;
-import cc.redberry.pipe.util.Chunk;
 import cc.redberry.pipe.util.CountLimitingOutputPort;
 import cc.redberry.pipe.util.Indexer;
 import cc.redberry.pipe.util.OrderedOutputPort;
@@ -40,6 +41,8 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 import com.beust.jcommander.Parameters;
 import com.beust.jcommander.validators.PositiveInteger;
+import com.google.common.base.Supplier;
+import com.google.common.cache.CacheStats;
 import com.milaboratory.core.io.sequence.SequenceRead;
 import com.milaboratory.core.io.sequence.SequenceReaderCloseable;
 import com.milaboratory.core.io.sequence.fasta.FastaReader;
@@ -50,43 +53,234 @@ import com.milaboratory.core.sequence.NSequenceWithQuality;
 import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.mitools.cli.Action;
 import com.milaboratory.mitools.cli.ActionHelper;
-import com.milaboratory.mixcr.basictypes.VDJCAlignmentsWriter;
+import com.milaboratory.mixcr.assembler.*;
+import com.milaboratory.mixcr.basictypes.*;
 import com.milaboratory.mixcr.reference.*;
+import com.milaboratory.mixcr.umi.UMICollapser;
+import com.milaboratory.mixcr.umi.UMIExtractor;
+import com.milaboratory.mixcr.util.MultiLaneSequenceReader;
+import com.milaboratory.mixcr.util.ParallelFastqReader;
+import com.milaboratory.mixcr.util.PipelineScheduler;
+import com.milaboratory.mixcr.util.ReadsOrderWindow;
+import com.milaboratory.mixcr.util.ReadsSubsampler;
+import com.milaboratory.mixcr.vdjaligners.AlignerProfiler;
+import com.milaboratory.mixcr.vdjaligners.KmerPairedReadMerger;
 import com.milaboratory.mixcr.vdjaligners.VDJCAligner;
 import com.milaboratory.mixcr.vdjaligners.VDJCAlignerParameters;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignerWithCache;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignerWithMerge;
 import com.milaboratory.mixcr.vdjaligners.VDJCAlignmentResult;
 import com.milaboratory.mixcr.vdjaligners.VDJCParametersPresets;
 import com.milaboratory.util.CanReportProgress;
 import com.milaboratory.util.SmartProgressReporter;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
-
-import static cc.redberry.pipe.CUtils.chunked;
-import static cc.redberry.pipe.CUtils.unchunked;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class ActionAlign implements Action {
+    /**
+     * Maximal displacement of alignments from the order of input reads in unordered mode
+     */
+    public static final int UNORDERED_WINDOW = 1 << 16;
     private final AlignParameters actionParameters = new AlignParameters();
 
     @Override
     public void go(ActionHelper helper) throws Exception {
+        VDJCAlignerParameters alignerParameters = getAlignerParameters(actionParameters);
+        if (alignerParameters == null)
+            return;
+
+        VDJCAligner aligner = createAligner(actionParameters, alignerParameters, actionParameters.isInputPaired());
+        if (aligner == null)
+            return;
+
+        Processor<SequenceRead, VDJCAlignmentResult> processor = aligner;
+        VDJCAlignerWithCache cachedAligner = null;
+        if (actionParameters.readCacheSize > 0)
+            processor = cachedAligner = new VDJCAlignerWithCache(aligner, actionParameters.readCacheSize);
+
+        AlignerProfiler profiler = null;
+        if (actionParameters.profile) {
+            profiler = new AlignerProfiler();
+            aligner.setProfiler(profiler);
+            if (cachedAligner != null) {
+                final VDJCAlignerWithCache ca = cachedAligner;
+                profiler.addCache("reads cache", new Supplier<CacheStats>() {
+                    @Override
+                    public CacheStats get() {
+                        return ca.getStats();
+                    }
+                });
+            }
+        }
+
+        final AlignerReport report = actionParameters.report == null ? null : new AlignerReport();
+        if (report != null) {
+            if (cachedAligner != null) {
+                cachedAligner.setEventsListener(report);
+                report.setReadCache(cachedAligner);
+            } else
+                aligner.setEventsListener(report);
+            report.setAllowDifferentVJLoci(actionParameters.allowDifferentVJLoci);
+            report.setProfiler(profiler);
+        }
+
+        PipelineScheduler scheduler = new PipelineScheduler(actionParameters.threads);
+        if (report != null)
+            report.setPipelineScheduler(scheduler);
+
+        AlignCheckpoint checkpoint = null;
+        if (actionParameters.resume) {
+            checkpoint = AlignCheckpoint.read(actionParameters.getCheckpointFile());
+            checkpoint.check(actionParameters, aligner.getParameters(), aligner.getUsedAlleles().size());
+            if (report != null && checkpoint.reportCounters != null)
+                report.addCounters(checkpoint.reportCounters);
+        }
+
+        // After resume ids of reads start from the number of reads processed before the checkpoint
+        final ReadsOrderWindow orderWindow = actionParameters.unordered ?
+                new ReadsOrderWindow(UNORDERED_WINDOW, checkpoint == null ? 0 : checkpoint.numberOfReads) : null;
+
+        try (SequenceReaderCloseable<? extends SequenceRead> reader = actionParameters.createReader();
+             final VDJCAlignmentsWriterI writer = createWriter(orderWindow, aligner, checkpoint)) {
+            // Skipping reads processed before the checkpoint (read ids are assigned by reader, so they are preserved)
+            long skipped = checkpoint == null ? 0 : checkpoint.numberOfReads;
+            for (long i = 0; i < skipped; ++i)
+                if (reader.take() == null)
+                    throw new IllegalStateException("Input contains less reads than were processed before checkpoint.");
+
+            OutputPort<? extends SequenceRead> sReads = reader;
+            CanReportProgress progress = (CanReportProgress) reader;
+            if (actionParameters.limit != 0) {
+                sReads = new CountLimitingOutputPort<>(sReads, Math.max(0, actionParameters.limit - skipped));
+                progress = SmartProgressReporter.extractProgress((CountLimitingOutputPort<?>) sReads);
+            }
+
+            double samplingRate = 1.0;
+            if (actionParameters.subsampleFraction != 0) {
+                sReads = ReadsSubsampler.hashSample(sReads, actionParameters.subsampleFraction,
+                        actionParameters.subsampleSeed);
+                samplingRate = actionParameters.subsampleFraction;
+            } else if (actionParameters.subsampleCount != 0) {
+                ReadsSubsampler.Sample sample = ReadsSubsampler.reservoirSample(sReads,
+                        actionParameters.subsampleCount, actionParameters.subsampleSeed);
+                sReads = CUtils.asOutputPort(sample.getReads());
+                samplingRate = sample.getSamplingRate();
+            }
+
+            UMICollapser umiCollapser = null;
+            if (actionParameters.isUMICollapsing()) {
+                sReads = umiCollapser = new UMICollapser(sReads, actionParameters.getUMIExtractor(),
+                        actionParameters.umiMaxReadsInMemory);
+                if (report != null)
+                    report.setUMICollapser(umiCollapser);
+            }
+
+            if (writer != null && checkpoint == null) {
+                writer.setSamplingRate(samplingRate);
+                writer.header(aligner.getParameters(), aligner.getUsedAlleles());
+            }
+
+            // In fused mode progress is reported by assembler
+            if (!actionParameters.isAssemble()) {
+                if (profiler != null)
+                    SmartProgressReporter.startProgressReport(profiler.withSummary("Alignment", progress));
+                else
+                    SmartProgressReporter.startProgressReport("Alignment", progress);
+            }
+            if (orderWindow != null)
+                sReads = orderWindow.limit(sReads);
+
+            // With checkpoints, input is split into segments, each segment is completely processed and written
+            // before the checkpoint is saved
+            SegmentPort<SequenceRead> segments = null;
+            if (actionParameters.checkpointInterval > 0)
+                sReads = segments = new SegmentPort<>((OutputPort<SequenceRead>) sReads,
+                        TimeUnit.SECONDS.toNanos(actionParameters.checkpointInterval));
+            // Ids of reads passed to aligner start from the number of skipped reads
+            final long firstId = skipped;
+
+            AlignmentsPort alignmentsPort = new AlignmentsPort(writer, orderWindow, umiCollapser, report,
+                    checkpoint == null ? 0 : checkpoint.numberOfAlignments);
+            do {
+                // Ids of reads are consecutive, so ids in the segment start from the number of preceding reads
+                final long firstReadId = firstId + (segments == null ? 0 : segments.getTaken());
+                OutputPort<List<SequenceRead>> mainInputReads = scheduler.buffered(scheduler.chunked((OutputPort<SequenceRead>) sReads));
+                OutputPort<VDJCAlignmentResult> alignments = PipelineScheduler.unchunked(
+                        new ParallelProcessor<>(mainInputReads, scheduler.chunked(processor), actionParameters.threads));
+                if (orderWindow == null)
+                    alignments = new OrderedOutputPort<>(alignments,
+                            new Indexer<VDJCAlignmentResult>() {
+                                @Override
+                                public long getIndex(VDJCAlignmentResult o) {
+                                    return o.read.getId() - firstReadId;
+                                }
+                            });
+                alignmentsPort.results = alignments;
+                if (actionParameters.isAssemble())
+                    assemble(helper, aligner, alignmentsPort, progress, reader);
+                else
+                    while (alignmentsPort.take() != null) {
+                        // Alignments are written by the port
+                    }
+                if (segments != null && writer != null)
+                    new AlignCheckpoint(actionParameters, aligner.getParameters(), aligner.getUsedAlleles().size(),
+                            ((VDJCAlignmentsWriter) writer).checkpoint(), reader.getNumberOfReads(),
+                            alignmentsPort.alignmentsIndex, report == null ? null : report.getCounters())
+                            .write(actionParameters.getCheckpointFile());
+            } while (segments != null && segments.nextSegment());
+
+            if (writer != null)
+                writer.setNumberOfProcessedReads(reader.getNumberOfReads());
+            if (umiCollapser != null)
+                umiCollapser.close();
+        }
+
+        // Alignment is complete
+        if (actionParameters.checkpointInterval > 0 || actionParameters.resume)
+            actionParameters.getCheckpointFile().delete();
+
+        if (report != null)
+            Util.writeReport(actionParameters.getInputForReport(), actionParameters.getOutputName(),
+                    helper.getCommandLineArguments(), actionParameters.report, report);
+    }
+
+    /**
+     * Returns aligner parameters taking into account overrides or {@code null} if some parameter can't be overridden
+     * (error message is printed).
+     */
+    static VDJCAlignerParameters getAlignerParameters(AlignParameters actionParameters) {
         VDJCAlignerParameters alignerParameters = actionParameters.getAlignerParameters();
 
         if (!actionParameters.overrides.isEmpty()) {
             alignerParameters = JsonOverrider.override(alignerParameters, VDJCAlignerParameters.class, actionParameters.overrides);
             if (alignerParameters == null) {
                 System.err.println("Failed to override some parameter.");
-                return;
+                return null;
             }
         }
+        return alignerParameters;
+    }
 
-        VDJCAligner aligner = VDJCAligner.createAligner(alignerParameters,
-                actionParameters.isInputPaired(), !actionParameters.noMerge);
+    /**
+     * Creates aligner and fills it with alleles of the loci specified by parameters of action or returns {@code null}
+     * if segment library or species can't be found (error message is printed).
+     */
+    static VDJCAligner createAligner(AlignParameters actionParameters, VDJCAlignerParameters alignerParameters,
+                                     boolean paired) {
+        VDJCAligner aligner = VDJCAligner.createAligner(alignerParameters, paired, !actionParameters.noMerge);
+        aligner.setLociPreClassification(actionParameters.lociPreClassification);
+        if (actionParameters.kmerMerger && aligner instanceof VDJCAlignerWithMerge)
+            ((VDJCAlignerWithMerge) aligner).setMerger(KmerPairedReadMerger.create(alignerParameters));
 
         LociLibrary ll = LociLibraryManager.getDefault().getLibrary(actionParameters.ll);
         if (ll == null) {
             System.err.println("Segment library (" + actionParameters.ll + ") not found.");
-            return;
+            return null;
         }
 
         // Checking species
@@ -97,7 +291,7 @@ public class ActionAlign implements Action {
 
         if (speciesId == -1) {
             System.err.println("Can't find species with id: " + actionParameters.species);
-            return;
+            return null;
         }
 
         boolean warnings = false;
@@ -105,7 +299,7 @@ public class ActionAlign implements Action {
         for (Locus locus : actionParameters.getLoci()) {
             LocusContainer lc = ll.getLocus(speciesId, locus);
             if (lc == null) {
-                if (params().printWarnings()) {
+                if (actionParameters.printWarnings()) {
                     System.err.println("WARNING: No records for " + locus);
                     warnings = true;
                 }
@@ -115,7 +309,7 @@ public class ActionAlign implements Action {
                 if (alignerParameters.containsRequiredFeature(allele) &&
                         (allele.isFunctional() || !actionParameters.isFunctionalOnly()))
                     aligner.addAllele(allele);
-                else if (params().printWarnings() && allele.isFunctional()) {
+                else if (actionParameters.printWarnings() && allele.isFunctional()) {
                     System.err.println("WARNING: Functional allele excluded " + allele.getName() +
                             " as it doesn't contain full " + GeneFeature.encode(alignerParameters
                             .getFeatureToAlign(allele.getGeneType())));
@@ -126,32 +320,39 @@ public class ActionAlign implements Action {
         if (warnings)
             System.err.println("To turn off warnings use '-nw' option.");
 
-        AlignerReport report = actionParameters.report == null ? null : new AlignerReport();
-        if (report != null) {
-            aligner.setEventsListener(report);
-            report.setAllowDifferentVJLoci(actionParameters.allowDifferentVJLoci);
+        return aligner;
+    }
+
+    /**
+     * Sequentially consumes alignment results, filters them and writes alignments to the output.
+     */
+    private final class AlignmentsPort implements OutputPort<VDJCAlignments> {
+        final VDJCAlignmentsWriterI writer;
+        final ReadsOrderWindow orderWindow;
+        final UMICollapser umiCollapser;
+        final AlignerReport report;
+        volatile OutputPort<VDJCAlignmentResult> results;
+        long alignmentsIndex;
+
+        AlignmentsPort(VDJCAlignmentsWriterI writer, ReadsOrderWindow orderWindow, UMICollapser umiCollapser,
+                       AlignerReport report, long alignmentsIndex) {
+            this.writer = writer;
+            this.orderWindow = orderWindow;
+            this.umiCollapser = umiCollapser;
+            this.report = report;
+            this.alignmentsIndex = alignmentsIndex;
         }
 
-        try (SequenceReaderCloseable<? extends SequenceRead> reader = actionParameters.createReader();
-             VDJCAlignmentsWriter writer = actionParameters.getOutputName().equals(".") ? null : new VDJCAlignmentsWriter(actionParameters.getOutputName())) {
-            if (writer != null) writer.header(aligner);
-            OutputPort<? extends SequenceRead> sReads = reader;
-            CanReportProgress progress = (CanReportProgress) reader;
-            if (actionParameters.limit != 0) {
-                sReads = new CountLimitingOutputPort<>(sReads, actionParameters.limit);
-                progress = SmartProgressReporter.extractProgress((CountLimitingOutputPort<?>) sReads);
-            }
-            SmartProgressReporter.startProgressReport("Alignment", progress);
-            OutputPort<Chunk<? extends SequenceRead>> mainInputReads = CUtils.buffered((OutputPort) chunked(sReads, 64), 16);
-            OutputPort<VDJCAlignmentResult> alignments = unchunked(new ParallelProcessor(mainInputReads, chunked(aligner), actionParameters.threads));
-            for (VDJCAlignmentResult result : CUtils.it(
-                    new OrderedOutputPort<>(alignments,
-                            new Indexer<VDJCAlignmentResult>() {
-                                @Override
-                                public long getIndex(VDJCAlignmentResult o) {
-                                    return o.read.getId();
-                                }
-                            }))) {
+        @Override
+        public synchronized VDJCAlignments take() {
+            VDJCAlignmentResult result;
+            while ((result = results.take()) != null) {
+                // Results are consumed sequentially, so read can be released from the window before it is
+                // written
+                if (orderWindow != null)
+                    orderWindow.complete(result.read.getId());
+                // Multiplicity is taken for every read, so the collapser doesn't keep it for unaligned reads
+                long multiplicity = umiCollapser == null ? 1 : umiCollapser.takeMultiplicity(result.read.getId());
                 if (result.alignment == null)
                     continue;
                 if (!result.alignment.hasSameVJLoci(1)) {
@@ -160,6 +361,8 @@ public class ActionAlign implements Action {
                     if (!actionParameters.allowDifferentVJLoci)
                         continue;
                 }
+                result.alignment.setAlignmentsIndex(alignmentsIndex++);
+                result.alignment.setMultiplicity(multiplicity);
                 if (writer != null) {
                     if (actionParameters.saveReadDescription || actionParameters.saveOriginalReads)
                         result.alignment.setDescriptions(extractDescription(result.read));
@@ -167,14 +370,160 @@ public class ActionAlign implements Action {
                         result.alignment.setOriginalSequences(extractNSeqs(result.read));
                     writer.write(result.alignment);
                 }
+                return result.alignment;
             }
-            if (writer != null)
-                writer.setNumberOfProcessedReads(reader.getNumberOfReads());
+            return null;
         }
+    }
 
-        if (report != null)
-            Util.writeReport(actionParameters.getInputForReport(), actionParameters.getOutputName(),
-                    helper.getCommandLineArguments(), actionParameters.report, report);
+    /**
+     * Returns reads from the source until the end of segment (given time elapsed since the start of segment), then
+     * returns null until the next segment is started.
+     */
+    private static final class SegmentPort<R> implements OutputPort<R> {
+        final OutputPort<R> source;
+        final long durationNanos;
+        long segmentStart = System.nanoTime(), taken = 0;
+        boolean segmentEnded = false, sourceEnded = false;
+
+        SegmentPort(OutputPort<R> source, long durationNanos) {
+            this.source = source;
+            this.durationNanos = durationNanos;
+        }
+
+        @Override
+        public synchronized R take() {
+            if (segmentEnded)
+                return null;
+            if (System.nanoTime() - segmentStart > durationNanos) {
+                segmentEnded = true;
+                return null;
+            }
+            R r = source.take();
+            if (r == null)
+                segmentEnded = sourceEnded = true;
+            else
+                ++taken;
+            return r;
+        }
+
+        /**
+         * Returns number of reads returned in all segments so far.
+         */
+        synchronized long getTaken() {
+            return taken;
+        }
+
+        /**
+         * Starts next segment, returns false if there are no more reads.
+         */
+        synchronized boolean nextSegment() {
+            if (sourceEnded)
+                return false;
+            segmentEnded = false;
+            segmentStart = System.nanoTime();
+            return true;
+        }
+    }
+
+    private VDJCAlignmentsWriterI createWriter(ReadsOrderWindow orderWindow, VDJCAligner aligner,
+                                               AlignCheckpoint checkpoint) throws IOException {
+        if (actionParameters.getOutputName().equals("."))
+            return null;
+        if (checkpoint != null)
+            return VDJCAlignmentsWriter.resume(new File(actionParameters.getOutputName()),
+                    checkpoint.outputPosition, aligner.getParameters(), aligner.getUsedAlleles());
+        VDJCAlignmentsWriter writer = actionParameters.checkpointInterval > 0 ?
+                VDJCAlignmentsWriter.createResumable(new File(actionParameters.getOutputName())) :
+                new VDJCAlignmentsWriter(actionParameters.getOutputName());
+        if (orderWindow != null)
+            writer.setReorderWindow(orderWindow.getSize());
+        // In fused mode .vdjca file is written in background not to slow down assembling
+        return actionParameters.isAssemble() ? new VDJCAlignmentsBackgroundWriter(writer) : writer;
+    }
+
+    /**
+     * Assembles clones directly from the output of aligner (fused align and assemble). Only alignments deferred for
+     * the mapping stage are stored on disk.
+     */
+    private void assemble(ActionHelper helper, VDJCAligner aligner, OutputPort<VDJCAlignments> alignments,
+                          CanReportProgress progress, final SequenceReaderCloseable<? extends SequenceRead> reader)
+            throws Exception {
+        CloneAssemblerParameters assemblerParameters = actionParameters.getCloneAssemblerParameters();
+        ActionAssemble.adjustFeaturesToAlign(assemblerParameters, aligner.getParameters());
+        List<Allele> alleles = aligner.getUsedAlleles();
+        try (CloneAssembler assembler = new CloneAssembler(assemblerParameters, false, alleles);
+             DeferredAlignmentsSpill spill = assemblerParameters.isMappingEnabled() ?
+                     new DeferredAlignmentsSpill(aligner.getParameters(), alleles, LociLibraryManager.getDefault()) :
+                     null) {
+            CloneAssemblerReport report = actionParameters.assembleReport == null ? null : new CloneAssemblerReport();
+            if (report != null)
+                assembler.setListener(report);
+
+            final FusedAlignmentsPort port = new FusedAlignmentsPort(alignments, progress);
+            CloneAssemblerRunner assemblerRunner = new CloneAssemblerRunner(new AlignmentsProvider() {
+                boolean created = false;
+
+                @Override
+                public synchronized OutputPortCloseable<VDJCAlignments> create() {
+                    if (created)
+                        throw new IllegalStateException("Alignments from aligner can be read only once.");
+                    created = true;
+                    return port;
+                }
+
+                @Override
+                public long getTotalNumberOfReads() {
+                    return reader.getNumberOfReads();
+                }
+            }, assembler, actionParameters.threads);
+            assemblerRunner.setDeferredAlignmentsSpill(spill);
+            SmartProgressReporter.startProgressReport(assemblerRunner);
+            assemblerRunner.run();
+
+            try (CloneSetIO.CloneSetWriter writer = new CloneSetIO.CloneSetWriter(assemblerRunner.getCloneSet(),
+                    actionParameters.assembleOutput)) {
+                SmartProgressReporter.startProgressReport(writer);
+                writer.write();
+            }
+
+            if (report != null) {
+                report.setPipelineScheduler(assemblerRunner.getPipelineScheduler());
+                report.setTotalReads(reader.getNumberOfReads());
+                Util.writeReport(actionParameters.getInputForReport(), actionParameters.assembleOutput,
+                        helper.getCommandLineArguments(), actionParameters.assembleReport, report);
+            }
+        }
+    }
+
+    private static final class FusedAlignmentsPort implements OutputPortCloseable<VDJCAlignments>, CanReportProgress {
+        final OutputPort<VDJCAlignments> alignments;
+        final CanReportProgress progress;
+
+        FusedAlignmentsPort(OutputPort<VDJCAlignments> alignments, CanReportProgress progress) {
+            this.alignments = alignments;
+            this.progress = progress;
+        }
+
+        @Override
+        public VDJCAlignments take() {
+            return alignments.take();
+        }
+
+        @Override
+        public double getProgress() {
+            return progress.getProgress();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return progress.isFinished();
+        }
+
+        @Override
+        public void close() {
+            // Reader is closed by the action
+        }
     }
 
     public static String[] extractDescription(SequenceRead r) {
@@ -204,7 +553,8 @@ public class ActionAlign implements Action {
     @Parameters(commandDescription = "Builds alignments with V,D,J and C genes for input sequencing reads.",
             optionPrefixes = "-")
     public static class AlignParameters extends ActionParametersWithOutput {
-        @Parameter(description = "input_file1 [input_file2] output_file.vdjca", variableArity = true)
+        @Parameter(description = "input_file1 [input_file2] output_file.vdjca (several files of each input, e.g. " +
+                "lanes, may be specified separated by ',')", variableArity = true)
         public List<String> parameters = new ArrayList<>();
 
         @DynamicParameter(names = "-O", description = "Overrides base values of parameters.")
@@ -242,10 +592,96 @@ public class ActionAlign implements Action {
                 names = {"-t", "--threads"}, validateWith = PositiveInteger.class)
         public int threads = Runtime.getRuntime().availableProcessors();
 
+        @Parameter(description = "Number of threads used to decompress and parse input .fastq files in parallel " +
+                "(0 - single reading thread). Only blocked gzip (BGZF, e.g. produced by bgzip) files are " +
+                "decompressed in parallel; other gzip files are decompressed by a single separate thread, while " +
+                "parsing is still parallel.",
+                names = {"--input-threads"})
+        public int inputThreads = 0;
+
         @Parameter(description = "Maximal number of reads to process",
                 names = {"-n", "--limit"}, validateWith = PositiveInteger.class)
         public long limit = 0;
 
+        @Parameter(description = "Maximal number of distinct reads to keep in the cache of alignment results used " +
+                "to skip alignment of exact duplicate reads (0 - cache disabled).",
+                names = {"--read-cache"})
+        public int readCacheSize = 0;
+
+        @Parameter(description = "Pre-classify reads by loci using k-mer sketch of reference sequences and search for V " +
+                "and J genes only among alleles of candidate loci (speeds up alignment with several loci).",
+                names = {"--classify-loci"})
+        public Boolean lociPreClassification = false;
+
+        @Parameter(description = "Collect timing and allocation statistics for each stage of alignment (printed " +
+                "in progress and written to the report file).",
+                names = {"--profile"})
+        public Boolean profile = false;
+
+        @Parameter(description = "Write alignments as soon as they are produced, without waiting for preceding " +
+                "reads (displacement from the order of reads is bounded and recorded in the output file; " +
+                "exportAlignments and alignmentsDiff restore the order on the fly).",
+                names = {"--unordered"})
+        public Boolean unordered = false;
+
+        @Parameter(description = "Find overlap of paired reads by k-mer voting instead of testing all possible " +
+                "overlaps (faster for long reads).",
+                names = {"--kmer-merger"})
+        public Boolean kmerMerger = false;
+
+        @Parameter(description = "Assemble clones directly from the output of aligner and write them to the " +
+                "specified .clns file (output .vdjca file may be set to '.' to skip writing of alignments).",
+                names = {"--assemble"})
+        public String assembleOutput = null;
+
+        @Parameter(description = "Clone assembling parameters (used with --assemble).",
+                names = {"--assemble-parameters"})
+        public String assemblerParametersName = "default";
+
+        @Parameter(description = "Report file for clone assembling (used with --assemble).",
+                names = {"--assemble-report"})
+        public String assembleReport;
+
+        @Parameter(description = "Save checkpoint (state of alignment allowing to continue interrupted run with " +
+                "--resume) each specified number of seconds (output is written uncompressed).",
+                names = {"--checkpoint-interval"})
+        public int checkpointInterval = 0;
+
+        @Parameter(description = "Continue interrupted alignment from the last checkpoint (input files and " +
+                "options must be the same as in the interrupted run).",
+                names = {"--resume"})
+        public Boolean resume = false;
+
+        @Parameter(description = "Align only the given fraction of input reads selected by hash of read number " +
+                "(sampling rate is saved to output file, see --scale-counts option of assemble).",
+                names = {"--subsample"})
+        public double subsampleFraction = 0;
+
+        @Parameter(description = "Align only the given number of reads selected uniformly at random from the whole " +
+                "input (sampling rate is saved to output file, see --scale-counts option of assemble).",
+                names = {"--subsample-count"})
+        public int subsampleCount = 0;
+
+        @Parameter(description = "Seed used for subsampling of reads.",
+                names = {"--subsample-seed"})
+        public long subsampleSeed = 0;
+
+        @Parameter(description = "Collapse reads with the same UMI into a consensus read before alignment; UMI is " +
+                "extracted from read description by the regular expression (value of the first group if any, e.g. " +
+                "\"UMI:([ACGTN]+)\").",
+                names = {"--umi-from-description"})
+        public String umiDescriptionPattern = null;
+
+        @Parameter(description = "Collapse reads with the same UMI into a consensus read before alignment; UMI is " +
+                "the given number of first nucleotides of R1 (UMI is trimmed from the read).",
+                names = {"--umi-length"})
+        public int umiLength = 0;
+
+        @Parameter(description = "Maximal number of reads kept in memory while grouping reads by UMI (the rest are " +
+                "stored in temporary files).",
+                names = {"--umi-max-reads-in-memory"}, validateWith = PositiveInteger.class)
+        public int umiMaxReadsInMemory = 1_000_000;
+
         @Parameter(description = "Use only functional alleles.",
                 names = {"-u", "--functional"})
         public Boolean functionalOnly = null;
@@ -282,6 +718,29 @@ public class ActionAlign implements Action {
             return params;
         }
 
+        public boolean isAssemble() {
+            return assembleOutput != null;
+        }
+
+        public boolean isUMICollapsing() {
+            return umiDescriptionPattern != null || umiLength != 0;
+        }
+
+        public UMIExtractor getUMIExtractor() {
+            if (umiDescriptionPattern != null)
+                return UMIExtractor.fromDescription(umiDescriptionPattern);
+            if (umiLength != 0)
+                return UMIExtractor.fromSequencePrefix(umiLength);
+            return null;
+        }
+
+        public CloneAssemblerParameters getCloneAssemblerParameters() {
+            CloneAssemblerParameters params = CloneAssemblerParametersPresets.getByName(assemblerParametersName);
+            if (params == null)
+                throw new ParameterException("Unknown clone assembling parameters: " + assemblerParametersName);
+            return params;
+        }
+
         public boolean isFunctionalOnly() {
             return functionalOnly != null && functionalOnly;
         }
@@ -319,32 +778,117 @@ public class ActionAlign implements Action {
         }
 
         public SequenceReaderCloseable<? extends SequenceRead> createReader() throws IOException {
-            if (isInputPaired())
-                return new PairedFastqReader(parameters.get(0), parameters.get(1), true);
+            return createReader(parameters.subList(0, parameters.size() - 1), inputThreads);
+        }
+
+        /**
+         * Creates reader for one (single-end .fastq or .fasta) or two (paired-end .fastq) inputs. Each input may be a
+         * comma-separated list of files (e.g. lanes of one sample), in this case files are read concurrently and reads
+         * are interleaved by chunks (see MultiLaneSequenceReader).
+         *
+         * @param inputThreads number of threads used to decompress and parse .fastq files (0 - read in the calling
+         *                     thread)
+         */
+        public static SequenceReaderCloseable<? extends SequenceRead> createReader(List<String> inputFiles,
+                                                                                    int inputThreads)
+                throws IOException {
+            String[] lanes = inputFiles.get(0).split(",");
+            if (lanes.length > 1 || inputFiles.size() == 2 && inputFiles.get(1).contains(",")) {
+                String[] lanes2 = inputFiles.size() == 2 ? inputFiles.get(1).split(",") : null;
+                if (lanes2 != null && lanes2.length != lanes.length)
+                    throw new ParameterException("Different number of files for R1 and R2.");
+                List<SequenceReaderCloseable<? extends SequenceRead>> readers = new ArrayList<>();
+                try {
+                    for (int i = 0; i < lanes.length; ++i)
+                        readers.add(createReader(lanes2 == null ?
+                                Collections.singletonList(lanes[i]) :
+                                Arrays.asList(lanes[i], lanes2[i]), inputThreads));
+                } catch (IOException | RuntimeException e) {
+                    for (SequenceReaderCloseable<? extends SequenceRead> reader : readers)
+                        reader.close();
+                    throw e;
+                }
+                return new MultiLaneSequenceReader(readers);
+            }
+            if (inputFiles.size() == 2)
+                return inputThreads > 0 ?
+                        new ParallelFastqReader(inputThreads, true, inputFiles.get(0), inputFiles.get(1)) :
+                        new PairedFastqReader(inputFiles.get(0), inputFiles.get(1), true);
             else {
-                String[] s = parameters.get(0).split("\\.");
+                String[] s = inputFiles.get(0).split("\\.");
                 if (s[s.length - 1].equals("fasta"))
                     return new FastaSequenceReaderWrapper(
-                            new FastaReader<>(parameters.get(0), NucleotideSequence.ALPHABET),
+                            new FastaReader<>(inputFiles.get(0), NucleotideSequence.ALPHABET),
                             true
                     );
                 else
-                    return new SingleFastqReader(parameters.get(0), true);
+                    return inputThreads > 0 ?
+                            new ParallelFastqReader(inputThreads, true, inputFiles.get(0)) :
+                            new SingleFastqReader(inputFiles.get(0), true);
             }
         }
 
+        public File getCheckpointFile() {
+            return new File(getOutputName() + ".checkpoint");
+        }
+
         @Override
         protected List<String> getOutputFiles() {
+            // Output of interrupted run is continued
+            if (resume)
+                return Collections.emptyList();
+            if (isAssemble())
+                return Arrays.asList(getOutputName(), assembleOutput);
             return Arrays.asList(getOutputName());
         }
 
         @Override
         public void validate() {
+            validateInput();
+            if (isAssemble() && unordered)
+                throw new ParameterException("--unordered can't be used with --assemble.");
+            if (checkpointInterval < 0)
+                throw new ParameterException("Negative checkpoint interval.");
+            if (checkpointInterval > 0 || resume) {
+                if (isAssemble())
+                    throw new ParameterException("Checkpoints can't be used with --assemble.");
+                if (getOutputName().equals(".") || getOutputName().endsWith(".gz"))
+                    throw new ParameterException("Checkpoints require uncompressed output file.");
+            }
+            if (subsampleFraction < 0 || subsampleFraction >= 1)
+                throw new ParameterException("Subsampling fraction should be in (0, 1) range.");
+            if (subsampleCount < 0)
+                throw new ParameterException("Negative number of reads to subsample.");
+            if (subsampleFraction != 0 && subsampleCount != 0)
+                throw new ParameterException("--subsample and --subsample-count can't be used simultaneously.");
+            if ((subsampleFraction != 0 || subsampleCount != 0) && (checkpointInterval > 0 || resume))
+                throw new ParameterException("Subsampling can't be used with checkpoints.");
+            // Sampling rate is not stored in .clns files, so counts of clones couldn't be scaled afterwards
+            if ((subsampleFraction != 0 || subsampleCount != 0) && isAssemble())
+                throw new ParameterException("Subsampling can't be used with --assemble; use separate assemble " +
+                        "action with --scale-counts option.");
+            if (umiDescriptionPattern != null && umiLength != 0)
+                throw new ParameterException("--umi-from-description and --umi-length can't be used simultaneously.");
+            if (umiLength < 0)
+                throw new ParameterException("Negative UMI length.");
+            if (umiDescriptionPattern != null)
+                try {
+                    Pattern.compile(umiDescriptionPattern);
+                } catch (PatternSyntaxException e) {
+                    throw new ParameterException("Wrong UMI pattern: " + e.getMessage());
+                }
+            if (isUMICollapsing() && (checkpointInterval > 0 || resume))
+                throw new ParameterException("UMI collapsing can't be used with checkpoints.");
+            if (resume && !getCheckpointFile().exists())
+                throw new ParameterException("Checkpoint file " + getCheckpointFile() + " not found.");
+            super.validate();
+        }
+
+        protected void validateInput() {
             if (parameters.size() > 3)
                 throw new ParameterException("Too many input files.");
             if (parameters.size() < 2)
                 throw new ParameterException("No output file.");
-            super.validate();
         }
     }
 }
\ No newline at end of file
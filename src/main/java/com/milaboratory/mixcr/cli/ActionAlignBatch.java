@@ -0,0 +1,401 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.cli;
+
+import cc.redberry.pipe.Processor;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.validators.PositiveInteger;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SequenceReaderCloseable;
+import com.milaboratory.mitools.cli.Action;
+import com.milaboratory.mitools.cli.ActionHelper;
+import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+import com.milaboratory.mixcr.basictypes.VDJCAlignmentsWriter;
+import com.milaboratory.mixcr.vdjaligners.*;
+import com.milaboratory.util.CanReportProgress;
+import com.milaboratory.util.SmartProgressReporter;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Aligns several samples listed in a manifest file in one run. Aligner (together with all reference indexes) is
+ * created once for single-end and once for paired-end samples and shared between samples, reads of all samples are
+ * aligned by a single pool of worker threads.
+ */
+public class ActionAlignBatch implements Action {
+    /**
+     * Number of reads aligned by worker thread in one task
+     */
+    static final int CHUNK_SIZE = 256;
+    private final AlignBatchParameters actionParameters = new AlignBatchParameters();
+    private final SampleListener listener = new SampleListener();
+
+    @Override
+    public void go(ActionHelper helper) throws Exception {
+        final VDJCAlignerParameters alignerParameters = ActionAlign.getAlignerParameters(actionParameters);
+        if (alignerParameters == null)
+            return;
+
+        final List<Sample> samples = actionParameters.getSamples();
+
+        // Aligners are created only for types of input present in manifest
+        final VDJCAligner[] aligners = new VDJCAligner[2];
+        for (Sample sample : samples) {
+            int i = sample.isPaired() ? 1 : 0;
+            if (aligners[i] != null)
+                continue;
+            aligners[i] = ActionAlign.createAligner(actionParameters, alignerParameters, sample.isPaired());
+            if (aligners[i] == null)
+                return;
+            aligners[i].setEventsListener(listener);
+        }
+
+        final ExecutorService workers = Executors.newFixedThreadPool(actionParameters.threads, DAEMON_THREADS);
+        final ExecutorService drivers = Executors.newFixedThreadPool(
+                Math.min(actionParameters.concurrentSamples, samples.size()), DAEMON_THREADS);
+        final BatchProgress progress = new BatchProgress(samples.size());
+        final String commandLineArguments = helper.getCommandLineArguments();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < samples.size(); ++i) {
+                final int sampleIndex = i;
+                final Sample sample = samples.get(i);
+                futures.add(drivers.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            align(sample, sampleIndex, aligners[sample.isPaired() ? 1 : 0], workers, progress,
+                                    commandLineArguments);
+                        } finally {
+                            progress.finished(sampleIndex);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            SmartProgressReporter.startProgressReport("Batch alignment", progress);
+
+            int failed = 0;
+            for (int i = 0; i < futures.size(); ++i)
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    ++failed;
+                    System.err.println("Error aligning " + samples.get(i).getInputForReport() + ": " + e.getCause());
+                }
+            if (failed != 0)
+                throw new RuntimeException(failed + " of " + samples.size() + " samples failed.");
+        } finally {
+            drivers.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+
+    private void align(Sample sample, int sampleIndex, VDJCAligner aligner, ExecutorService workers,
+                       BatchProgress progress, String commandLineArguments) throws Exception {
+        // Per-sample state: report, reader (read ids start from zero) and output
+        AlignerReport report = actionParameters.report == null ? null : new AlignerReport();
+        if (report != null)
+            report.setAllowDifferentVJLoci(actionParameters.allowDifferentVJLoci);
+
+        try (SequenceReaderCloseable<? extends SequenceRead> reader =
+                     ActionAlign.AlignParameters.createReader(sample.inputs, actionParameters.inputThreads);
+             VDJCAlignmentsWriter writer = sample.output.equals(".") ? null : new VDJCAlignmentsWriter(sample.output)) {
+            progress.started(sampleIndex, (CanReportProgress) reader);
+            if (writer != null)
+                writer.header(aligner);
+
+            // Chunks are aligned by shared workers, results are written in the order of reads
+            int maxPendingChunks = 2 * actionParameters.threads;
+            ArrayDeque<Future<VDJCAlignmentResult[]>> pending = new ArrayDeque<>();
+            List<SequenceRead> chunk = new ArrayList<>(CHUNK_SIZE);
+            SequenceRead read;
+            do {
+                read = reader.take();
+                if (read != null)
+                    chunk.add(read);
+                if (chunk.size() == CHUNK_SIZE || (read == null && !chunk.isEmpty())) {
+                    pending.add(workers.submit(new AlignChunk(aligner, listener, report,
+                            chunk.toArray(new SequenceRead[chunk.size()]))));
+                    chunk.clear();
+                }
+                while (!pending.isEmpty() && (pending.size() >= maxPendingChunks || read == null))
+                    write(pending.poll().get(), writer, report);
+            } while (read != null);
+
+            if (writer != null)
+                writer.setNumberOfProcessedReads(reader.getNumberOfReads());
+        }
+
+        if (report != null)
+            // Reports of all samples are appended to the same file
+            synchronized (this) {
+                Util.writeReport(sample.getInputForReport(), sample.output, commandLineArguments,
+                        actionParameters.report, report);
+            }
+    }
+
+    private void write(VDJCAlignmentResult[] results, VDJCAlignmentsWriter writer, AlignerReport report) {
+        for (VDJCAlignmentResult result : results) {
+            VDJCAlignments alignment = result.alignment;
+            if (alignment == null)
+                continue;
+            if (!alignment.hasSameVJLoci(1)) {
+                if (report != null)
+                    report.onAlignmentWithDifferentVJLoci();
+                if (!actionParameters.allowDifferentVJLoci)
+                    continue;
+            }
+            if (writer != null) {
+                if (actionParameters.saveReadDescription || actionParameters.saveOriginalReads)
+                    alignment.setDescriptions(ActionAlign.extractDescription(result.read));
+                if (actionParameters.saveOriginalReads)
+                    alignment.setOriginalSequences(ActionAlign.extractNSeqs(result.read));
+                writer.write(alignment);
+            }
+        }
+    }
+
+    private static final class AlignChunk implements Callable<VDJCAlignmentResult[]> {
+        final Processor<SequenceRead, VDJCAlignmentResult> aligner;
+        final SampleListener listener;
+        final VDJCAlignerEventListener sampleListener;
+        final SequenceRead[] reads;
+
+        AlignChunk(Processor<SequenceRead, VDJCAlignmentResult> aligner, SampleListener listener,
+                   VDJCAlignerEventListener sampleListener, SequenceRead[] reads) {
+            this.aligner = aligner;
+            this.listener = listener;
+            this.sampleListener = sampleListener;
+            this.reads = reads;
+        }
+
+        @Override
+        public VDJCAlignmentResult[] call() {
+            VDJCAlignmentResult[] results = new VDJCAlignmentResult[reads.length];
+            listener.current.set(sampleListener);
+            try {
+                for (int i = 0; i < reads.length; ++i)
+                    results[i] = aligner.process(reads[i]);
+            } finally {
+                listener.current.remove();
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Aligner is shared between samples, so its events are routed to the listener of the sample being aligned by the
+     * current thread.
+     */
+    private static final class SampleListener implements VDJCAlignerEventListener {
+        final ThreadLocal<VDJCAlignerEventListener> current = new ThreadLocal<>();
+
+        @Override
+        public void onFailedAlignment(SequenceRead read, VDJCAlignmentFailCause cause) {
+            VDJCAlignerEventListener listener = current.get();
+            if (listener != null)
+                listener.onFailedAlignment(read, cause);
+        }
+
+        @Override
+        public void onSuccessfulAlignment(SequenceRead read, VDJCAlignments alignment) {
+            VDJCAlignerEventListener listener = current.get();
+            if (listener != null)
+                listener.onSuccessfulAlignment(read, alignment);
+        }
+
+        @Override
+        public void onSuccessfulOverlap(SequenceRead read, VDJCAlignments alignments) {
+            VDJCAlignerEventListener listener = current.get();
+            if (listener != null)
+                listener.onSuccessfulOverlap(read, alignments);
+        }
+    }
+
+    private static final class BatchProgress implements CanReportProgress {
+        final AtomicReferenceArray<CanReportProgress> samples;
+        final boolean[] finished;
+        final AtomicInteger finishedCount = new AtomicInteger();
+
+        BatchProgress(int size) {
+            this.samples = new AtomicReferenceArray<>(size);
+            this.finished = new boolean[size];
+        }
+
+        void started(int sample, CanReportProgress progress) {
+            samples.set(sample, progress);
+        }
+
+        synchronized void finished(int sample) {
+            finished[sample] = true;
+            finishedCount.incrementAndGet();
+        }
+
+        @Override
+        public synchronized double getProgress() {
+            double progress = 0;
+            for (int i = 0; i < finished.length; ++i)
+                if (finished[i])
+                    progress += 1;
+                else if (samples.get(i) != null)
+                    progress += samples.get(i).getProgress();
+            return progress / finished.length;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finishedCount.get() == finished.length;
+        }
+    }
+
+    private static final ThreadFactory DAEMON_THREADS = new ThreadFactory() {
+        final ThreadFactory factory = Executors.defaultThreadFactory();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = factory.newThread(r);
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    static final class Sample {
+        final List<String> inputs;
+        final String output;
+
+        Sample(List<String> inputs, String output) {
+            this.inputs = inputs;
+            this.output = output;
+        }
+
+        boolean isPaired() {
+            return inputs.size() == 2;
+        }
+
+        String getInputForReport() {
+            StringBuilder builder = new StringBuilder();
+            for (String input : inputs) {
+                if (builder.length() != 0)
+                    builder.append(',');
+                builder.append(input);
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Parses manifest: each non-empty line not starting with '#' contains input file(s) and output file separated by
+     * whitespaces ({@code input_file1 [input_file2] output_file.vdjca}).
+     */
+    static List<Sample> parseManifest(String fileName) throws IOException {
+        List<Sample> samples = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                ++lineNumber;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] fields = line.split("\\s+");
+                if (fields.length < 2 || fields.length > 3)
+                    throw new IllegalArgumentException("Wrong number of fields in line " + lineNumber +
+                            " of " + fileName + " (expected: input_file1 [input_file2] output_file.vdjca).");
+                samples.add(new Sample(Arrays.asList(fields).subList(0, fields.length - 1),
+                        fields[fields.length - 1]));
+            }
+        }
+        return samples;
+    }
+
+    @Override
+    public String command() {
+        return "alignBatch";
+    }
+
+    @Override
+    public AlignBatchParameters params() {
+        return actionParameters;
+    }
+
+    @Parameters(commandDescription = "Builds alignments for several samples listed in manifest file (each line: " +
+            "input_file1 [input_file2] output_file.vdjca) reusing the same aligner. Options are the same as for " +
+            "align action.",
+            optionPrefixes = "-")
+    public static class AlignBatchParameters extends ActionAlign.AlignParameters {
+        @Parameter(description = "Number of samples aligned simultaneously (all samples share processing threads).",
+                names = {"--samples"}, validateWith = PositiveInteger.class)
+        public int concurrentSamples = 1;
+
+        List<Sample> samples = null;
+
+        public List<Sample> getSamples() {
+            if (samples == null)
+                try {
+                    samples = parseManifest(parameters.get(0));
+                } catch (IOException | IllegalArgumentException e) {
+                    throw new ParameterException(e.getMessage());
+                }
+            return samples;
+        }
+
+        @Override
+        protected List<String> getOutputFiles() {
+            List<String> outputs = new ArrayList<>();
+            for (Sample sample : getSamples())
+                outputs.add(sample.output);
+            return outputs;
+        }
+
+        @Override
+        protected void validateInput() {
+            if (parameters.size() != 1)
+                throw new ParameterException("Single manifest file expected.");
+            if (limit != 0 || readCacheSize != 0 || profile || unordered || isAssemble())
+                throw new ParameterException("-n, --read-cache, --profile, --unordered and --assemble options are " +
+                        "not supported in batch mode.");
+            if (subsampleFraction != 0 || subsampleCount != 0 || isUMICollapsing())
+                throw new ParameterException("Subsampling and UMI collapsing are not supported in batch mode.");
+            if (checkpointInterval != 0 || resume)
+                throw new ParameterException("--checkpoint-interval and --resume options are not supported in " +
+                        "batch mode.");
+            if (getSamples().isEmpty())
+                throw new ParameterException("No samples in manifest file.");
+        }
+    }
+}
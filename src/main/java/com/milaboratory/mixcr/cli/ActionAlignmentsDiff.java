@@ -6,6 +6,7 @@ import com.beust.jcommander.Parameters;
 import com.milaboratory.mitools.cli.Action;
 import com.milaboratory.mitools.cli.ActionHelper;
 import com.milaboratory.mitools.cli.ActionParameters;
+import com.milaboratory.mixcr.basictypes.SortedVDJCAlignmentsPort;
 import com.milaboratory.mixcr.basictypes.VDJCAlignmentsReader;
 import com.milaboratory.mixcr.basictypes.VDJCAlignmentsWriter;
 import com.milaboratory.mixcr.basictypes.VDJCAlignmentsWriterI;
@@ -55,7 +56,8 @@ public final class ActionAlignmentsDiff implements Action {
             only2.header(reader2.getParameters(), reader2.getUsedAlleles());
             diff2.header(reader2.getParameters(), reader2.getUsedAlleles());
 
-            VDJCAlignmentsDifferenceReader diffReader = new VDJCAlignmentsDifferenceReader(reader1, reader2,
+            VDJCAlignmentsDifferenceReader diffReader = new VDJCAlignmentsDifferenceReader(
+                    new SortedVDJCAlignmentsPort(reader1), new SortedVDJCAlignmentsPort(reader2),
                     parameters.getFeature(), parameters.hitsCompareLevel);
             for (VDJCAlignmentsDifferenceReader.Diff diff : CUtils.it(diffReader)) {
                 switch (diff.status) {
@@ -40,6 +40,7 @@ import com.beust.jcommander.validators.PositiveInteger;
 import com.milaboratory.mitools.cli.Action;
 import com.milaboratory.mitools.cli.ActionHelper;
 import com.milaboratory.mixcr.assembler.*;
+import com.milaboratory.mixcr.basictypes.CloneSet;
 import com.milaboratory.mixcr.basictypes.CloneSetIO;
 import com.milaboratory.mixcr.basictypes.VDJCAlignmentsReader;
 import com.milaboratory.mixcr.reference.Allele;
@@ -70,10 +71,12 @@ public class ActionAssemble implements Action {
     public void go(ActionHelper helper) throws Exception {
         final List<Allele> alleles;
         final VDJCAlignerParameters alignerParameters;
+        final double samplingRate;
         try (VDJCAlignmentsReader reader = new VDJCAlignmentsReader(actionParameters.getInputFileName(), LociLibraryManager.getDefault())) {
             alleles = reader.getUsedAlleles();
             // Saving aligner parameters to correct assembler parameters
             alignerParameters = reader.getParameters();
+            samplingRate = reader.getSamplingRate();
         }
 
         AlignmentsProvider alignmentsProvider = AlignmentsProvider.Util.createProvider(
@@ -92,14 +95,7 @@ public class ActionAssemble implements Action {
         }
 
         // Adjusting features to align for correct processing
-        for (GeneType geneType : GeneType.values()) {
-            GeneFeature featureAssemble = assemblerParameters.getCloneFactoryParameters().getFeatureToAlign(geneType);
-            GeneFeature featureAlignment = alignerParameters.getFeatureToAlign(geneType);
-            if (featureAssemble == null || featureAlignment == null)
-                continue;
-            GeneFeature intersection = GeneFeature.intersection(featureAlignment, featureAssemble);
-            assemblerParameters.getCloneFactoryParameters().setFeatureToAlign(geneType, intersection);
-        }
+        adjustFeaturesToAlign(assemblerParameters, alignerParameters);
 
         try (CloneAssembler assembler = new CloneAssembler(assemblerParameters, false, alleles)) {
 
@@ -112,12 +108,16 @@ public class ActionAssemble implements Action {
                     assembler, actionParameters.threads);
             SmartProgressReporter.startProgressReport(assemblerRunner);
             assemblerRunner.run();
-            try (CloneSetIO.CloneSetWriter writer = new CloneSetIO.CloneSetWriter(assemblerRunner.getCloneSet(), actionParameters.getOutputFileName())) {
+            CloneSet cloneSet = assemblerRunner.getCloneSet();
+            if (actionParameters.scaleCounts && samplingRate < 1.0)
+                cloneSet = CloneSet.scale(cloneSet, 1.0 / samplingRate);
+            try (CloneSetIO.CloneSetWriter writer = new CloneSetIO.CloneSetWriter(cloneSet, actionParameters.getOutputFileName())) {
                 SmartProgressReporter.startProgressReport(writer);
                 writer.write();
             }
 
             if (report != null) {
+                report.setPipelineScheduler(assemblerRunner.getPipelineScheduler());
                 report.setTotalReads(alignmentsProvider.getTotalNumberOfReads());
                 Util.writeReport(actionParameters.getInputFileName(), actionParameters.getOutputFileName(),
                         helper.getCommandLineArguments(), actionParameters.report, report);
@@ -167,6 +167,21 @@ public class ActionAssemble implements Action {
         }
     }
 
+    /**
+     * Restricts features to align used by clone factory to the features aligned by aligner.
+     */
+    static void adjustFeaturesToAlign(CloneAssemblerParameters assemblerParameters,
+                                      VDJCAlignerParameters alignerParameters) {
+        for (GeneType geneType : GeneType.values()) {
+            GeneFeature featureAssemble = assemblerParameters.getCloneFactoryParameters().getFeatureToAlign(geneType);
+            GeneFeature featureAlignment = alignerParameters.getFeatureToAlign(geneType);
+            if (featureAssemble == null || featureAlignment == null)
+                continue;
+            GeneFeature intersection = GeneFeature.intersection(featureAlignment, featureAssemble);
+            assemblerParameters.getCloneFactoryParameters().setFeatureToAlign(geneType, intersection);
+        }
+    }
+
     private static Iterator<ReadToCloneMapping> source(OutputPortCloseable<ReadToCloneMapping> assemblerReadsPort) {
         return new CUtils.OPIterator<>(new FilteringPort<>(assemblerReadsPort,
                 new Filter<ReadToCloneMapping>() {
@@ -205,6 +220,11 @@ public class ActionAssemble implements Action {
                 names = {"-r", "--report"})
         public String report;
 
+        @Parameter(description = "Scale counts of clones by inverse sampling rate if input alignments were " +
+                "produced from subsampled reads (see --subsample option of align).",
+                names = {"--scale-counts"})
+        public boolean scaleCounts = false;
+
         @Parameter(description = ".",
                 names = {"-e", "--events"}, hidden = true)
         public String events;
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.cli;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.google.common.io.ByteStreams;
+import com.milaboratory.mitools.cli.Action;
+import com.milaboratory.mitools.cli.ActionHelper;
+import com.milaboratory.mitools.cli.ActionParameters;
+import com.milaboratory.mixcr.reference.LociLibrary;
+import com.milaboratory.mixcr.reference.LociLibraryManager;
+import com.milaboratory.mixcr.reference.LociLibraryReader;
+import com.milaboratory.mixcr.reference.LociLibrarySnapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ActionCompileSegments implements Action {
+    private final CParameters params = new CParameters();
+
+    @Override
+    public void go(ActionHelper helper) throws Exception {
+        byte[] source;
+        if (params.getInput() == null)
+            try (InputStream sample = ActionCompileSegments.class.getClassLoader()
+                    .getResourceAsStream("reference/mi.ll")) {
+                source = ByteStreams.toByteArray(sample);
+            }
+        else
+            source = Files.readAllBytes(Paths.get(params.getInput()));
+        LociLibrary library = LociLibraryReader.read(new ByteArrayInputStream(source), params.getInput() == null);
+
+        Path outputFile = params.getOutputFile();
+        if (Files.exists(outputFile) && !params.getForce()) {
+            System.err.println("File \"" + outputFile + "\" already exists. Use -f option to overwrite it.");
+            return;
+        }
+        Path parent = outputFile.getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+
+        // Writing to temporary file first, as existing snapshot may be mapped by running processes
+        Path tmp = outputFile.resolveSibling(outputFile.getFileName() + ".tmp");
+        LociLibrarySnapshot.write(library, LociLibrarySnapshot.digest(source), tmp.toFile());
+        Files.move(tmp, outputFile, StandardCopyOption.REPLACE_EXISTING);
+
+        System.out.println("Compiled library written to " + outputFile);
+    }
+
+    @Override
+    public String command() {
+        return "compileSegments";
+    }
+
+    @Override
+    public ActionParameters params() {
+        return params;
+    }
+
+    @Parameters(commandDescription = "Compiles loci library (built-in one if input is omitted) into memory-mapped " +
+            "snapshot with resolved allele sequences. Snapshots placed to ~/.mixcr/ are used instead of " +
+            "corresponding *.ll files (unless the library file was changed after compilation).",
+            optionPrefixes = "-")
+    public static final class CParameters extends ActionParameters {
+        @Parameter(description = "[input_file.ll [output_file.lls]]")
+        public List<String> parameters = new ArrayList<>();
+
+        @Parameter(description = "Force overwrite of output file.",
+                names = {"-f", "--force"})
+        public Boolean force;
+
+        public String getInput() {
+            return parameters.isEmpty() ? null : parameters.get(0);
+        }
+
+        public Path getOutputFile() {
+            if (parameters.size() == 2)
+                return Paths.get(parameters.get(1));
+            String name = "mi";
+            if (getInput() != null) {
+                name = Paths.get(getInput()).getFileName().toString();
+                if (name.endsWith(".ll"))
+                    name = name.substring(0, name.length() - 3);
+            }
+            return Util.getLocalSettingsDir().resolve(name + LociLibraryManager.SNAPSHOT_EXTENSION);
+        }
+
+        public boolean getForce() {
+            return force != null && force;
+        }
+
+        @Override
+        public void validate() {
+            if (parameters.size() > 2)
+                throw new ParameterException("Wrong number of parameters.");
+            super.validate();
+        }
+    }
+}
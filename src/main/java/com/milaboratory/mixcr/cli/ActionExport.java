@@ -28,9 +28,17 @@
  */
 package com.milaboratory.mixcr.cli;
 
+import cc.redberry.pipe.Processor;
+import cc.redberry.primitives.Filter;
 import com.milaboratory.mitools.cli.Action;
 import com.milaboratory.mitools.cli.ActionHelper;
 import com.milaboratory.mitools.cli.ActionParametersParser;
+import com.milaboratory.mixcr.export.ColumnarWriter;
+import com.milaboratory.mixcr.export.InfoWriter;
+import com.milaboratory.mixcr.export.MultiSinkWriter;
+
+import java.io.IOException;
+import java.util.List;
 
 public abstract class ActionExport implements Action, ActionParametersParser {
     public final ActionExportParameters parameters;
@@ -57,6 +65,33 @@ public abstract class ActionExport implements Action, ActionParametersParser {
 
     protected abstract void go0() throws Exception;
 
+    /**
+     * Adds output described by export parameters (main output or one of {@code --sink} outputs).
+     */
+    protected static <T> void addSink(MultiSinkWriter<T> writer, ActionExportParameters parameters,
+                                      Filter<? super T> filter) throws IOException {
+        addSink(writer, parameters, filter, null);
+    }
+
+    /**
+     * Adds output described by export parameters, converting objects accepted by filter before export (see {@link
+     * MultiSinkWriter#addSink(cc.redberry.pipe.InputPort, Filter, Processor, long, AutoCloseable...)}).
+     */
+    @SuppressWarnings("unchecked")
+    protected static <T> void addSink(MultiSinkWriter<T> writer, ActionExportParameters parameters,
+                                      Filter<? super T> filter, Processor<T, ? extends T> conversion)
+            throws IOException {
+        if (parameters.binary) {
+            ColumnarWriter<T> columnarWriter = new ColumnarWriter<>(parameters.getOutputFile(),
+                    (List) parameters.exporters);
+            writer.addSink(columnarWriter, filter, conversion, parameters.limit, columnarWriter);
+        } else {
+            InfoWriter<T> infoWriter = new InfoWriter<>(parameters.getOutputFile());
+            infoWriter.attachInfoProviders((List) parameters.exporters);
+            writer.addSink(infoWriter, filter, conversion, parameters.limit, parameters.threads);
+        }
+    }
+
     @Override
     public ActionExportParameters params() {
         return parameters;
@@ -29,14 +29,13 @@
 package com.milaboratory.mixcr.cli;
 
 import com.milaboratory.core.alignment.AlignmentUtils;
+import com.milaboratory.mixcr.basictypes.SortedVDJCAlignmentsPort;
 import com.milaboratory.mixcr.basictypes.VDJCAlignments;
 import com.milaboratory.mixcr.basictypes.VDJCAlignmentsReader;
-import com.milaboratory.mixcr.export.InfoWriter;
+import com.milaboratory.mixcr.export.MultiSinkWriter;
 import com.milaboratory.mixcr.reference.LociLibraryManager;
 import com.milaboratory.util.SmartProgressReporter;
 
-import java.util.List;
-
 public class ActionExportAlignments extends ActionExport {
     public ActionExportAlignments() {
         super(new ActionExportParameters(), VDJCAlignments.class);
@@ -45,16 +44,16 @@ public class ActionExportAlignments extends ActionExport {
     @Override
     public void go0() throws Exception {
         try (VDJCAlignmentsReader reader = new VDJCAlignmentsReader(parameters.getInputFile(), LociLibraryManager.getDefault());
-             InfoWriter<VDJCAlignments> writer = new InfoWriter<>(parameters.getOutputFile())) {
+             MultiSinkWriter<VDJCAlignments> writer = new MultiSinkWriter<>()) {
+            addSink(writer, parameters, null);
+            for (ActionExportParameters sink : parameters.sinkParameters)
+                addSink(writer, sink, null);
             if (!parameters.printToStdout())
                 SmartProgressReporter.startProgressReport("Exporting alignments", reader);
-            writer.attachInfoProviders((List) parameters.exporters);
+            SortedVDJCAlignmentsPort sorted = new SortedVDJCAlignmentsPort(reader);
             VDJCAlignments alignments;
-            long count = 0;
-            while ((alignments = reader.take()) != null && count < parameters.limit) {
+            while (!writer.isFinished() && (alignments = sorted.take()) != null)
                 writer.put(alignments);
-                ++count;
-            }
         }
     }
 
@@ -28,13 +28,14 @@
  */
 package com.milaboratory.mixcr.cli;
 
+import cc.redberry.pipe.Processor;
 import cc.redberry.primitives.Filter;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
 import com.milaboratory.core.sequence.AminoAcidSequence;
 import com.milaboratory.core.sequence.NSequenceWithQuality;
 import com.milaboratory.mixcr.basictypes.*;
-import com.milaboratory.mixcr.export.InfoWriter;
+import com.milaboratory.mixcr.export.MultiSinkWriter;
 import com.milaboratory.mixcr.reference.GeneFeature;
 import com.milaboratory.mixcr.reference.GeneType;
 import com.milaboratory.mixcr.reference.LociLibraryManager;
@@ -42,6 +43,7 @@ import com.milaboratory.mixcr.reference.Locus;
 import com.milaboratory.util.CanReportProgressAndStage;
 import com.milaboratory.util.SmartProgressReporter;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 import java.util.Set;
@@ -54,22 +56,53 @@ public class ActionExportClones extends ActionExport {
     @Override
     public void go0() throws Exception {
         CloneExportParameters parameters = (CloneExportParameters) this.parameters;
-        try (InputStream inputStream = IOUtil.createIS(parameters.getInputFile());
-             InfoWriter<Clone> writer = new InfoWriter<>(parameters.getOutputFile())) {
-            CloneSet set = CloneSetIO.read(inputStream, LociLibraryManager.getDefault());
-
-            if (parameters.filterOutOfFrames || parameters.filterStops || !"all".equals(parameters.loci))
-                set = CloneSet.transform(set, new CFilter(parameters.filterOutOfFrames, parameters.filterStops,
-                        parameters.getLoci()));
+        CloneSet set;
+        try (InputStream inputStream = IOUtil.createIS(parameters.getInputFile())) {
+            set = CloneSetIO.read(inputStream, LociLibraryManager.getDefault());
+        }
 
-            writer.attachInfoProviders((List) parameters.exporters);
-            ExportClones exportClones = new ExportClones(set, writer, parameters.limit);
+        try (MultiSinkWriter<Clone> writer = new MultiSinkWriter<>()) {
+            addCloneSink(writer, parameters, set);
+            for (ActionExportParameters sink : parameters.sinkParameters)
+                addCloneSink(writer, (CloneExportParameters) sink, set);
+            ExportClones exportClones = new ExportClones(set, writer);
             if (!parameters.printToStdout())
                 SmartProgressReporter.startProgressReport(exportClones);
             exportClones.run();
         }
     }
 
+    /**
+     * Adds output with its own filter; fractions of exported clones are recalculated relative to the clones accepted
+     * by the filter.
+     */
+    private static void addCloneSink(MultiSinkWriter<Clone> writer, CloneExportParameters parameters, CloneSet set)
+            throws IOException {
+        Filter<Clone> filter = parameters.getFilter();
+        addSink(writer, parameters, filter, filter == null ? null : new FilteredClones(CloneSet.filter(set, filter)));
+    }
+
+    /**
+     * Replaces clones accepted by the filter with their copies from the filtered clone set (clones are passed in the
+     * order of the original set).
+     */
+    private static final class FilteredClones implements Processor<Clone, Clone> {
+        final CloneSet filtered;
+        int position = 0;
+
+        FilteredClones(CloneSet filtered) {
+            this.filtered = filtered;
+        }
+
+        @Override
+        public Clone process(Clone clone) {
+            Clone copy = filtered.get(position++);
+            if (copy.getId() != clone.getId())
+                throw new IllegalStateException("Clones are passed out of order.");
+            return copy;
+        }
+    }
+
     @Override
     public String command() {
         return "exportClones";
@@ -119,17 +152,15 @@ public class ActionExportClones extends ActionExport {
     @Parameters(commandDescription = "Export clones to tab-delimited text file", optionPrefixes = "-")
     public static final class ExportClones implements CanReportProgressAndStage {
         final CloneSet clones;
-        final InfoWriter<Clone> writer;
+        final MultiSinkWriter<Clone> writer;
         final long size;
         volatile long current = 0;
         final static String stage = "Exporting clones";
-        final long limit;
 
-        private ExportClones(CloneSet clones, InfoWriter<Clone> writer, long limit) {
+        private ExportClones(CloneSet clones, MultiSinkWriter<Clone> writer) {
             this.clones = clones;
             this.writer = writer;
             this.size = clones.size();
-            this.limit = limit;
         }
 
         @Override
@@ -149,7 +180,7 @@ public class ActionExportClones extends ActionExport {
 
         void run() {
             for (Clone clone : clones.getClones()) {
-                if (current == limit)
+                if (writer.isFinished())
                     break;
                 writer.put(clone);
                 ++current;
@@ -173,5 +204,14 @@ public class ActionExportClones extends ActionExport {
         public Set<Locus> getLoci() {
             return Util.parseLoci(loci);
         }
+
+        /**
+         * Returns filter for the output (main or {@code --sink} one), or {@code null} if no filters were specified.
+         */
+        Filter<Clone> getFilter() {
+            if (!filterOutOfFrames && !filterStops && "all".equalsIgnoreCase(loci))
+                return null;
+            return new CFilter(filterOutOfFrames, filterStops, getLoci());
+        }
     }
 }
@@ -47,8 +47,29 @@ public class ActionExportParameters extends ActionParametersWithOutput {
             names = {"-n", "--limit"}, validateWith = PositiveInteger.class)
     public long limit = Long.MAX_VALUE;
 
+    @Parameter(description = "Number of threads used to format output rows (output is the same as for a " +
+            "single thread).",
+            names = {"--threads"}, validateWith = PositiveInteger.class)
+    public int threads = 1;
+
+    @Parameter(description = "Write binary columnar file (typed columns split into row groups with per-column " +
+            "statistics, see ColumnarReader) instead of tab-delimited text; implies --no-spaces column names.",
+            names = {"--binary"})
+    public Boolean binary = false;
+
+    @Parameter(description = "Additional output written in the same pass over input file: file with export " +
+            "options (fields, preset, filters, --threads, --binary etc.) and output file; may be specified several " +
+            "times.",
+            names = {"--sink"}, arity = 2)
+    public List<String> sinks = new ArrayList<>();
+
     public ArrayList<FieldExtractor> exporters;
 
+    /**
+     * Parameters of additional outputs specified with {@code --sink}
+     */
+    public List<ActionExportParameters> sinkParameters = new ArrayList<>();
+
     @Override
     protected List<String> getOutputFiles() {
         return files.subList(1, 2);
@@ -72,6 +93,12 @@ public class ActionExportParameters extends ActionParametersWithOutput {
             return;
         if (files.size() != 2)
             throw new ParameterException("Input/output file is not specified.");
+        if (binary && printToStdout())
+            throw new ParameterException("Binary output can't be written to stdout.");
+        if (binary && threads > 1)
+            throw new ParameterException("--threads is not supported for binary output.");
+        if (sinks.size() % 2 != 0)
+            throw new ParameterException("--sink requires options file and output file.");
         super.validate();
     }
 
@@ -85,22 +112,52 @@ public class ActionExportParameters extends ActionParametersWithOutput {
                 add(args[args.length - 2]);
                 add(args[args.length - 1]);
             }};
-            OutputMode outputMode = parameters.noSpaces ? OutputMode.ScriptingFriendly : OutputMode.HumanFriendly;
-            parameters.exporters = new ArrayList<>();
-            //if preset was explicitly specified
-            if (parameters.preset != DEFAULT_PRESET)
-                parameters.exporters.addAll(getPresetParameters(outputMode, clazz, parameters.preset));
+            parameters.exporters = parseExporters(clazz, parameters, jc.getUnknownOptions());
+            parameters.sinkParameters = parseSinks(clazz, parameters);
+            parameters.validate();
+        }
+    }
 
-            if (parameters.presetFile != null)
-                parameters.exporters.addAll(parseFile(outputMode, clazz, parameters.presetFile));
+    private static ArrayList<FieldExtractor> parseExporters(Class clazz, ActionExportParameters parameters,
+                                                            List<String> fields) {
+        OutputMode outputMode = parameters.noSpaces || parameters.binary ? OutputMode.ScriptingFriendly : OutputMode.HumanFriendly;
+        ArrayList<FieldExtractor> exporters = new ArrayList<>();
+        //if preset was explicitly specified
+        if (parameters.preset != DEFAULT_PRESET)
+            exporters.addAll(getPresetParameters(outputMode, clazz, parameters.preset));
 
-            parameters.exporters.addAll(parseFields(outputMode, clazz, jc.getUnknownOptions()));
+        if (parameters.presetFile != null)
+            exporters.addAll(parseFile(outputMode, clazz, parameters.presetFile));
 
-            if (parameters.exporters.isEmpty())
-                parameters.exporters.addAll(getPresetParameters(outputMode, clazz, parameters.preset));
+        exporters.addAll(parseFields(outputMode, clazz, fields));
 
-            parameters.validate();
+        if (exporters.isEmpty())
+            exporters.addAll(getPresetParameters(outputMode, clazz, parameters.preset));
+        return exporters;
+    }
+
+    private static List<ActionExportParameters> parseSinks(Class clazz, final ActionExportParameters parameters) {
+        List<ActionExportParameters> result = new ArrayList<>();
+        for (int i = 0; i < parameters.sinks.size(); i += 2) {
+            ActionExportParameters sink;
+            try {
+                sink = parameters.getClass().newInstance();
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+            JCommander jc = new JCommander(sink);
+            jc.setAcceptUnknownOptions(true);
+            jc.parse(readOptions(parameters.sinks.get(i)).toArray(new String[0]));
+            if (!sink.sinks.isEmpty())
+                throw new ParameterException("--sink can't be used in sink options file.");
+            sink.files = Arrays.asList(parameters.getInputFile(), parameters.sinks.get(i + 1));
+            if (sink.force == null)
+                sink.force = parameters.force;
+            sink.exporters = parseExporters(clazz, sink, jc.getUnknownOptions());
+            sink.validate();
+            result.add(sink);
         }
+        return result;
     }
 
     private static String[] cutArgs(String[] args) {
@@ -130,6 +187,10 @@ public class ActionExportParameters extends ActionParametersWithOutput {
     }
 
     public static ArrayList<FieldExtractor> parseFile(OutputMode outputMode, Class clazz, String file) {
+        return parseFields(outputMode, clazz, readOptions(file));
+    }
+
+    private static List<String> readOptions(String file) {
         try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
             List<String> options = new ArrayList<>();
             String line;
@@ -138,7 +199,7 @@ public class ActionExportParameters extends ActionParametersWithOutput {
                 if (!line.isEmpty())
                     options.addAll(Arrays.asList(line.split(" ")));
             }
-            return parseFields(outputMode, clazz, options);
+            return options;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -31,22 +31,24 @@ package com.milaboratory.mixcr.cli;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 import com.beust.jcommander.Parameters;
+import com.beust.jcommander.validators.PositiveInteger;
 import com.milaboratory.mitools.cli.Action;
 import com.milaboratory.mitools.cli.ActionHelper;
 import com.milaboratory.mitools.cli.ActionParameters;
 import com.milaboratory.mixcr.reference.*;
 import com.milaboratory.mixcr.reference.builder.FastaLocusBuilder;
+import com.milaboratory.mixcr.reference.builder.FastaLocusBuilderParameters;
 import com.milaboratory.mixcr.reference.builder.FastaLocusBuilderParametersBundle;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.*;
 
 public class ActionImportSegments implements Action {
     private final AParameters params = new AParameters();
@@ -127,38 +129,61 @@ public class ActionImportSegments implements Action {
 
         try (PrintStream ps = (params.report == null ? System.out : new PrintStream(new FileOutputStream(params.report,
                 true)))) {
-            FastaLocusBuilder vBuilder, dBuilder = null, jBuilder;
-
-            vBuilder = new FastaLocusBuilder(locus, bundle.getV())
-                    .setLoggingStream(ps).setFinalReportStream(ps)
-                    .printErrorsAndWarningsToSTDOUT().noExceptionOnError();
-            vBuilder.importAllelesFromFile(params.getV());
-
-            jBuilder = new FastaLocusBuilder(locus, bundle.getJ())
-                    .setLoggingStream(ps).setFinalReportStream(ps)
-                    .printErrorsAndWarningsToSTDOUT().noExceptionOnError();
-            jBuilder.importAllelesFromFile(params.getJ());
-
-            if (params.getD() != null) {
-                dBuilder = new FastaLocusBuilder(locus, bundle.getD())
-                        .setLoggingStream(ps).setFinalReportStream(ps)
-                        .printErrorsAndWarningsToSTDOUT().noExceptionOnError();
-                dBuilder.importAllelesFromFile(params.getD());
-            }
+            // Builders in the order of output
+            final List<FastaLocusBuilder> builders = new ArrayList<>();
+            final List<String> inputs = new ArrayList<>();
+            final List<ByteArrayOutputStream> logs = new ArrayList<>();
+            // -t is the total number of threads: J and D files are small, so each of them gets a single thread and
+            // the rest goes to V; if there are fewer threads than builders, builders wait for each other
+            int numberOfBuilders = params.getD() == null ? 2 : 3;
+            addBuilder(builders, inputs, logs, ps, locus, bundle.getV(), params.getV(),
+                    Math.max(1, params.threads - numberOfBuilders + 1));
+            addBuilder(builders, inputs, logs, ps, locus, bundle.getJ(), params.getJ(), 1);
+            if (params.getD() != null)
+                addBuilder(builders, inputs, logs, ps, locus, bundle.getD(), params.getD(), 1);
 
             System.out.println("Processing...");
 
-            vBuilder.compile();
-            jBuilder.compile();
-            if (dBuilder != null)
-                dBuilder.compile();
+            // Gene types are imported and compiled concurrently; errors and warnings of each builder are buffered
+            // and printed once in the order of builders (to the report file and to the standard output, if report
+            // file is specified)
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(builders.size(), params.threads));
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < builders.size(); ++i) {
+                    final FastaLocusBuilder builder = builders.get(i);
+                    final String input = inputs.get(i);
+                    futures.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            builder.importAllelesFromFile(input);
+                            builder.compile();
+                            return null;
+                        }
+                    }));
+                }
+                for (int i = 0; i < builders.size(); ++i) {
+                    try {
+                        futures.get(i).get();
+                    } finally {
+                        logs.get(i).writeTo(ps);
+                        if (ps != System.out)
+                            logs.get(i).writeTo(System.out);
+                    }
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception)
+                    throw (Exception) cause;
+                throw new RuntimeException(cause);
+            } finally {
+                executor.shutdownNow();
+            }
 
             System.out.println("Writing report.");
 
-            vBuilder.printReport();
-            jBuilder.printReport();
-            if (dBuilder != null)
-                dBuilder.printReport();
+            for (FastaLocusBuilder builder : builders)
+                builder.printReport();
 
             System.out.println("Writing library file.");
 
@@ -170,10 +195,8 @@ public class ActionImportSegments implements Action {
                     writer.writeMagic();
 
                 writer.writeBeginOfLocus(taxonID, locus);
-                vBuilder.writeAlleles(writer);
-                jBuilder.writeAlleles(writer);
-                if (dBuilder != null)
-                    dBuilder.writeAlleles(writer);
+                for (FastaLocusBuilder builder : builders)
+                    builder.writeAlleles(writer);
                 writer.writeEndOfLocus();
                 for (String cn : commonNamesSet)
                     writer.writeCommonSpeciesName(taxonID, cn);
@@ -194,6 +217,18 @@ public class ActionImportSegments implements Action {
         }
     }
 
+    private void addBuilder(List<FastaLocusBuilder> builders, List<String> inputs, List<ByteArrayOutputStream> logs,
+                            PrintStream reportStream, Locus locus, FastaLocusBuilderParameters parameters,
+                            String input, int threads) {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        builders.add(new FastaLocusBuilder(locus, parameters)
+                .setLoggingStream(new PrintStream(log, true)).setFinalReportStream(reportStream)
+                .noExceptionOnError()
+                .setThreads(threads));
+        inputs.add(input);
+        logs.add(log);
+    }
+
     public FastaLocusBuilderParametersBundle getBuilderParameters() {
         FastaLocusBuilderParametersBundle bundle =
                 FastaLocusBuilderParametersBundle.getBuiltInBundleByName(params.getBuilderParametersName());
@@ -251,6 +286,10 @@ public class ActionImportSegments implements Action {
                 names = {"-s", "--species"})
         public String species;
 
+        @Parameter(description = "Processing threads",
+                names = {"-t", "--threads"}, validateWith = PositiveInteger.class)
+        public int threads = Runtime.getRuntime().availableProcessors();
+
         @Parameter(description = "Report file.",
                 names = {"-r", "--report"})
         public String report;
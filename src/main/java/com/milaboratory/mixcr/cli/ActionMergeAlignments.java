@@ -31,6 +31,7 @@ package com.milaboratory.mixcr.cli;
 import cc.redberry.pipe.CUtils;
 import cc.redberry.pipe.OutputPort;
 import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
 import com.beust.jcommander.Parameters;
 import com.milaboratory.mitools.cli.Action;
 import com.milaboratory.mitools.cli.ActionHelper;
@@ -53,10 +54,31 @@ public class ActionMergeAlignments implements Action {
 
     @Override
     public void go(ActionHelper helper) throws Exception {
+        // Alignments of different inputs never interleave, so the output is displaced from the order of read ids at
+        // most as much as the most displaced input
+        int reorderWindow = 0;
+        // Counts of merged alignments can only be rescaled to the whole input if all inputs were sampled equally
+        double samplingRate = Double.NaN;
+        for (String file : parameters.getInputFileNames()) {
+            VDJCAlignmentsReader header = new VDJCAlignmentsReader(file, LociLibraryManager.getDefault());
+            try {
+                reorderWindow = Math.max(reorderWindow, header.getReorderWindow());
+                if (Double.isNaN(samplingRate))
+                    samplingRate = header.getSamplingRate();
+                else if (samplingRate != header.getSamplingRate())
+                    throw new ParameterException("Can't merge alignments with different sampling rates: " +
+                            samplingRate + " and " + header.getSamplingRate() + " (" + file + ").");
+            } finally {
+                header.close();
+            }
+        }
+
         try (MultiReader reader = new MultiReader(parameters.getInputFileNames());
              VDJCAlignmentsWriter writer = new VDJCAlignmentsWriter(parameters.getOutputFileName())) {
             reader.initNextReader();
             SmartProgressReporter.startProgressReport("Merging", reader);
+            writer.setReorderWindow(reorderWindow);
+            writer.setSamplingRate(samplingRate);
             writer.header(reader.currentInnerReader.getParameters(), reader.currentInnerReader.getUsedAlleles());
             for (VDJCAlignments record : CUtils.it(reader))
                 writer.write(record);
@@ -0,0 +1,454 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.cli;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.validators.PositiveInteger;
+import com.milaboratory.mitools.cli.Action;
+import com.milaboratory.mitools.cli.ActionHelper;
+import com.milaboratory.mitools.cli.ActionParameters;
+import com.milaboratory.util.GlobalObjectMappers;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resident MiXCR process executing jobs (ordinary MiXCR command lines) submitted through a loopback socket (see
+ * {@link JobClient}). Loaded loci libraries and JIT-compiled code are reused by all jobs.
+ *
+ * <p>Protocol: client sends three lines, the access token, working directory and arguments of the command separated
+ * by tab characters. Server sends back lines of standard output and standard error of the job (including progress)
+ * prefixed by {@link #OUT} or {@link #ERR} and a tab character, and finally a line prefixed by {@link #RESULT} with JSON
+ * object describing the result of the job (including the report written by the job, if -r option was specified).</p>
+ *
+ * <p>Access token is randomly generated at startup and written to a file readable only by the user who started the
+ * server (see {@link #tokenFile(int)}), so jobs can't be submitted by other users of the machine.</p>
+ */
+public class ActionServer implements Action {
+    public static final int DEFAULT_PORT = 38475;
+    static final char OUT = 'O', ERR = 'E', RESULT = 'R';
+    static final String STATUS_OK = "ok", STATUS_ERROR = "error", STATUS_REJECTED = "rejected";
+
+    private final ServerParameters actionParameters = new ServerParameters();
+
+    @Override
+    public void go(ActionHelper helper) throws Exception {
+        JobStreams.install();
+        final File workingDirectory = new File(".").getCanonicalFile();
+        Path tokenFile = tokenFile(actionParameters.port);
+        String token = writeToken(tokenFile);
+        tokenFile.toFile().deleteOnExit();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(actionParameters.jobs, actionParameters.jobs,
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(actionParameters.queueSize));
+        try (ServerSocket server = new ServerSocket(actionParameters.port, 50, InetAddress.getLoopbackAddress())) {
+            System.err.println("MiXCR server is listening on " + server.getLocalSocketAddress() + ".");
+            while (true) {
+                Socket socket = server.accept();
+                try {
+                    executor.execute(new Job(socket, token, workingDirectory, actionParameters.threads));
+                } catch (RejectedExecutionException e) {
+                    try (JobConnection connection = new JobConnection(socket)) {
+                        connection.result(STATUS_REJECTED, "Job queue is full.", 0);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            Files.deleteIfExists(tokenFile);
+        }
+    }
+
+    /**
+     * File with the access token of the server listening on specified port.
+     */
+    static Path tokenFile(int port) {
+        return Util.getLocalSettingsDir().resolve("server-" + port + ".token");
+    }
+
+    /**
+     * Generates random access token and writes it to the file readable and writable only by the owner.
+     */
+    static String writeToken(Path file) throws IOException {
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder token = new StringBuilder();
+        for (byte b : bytes)
+            token.append(String.format("%02x", b & 0xFF));
+
+        Files.createDirectories(file.getParent());
+        Files.deleteIfExists(file);
+        try {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system
+            Files.createFile(file);
+            File f = file.toFile();
+            if (!f.setReadable(false, false) || !f.setReadable(true, true) ||
+                    !f.setWritable(false, false) || !f.setWritable(true, true))
+                throw new IOException("Can't restrict access to " + file);
+        }
+        Files.write(file, token.toString().getBytes(StandardCharsets.UTF_8));
+        return token.toString();
+    }
+
+    /**
+     * Compares tokens in constant time.
+     */
+    static boolean checkToken(String expected, String received) {
+        return received != null && MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+                received.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class Job implements Runnable {
+        final Socket socket;
+        final String token;
+        final File workingDirectory;
+        final int threads;
+
+        Job(Socket socket, String token, File workingDirectory, int threads) {
+            this.socket = socket;
+            this.token = token;
+            this.workingDirectory = workingDirectory;
+            this.threads = threads;
+        }
+
+        @Override
+        public void run() {
+            try (JobConnection connection = new JobConnection(socket)) {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                if (!checkToken(token, reader.readLine())) {
+                    connection.result(STATUS_ERROR, "Wrong access token.", 0);
+                    return;
+                }
+
+                String directory = reader.readLine(), arguments = reader.readLine();
+                if (directory == null || arguments == null) {
+                    connection.result(STATUS_ERROR, "Wrong request.", 0);
+                    return;
+                }
+
+                // Relative paths in arguments are resolved against working directory of the server
+                if (!new File(directory).getCanonicalFile().equals(workingDirectory)) {
+                    connection.result(STATUS_ERROR, "Working directory of the job (" + directory +
+                            ") differs from working directory of the server (" + workingDirectory + ").", 0);
+                    return;
+                }
+
+                String[] args = arguments.isEmpty() ? new String[0] : arguments.split("\t");
+                if (args.length > 0 && (args[0].equals("server") || args[0].equals(JobClient.COMMAND))) {
+                    connection.result(STATUS_ERROR, "Command can't be executed by server: " + args[0], 0);
+                    return;
+                }
+
+                Action[] actions = Main.createActions();
+                args = limitThreads(args, actions, threads);
+
+                // Report is appended to existing file, so only the part written by this job is sent back
+                String report = reportFileName(args, actions);
+                File reportFile = report == null ? null : new File(report);
+                long reportOffset = reportFile == null ? 0 : reportFile.length();
+
+                long start = System.currentTimeMillis();
+                JobStreams.set(connection.createStream(OUT), connection.createStream(ERR));
+                try {
+                    Main.createMain("mixcr " + JobClient.COMMAND, actions).main(args);
+                    JobStreams.flush();
+                    connection.result(STATUS_OK, null, System.currentTimeMillis() - start,
+                            readReport(reportFile, reportOffset));
+                } catch (Throwable e) {
+                    JobStreams.flush();
+                    connection.result(STATUS_ERROR, e.toString(), System.currentTimeMillis() - start);
+                } finally {
+                    JobStreams.reset();
+                }
+            } catch (IOException e) {
+                // Client disconnected
+            }
+        }
+    }
+
+    /**
+     * Sets number of threads used by the job (-t option) to the minimum of requested number and {@code limit}, or to
+     * {@code limit} if not specified and the action supports this option.
+     */
+    static String[] limitThreads(String[] args, Action[] actions, int limit) {
+        if (args.length == 0 || !supportsThreads(args[0], actions))
+            return args;
+        for (int i = 1; i < args.length - 1; ++i)
+            if (args[i].equals("-t") || args[i].equals("--threads")) {
+                try {
+                    if (Integer.parseInt(args[i + 1]) > limit) {
+                        args = args.clone();
+                        args[i + 1] = Integer.toString(limit);
+                    }
+                } catch (NumberFormatException e) {
+                    // Will be reported by command line parser
+                }
+                return args;
+            }
+        String[] result = new String[args.length + 2];
+        result[0] = args[0];
+        result[1] = "-t";
+        result[2] = Integer.toString(limit);
+        System.arraycopy(args, 1, result, 3, args.length - 1);
+        return result;
+    }
+
+    private static boolean supportsThreads(String command, Action[] actions) {
+        return hasOption(command, actions, "-t");
+    }
+
+    /**
+     * Returns name of the report file specified in the arguments of the job (-r option), or null if not specified or
+     * the action doesn't write reports.
+     */
+    static String reportFileName(String[] args, Action[] actions) {
+        if (args.length == 0 || !hasOption(args[0], actions, "--report"))
+            return null;
+        for (int i = 1; i < args.length - 1; ++i)
+            if (args[i].equals("-r") || args[i].equals("--report"))
+                return args[i + 1];
+        return null;
+    }
+
+    private static boolean hasOption(String command, Action[] actions, String name) {
+        for (Action action : actions)
+            if (action.command().equals(command)) {
+                for (Class<?> c = action.params().getClass(); c != null; c = c.getSuperclass())
+                    for (Field field : c.getDeclaredFields()) {
+                        Parameter parameter = field.getAnnotation(Parameter.class);
+                        if (parameter != null && Arrays.asList(parameter.names()).contains(name))
+                            return true;
+                    }
+                return false;
+            }
+        return false;
+    }
+
+    private static String readReport(File file, long offset) throws IOException {
+        if (file == null || file.length() <= offset)
+            return null;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] bytes = new byte[(int) (raf.length() - offset)];
+            raf.seek(offset);
+            raf.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Connection with the client; lines are sent atomically from all threads of the job.
+     */
+    static final class JobConnection implements Closeable {
+        final Socket socket;
+        final Writer writer;
+        boolean closed = false;
+
+        JobConnection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        synchronized void send(char type, String line) {
+            if (closed)
+                return;
+            try {
+                writer.write(type);
+                writer.write('\t');
+                writer.write(line);
+                writer.write('\n');
+                writer.flush();
+            } catch (IOException e) {
+                // Client disconnected, output of the job is discarded
+                closed = true;
+            }
+        }
+
+        void result(String status, String message, long timeMillis) throws IOException {
+            result(status, message, timeMillis, null);
+        }
+
+        void result(String status, String message, long timeMillis, String report) throws IOException {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("status", status);
+            if (message != null)
+                result.put("message", message);
+            result.put("timeMillis", timeMillis);
+            if (report != null)
+                result.put("report", report);
+            send(RESULT, GlobalObjectMappers.ONE_LINE.writeValueAsString(result));
+        }
+
+        OutputStream createStream(final char type) {
+            return new OutputStream() {
+                final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+                @Override
+                public synchronized void write(int b) {
+                    if (b == '\n' || b == '\r')
+                        flushLine();
+                    else
+                        line.write(b);
+                }
+
+                @Override
+                public synchronized void flush() {
+                    if (line.size() != 0)
+                        flushLine();
+                }
+
+                private void flushLine() {
+                    send(type, new String(line.toByteArray(), StandardCharsets.UTF_8));
+                    line.reset();
+                }
+            };
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            closed = true;
+            socket.close();
+        }
+    }
+
+    /**
+     * Routes {@link System#out} and {@link System#err} of the job (including threads started by the job) to its
+     * connection.
+     */
+    static final class JobStreams {
+        static final InheritableThreadLocal<OutputStream> out = new InheritableThreadLocal<>(),
+                err = new InheritableThreadLocal<>();
+        static boolean installed = false;
+
+        static synchronized void install() {
+            if (installed)
+                return;
+            installed = true;
+            System.setOut(new PrintStream(new RoutedStream(System.out, out), true));
+            System.setErr(new PrintStream(new RoutedStream(System.err, err), true));
+        }
+
+        static void set(OutputStream jobOut, OutputStream jobErr) {
+            out.set(jobOut);
+            err.set(jobErr);
+        }
+
+        static void flush() {
+            System.out.flush();
+            System.err.flush();
+        }
+
+        static void reset() {
+            out.remove();
+            err.remove();
+        }
+    }
+
+    private static final class RoutedStream extends OutputStream {
+        final OutputStream defaultStream;
+        final ThreadLocal<OutputStream> target;
+
+        RoutedStream(OutputStream defaultStream, ThreadLocal<OutputStream> target) {
+            this.defaultStream = defaultStream;
+            this.target = target;
+        }
+
+        private OutputStream stream() {
+            OutputStream stream = target.get();
+            return stream == null ? defaultStream : stream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            stream().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            OutputStream stream = stream();
+            if (stream == defaultStream)
+                stream.write(b, off, len);
+            else
+                for (int i = off; i < off + len; ++i)
+                    stream.write(b[i]);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            stream().flush();
+        }
+    }
+
+    @Override
+    public String command() {
+        return "server";
+    }
+
+    @Override
+    public ActionParameters params() {
+        return actionParameters;
+    }
+
+    @Parameters(commandDescription = "Starts resident MiXCR process executing commands submitted with 'mixcr " +
+            JobClient.COMMAND + " <command> ...'.",
+            optionPrefixes = "-")
+    public static final class ServerParameters extends ActionParameters {
+        @Parameter(description = "Port on loopback interface to listen on.",
+                names = {"-p", "--port"})
+        public int port = DEFAULT_PORT;
+
+        @Parameter(description = "Number of jobs executed simultaneously.",
+                names = {"-j", "--jobs"}, validateWith = PositiveInteger.class)
+        public int jobs = 1;
+
+        @Parameter(description = "Maximal number of jobs waiting for execution (further jobs are rejected).",
+                names = {"-q", "--queue"}, validateWith = PositiveInteger.class)
+        public int queueSize = 64;
+
+        @Parameter(description = "Maximal number of processing threads per job.",
+                names = {"-t", "--threads"}, validateWith = PositiveInteger.class)
+        public int threads = Runtime.getRuntime().availableProcessors();
+    }
+}
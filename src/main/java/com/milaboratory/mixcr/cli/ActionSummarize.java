@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.cli;
+
+import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.VoidProcessor;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.milaboratory.mitools.cli.Action;
+import com.milaboratory.mitools.cli.ActionHelper;
+import com.milaboratory.mixcr.basictypes.*;
+import com.milaboratory.mixcr.info.SummaryCollector;
+import com.milaboratory.mixcr.info.SummaryCollectors;
+import com.milaboratory.mixcr.reference.GeneFeature;
+import com.milaboratory.mixcr.reference.GeneType;
+import com.milaboratory.mixcr.reference.LociLibraryManager;
+import com.milaboratory.util.GlobalObjectMappers;
+import com.milaboratory.util.SmartProgressReporter;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregates gene usage, gene feature length spectra and clone size distribution of .vdjca / .clns file in a single
+ * parallel pass.
+ */
+public class ActionSummarize implements Action {
+    final SummarizeParameters parameters = new SummarizeParameters();
+
+    @Override
+    public void go(ActionHelper helper) throws Exception {
+        Map<String, Map<String, Long>> result;
+        switch (ActionInfo.FilesType.getType(parameters.getInputFile())) {
+            case Alignments:
+                result = summarizeAlignments();
+                break;
+            case Cloneset:
+                result = summarizeClones();
+                break;
+            default:
+                throw new IllegalArgumentException();
+        }
+
+        try (OutputStream os = parameters.getOutputFile().equals(".") ?
+                new CloseShieldOutputStream(System.out) :
+                new BufferedOutputStream(new FileOutputStream(parameters.getOutputFile()), 32768)) {
+            if (parameters.json)
+                GlobalObjectMappers.PRETTY.writeValue(new CloseShieldOutputStream(os), result);
+            else {
+                PrintStream ps = new PrintStream(os);
+                ps.println("summary\tkey\tvalue");
+                for (Map.Entry<String, Map<String, Long>> summary : result.entrySet())
+                    for (Map.Entry<String, Long> entry : summary.getValue().entrySet())
+                        ps.println(summary.getKey() + "\t" + entry.getKey() + "\t" + entry.getValue());
+                ps.flush();
+            }
+        }
+    }
+
+    private List<SummaryCollector<? super VDJCObject>> objectCollectors() {
+        List<SummaryCollector<? super VDJCObject>> collectors = new ArrayList<>();
+        for (GeneType type : GeneType.values())
+            collectors.add(SummaryCollectors.geneUsage(type, parameters.alleles));
+        for (GeneFeature feature : parameters.getFeatures())
+            collectors.add(SummaryCollectors.featureLength(feature));
+        return collectors;
+    }
+
+    private Map<String, Map<String, Long>> summarizeAlignments() throws IOException {
+        final List<SummaryCollector<? super VDJCObject>> collectors = objectCollectors();
+        try (VDJCAlignmentsReader reader = new VDJCAlignmentsReader(parameters.getInputFile(),
+                LociLibraryManager.getDefault())) {
+            if (!parameters.getOutputFile().equals("."))
+                SmartProgressReporter.startProgressReport("Summarizing alignments", reader);
+            CUtils.processAllInParallel(reader, new VoidProcessor<VDJCAlignments>() {
+                @Override
+                public void process(VDJCAlignments input) {
+                    long weight = input.getMultiplicity();
+                    for (SummaryCollector<? super VDJCObject> collector : collectors)
+                        collector.put(input, weight);
+                }
+            }, parameters.threads);
+        }
+        return end(collectors);
+    }
+
+    private Map<String, Map<String, Long>> summarizeClones() throws IOException {
+        final List<SummaryCollector<? super Clone>> collectors = new ArrayList<SummaryCollector<? super Clone>>(
+                objectCollectors());
+        collectors.add(SummaryCollectors.cloneSize());
+        CloneSet set;
+        try (InputStream inputStream = IOUtil.createIS(parameters.getInputFile())) {
+            set = CloneSetIO.read(inputStream, LociLibraryManager.getDefault());
+        }
+        final Iterator<Clone> iterator = set.getClones().iterator();
+        OutputPort<Clone> clones = new OutputPort<Clone>() {
+            @Override
+            public synchronized Clone take() {
+                return iterator.hasNext() ? iterator.next() : null;
+            }
+        };
+        CUtils.processAllInParallel(clones, new VoidProcessor<Clone>() {
+            @Override
+            public void process(Clone input) {
+                long weight = parameters.countClones ? 1 : input.getCount();
+                for (SummaryCollector<? super Clone> collector : collectors)
+                    collector.put(input, weight);
+            }
+        }, parameters.threads);
+        return end(collectors);
+    }
+
+    private static Map<String, Map<String, Long>> end(List<? extends SummaryCollector<?>> collectors) {
+        Map<String, Map<String, Long>> result = new LinkedHashMap<>();
+        for (SummaryCollector<?> collector : collectors) {
+            collector.end();
+            result.put(collector.getName(), collector.getResult());
+        }
+        return result;
+    }
+
+    @Override
+    public String command() {
+        return "summarize";
+    }
+
+    @Override
+    public SummarizeParameters params() {
+        return parameters;
+    }
+
+    @Parameters(commandDescription = "Aggregate gene usage, CDR3 length spectrum and clone size distribution " +
+            "of alignments (.vdjca) or clones (.clns) without exporting them.", optionPrefixes = "-")
+    public static final class SummarizeParameters extends ActionParametersWithOutput {
+        @Parameter(description = "input_file{.vdjca|.clns} output_file")
+        public List<String> files = new ArrayList<>();
+
+        @Parameter(description = "Write summaries as JSON (tab-delimited by default).",
+                names = {"--json"})
+        public Boolean json = false;
+
+        @Parameter(description = "Count usage of alleles instead of genes.",
+                names = {"--alleles"})
+        public Boolean alleles = false;
+
+        @Parameter(description = "Gene feature to compute length spectrum for (may be specified several times).",
+                names = {"--length-of"})
+        public List<String> features = new ArrayList<>();
+
+        @Parameter(description = "For clones: count each clone once instead of weighting by clone count.",
+                names = {"--count-clones"})
+        public Boolean countClones = false;
+
+        @Parameter(description = "Processing threads",
+                names = {"-t", "--threads"})
+        public int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+        public List<GeneFeature> getFeatures() {
+            List<GeneFeature> result = new ArrayList<>();
+            if (features.isEmpty())
+                result.add(GeneFeature.CDR3);
+            for (String feature : features)
+                result.add(GeneFeature.parse(feature));
+            return result;
+        }
+
+        public String getInputFile() {
+            return files.get(0);
+        }
+
+        public String getOutputFile() {
+            return files.get(1);
+        }
+
+        @Override
+        protected List<String> getOutputFiles() {
+            return files.subList(1, 2);
+        }
+
+        @Override
+        public void validate() {
+            if (help)
+                return;
+            if (files.size() != 2)
+                throw new ParameterException("Input/output file is not specified.");
+            if (threads <= 0)
+                throw new ParameterException("-t / --threads must be positive.");
+            for (String feature : features)
+                try {
+                    GeneFeature.parse(feature);
+                } catch (RuntimeException e) {
+                    throw new ParameterException("Can't parse gene feature: " + feature);
+                }
+            super.validate();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.cli;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignerParameters;
+import com.milaboratory.util.GlobalObjectMappers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * State of alignment saved periodically with {@code align --checkpoint-interval} and used by {@code align --resume}
+ * to continue interrupted run. All reads with ids less than {@link #numberOfReads} are completely processed and their
+ * alignments are written to the first {@link #outputPosition} bytes of the output file.
+ */
+public final class AlignCheckpoint {
+    /**
+     * Input files of the run
+     */
+    public List<String> inputs;
+    /**
+     * Options of the run affecting content of the output (continuing with different options would produce a file
+     * mixing results of different settings)
+     */
+    public Map<String, String> options;
+    /**
+     * Number of alleles used by aligner (same set of alleles is required to continue writing of output)
+     */
+    public int numberOfAlleles;
+    /**
+     * Position in the output file after the last written alignment
+     */
+    public long outputPosition;
+    /**
+     * Number of processed reads (the id of the first read to process after resume)
+     */
+    public long numberOfReads;
+    /**
+     * Number of written alignments
+     */
+    public long numberOfAlignments;
+    /**
+     * Counters of alignment report, null if report was not requested
+     */
+    public Map<String, Long> reportCounters;
+
+    public AlignCheckpoint() {
+    }
+
+    AlignCheckpoint(ActionAlign.AlignParameters parameters, VDJCAlignerParameters alignerParameters,
+                    int numberOfAlleles, long outputPosition, long numberOfReads, long numberOfAlignments,
+                    Map<String, Long> reportCounters) {
+        this.inputs = getInputs(parameters);
+        this.options = getOptions(parameters, alignerParameters);
+        this.numberOfAlleles = numberOfAlleles;
+        this.outputPosition = outputPosition;
+        this.numberOfReads = numberOfReads;
+        this.numberOfAlignments = numberOfAlignments;
+        this.reportCounters = reportCounters;
+    }
+
+    private static List<String> getInputs(ActionAlign.AlignParameters parameters) {
+        List<String> inputs = new ArrayList<>();
+        for (String input : parameters.parameters.subList(0, parameters.parameters.size() - 1))
+            inputs.add(new File(input).getAbsolutePath());
+        return inputs;
+    }
+
+    private static Map<String, String> getOptions(ActionAlign.AlignParameters parameters,
+                                                  VDJCAlignerParameters alignerParameters) {
+        Map<String, String> options = new TreeMap<>();
+        try {
+            // Final parameters, i.e. -p and all -O overrides
+            options.put("parameters", GlobalObjectMappers.ONE_LINE.writeValueAsString(alignerParameters));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+        options.put("library", parameters.ll);
+        options.put("species", parameters.species);
+        options.put("loci", String.valueOf(parameters.getLoci()));
+        options.put("functional", String.valueOf(parameters.isFunctionalOnly()));
+        options.put("limit", String.valueOf(parameters.limit));
+        options.put("unordered", String.valueOf(parameters.unordered));
+        options.put("read-cache", String.valueOf(parameters.readCacheSize));
+        options.put("classify-loci", String.valueOf(parameters.lociPreClassification));
+        options.put("kmer-merger", String.valueOf(parameters.kmerMerger));
+        options.put("noMerge", String.valueOf(parameters.noMerge));
+        options.put("diff-loci", String.valueOf(parameters.allowDifferentVJLoci));
+        options.put("save-description", String.valueOf(parameters.saveReadDescription));
+        options.put("save-reads", String.valueOf(parameters.saveOriginalReads));
+        return options;
+    }
+
+    /**
+     * Checks that checkpoint was saved by the run with the same inputs, options and alleles.
+     */
+    void check(ActionAlign.AlignParameters parameters, VDJCAlignerParameters alignerParameters, int numberOfAlleles) {
+        if (!inputs.equals(getInputs(parameters)))
+            throw new IllegalArgumentException("Checkpoint was saved for different input files: " + inputs);
+        Map<String, String> current = getOptions(parameters, alignerParameters);
+        if (options == null)
+            throw new IllegalArgumentException("Checkpoint doesn't contain options of the run.");
+        for (Map.Entry<String, String> e : current.entrySet())
+            if (!e.getValue().equals(options.get(e.getKey())))
+                throw new IllegalArgumentException("Checkpoint was saved with different value of option " +
+                        e.getKey() + ": " + options.get(e.getKey()));
+        if (this.numberOfAlleles != numberOfAlleles)
+            throw new IllegalArgumentException("Checkpoint was saved for different set of alleles.");
+    }
+
+    /**
+     * Atomically replaces checkpoint file.
+     */
+    void write(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        GlobalObjectMappers.PRETTY.writeValue(tmp, this);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static AlignCheckpoint read(File file) throws IOException {
+        return GlobalObjectMappers.ONE_LINE.readValue(file, AlignCheckpoint.class);
+    }
+}
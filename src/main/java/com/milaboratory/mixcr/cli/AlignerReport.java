@@ -28,11 +28,18 @@
  */
 package com.milaboratory.mixcr.cli;
 
+import com.google.common.cache.CacheStats;
 import com.milaboratory.core.io.sequence.SequenceRead;
 import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+import com.milaboratory.mixcr.umi.UMICollapser;
+import com.milaboratory.mixcr.util.PipelineScheduler;
+import com.milaboratory.mixcr.vdjaligners.AlignerProfiler;
 import com.milaboratory.mixcr.vdjaligners.VDJCAlignerEventListener;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignerWithCache;
 import com.milaboratory.mixcr.vdjaligners.VDJCAlignmentFailCause;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicLongArray;
 
@@ -43,6 +50,10 @@ public final class AlignerReport implements VDJCAlignerEventListener, ReportWrit
     private final AtomicLong alignedOverlap = new AtomicLong(0);
     private final AtomicLong nonAlignedOverlap = new AtomicLong(0);
     private volatile boolean allowDifferentVJLoci = false;
+    private volatile VDJCAlignerWithCache readCache = null;
+    private volatile AlignerProfiler profiler = null;
+    private volatile PipelineScheduler pipelineScheduler = null;
+    private volatile UMICollapser umiCollapser = null;
 
     public long getFails(VDJCAlignmentFailCause cause) {
         return fails.get(cause.ordinal());
@@ -72,10 +83,68 @@ public final class AlignerReport implements VDJCAlignerEventListener, ReportWrit
         return nonAlignedOverlap.get();
     }
 
+    /**
+     * Returns values of all counters (used to save state of the report in alignment checkpoints).
+     */
+    public Map<String, Long> getCounters() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("successes", successes.get());
+        counters.put("hasDifferentVJLoci", hasDifferentVJLoci.get());
+        counters.put("alignedOverlap", alignedOverlap.get());
+        counters.put("nonAlignedOverlap", nonAlignedOverlap.get());
+        for (VDJCAlignmentFailCause cause : VDJCAlignmentFailCause.values())
+            counters.put("fails." + cause.name(), fails.get(cause.ordinal()));
+        return counters;
+    }
+
+    /**
+     * Adds values of counters previously returned by {@link #getCounters()}.
+     */
+    public void addCounters(Map<String, Long> counters) {
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            String key = entry.getKey();
+            long value = entry.getValue();
+            switch (key) {
+                case "successes":
+                    successes.addAndGet(value);
+                    break;
+                case "hasDifferentVJLoci":
+                    hasDifferentVJLoci.addAndGet(value);
+                    break;
+                case "alignedOverlap":
+                    alignedOverlap.addAndGet(value);
+                    break;
+                case "nonAlignedOverlap":
+                    nonAlignedOverlap.addAndGet(value);
+                    break;
+                default:
+                    if (!key.startsWith("fails."))
+                        throw new IllegalArgumentException("Unknown counter: " + key);
+                    fails.addAndGet(VDJCAlignmentFailCause.valueOf(key.substring(6)).ordinal(), value);
+            }
+        }
+    }
+
     public void setAllowDifferentVJLoci(boolean allowDifferentVJLoci) {
         this.allowDifferentVJLoci = allowDifferentVJLoci;
     }
 
+    public void setReadCache(VDJCAlignerWithCache readCache) {
+        this.readCache = readCache;
+    }
+
+    public void setProfiler(AlignerProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public void setPipelineScheduler(PipelineScheduler pipelineScheduler) {
+        this.pipelineScheduler = pipelineScheduler;
+    }
+
+    public void setUMICollapser(UMICollapser umiCollapser) {
+        this.umiCollapser = umiCollapser;
+    }
+
     @Override
     public void onFailedAlignment(SequenceRead read, VDJCAlignmentFailCause cause) {
         fails.incrementAndGet(cause.ordinal());
@@ -115,6 +184,35 @@ public final class AlignerReport implements VDJCAlignerEventListener, ReportWrit
         helper.writePercentField("Overlapped, percent", alignedOverlap.get() + nonAlignedOverlap.get(), total);
         helper.writePercentField("Overlapped and aligned, percent", alignedOverlap.get(), total);
         helper.writePercentField("Overlapped and not aligned, percent", nonAlignedOverlap.get(), total);
+        if (umiCollapser != null) {
+            helper.writeField("Sequencing reads before UMI collapsing", umiCollapser.getNumberOfReads());
+            helper.writeField("UMI groups (consensus reads)", umiCollapser.getNumberOfGroups());
+        }
+        if (readCache != null) {
+            CacheStats stats = readCache.getStats();
+            helper.writePercentField("Reads taken from duplicate reads cache, percent", stats.hitCount(), total);
+            helper.writeField("Duplicate reads cache evictions", stats.evictionCount());
+        }
+        if (profiler != null) {
+            for (AlignerProfiler.Stage stage : AlignerProfiler.Stage.values()) {
+                long count = profiler.getCount(stage);
+                if (count == 0)
+                    continue;
+                helper.writeField(stage.name + " timing (count / mean / p50 / p90 / p99, ns)",
+                        count + " / " + Math.round(profiler.getMeanNanos(stage)) + " / " +
+                                profiler.getQuantileNanos(stage, 0.5) + " / " +
+                                profiler.getQuantileNanos(stage, 0.9) + " / " +
+                                profiler.getQuantileNanos(stage, 0.99));
+            }
+            if (profiler.isAllocationMeasurementSupported())
+                helper.writeField("Allocated bytes per read (sampled)",
+                        Math.round(profiler.getMeanAllocatedBytesPerRead()));
+            for (Map.Entry<String, Double> entry : profiler.getCacheHitRates().entrySet())
+                helper.writeField("Hit rate of " + entry.getKey() + ", percent",
+                        Util.PERCENT_FORMAT.format(100.0 * entry.getValue()) + "%");
+        }
+        if (pipelineScheduler != null)
+            pipelineScheduler.writeReport(helper);
     }
 
     public long getTotal() {
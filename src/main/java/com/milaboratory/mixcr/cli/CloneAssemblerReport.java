@@ -31,12 +31,15 @@ package com.milaboratory.mixcr.cli;
 import com.milaboratory.mixcr.assembler.CloneAccumulator;
 import com.milaboratory.mixcr.assembler.CloneAssemblerListener;
 import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+import com.milaboratory.mixcr.util.PipelineScheduler;
 
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 public final class CloneAssemblerReport implements CloneAssemblerListener, ReportWriter {
     long totalReads = -1;
+    // Alignments are counted by multiplicity (number of reads collapsed into UMI consensus read), so alignment
+    // counters are numbers of reads, like totalReads and counts of clustered clones
     final AtomicInteger clonesCreated = new AtomicInteger();
     final AtomicLong failedToExtractTarget = new AtomicLong();
     final AtomicLong droppedAsLowQuality = new AtomicLong();
@@ -48,6 +51,7 @@ public final class CloneAssemblerReport implements CloneAssemblerListener, Repor
     final AtomicInteger clonesPreClustered = new AtomicInteger();
     final AtomicLong readsPreClustered = new AtomicLong();
     final AtomicLong readsClustered = new AtomicLong();
+    volatile PipelineScheduler pipelineScheduler = null;
 
     public long getTotalReads() {
         return totalReads;
@@ -104,32 +108,32 @@ public final class CloneAssemblerReport implements CloneAssemblerListener, Repor
 
     @Override
     public void onFailedToExtractTarget(VDJCAlignments alignments) {
-        failedToExtractTarget.incrementAndGet();
+        failedToExtractTarget.addAndGet(alignments.getMultiplicity());
     }
 
     @Override
     public void onTooManyLowQualityPoints(VDJCAlignments alignments) {
-        droppedAsLowQuality.incrementAndGet();
+        droppedAsLowQuality.addAndGet(alignments.getMultiplicity());
     }
 
     @Override
     public void onAlignmentDeferred(VDJCAlignments alignments) {
-        deferred.incrementAndGet();
+        deferred.addAndGet(alignments.getMultiplicity());
     }
 
     @Override
     public void onAlignmentAddedToClone(VDJCAlignments alignments, CloneAccumulator accumulator) {
-        coreAlignments.incrementAndGet();
+        coreAlignments.addAndGet(alignments.getMultiplicity());
     }
 
     @Override
     public void onNoCandidateFoundForDeferredAlignment(VDJCAlignments alignments) {
-        deferredAlignmentsDropped.incrementAndGet();
+        deferredAlignmentsDropped.addAndGet(alignments.getMultiplicity());
     }
 
     @Override
     public void onDeferredAlignmentMappedToClone(VDJCAlignments alignments, CloneAccumulator accumulator) {
-        deferredAlignmentsMapped.incrementAndGet();
+        deferredAlignmentsMapped.addAndGet(alignments.getMultiplicity());
     }
 
     @Override
@@ -144,6 +148,10 @@ public final class CloneAssemblerReport implements CloneAssemblerListener, Repor
         readsPreClustered.addAndGet(minorClone.getCount());
     }
 
+    public void setPipelineScheduler(PipelineScheduler pipelineScheduler) {
+        this.pipelineScheduler = pipelineScheduler;
+    }
+
     public void setTotalReads(long totalReads) {
         this.totalReads = totalReads;
     }
@@ -176,5 +184,7 @@ public final class CloneAssemblerReport implements CloneAssemblerListener, Repor
                         droppedAsLowQuality.get(), totalReads)
                 .writePercentField("Percent of reads dropped due to failed mapping",
                         deferredAlignmentsDropped.get(), totalReads);
+        if (pipelineScheduler != null)
+            pipelineScheduler.writeReport(helper);
     }
 }
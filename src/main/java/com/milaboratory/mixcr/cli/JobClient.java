@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.cli;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.milaboratory.util.GlobalObjectMappers;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Submits command to the running MiXCR server (see {@link ActionServer}) and prints output of the job:
+ * {@code mixcr submit [--port port] <command> <arguments...>}. Report of the job (if -r option was specified) is also
+ * written to the file by the server and returned in the result of the job.
+ */
+public final class JobClient {
+    public static final String COMMAND = "submit";
+
+    private JobClient() {
+    }
+
+    /**
+     * Submits job and waits for its completion.
+     *
+     * @param args [--port port] command and its arguments
+     * @return exit status (0 if job finished successfully)
+     */
+    public static int submit(String... args) throws IOException {
+        int port = Integer.getInteger("mixcr.server.port", ActionServer.DEFAULT_PORT);
+        int from = 0;
+        if (args.length >= 2 && args[0].equals("--port")) {
+            port = Integer.parseInt(args[1]);
+            from = 2;
+        }
+        if (from == args.length) {
+            System.err.println("Usage: mixcr " + COMMAND + " [--port port] <command> <arguments...>");
+            return 1;
+        }
+
+        StringBuilder arguments = new StringBuilder();
+        for (int i = from; i < args.length; ++i) {
+            if (args[i].indexOf('\t') >= 0 || args[i].indexOf('\n') >= 0) {
+                System.err.println("Arguments with tab or new line characters are not supported: " + args[i]);
+                return 1;
+            }
+            if (i != from)
+                arguments.append('\t');
+            arguments.append(args[i]);
+        }
+
+        Path tokenFile = ActionServer.tokenFile(port);
+        if (!Files.exists(tokenFile)) {
+            System.err.println("MiXCR server is not running on port " + port + " (" + tokenFile + " not found).");
+            return 1;
+        }
+        String token = new String(Files.readAllBytes(tokenFile), StandardCharsets.UTF_8).trim();
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            writer.write(token);
+            writer.write('\n');
+            writer.write(new File(".").getCanonicalPath());
+            writer.write('\n');
+            writer.write(arguments.toString());
+            writer.write('\n');
+            writer.flush();
+
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() < 2 || line.charAt(1) != '\t')
+                    continue;
+                String content = line.substring(2);
+                switch (line.charAt(0)) {
+                    case ActionServer.OUT:
+                        System.out.println(content);
+                        break;
+                    case ActionServer.ERR:
+                        System.err.println(content);
+                        break;
+                    case ActionServer.RESULT:
+                        JsonNode result = GlobalObjectMappers.ONE_LINE.readTree(content);
+                        if (ActionServer.STATUS_OK.equals(result.get("status").asText()))
+                            return 0;
+                        System.err.println("Job failed (" + result.get("status").asText() + ")" +
+                                (result.has("message") ? ": " + result.get("message").asText() : "."));
+                        return 1;
+                }
+            }
+        }
+        System.err.println("Connection with server closed before the end of the job.");
+        return 1;
+    }
+}
@@ -28,28 +28,36 @@
  */
 package com.milaboratory.mixcr.cli;
 
+import com.milaboratory.mitools.cli.Action;
 import com.milaboratory.mitools.cli.JCommanderBasedMain;
 import com.milaboratory.mixcr.util.VersionInfoProvider;
 
+import java.util.Arrays;
+
 public class Main {
     public static void main(String... args) throws Exception {
+        // Submitting job to the running server (see ActionServer); arguments of the job are not parsed here
+        if (args.length > 0 && args[0].equals(JobClient.COMMAND))
+            System.exit(JobClient.submit(Arrays.copyOfRange(args, 1, args.length)));
+
         // Getting command string if executed from script
         String command = System.getProperty("mixcr.command", "java -jar mixcr.jar");
 
+        // Executing main method
+        createMain(command).main(args);
+    }
+
+    /**
+     * Creates main helper with new instances of all actions (actions hold parsed parameters, so each execution
+     * requires its own instance).
+     */
+    public static JCommanderBasedMain createMain(String command) {
+        return createMain(command, createActions());
+    }
+
+    public static JCommanderBasedMain createMain(String command, Action... actions) {
         // Setting up main helper
-        JCommanderBasedMain main = new JCommanderBasedMain(command,
-                new ActionAlign(),
-                new ActionExportAlignments(),
-                new ActionAssemble(),
-                new ActionExportClones(),
-                new ActionPrettyAlignments(),
-                new ActionAlignmentsStat(),
-                new ActionMergeAlignments(),
-                new ActionInfo(),
-                new ActionExportCloneReads(),
-                new VersionInfoAction(),
-                new ActionImportSegments(),
-                new ActionAlignmentsDiff());
+        JCommanderBasedMain main = new JCommanderBasedMain(command, actions);
 
         // Adding version info callback
         main.setVersionInfoCallback(new Runnable() {
@@ -61,7 +69,26 @@ public class Main {
             }
         });
 
-        // Executing main method
-        main.main(args);
+        return main;
+    }
+
+    public static Action[] createActions() {
+        return new Action[]{
+                new ActionAlign(),
+                new ActionAlignBatch(),
+                new ActionExportAlignments(),
+                new ActionAssemble(),
+                new ActionExportClones(),
+                new ActionPrettyAlignments(),
+                new ActionAlignmentsStat(),
+                new ActionMergeAlignments(),
+                new ActionInfo(),
+                new ActionExportCloneReads(),
+                new ActionSummarize(),
+                new VersionInfoAction(),
+                new ActionImportSegments(),
+                new ActionCompileSegments(),
+                new ActionAlignmentsDiff(),
+                new ActionServer()};
     }
 }
@@ -28,7 +28,7 @@
  */
 package com.milaboratory.mixcr.export;
 
-public abstract class AbstractFieldExtractor<T> implements FieldExtractor<T> {
+public abstract class AbstractFieldExtractor<T> implements ByteFieldExtractor<T>, TypedFieldExtractor<T> {
     protected final String header;
     protected final Field<T> descriptor;
 
@@ -41,4 +41,20 @@ public abstract class AbstractFieldExtractor<T> implements FieldExtractor<T> {
     public final String getHeader() {
         return header;
     }
+
+    @Override
+    public void appendValue(T object, ByteRowBuilder builder) {
+        builder.append(extractValue(object));
+    }
+
+    @Override
+    public ColumnType getColumnType() {
+        return ColumnType.Text;
+    }
+
+    @Override
+    public Object extractTypedValue(T object) {
+        String value = extractValue(object);
+        return value == null || value.isEmpty() ? null : value;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.export;
+
+import com.milaboratory.core.sequence.Alphabet;
+import com.milaboratory.core.sequence.Sequence;
+import com.milaboratory.core.sequence.SequenceQuality;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer used to format rows of exported tables without intermediate strings. Instances are reused
+ * (see {@link #get()}), so formatting of a row allocates nothing in the common case. Numbers are formatted exactly as
+ * by {@link Long#toString(long)}, {@link Float#toString(float)} and {@code DecimalFormat("#.#")}.
+ */
+public final class ByteRowBuilder {
+    private static final ThreadLocal<ByteRowBuilder> BUILDERS = new ThreadLocal<ByteRowBuilder>() {
+        @Override
+        protected ByteRowBuilder initialValue() {
+            return new ByteRowBuilder();
+        }
+    };
+    private static final ThreadLocal<DecimalFormat> ONE_DIGIT_FORMAT = new ThreadLocal<DecimalFormat>() {
+        @Override
+        protected DecimalFormat initialValue() {
+            return new DecimalFormat("#.#");
+        }
+    };
+    private static final byte[] LONG_MIN_VALUE = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+    private static final float MAX_PLAIN_FLOAT = 1.0E7f;
+    private static final byte QUALITY_OFFSET = 33;
+
+    byte[] buffer = new byte[256];
+    int size = 0;
+
+    /**
+     * Returns empty builder owned by the current thread. Used by {@link InfoWriter} for the whole row, so field
+     * extractors must append to the builder they receive instead of calling this method.
+     */
+    public static ByteRowBuilder get() {
+        ByteRowBuilder builder = BUILDERS.get();
+        builder.reset();
+        return builder;
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+    }
+
+    private ByteRowBuilder put(byte b) {
+        ensureCapacity(1);
+        buffer[size++] = b;
+        return this;
+    }
+
+    public ByteRowBuilder append(char c) {
+        if (c < 0x80)
+            return put((byte) c);
+        return append(String.valueOf(c));
+    }
+
+    /**
+     * Appends string in UTF-8; strings of ASCII characters (allele names, descriptions etc.) are copied without
+     * encoder.
+     */
+    public ByteRowBuilder append(String string) {
+        int length = string.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; ++i) {
+            char c = string.charAt(i);
+            if (c >= 0x80) {
+                // Non-ASCII string
+                byte[] bytes = string.substring(i).getBytes(StandardCharsets.UTF_8);
+                ensureCapacity(bytes.length);
+                System.arraycopy(bytes, 0, buffer, size, bytes.length);
+                size += bytes.length;
+                return this;
+            }
+            buffer[size++] = (byte) c;
+        }
+        return this;
+    }
+
+    public ByteRowBuilder append(int value) {
+        return append((long) value);
+    }
+
+    public ByteRowBuilder append(long value) {
+        if (value == Long.MIN_VALUE) {
+            ensureCapacity(LONG_MIN_VALUE.length);
+            System.arraycopy(LONG_MIN_VALUE, 0, buffer, size, LONG_MIN_VALUE.length);
+            size += LONG_MIN_VALUE.length;
+            return this;
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[size++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value / 10; v != 0; v /= 10)
+            ++digits;
+        size += digits;
+        for (int i = size - 1; i >= size - digits; --i) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return this;
+    }
+
+    /**
+     * Appends float formatted as by {@link Float#toString(float)}.
+     */
+    public ByteRowBuilder append(float value) {
+        // Fast path for integer values (e.g. alignment scores)
+        if (value == (long) value && Math.abs(value) < MAX_PLAIN_FLOAT && !isNegativeZero(value))
+            return append((long) value).append('.').append('0');
+        return append(Float.toString(value));
+    }
+
+    public ByteRowBuilder append(double value) {
+        if (value == (long) value && Math.abs(value) < MAX_PLAIN_FLOAT && !isNegativeZero(value))
+            return append((long) value).append('.').append('0');
+        return append(Double.toString(value));
+    }
+
+    /**
+     * Appends float rounded to one decimal digit, formatted as by {@code new DecimalFormat("#.#")}.
+     */
+    public ByteRowBuilder appendOneDigit(float value) {
+        // Product of float and 10 is exact in double precision, so rounding is the same as in DecimalFormat
+        double scaled = 10.0 * value;
+        if (Double.isNaN(scaled) || Math.abs(scaled) >= Long.MAX_VALUE / 2)
+            return append(ONE_DIGIT_FORMAT.get().format(value));
+        long rounded = (long) Math.rint(scaled);
+        if (rounded == 0) {
+            if (scaled < 0 || isNegativeZero(value))
+                append('-');
+            return append('0');
+        }
+        if (rounded < 0) {
+            append('-');
+            rounded = -rounded;
+        }
+        append(rounded / 10);
+        if (rounded % 10 != 0)
+            append('.').append((char) ('0' + rounded % 10));
+        return this;
+    }
+
+    private static boolean isNegativeZero(double value) {
+        return value == 0.0 && 1.0 / value < 0;
+    }
+
+    /**
+     * Appends letters of sequence.
+     */
+    public ByteRowBuilder append(Sequence<?> sequence) {
+        Alphabet<?> alphabet = sequence.getAlphabet();
+        int length = sequence.size();
+        ensureCapacity(length);
+        for (int i = 0; i < length; ++i)
+            buffer[size++] = (byte) alphabet.symbolFromCode(sequence.codeAt(i));
+        return this;
+    }
+
+    /**
+     * Appends quality in Phred+33 encoding (same as {@link SequenceQuality#toString()}).
+     */
+    public ByteRowBuilder append(SequenceQuality quality) {
+        int length = quality.size();
+        ensureCapacity(length);
+        for (int i = 0; i < length; ++i)
+            buffer[size++] = (byte) (quality.value(i) + QUALITY_OFFSET);
+        return this;
+    }
+
+    public void writeTo(OutputStream os) throws IOException {
+        os.write(buffer, 0, size);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, size, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.export;
+
+import com.milaboratory.core.sequence.NucleotideSequence;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Reads files written by {@link ColumnarWriter}. Row groups are read one by one; data of columns not requested in
+ * {@link #next(String...)} is skipped without decoding.
+ */
+public final class ColumnarReader implements AutoCloseable {
+    final DataInputStream input;
+    boolean finished = false;
+
+    public ColumnarReader(String file) throws IOException {
+        this(new BufferedInputStream(new FileInputStream(file), 65536));
+    }
+
+    public ColumnarReader(InputStream input) throws IOException {
+        this.input = new DataInputStream(input);
+        byte[] magic = new byte[ColumnarWriter.MAGIC_BYTES.length];
+        this.input.readFully(magic);
+        if (!Arrays.equals(magic, ColumnarWriter.MAGIC_BYTES))
+            throw new IOException("Unsupported file format.");
+    }
+
+    /**
+     * Reads next row group decoding only specified columns (all columns if none specified).
+     *
+     * @param columns names of columns to decode
+     * @return next row group or {@code null} if end of file reached
+     */
+    public RowGroup next(String... columns) throws IOException {
+        if (finished)
+            return null;
+        int rows = input.readInt();
+        if (rows == 0) {
+            finished = true;
+            return null;
+        }
+        Set<String> requested = columns.length == 0 ? null : new HashSet<>(Arrays.asList(columns));
+        int count = (int) readVarLong(input);
+        String[] names = new String[count];
+        ColumnType[] types = new ColumnType[count];
+        int[] lengths = new int[count];
+        ColumnStatistics[] statistics = new ColumnStatistics[count];
+        for (int i = 0; i < count; ++i) {
+            names[i] = readString(input);
+            types[i] = ColumnType.values()[input.readByte()];
+            lengths[i] = (int) readVarLong(input);
+            int nullCount = (int) readVarLong(input);
+            Object min = null, max = null;
+            if (nullCount < rows) {
+                min = readStatisticsValue(input, types[i]);
+                max = readStatisticsValue(input, types[i]);
+            }
+            statistics[i] = new ColumnStatistics(nullCount, min, max);
+        }
+        Map<String, Column> data = new LinkedHashMap<>();
+        for (int i = 0; i < count; ++i) {
+            if (requested != null && !requested.contains(names[i])) {
+                skipFully(input, lengths[i]);
+                continue;
+            }
+            byte[] bytes = new byte[lengths[i]];
+            input.readFully(bytes);
+            data.put(names[i], decode(new DataInputStream(new ByteArrayInputStream(bytes)), types[i], rows));
+        }
+        return new RowGroup(rows, names, types, statistics, data);
+    }
+
+    private static void skipFully(DataInputStream input, int length) throws IOException {
+        while (length > 0) {
+            int skipped = input.skipBytes(length);
+            if (skipped <= 0)
+                throw new EOFException();
+            length -= skipped;
+        }
+    }
+
+    private static Object readStatisticsValue(DataInputStream input, ColumnType type) throws IOException {
+        if (type == ColumnType.Nucleotides)
+            return (int) readVarLong(input);
+        return readValue(input, type);
+    }
+
+    private static Object readValue(DataInputStream input, ColumnType type) throws IOException {
+        switch (type) {
+            case Int64:
+                long l = readVarLong(input);
+                return (l >>> 1) ^ -(l & 1);
+            case Float64:
+                return input.readDouble();
+            case Nucleotides:
+                int size = (int) readVarLong(input);
+                char[] chars = new char[size];
+                for (int i = 0; i < size; i += 4) {
+                    int b = input.readUnsignedByte();
+                    for (int j = 0; j < 4 && i + j < size; ++j)
+                        chars[i + j] = NucleotideSequence.ALPHABET.symbolFromCode((byte) ((b >>> (2 * j)) & 3));
+                }
+                return new NucleotideSequence(new String(chars));
+            case Dictionary:
+            case Text:
+                return readString(input);
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
+    private static Column decode(DataInputStream input, ColumnType type, int rows) throws IOException {
+        byte[] nulls = new byte[(rows + 7) / 8];
+        input.readFully(nulls);
+        String[] dictionary = null;
+        if (type == ColumnType.Dictionary) {
+            dictionary = new String[(int) readVarLong(input)];
+            for (int i = 0; i < dictionary.length; ++i)
+                dictionary[i] = readString(input);
+        }
+        Object[] values = new Object[rows];
+        for (int i = 0; i < rows; ++i) {
+            if ((nulls[i >> 3] & (1 << (i & 7))) != 0)
+                continue;
+            values[i] = type == ColumnType.Dictionary ?
+                    dictionary[(int) readVarLong(input)] :
+                    readValue(input, type);
+        }
+        return new Column(type, values);
+    }
+
+    static long readVarLong(DataInput input) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = input.readUnsignedByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return result;
+        }
+        throw new IOException("Malformed varint.");
+    }
+
+    static String readString(DataInput input) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(input)];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    public static final class RowGroup {
+        final int size;
+        final String[] names;
+        final ColumnType[] types;
+        final ColumnStatistics[] statistics;
+        final Map<String, Column> columns;
+
+        RowGroup(int size, String[] names, ColumnType[] types, ColumnStatistics[] statistics,
+                 Map<String, Column> columns) {
+            this.size = size;
+            this.names = names;
+            this.types = types;
+            this.statistics = statistics;
+            this.columns = columns;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns names of all columns of the row group (including not decoded ones).
+         */
+        public List<String> getColumnNames() {
+            return Collections.unmodifiableList(Arrays.asList(names));
+        }
+
+        public ColumnType getType(String column) {
+            return types[indexOf(column)];
+        }
+
+        public ColumnStatistics getStatistics(String column) {
+            return statistics[indexOf(column)];
+        }
+
+        /**
+         * Returns decoded column.
+         *
+         * @throws IllegalArgumentException if column was not requested or doesn't exist
+         */
+        public Column getColumn(String column) {
+            Column c = columns.get(column);
+            if (c == null)
+                throw new IllegalArgumentException("Column " + column + " was not read.");
+            return c;
+        }
+
+        private int indexOf(String column) {
+            for (int i = 0; i < names.length; ++i)
+                if (names[i].equals(column))
+                    return i;
+            throw new IllegalArgumentException("No such column: " + column);
+        }
+    }
+
+    public static final class Column {
+        final ColumnType type;
+        final Object[] values;
+
+        Column(ColumnType type, Object[] values) {
+            this.type = type;
+            this.values = values;
+        }
+
+        public ColumnType getType() {
+            return type;
+        }
+
+        public int size() {
+            return values.length;
+        }
+
+        public boolean isNull(int row) {
+            return values[row] == null;
+        }
+
+        public Object get(int row) {
+            return values[row];
+        }
+
+        public long getLong(int row) {
+            return (Long) values[row];
+        }
+
+        public double getDouble(int row) {
+            return (Double) values[row];
+        }
+
+        public String getString(int row) {
+            return (String) values[row];
+        }
+
+        public NucleotideSequence getNucleotides(int row) {
+            return (NucleotideSequence) values[row];
+        }
+    }
+}
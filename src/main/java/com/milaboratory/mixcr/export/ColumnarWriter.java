@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.export;
+
+import cc.redberry.pipe.InputPort;
+import com.milaboratory.core.sequence.NucleotideSequence;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes exported fields in binary columnar format. Rows are split into row groups; each row group starts with a
+ * header describing its columns (name, type, size of column data and statistics, see {@link ColumnStatistics}),
+ * followed by data of each column, so readers can skip columns they don't need (see {@link ColumnarReader}).
+ *
+ * <p>File layout:</p>
+ * <pre>
+ * file      = MAGIC rowGroup* int(0)
+ * rowGroup  = int(rows) varint(columns) columnHeader* columnData*
+ * header    = string(name) byte(type) varint(dataLength) varint(nullCount) [min max]
+ * data      = nullBitmap values
+ * </pre>
+ *
+ * <p>Values of non-null rows are stored as zig-zag varints ({@link ColumnType#Int64}), doubles ({@link
+ * ColumnType#Float64}), length and 2-bit packed nucleotides ({@link ColumnType#Nucleotides}), dictionary followed by
+ * varint indices ({@link ColumnType#Dictionary}) and UTF-8 strings ({@link ColumnType#Text}). Fields not
+ * implementing {@link TypedFieldExtractor} are exported as text.</p>
+ */
+public final class ColumnarWriter<T> implements InputPort<T>, AutoCloseable {
+    static final String MAGIC = "MiXCR.COL.V01";
+    static final byte[] MAGIC_BYTES = MAGIC.getBytes(StandardCharsets.US_ASCII);
+    public static final int DEFAULT_ROW_GROUP_SIZE = 65536;
+
+    final DataOutputStream output;
+    final List<FieldExtractor<? super T>> extractors;
+    final String[] names;
+    final ColumnType[] types;
+    final List<Object>[] values;
+    final int rowGroupSize;
+    int rows = 0;
+    boolean closed = false;
+
+    public ColumnarWriter(String file, List<FieldExtractor<? super T>> extractors) throws IOException {
+        this(new BufferedOutputStream(new FileOutputStream(file), 65536), extractors, DEFAULT_ROW_GROUP_SIZE);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ColumnarWriter(OutputStream output, List<FieldExtractor<? super T>> extractors, int rowGroupSize)
+            throws IOException {
+        if (rowGroupSize <= 0)
+            throw new IllegalArgumentException();
+        this.output = new DataOutputStream(output);
+        this.extractors = new ArrayList<>(extractors);
+        this.rowGroupSize = rowGroupSize;
+        int size = extractors.size();
+        this.names = new String[size];
+        this.types = new ColumnType[size];
+        this.values = new List[size];
+        for (int i = 0; i < size; ++i) {
+            FieldExtractor<? super T> extractor = extractors.get(i);
+            names[i] = extractor.getHeader();
+            types[i] = extractor instanceof TypedFieldExtractor ?
+                    ((TypedFieldExtractor<? super T>) extractor).getColumnType() : ColumnType.Text;
+            values[i] = new ArrayList<>(Math.min(rowGroupSize, DEFAULT_ROW_GROUP_SIZE));
+        }
+        this.output.write(MAGIC_BYTES);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void put(T t) {
+        for (int i = 0; i < extractors.size(); ++i) {
+            FieldExtractor<? super T> extractor = extractors.get(i);
+            values[i].add(extractor instanceof TypedFieldExtractor ?
+                    ((TypedFieldExtractor<? super T>) extractor).extractTypedValue(t) :
+                    extractor.extractValue(t));
+        }
+        if (++rows == rowGroupSize)
+            flushRowGroup();
+    }
+
+    private void flushRowGroup() {
+        if (rows == 0)
+            return;
+        try {
+            byte[][] data = new byte[names.length][];
+            ColumnStatistics[] statistics = new ColumnStatistics[names.length];
+            for (int i = 0; i < names.length; ++i) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                statistics[i] = encode(new DataOutputStream(bos), types[i], values[i]);
+                data[i] = bos.toByteArray();
+                values[i].clear();
+            }
+            output.writeInt(rows);
+            writeVarLong(output, names.length);
+            for (int i = 0; i < names.length; ++i) {
+                writeString(output, names[i]);
+                output.writeByte(types[i].ordinal());
+                writeVarLong(output, data[i].length);
+                writeVarLong(output, statistics[i].nullCount);
+                if (statistics[i].min != null) {
+                    writeValue(output, types[i], statistics[i].min);
+                    writeValue(output, types[i], statistics[i].max);
+                }
+            }
+            for (byte[] d : data)
+                output.write(d);
+            rows = 0;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static ColumnStatistics encode(DataOutputStream output, ColumnType type, List<Object> values) throws IOException {
+        byte[] nulls = new byte[(values.size() + 7) / 8];
+        int nullCount = 0;
+        Comparable min = null, max = null;
+        for (int i = 0; i < values.size(); ++i) {
+            Object value = values.get(i);
+            if (value == null) {
+                nulls[i >> 3] |= 1 << (i & 7);
+                ++nullCount;
+                continue;
+            }
+            Comparable key = type == ColumnType.Nucleotides ?
+                    ((NucleotideSequence) value).size() : (Comparable) value;
+            if (min == null || key.compareTo(min) < 0)
+                min = key;
+            if (max == null || key.compareTo(max) > 0)
+                max = key;
+        }
+        output.write(nulls);
+
+        Map<String, Integer> dictionary = null;
+        if (type == ColumnType.Dictionary) {
+            dictionary = new HashMap<>();
+            List<String> entries = new ArrayList<>();
+            for (Object value : values)
+                if (value != null && !dictionary.containsKey(value)) {
+                    dictionary.put((String) value, entries.size());
+                    entries.add((String) value);
+                }
+            writeVarLong(output, entries.size());
+            for (String entry : entries)
+                writeString(output, entry);
+        }
+
+        for (Object value : values) {
+            if (value == null)
+                continue;
+            if (type == ColumnType.Dictionary)
+                writeVarLong(output, dictionary.get(value));
+            else
+                writeValue(output, type, value);
+        }
+        return new ColumnStatistics(nullCount, min, max);
+    }
+
+    /**
+     * Writes single value (or statistics value) of the given type.
+     */
+    static void writeValue(DataOutputStream output, ColumnType type, Object value) throws IOException {
+        switch (type) {
+            case Int64:
+                long l = (Long) value;
+                writeVarLong(output, (l << 1) ^ (l >> 63));
+                break;
+            case Float64:
+                output.writeDouble((Double) value);
+                break;
+            case Nucleotides:
+                if (value instanceof Integer) {
+                    // Statistics of nucleotide column
+                    writeVarLong(output, (Integer) value);
+                    break;
+                }
+                NucleotideSequence sequence = (NucleotideSequence) value;
+                int size = sequence.size();
+                writeVarLong(output, size);
+                for (int i = 0; i < size; i += 4) {
+                    int b = 0;
+                    for (int j = 0; j < 4 && i + j < size; ++j)
+                        b |= sequence.codeAt(i + j) << (2 * j);
+                    output.writeByte(b);
+                }
+                break;
+            case Dictionary:
+            case Text:
+                writeString(output, (String) value);
+                break;
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
+    static void writeVarLong(DataOutput output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    static void writeString(DataOutput output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(output, bytes.length);
+        output.write(bytes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        flushRowGroup();
+        output.writeInt(0);
+        output.close();
+        for (FieldExtractor<? super T> extractor : extractors)
+            if (extractor instanceof Closeable)
+                ((Closeable) extractor).close();
+    }
+}
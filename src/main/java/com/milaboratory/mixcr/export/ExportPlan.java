@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.export;
+
+import com.milaboratory.mixcr.basictypes.VDJCObject;
+import com.milaboratory.mixcr.reference.GeneFeature;
+import com.milaboratory.mixcr.reference.ReferencePoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Set of gene features and reference points required by exported fields. Each distinct feature / reference point
+ * gets a slot, and values are computed once per exported object (see {@link RowContext}) however many fields use
+ * them (e.g. {@code -nFeature CDR3 -qFeature CDR3 -aaFeature CDR3} extract CDR3 only once).
+ */
+public final class ExportPlan {
+    final List<GeneFeature> features = new ArrayList<>();
+    final List<ReferencePoint> referencePoints = new ArrayList<>();
+    private final ThreadLocal<RowContext> contexts = new ThreadLocal<RowContext>() {
+        @Override
+        protected RowContext initialValue() {
+            return new RowContext(ExportPlan.this);
+        }
+    };
+
+    /**
+     * Returns slot of the gene feature.
+     */
+    public int requireFeature(GeneFeature feature) {
+        int slot = features.indexOf(feature);
+        if (slot == -1) {
+            slot = features.size();
+            features.add(feature);
+        }
+        return slot;
+    }
+
+    /**
+     * Returns slot of the reference point.
+     */
+    public int requireReferencePoint(ReferencePoint referencePoint) {
+        int slot = referencePoints.indexOf(referencePoint);
+        if (slot == -1) {
+            slot = referencePoints.size();
+            referencePoints.add(referencePoint);
+        }
+        return slot;
+    }
+
+    public int numberOfFeatures() {
+        return features.size();
+    }
+
+    public int numberOfReferencePoints() {
+        return referencePoints.size();
+    }
+
+    /**
+     * Returns context of the current thread set to the object. Context is valid until the next invocation of this
+     * method from the same thread.
+     */
+    public RowContext getContext(VDJCObject object) {
+        RowContext context = contexts.get();
+        context.reset(object);
+        return context;
+    }
+
+    /**
+     * Registers lookups of all planned extractors in a new plan.
+     *
+     * @return plan or {@code null} if there are no planned extractors
+     */
+    public static ExportPlan compile(List<? extends FieldExtractor<?>> extractors) {
+        ExportPlan plan = null;
+        for (FieldExtractor<?> extractor : extractors)
+            if (extractor instanceof PlannedFieldExtractor) {
+                if (plan == null)
+                    plan = new ExportPlan();
+                ((PlannedFieldExtractor<?>) extractor).register(plan);
+            }
+        return plan;
+    }
+}
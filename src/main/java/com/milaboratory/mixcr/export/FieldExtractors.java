@@ -32,6 +32,7 @@ import com.milaboratory.core.alignment.Alignment;
 import com.milaboratory.core.sequence.AminoAcidSequence;
 import com.milaboratory.core.sequence.NSequenceWithQuality;
 import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.mixcr.assembler.ReadToCloneIndex;
 import com.milaboratory.mixcr.assembler.ReadToCloneMapping;
 import com.milaboratory.mixcr.basictypes.*;
 import com.milaboratory.mixcr.cli.ActionAssemble;
@@ -44,7 +45,6 @@ import org.mapdb.DBMaker;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.text.DecimalFormat;
 import java.util.*;
 
 import static com.milaboratory.core.sequence.TranslationParameters.FromCenter;
@@ -52,9 +52,6 @@ import static com.milaboratory.core.sequence.TranslationParameters.FromLeftWitho
 import static com.milaboratory.mixcr.assembler.ReadToCloneMapping.MappingType.Dropped;
 
 public final class FieldExtractors {
-    private static final String NULL = "";
-    private static final DecimalFormat SCORE_FORMAT = new DecimalFormat("#.#");
-
     static Field[] descriptors = null;
 
     public synchronized static Field[] getFields() {
@@ -64,8 +61,18 @@ public final class FieldExtractors {
             // Number of targets
             desctiptorsList.add(new PL_O("-targets", "Export number of targets", "Number of targets", "numberOfTargets") {
                 @Override
-                protected String extract(VDJCObject object) {
-                    return Integer.toString(object.numberOfTargets());
+                protected void extract(VDJCObject object, ByteRowBuilder builder) {
+                    builder.append(object.numberOfTargets());
+                }
+
+                @Override
+                protected ColumnType getColumnType() {
+                    return ColumnType.Int64;
+                }
+
+                @Override
+                protected Object extractTyped(VDJCObject object) {
+                    return (long) object.numberOfTargets();
                 }
             });
 
@@ -75,11 +82,21 @@ public final class FieldExtractors {
                 desctiptorsList.add(new PL_O("-" + Character.toLowerCase(l) + "Hit",
                         "Export best " + l + " hit", "Best " + l + " hit", "best" + l + "Hit") {
                     @Override
-                    protected String extract(VDJCObject object) {
+                    protected void extract(VDJCObject object, ByteRowBuilder builder) {
                         VDJCHit bestHit = object.getBestHit(type);
-                        if (bestHit == null)
-                            return NULL;
-                        return bestHit.getAllele().getName();
+                        if (bestHit != null)
+                            builder.append(bestHit.getAllele().getName());
+                    }
+
+                    @Override
+                    protected ColumnType getColumnType() {
+                        return ColumnType.Dictionary;
+                    }
+
+                    @Override
+                    protected Object extractTyped(VDJCObject object) {
+                        VDJCHit bestHit = object.getBestHit(type);
+                        return bestHit == null ? null : bestHit.getAllele().getName();
                     }
                 });
             }
@@ -90,11 +107,21 @@ public final class FieldExtractors {
                 desctiptorsList.add(new PL_O("-" + Character.toLowerCase(l) + "HitScore",
                         "Export best score for best " + l + " hit", "Best " + l + " hit score", "best" + l + "HitScore") {
                     @Override
-                    protected String extract(VDJCObject object) {
+                    protected void extract(VDJCObject object, ByteRowBuilder builder) {
                         VDJCHit bestHit = object.getBestHit(type);
-                        if (bestHit == null)
-                            return NULL;
-                        return String.valueOf(bestHit.getScore());
+                        if (bestHit != null)
+                            builder.append(bestHit.getScore());
+                    }
+
+                    @Override
+                    protected ColumnType getColumnType() {
+                        return ColumnType.Float64;
+                    }
+
+                    @Override
+                    protected Object extractTyped(VDJCObject object) {
+                        VDJCHit bestHit = object.getBestHit(type);
+                        return bestHit == null ? null : (double) bestHit.getScore();
                     }
                 });
             }
@@ -105,20 +132,14 @@ public final class FieldExtractors {
                 desctiptorsList.add(new PL_O("-" + Character.toLowerCase(l) + "HitsWithScore",
                         "Export all " + l + " hits with score", "All " + l + " hits", "all" + l + "HitsWithScore") {
                     @Override
-                    protected String extract(VDJCObject object) {
+                    protected void extract(VDJCObject object, ByteRowBuilder builder) {
                         VDJCHit[] hits = object.getHits(type);
-                        if (hits.length == 0)
-                            return "";
-                        StringBuilder sb = new StringBuilder();
-                        for (int i = 0; ; i++) {
-                            sb.append(hits[i].getAllele().getName())
-                                    .append("(").append(SCORE_FORMAT.format(hits[i].getScore()))
-                                    .append(")");
-                            if (i == hits.length - 1)
-                                break;
-                            sb.append(",");
+                        for (int i = 0; i < hits.length; i++) {
+                            if (i != 0)
+                                builder.append(',');
+                            builder.append(hits[i].getAllele().getName())
+                                    .append('(').appendOneDigit(hits[i].getScore()).append(')');
                         }
-                        return sb.toString();
                     }
                 });
             }
@@ -129,18 +150,13 @@ public final class FieldExtractors {
                 desctiptorsList.add(new PL_O("-" + Character.toLowerCase(l) + "Hits",
                         "Export all " + l + " hits", "All " + l + " Hits", "all" + l + "Hits") {
                     @Override
-                    protected String extract(VDJCObject object) {
+                    protected void extract(VDJCObject object, ByteRowBuilder builder) {
                         VDJCHit[] hits = object.getHits(type);
-                        if (hits.length == 0)
-                            return "";
-                        StringBuilder sb = new StringBuilder();
-                        for (int i = 0; ; i++) {
-                            sb.append(hits[i].getAllele().getName());
-                            if (i == hits.length - 1)
-                                break;
-                            sb.append(",");
+                        for (int i = 0; i < hits.length; i++) {
+                            if (i != 0)
+                                builder.append(',');
+                            builder.append(hits[i].getAllele().getName());
                         }
-                        return sb.toString();
                     }
                 });
             }
@@ -151,22 +167,18 @@ public final class FieldExtractors {
                 desctiptorsList.add(new PL_O("-" + Character.toLowerCase(l) + "Alignment",
                         "Export best " + l + " alignment", "Best " + l + " alignment", "best" + l + "Alignment") {
                     @Override
-                    protected String extract(VDJCObject object) {
+                    protected void extract(VDJCObject object, ByteRowBuilder builder) {
                         VDJCHit bestHit = object.getBestHit(type);
                         if (bestHit == null)
-                            return NULL;
-                        StringBuilder sb = new StringBuilder();
+                            return;
                         for (int i = 0; ; i++) {
                             Alignment<NucleotideSequence> alignment = bestHit.getAlignment(i);
-                            if (alignment == null)
-                                sb.append(NULL);
-                            else
-                                sb.append(alignment.toCompactString());
+                            if (alignment != null)
+                                builder.append(alignment.toCompactString());
                             if (i == object.numberOfTargets() - 1)
                                 break;
-                            sb.append(",");
+                            builder.append(',');
                         }
-                        return sb.toString();
                     }
                 });
             }
@@ -177,49 +189,52 @@ public final class FieldExtractors {
                 desctiptorsList.add(new PL_O("-" + Character.toLowerCase(l) + "Alignments",
                         "Export all " + l + " alignments", "All " + l + " alignments", "all" + l + "Alignments") {
                     @Override
-                    protected String extract(VDJCObject object) {
+                    protected void extract(VDJCObject object, ByteRowBuilder builder) {
                         VDJCHit[] hits = object.getHits(type);
-                        if (hits.length == 0)
-                            return "";
-                        StringBuilder sb = new StringBuilder();
-                        for (int j = 0; ; ++j) {
+                        for (int j = 0; j < hits.length; ++j) {
+                            if (j != 0)
+                                builder.append(';');
                             for (int i = 0; ; i++) {
                                 Alignment<NucleotideSequence> alignment = hits[j].getAlignment(i);
-                                if (alignment == null)
-                                    sb.append(NULL);
-                                else
-                                    sb.append(alignment.toCompactString());
+                                if (alignment != null)
+                                    builder.append(alignment.toCompactString());
                                 if (i == object.numberOfTargets() - 1)
                                     break;
-                                sb.append(',');
+                                builder.append(',');
                             }
-                            if (j == hits.length - 1)
-                                break;
-                            sb.append(';');
                         }
-                        return sb.toString();
                     }
                 });
             }
 
             desctiptorsList.add(new FeatureExtractorDescriptor("-nFeature", "Export nucleotide sequence of specified gene feature", "N. Seq.", "nSeq") {
                 @Override
-                public String convert(NSequenceWithQuality seq) {
-                    return seq.getSequence().toString();
+                public void convert(NSequenceWithQuality seq, ByteRowBuilder builder) {
+                    builder.append(seq.getSequence());
+                }
+
+                @Override
+                protected ColumnType getColumnType() {
+                    return ColumnType.Nucleotides;
+                }
+
+                @Override
+                protected Object convertTyped(NSequenceWithQuality seq) {
+                    return seq.getSequence();
                 }
             });
 
             desctiptorsList.add(new FeatureExtractorDescriptor("-qFeature", "Export quality string of specified gene feature", "Qual.", "qual") {
                 @Override
-                public String convert(NSequenceWithQuality seq) {
-                    return seq.getQuality().toString();
+                public void convert(NSequenceWithQuality seq, ByteRowBuilder builder) {
+                    builder.append(seq.getQuality());
                 }
             });
 
             desctiptorsList.add(new FeatureExtractorDescriptor("-aaFeature", "Export amino acid sequence of specified gene feature", "AA. Seq.", "aaSeq") {
                 @Override
-                public String convert(NSequenceWithQuality seq) {
-                    return AminoAcidSequence.translate(seq.getSequence(), FromCenter).toString();
+                public void convert(NSequenceWithQuality seq, ByteRowBuilder builder) {
+                    builder.append(AminoAcidSequence.translate(seq.getSequence(), FromCenter));
                 }
             });
 
@@ -227,8 +242,8 @@ public final class FieldExtractors {
                     "specified gene feature starting from the leftmost nucleotide (differs from -aaFeature only for " +
                     "sequences which length are not multiple of 3)", "AA. Seq.", "aaSeq") {
                 @Override
-                public String convert(NSequenceWithQuality seq) {
-                    return AminoAcidSequence.translate(seq.getSequence(), FromLeftWithoutIncompleteCodon).toString();
+                public void convert(NSequenceWithQuality seq, ByteRowBuilder builder) {
+                    builder.append(AminoAcidSequence.translate(seq.getSequence(), FromLeftWithoutIncompleteCodon));
                 }
             });
 
@@ -236,29 +251,49 @@ public final class FieldExtractors {
                     "specified gene feature starting from the rightmost nucleotide (differs from -aaFeature only for " +
                     "sequences which length are not multiple of 3)", "AA. Seq.", "aaSeq") {
                 @Override
-                public String convert(NSequenceWithQuality seq) {
-                    return AminoAcidSequence.translate(seq.getSequence(), FromLeftWithoutIncompleteCodon).toString();
+                public void convert(NSequenceWithQuality seq, ByteRowBuilder builder) {
+                    builder.append(AminoAcidSequence.translate(seq.getSequence(), FromLeftWithoutIncompleteCodon));
                 }
             });
 
             desctiptorsList.add(new FeatureExtractorDescriptor("-minFeatureQuality", "Export minimal quality of specified gene feature", "Min. qual.", "minQual") {
                 @Override
-                public String convert(NSequenceWithQuality seq) {
-                    return "" + seq.getQuality().minValue();
+                public void convert(NSequenceWithQuality seq, ByteRowBuilder builder) {
+                    builder.append((int) seq.getQuality().minValue());
+                }
+
+                @Override
+                protected ColumnType getColumnType() {
+                    return ColumnType.Int64;
+                }
+
+                @Override
+                protected Object convertTyped(NSequenceWithQuality seq) {
+                    return (long) seq.getQuality().minValue();
                 }
             });
 
             desctiptorsList.add(new FeatureExtractorDescriptor("-avrgFeatureQuality", "Export average quality of specified gene feature", "Mean. qual.", "meanQual") {
                 @Override
-                public String convert(NSequenceWithQuality seq) {
-                    return "" + seq.getQuality().meanValue();
+                public void convert(NSequenceWithQuality seq, ByteRowBuilder builder) {
+                    builder.append(String.valueOf(seq.getQuality().meanValue()));
                 }
             });
 
             desctiptorsList.add(new FeatureExtractorDescriptor("-lengthOf", "Exports length of specified gene feature.", "Length of ", "lengthOf") {
                 @Override
-                public String convert(NSequenceWithQuality seq) {
-                    return "" + seq.size();
+                public void convert(NSequenceWithQuality seq, ByteRowBuilder builder) {
+                    builder.append(seq.size());
+                }
+
+                @Override
+                protected ColumnType getColumnType() {
+                    return ColumnType.Int64;
+                }
+
+                @Override
+                protected Object convertTyped(NSequenceWithQuality seq) {
+                    return (long) seq.size();
                 }
             });
 
@@ -268,8 +303,18 @@ public final class FieldExtractors {
 
             desctiptorsList.add(new PL_A("-readId", "Export id of read corresponding to alignment", "Read id", "readId") {
                 @Override
-                protected String extract(VDJCAlignments object) {
-                    return "" + object.getReadId();
+                protected void extract(VDJCAlignments object, ByteRowBuilder builder) {
+                    builder.append(object.getReadId());
+                }
+
+                @Override
+                protected ColumnType getColumnType() {
+                    return ColumnType.Int64;
+                }
+
+                @Override
+                protected Object extractTyped(VDJCAlignments object) {
+                    return (long) object.getReadId();
                 }
             });
 
@@ -283,22 +328,52 @@ public final class FieldExtractors {
 
             desctiptorsList.add(new PL_C("-cloneId", "Unique clone identifier", "Clone ID", "cloneId") {
                 @Override
-                protected String extract(Clone object) {
-                    return "" + object.getId();
+                protected void extract(Clone object, ByteRowBuilder builder) {
+                    builder.append(object.getId());
+                }
+
+                @Override
+                protected ColumnType getColumnType() {
+                    return ColumnType.Int64;
+                }
+
+                @Override
+                protected Object extractTyped(Clone object) {
+                    return (long) object.getId();
                 }
             });
 
             desctiptorsList.add(new PL_C("-count", "Export clone count", "Clone count", "cloneCount") {
                 @Override
-                protected String extract(Clone object) {
-                    return "" + object.getCount();
+                protected void extract(Clone object, ByteRowBuilder builder) {
+                    builder.append(object.getCount());
+                }
+
+                @Override
+                protected ColumnType getColumnType() {
+                    return ColumnType.Int64;
+                }
+
+                @Override
+                protected Object extractTyped(Clone object) {
+                    return (long) object.getCount();
                 }
             });
 
             desctiptorsList.add(new PL_C("-fraction", "Export clone fraction", "Clone fraction", "cloneFraction") {
                 @Override
-                protected String extract(Clone object) {
-                    return "" + object.getFraction();
+                protected void extract(Clone object, ByteRowBuilder builder) {
+                    builder.append(object.getFraction());
+                }
+
+                @Override
+                protected ColumnType getColumnType() {
+                    return ColumnType.Float64;
+                }
+
+                @Override
+                protected Object extractTyped(Clone object) {
+                    return object.getFraction();
                 }
             });
 
@@ -313,26 +388,26 @@ public final class FieldExtractors {
             desctiptorsList.add(new PL_A("-descrR1", "Export description line from initial .fasta or .fastq file " +
                     "of the first read (only available if --save-description was used in align command)", "Description R1", "descrR1") {
                 @Override
-                protected String extract(VDJCAlignments object) {
+                protected void extract(VDJCAlignments object, ByteRowBuilder builder) {
                     String[] ds = object.getDescriptions();
                     if (ds == null || ds.length == 0)
                         throw new IllegalArgumentException("Error for option \'-descrR1\':\n" +
                                 "No description available for read: either re-run align action with --save-description option " +
                                 "or don't use \'-descrR1\' in exportAlignments");
-                    return ds[0];
+                    builder.append(ds[0]);
                 }
             });
 
             desctiptorsList.add(new PL_A("-descrR2", "Export description line from initial .fasta or .fastq file " +
                     "of the second read (only available if --save-description was used in align command)", "Description R2", "descrR2") {
                 @Override
-                protected String extract(VDJCAlignments object) {
+                protected void extract(VDJCAlignments object, ByteRowBuilder builder) {
                     String[] ds = object.getDescriptions();
                     if (ds == null || ds.length < 2)
                         throw new IllegalArgumentException("Error for option \'-descrR2\':\n" +
                                 "No description available for second read: either re-run align action with --save-description option " +
                                 "or don't use \'-descrR2\' in exportAlignments");
-                    return ds[1];
+                    builder.append(ds[1]);
                 }
             });
 
@@ -350,17 +425,14 @@ public final class FieldExtractors {
                 desctiptorsList.add(new PL_O("-" + c, type.getLetter() + " alignment identity percents",
                         type.getLetter() + " alignment identity percents", c) {
                     @Override
-                    protected String extract(VDJCObject object) {
+                    protected void extract(VDJCObject object, ByteRowBuilder builder) {
                         VDJCHit[] hits = object.getHits(type);
                         if (hits == null)
-                            return NULL;
-                        StringBuilder sb = new StringBuilder();
-                        sb.append("");
-                        for (int i = 0; ; i++) {
-                            sb.append(hits[i].getIdentity());
-                            if (i == hits.length - 1)
-                                return sb.toString();
-                            sb.append(",");
+                            return;
+                        for (int i = 0; i < hits.length; i++) {
+                            if (i != 0)
+                                builder.append(',');
+                            builder.append(hits[i].getIdentity());
                         }
                     }
                 });
@@ -370,11 +442,10 @@ public final class FieldExtractors {
                 desctiptorsList.add(new PL_O("-" + c, type.getLetter() + "best alignment identity percent",
                         type.getLetter() + "best alignment identity percent", c) {
                     @Override
-                    protected String extract(VDJCObject object) {
+                    protected void extract(VDJCObject object, ByteRowBuilder builder) {
                         VDJCHit hit = object.getBestHit(type);
-                        if (hit == null)
-                            return NULL;
-                        return Float.toString(hit.getIdentity());
+                        if (hit != null)
+                            builder.append(hit.getIdentity());
                     }
                 });
             }
@@ -449,14 +520,66 @@ public final class FieldExtractors {
         }
 
         @Override
-        protected String extractValue(VDJCObject object, GeneFeature parameters) {
+        protected void appendValue(VDJCObject object, GeneFeature parameters, ByteRowBuilder builder) {
             NSequenceWithQuality feature = object.getFeature(parameters);
-            if (feature == null)
-                return NULL;
-            return convert(feature);
+            if (feature != null)
+                convert(feature, builder);
         }
 
-        public abstract String convert(NSequenceWithQuality seq);
+        @Override
+        public FieldExtractor<VDJCObject> create(OutputMode outputMode, String[] args) {
+            final GeneFeature feature = getParameters(args);
+            return new PlannedExtractor(getHeader(outputMode, feature), this) {
+                int slot;
+
+                @Override
+                public void register(ExportPlan plan) {
+                    slot = plan.requireFeature(feature);
+                }
+
+                @Override
+                public void appendValue(VDJCObject object, RowContext context, ByteRowBuilder builder) {
+                    NSequenceWithQuality seq = context.getFeature(slot);
+                    if (seq != null)
+                        convert(seq, builder);
+                }
+
+                @Override
+                public void appendValue(VDJCObject object, ByteRowBuilder builder) {
+                    FeatureExtractorDescriptor.this.appendValue(object, feature, builder);
+                }
+
+                @Override
+                public ColumnType getColumnType() {
+                    return FeatureExtractorDescriptor.this.getColumnType();
+                }
+
+                @Override
+                public Object extractTypedValue(VDJCObject object) {
+                    NSequenceWithQuality seq = object.getFeature(feature);
+                    return seq == null ? null : convertTyped(seq);
+                }
+            };
+        }
+
+        public abstract void convert(NSequenceWithQuality seq, ByteRowBuilder builder);
+
+        /**
+         * Returns type of the column in binary columnar export.
+         */
+        protected ColumnType getColumnType() {
+            return ColumnType.Text;
+        }
+
+        /**
+         * Returns value of the field for binary columnar export; must be overridden together with {@link
+         * #getColumnType()}.
+         */
+        protected Object convertTyped(NSequenceWithQuality seq) {
+            ByteRowBuilder builder = new ByteRowBuilder();
+            convert(seq, builder);
+            return builder.toString();
+        }
     }
 
     private static class ExtractSequence extends FieldParameterless<VDJCObject> {
@@ -465,15 +588,13 @@ public final class FieldExtractors {
         }
 
         @Override
-        protected String extract(VDJCObject object) {
-            StringBuilder sb = new StringBuilder();
+        protected void extract(VDJCObject object, ByteRowBuilder builder) {
             for (int i = 0; ; i++) {
-                sb.append(object.getTarget(i).getSequence());
+                builder.append(object.getTarget(i).getSequence());
                 if (i == object.numberOfTargets() - 1)
                     break;
-                sb.append(",");
+                builder.append(',');
             }
-            return sb.toString();
         }
     }
 
@@ -483,15 +604,13 @@ public final class FieldExtractors {
         }
 
         @Override
-        protected String extract(VDJCObject object) {
-            StringBuilder sb = new StringBuilder();
+        protected void extract(VDJCObject object, ByteRowBuilder builder) {
             for (int i = 0; ; i++) {
-                sb.append(object.getTarget(i).getQuality());
+                builder.append(object.getTarget(i).getQuality());
                 if (i == object.numberOfTargets() - 1)
                     break;
-                sb.append(",");
+                builder.append(',');
             }
-            return sb.toString();
         }
     }
 
@@ -516,15 +635,41 @@ public final class FieldExtractors {
         }
 
         @Override
-        protected String extractValue(VDJCObject object, ReferencePoint parameters) {
-            StringBuilder sb = new StringBuilder();
+        protected void appendValue(VDJCObject object, ReferencePoint parameters, ByteRowBuilder builder) {
             for (int i = 0; ; i++) {
-                sb.append(object.getPartitionedTarget(i).getPartitioning().getPosition(parameters));
+                builder.append(object.getPartitionedTarget(i).getPartitioning().getPosition(parameters));
                 if (i == object.numberOfTargets() - 1)
                     break;
-                sb.append(",");
+                builder.append(',');
             }
-            return sb.toString();
+        }
+
+        @Override
+        public FieldExtractor<VDJCObject> create(OutputMode outputMode, String[] args) {
+            final ReferencePoint referencePoint = getParameters(args);
+            return new PlannedExtractor(getHeader(outputMode, referencePoint), this) {
+                int slot;
+
+                @Override
+                public void register(ExportPlan plan) {
+                    slot = plan.requireReferencePoint(referencePoint);
+                }
+
+                @Override
+                public void appendValue(VDJCObject object, RowContext context, ByteRowBuilder builder) {
+                    for (int i = 0; ; i++) {
+                        builder.append(context.getPosition(slot, i));
+                        if (i == object.numberOfTargets() - 1)
+                            break;
+                        builder.append(',');
+                    }
+                }
+
+                @Override
+                public void appendValue(VDJCObject object, ByteRowBuilder builder) {
+                    ExtractReferencePointPosition.this.appendValue(object, referencePoint, builder);
+                }
+            };
         }
     }
 
@@ -535,25 +680,75 @@ public final class FieldExtractors {
         }
 
         @Override
-        protected String extract(VDJCObject object) {
-            StringBuilder sb = new StringBuilder();
+        protected void extract(VDJCObject object, ByteRowBuilder builder) {
             for (int i = 0; ; i++) {
                 SequencePartitioning partitioning = object.getPartitionedTarget(i).getPartitioning();
                 for (int j = 0; ; j++) {
                     int referencePointPosition = partitioning.getPosition(ReferencePoint.DefaultReferencePoints[j]);
                     if (referencePointPosition >= 0)
-                        sb.append(referencePointPosition);
+                        builder.append(referencePointPosition);
                     if (j == ReferencePoint.DefaultReferencePoints.length - 1)
                         break;
-                    sb.append(":");
+                    builder.append(':');
                 }
                 if (i == object.numberOfTargets() - 1)
                     break;
-                sb.append(",");
+                builder.append(',');
             }
-            return sb.toString();
         }
 
+        @Override
+        public FieldExtractor<VDJCObject> create(OutputMode outputMode, String[] args) {
+            return new PlannedExtractor(getHeader(outputMode), this) {
+                final int[] slots = new int[ReferencePoint.DefaultReferencePoints.length];
+
+                @Override
+                public void register(ExportPlan plan) {
+                    for (int j = 0; j < slots.length; j++)
+                        slots[j] = plan.requireReferencePoint(ReferencePoint.DefaultReferencePoints[j]);
+                }
+
+                @Override
+                public void appendValue(VDJCObject object, RowContext context, ByteRowBuilder builder) {
+                    for (int i = 0; ; i++) {
+                        for (int j = 0; ; j++) {
+                            int referencePointPosition = context.getPosition(slots[j], i);
+                            if (referencePointPosition >= 0)
+                                builder.append(referencePointPosition);
+                            if (j == slots.length - 1)
+                                break;
+                            builder.append(':');
+                        }
+                        if (i == object.numberOfTargets() - 1)
+                            break;
+                        builder.append(',');
+                    }
+                }
+
+                @Override
+                public void appendValue(VDJCObject object, ByteRowBuilder builder) {
+                    extract(object, builder);
+                }
+            };
+        }
+    }
+
+    /**
+     * Extractor of field depending on gene features or reference points, which are taken from the row context when
+     * available (see {@link ExportPlan}).
+     */
+    private static abstract class PlannedExtractor extends AbstractFieldExtractor<VDJCObject>
+            implements PlannedFieldExtractor<VDJCObject> {
+        PlannedExtractor(String header, Field<VDJCObject> descriptor) {
+            super(header, descriptor);
+        }
+
+        @Override
+        public final String extractValue(VDJCObject object) {
+            ByteRowBuilder builder = new ByteRowBuilder();
+            appendValue(object, builder);
+            return builder.toString();
+        }
     }
 
 
@@ -567,23 +762,36 @@ public final class FieldExtractors {
         };
     }
 
+    /**
+     * Opens MapDB file with read to clone mappings written by assemble action and creates index from the specified
+     * tree set.
+     */
+    private static ReadToCloneIndex openIndex(String file, String setName, ReadToCloneIndex.Ordering ordering) {
+        DB db = DBMaker.newFileDB(new File(file))
+                .transactionDisable()
+                .readOnly()
+                .make();
+        try {
+            NavigableSet<ReadToCloneMapping> set = db.getTreeSet(setName);
+            return new ReadToCloneIndex(set.iterator(), ordering);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            db.close();
+        }
+    }
+
     private static final class AlignmentToCloneExtractor
-            implements FieldExtractor<VDJCAlignments>, Closeable {
+            implements ByteFieldExtractor<VDJCAlignments>, Closeable {
         private final OutputMode outputMode;
-        private final DB db;
-        private final NavigableSet<ReadToCloneMapping> byAls;
+        private final ReadToCloneIndex index;
         private final boolean printMapping;
-        private final Iterator<ReadToCloneMapping> mappingIterator;
-        private ReadToCloneMapping currentMapping = null;
 
         public AlignmentToCloneExtractor(OutputMode outputMode, String file, boolean printMapping) {
             this.outputMode = outputMode;
             this.printMapping = printMapping;
-            this.db = DBMaker.newFileDB(new File(file))
-                    .transactionDisable()
-                    .make();
-            this.byAls = db.getTreeSet(ActionAssemble.MAPDB_SORTED_BY_ALIGNMENT);
-            this.mappingIterator = byAls.iterator();
+            this.index = openIndex(file, ActionAssemble.MAPDB_SORTED_BY_ALIGNMENT,
+                    ReadToCloneIndex.Ordering.ByAlignments);
         }
 
         @Override
@@ -596,44 +804,39 @@ public final class FieldExtractors {
 
         @Override
         public String extractValue(VDJCAlignments object) {
-            if (currentMapping == null && mappingIterator.hasNext())
-                currentMapping = mappingIterator.next();
-            if (currentMapping == null)
-                return NULL;
-
-            while (currentMapping.getAlignmentsId() < object.getAlignmentsIndex() && mappingIterator.hasNext())
-                currentMapping = mappingIterator.next();
-            if (currentMapping.getAlignmentsId() != object.getAlignmentsIndex())
-                return printMapping ? Dropped.toString().toLowerCase() : NULL;
+            ByteRowBuilder builder = new ByteRowBuilder();
+            appendValue(object, builder);
+            return builder.toString();
+        }
 
-            int cloneIndex = currentMapping.getCloneIndex();
-            ReadToCloneMapping.MappingType mt = currentMapping.getMappingType();
-            if (mt == Dropped)
-                return printMapping ? mt.toString().toLowerCase() : NULL;
-            return printMapping ? Integer.toString(cloneIndex) + ":" + mt.toString().toLowerCase() : Integer.toString(cloneIndex);
+        @Override
+        public void appendValue(VDJCAlignments object, ByteRowBuilder builder) {
+            ReadToCloneMapping mapping = index.getByAlignmentsId(object.getAlignmentsIndex());
+            ReadToCloneMapping.MappingType mt = mapping == null ? Dropped : mapping.getMappingType();
+            if (mt == Dropped) {
+                if (printMapping)
+                    builder.append(mt.toString());
+                return;
+            }
+            builder.append(mapping.getCloneIndex());
+            if (printMapping)
+                builder.append(':').append(mt.toString());
         }
 
         @Override
         public void close() throws IOException {
-            db.close();
+            index.close();
         }
     }
 
     private static final class CloneToReadsExtractor
-            implements FieldExtractor<Clone>, Closeable {
+            implements ByteFieldExtractor<Clone>, Closeable {
         private final OutputMode outputMode;
-        private final DB db;
-        private final NavigableSet<ReadToCloneMapping> byClones;
-        private final Iterator<ReadToCloneMapping> mappingIterator;
-        private ReadToCloneMapping currentMapping;
+        private final ReadToCloneIndex index;
 
         public CloneToReadsExtractor(OutputMode outputMode, String file) {
             this.outputMode = outputMode;
-            this.db = DBMaker.newFileDB(new File(file))
-                    .transactionDisable()
-                    .make();
-            this.byClones = db.getTreeSet(ActionAssemble.MAPDB_SORTED_BY_CLONE);
-            this.mappingIterator = byClones.iterator();
+            this.index = openIndex(file, ActionAssemble.MAPDB_SORTED_BY_CLONE, ReadToCloneIndex.Ordering.ByClones);
         }
 
         @Override
@@ -643,34 +846,24 @@ public final class FieldExtractors {
 
         @Override
         public String extractValue(Clone clone) {
-            if (currentMapping == null && mappingIterator.hasNext())
-                currentMapping = mappingIterator.next();
-            if (currentMapping == null)
-                return NULL;
-
-            while (currentMapping.getCloneIndex() < clone.getId() && mappingIterator.hasNext())
-                currentMapping = mappingIterator.next();
-
-            long count = 0;
-            StringBuilder sb = new StringBuilder();
-            while (currentMapping.getCloneIndex() == clone.getId()) {
-                ++count;
-                assert currentMapping.getCloneIndex() == currentMapping.getCloneIndex();
-                sb.append(currentMapping.getReadId()).append(",");
-                if (!mappingIterator.hasNext())
-                    break;
-                currentMapping = mappingIterator.next();
+            ByteRowBuilder builder = new ByteRowBuilder();
+            appendValue(clone, builder);
+            return builder.toString();
+        }
+
+        @Override
+        public void appendValue(Clone clone, ByteRowBuilder builder) {
+            long[] readIds = index.getReadIdsByClone(clone.getId());
+            for (int i = 0; i < readIds.length; ++i) {
+                if (i != 0)
+                    builder.append(',');
+                builder.append(readIds[i]);
             }
-            //count == object.getCount() only if addReadsCountOnClustering=true
-            assert count >= clone.getCount() : "Actual count: " + clone.getCount() + ", in mapping: " + count;
-            if (sb.length() != 0)
-                sb.deleteCharAt(sb.length() - 1);
-            return sb.toString();
         }
 
         @Override
         public void close() throws IOException {
-            db.close();
+            index.close();
         }
     }
 
@@ -39,7 +39,35 @@ public abstract class FieldParameterless<T> extends AbstractField<T> {
         this.sHeader = sHeader;
     }
 
-    protected abstract String extract(T object);
+    /**
+     * Returns value of the field.
+     */
+    protected String extract(T object) {
+        ByteRowBuilder builder = new ByteRowBuilder();
+        extract(object, builder);
+        return builder.toString();
+    }
+
+    /**
+     * Appends value of the field to the builder.
+     */
+    protected abstract void extract(T object, ByteRowBuilder builder);
+
+    /**
+     * Returns type of the column in binary columnar export (see {@link ColumnarWriter}).
+     */
+    protected ColumnType getColumnType() {
+        return ColumnType.Text;
+    }
+
+    /**
+     * Returns value of the field as an object of class corresponding to {@link #getColumnType()}, or {@code null} if
+     * value is absent. Subclasses declaring column type other than {@link ColumnType#Text} must override this method.
+     */
+    protected Object extractTyped(T object) {
+        String value = extract(object);
+        return value.isEmpty() ? null : value;
+    }
 
     public String getHeader(OutputMode outputMode) {
         switch (outputMode) {
@@ -59,6 +87,21 @@ public abstract class FieldParameterless<T> extends AbstractField<T> {
             public String extractValue(T object) {
                 return extract(object);
             }
+
+            @Override
+            public void appendValue(T object, ByteRowBuilder builder) {
+                extract(object, builder);
+            }
+
+            @Override
+            public ColumnType getColumnType() {
+                return FieldParameterless.this.getColumnType();
+            }
+
+            @Override
+            public Object extractTypedValue(T object) {
+                return extractTyped(object);
+            }
         };
     }
 }
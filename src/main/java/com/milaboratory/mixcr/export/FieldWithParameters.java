@@ -37,7 +37,35 @@ public abstract class FieldWithParameters<T, P> extends AbstractField<T> {
 
     protected abstract String getHeader(OutputMode outputMode, P parameters);
 
-    protected abstract String extractValue(T object, P parameters);
+    /**
+     * Returns value of the field.
+     */
+    protected String extractValue(T object, P parameters) {
+        ByteRowBuilder builder = new ByteRowBuilder();
+        appendValue(object, parameters, builder);
+        return builder.toString();
+    }
+
+    /**
+     * Appends value of the field to the builder.
+     */
+    protected abstract void appendValue(T object, P parameters, ByteRowBuilder builder);
+
+    /**
+     * Returns type of the column in binary columnar export (see {@link ColumnarWriter}).
+     */
+    protected ColumnType getColumnType(P parameters) {
+        return ColumnType.Text;
+    }
+
+    /**
+     * Returns value of the field as an object of class corresponding to {@link #getColumnType(Object)}, or {@code
+     * null} if value is absent.
+     */
+    protected Object extractTypedValue(T object, P parameters) {
+        String value = extractValue(object, parameters);
+        return value.isEmpty() ? null : value;
+    }
 
     @Override
     public FieldExtractor<T> create(OutputMode outputMode, String[] args) {
@@ -48,6 +76,21 @@ public abstract class FieldWithParameters<T, P> extends AbstractField<T> {
             public String extractValue(T object) {
                 return FieldWithParameters.this.extractValue(object, params);
             }
+
+            @Override
+            public void appendValue(T object, ByteRowBuilder builder) {
+                FieldWithParameters.this.appendValue(object, params, builder);
+            }
+
+            @Override
+            public ColumnType getColumnType() {
+                return FieldWithParameters.this.getColumnType(params);
+            }
+
+            @Override
+            public Object extractTypedValue(T object) {
+                return FieldWithParameters.this.extractTypedValue(object, params);
+            }
         };
     }
 }
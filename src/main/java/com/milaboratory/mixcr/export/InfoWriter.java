@@ -29,9 +29,11 @@
 package com.milaboratory.mixcr.export;
 
 import cc.redberry.pipe.InputPort;
+import com.milaboratory.mixcr.basictypes.VDJCObject;
 import org.apache.commons.io.output.CloseShieldOutputStream;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -39,6 +41,8 @@ public final class InfoWriter<T> implements InputPort<T>, AutoCloseable {
     final ArrayList<FieldExtractor<? super T>> fieldExtractors = new ArrayList<>();
     final OutputStream outputStream;
     boolean initialized;
+    private volatile ExportPlan plan;
+    private volatile boolean planCompiled;
 
     public InfoWriter(String file) throws FileNotFoundException {
         this(".".equals(file) ? new CloseShieldOutputStream(System.out) :
@@ -61,7 +65,7 @@ public final class InfoWriter<T> implements InputPort<T>, AutoCloseable {
         if (!initialized) {
             try {
                 for (int i = 0; i < fieldExtractors.size(); ++i) {
-                    outputStream.write(fieldExtractors.get(i).getHeader().getBytes());
+                    outputStream.write(fieldExtractors.get(i).getHeader().getBytes(StandardCharsets.UTF_8));
                     if (i == fieldExtractors.size() - 1)
                         break;
                     outputStream.write('\t');
@@ -78,13 +82,57 @@ public final class InfoWriter<T> implements InputPort<T>, AutoCloseable {
     public void put(T t) {
         ensureInitialized();
         try {
-            for (int i = 0; i < fieldExtractors.size(); ++i) {
-                outputStream.write(fieldExtractors.get(i).extractValue(t).getBytes());
-                if (i == fieldExtractors.size() - 1)
-                    break;
-                outputStream.write('\t');
+            writeRow(outputStream, t);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns plan of lookups shared by extractors (compiled on the first invocation) or {@code null} if there are no
+     * planned extractors.
+     */
+    ExportPlan getPlan() {
+        if (!planCompiled)
+            synchronized (this) {
+                if (!planCompiled) {
+                    plan = ExportPlan.compile(fieldExtractors);
+                    planCompiled = true;
+                }
             }
-            outputStream.write('\n');
+        return plan;
+    }
+
+    /**
+     * Writes single row to the stream. Can be invoked concurrently (see {@link ParallelInfoWriter}).
+     */
+    void writeRow(OutputStream os, T t) throws IOException {
+        ByteRowBuilder row = ByteRowBuilder.get();
+        ExportPlan plan = getPlan();
+        RowContext context = plan != null && t instanceof VDJCObject ? plan.getContext((VDJCObject) t) : null;
+        for (int i = 0; i < fieldExtractors.size(); ++i) {
+            FieldExtractor<? super T> extractor = fieldExtractors.get(i);
+            if (context != null && extractor instanceof PlannedFieldExtractor)
+                ((PlannedFieldExtractor<? super T>) extractor).appendValue(t, context, row);
+            else if (extractor instanceof ByteFieldExtractor)
+                ((ByteFieldExtractor<? super T>) extractor).appendValue(t, row);
+            else
+                row.append(extractor.extractValue(t));
+            if (i == fieldExtractors.size() - 1)
+                break;
+            row.append('\t');
+        }
+        row.append('\n');
+        row.writeTo(os);
+    }
+
+    /**
+     * Writes already formatted rows.
+     */
+    void writeRaw(byte[] bytes, int length) {
+        ensureInitialized();
+        try {
+            outputStream.write(bytes, 0, length);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
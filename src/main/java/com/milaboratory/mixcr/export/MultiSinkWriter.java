@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.export;
+
+import cc.redberry.pipe.InputPort;
+import cc.redberry.pipe.Processor;
+import cc.redberry.primitives.Filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fans out objects decoded in a single pass to several outputs (e.g. {@link InfoWriter}s with different fields and
+ * output files), each with its own filter, limit of exported records and, optionally, conversion of accepted objects.
+ * Objects accepted by filter of an output are passed to its conversion in the order they are put.
+ */
+public final class MultiSinkWriter<T> implements InputPort<T>, AutoCloseable {
+    final List<Sink<T>> sinks = new ArrayList<>();
+    boolean closed = false;
+
+    /**
+     * Adds output.
+     *
+     * @param output    output port
+     * @param filter    objects not accepted by filter are not passed to the output ({@code null} to pass all objects)
+     * @param limit     maximal number of objects passed to the output
+     * @param resources resources to close (in the specified order) on {@link #close()}
+     */
+    public void addSink(InputPort<? super T> output, Filter<? super T> filter, long limit,
+                        AutoCloseable... resources) {
+        addSink(output, filter, null, limit, resources);
+    }
+
+    /**
+     * Adds output.
+     *
+     * @param output     output port
+     * @param filter     objects not accepted by filter are not passed to the output ({@code null} to pass all objects)
+     * @param conversion converts accepted objects before they are passed to the output ({@code null} to pass objects
+     *                   as is)
+     * @param limit      maximal number of objects passed to the output
+     * @param resources  resources to close (in the specified order) on {@link #close()}
+     */
+    public void addSink(InputPort<? super T> output, Filter<? super T> filter, Processor<T, ? extends T> conversion,
+                        long limit, AutoCloseable... resources) {
+        if (limit < 0)
+            throw new IllegalArgumentException();
+        sinks.add(new Sink<T>(output, filter, conversion, limit, resources));
+    }
+
+    /**
+     * Adds output writing fields to tab-delimited text, with row formatting in several threads if {@code threads >
+     * 1} (see {@link ParallelInfoWriter}).
+     */
+    public void addSink(InfoWriter<T> writer, Filter<? super T> filter, long limit, int threads) {
+        addSink(writer, filter, null, limit, threads);
+    }
+
+    /**
+     * Same as {@link #addSink(InfoWriter, Filter, long, int)} with conversion of accepted objects (see {@link
+     * #addSink(InputPort, Filter, Processor, long, AutoCloseable...)}).
+     */
+    public void addSink(InfoWriter<T> writer, Filter<? super T> filter, Processor<T, ? extends T> conversion,
+                        long limit, int threads) {
+        if (threads > 1) {
+            ParallelInfoWriter<T> parallelWriter = new ParallelInfoWriter<>(writer, threads);
+            addSink(parallelWriter, filter, conversion, limit, parallelWriter, writer);
+        } else
+            addSink(writer, filter, conversion, limit, writer);
+    }
+
+    public int numberOfSinks() {
+        return sinks.size();
+    }
+
+    /**
+     * Returns {@code true} if all outputs reached their limits, so there is no need to decode more objects.
+     */
+    public boolean isFinished() {
+        for (Sink<T> sink : sinks)
+            if (sink.count < sink.limit)
+                return false;
+        return true;
+    }
+
+    @Override
+    public void put(T t) {
+        if (t == null)
+            return;
+        for (Sink<T> sink : sinks)
+            if (sink.count < sink.limit && (sink.filter == null || sink.filter.accept(t))) {
+                sink.output.put(sink.conversion == null ? t : sink.conversion.process(t));
+                ++sink.count;
+            }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (closed)
+            return;
+        closed = true;
+        Exception exception = null;
+        for (Sink<T> sink : sinks)
+            for (AutoCloseable resource : sink.resources)
+                try {
+                    resource.close();
+                } catch (Exception e) {
+                    if (exception == null)
+                        exception = e;
+                }
+        if (exception != null)
+            throw exception;
+    }
+
+    private static final class Sink<T> {
+        final InputPort<? super T> output;
+        final Filter<? super T> filter;
+        final Processor<T, ? extends T> conversion;
+        final long limit;
+        final AutoCloseable[] resources;
+        long count = 0;
+
+        Sink(InputPort<? super T> output, Filter<? super T> filter, Processor<T, ? extends T> conversion, long limit,
+             AutoCloseable[] resources) {
+            this.output = output;
+            this.filter = filter;
+            this.conversion = conversion;
+            this.limit = limit;
+            this.resources = resources;
+        }
+    }
+}
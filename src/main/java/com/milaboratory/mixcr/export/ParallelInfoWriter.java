@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.export;
+
+import cc.redberry.pipe.InputPort;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Formats rows of {@link InfoWriter} in parallel. Objects are collected into chunks, each chunk is formatted by a
+ * worker thread into a separate buffer and buffers are written in the order of chunks, so the output is exactly the
+ * same as of the underlying writer. Closing this writer does not close the underlying one.
+ */
+public final class ParallelInfoWriter<T> implements InputPort<T>, AutoCloseable {
+    public static final int CHUNK_SIZE = 1024;
+    final InfoWriter<T> writer;
+    final ExecutorService executor;
+    final int maxChunksInFlight;
+    final ArrayDeque<Future<ByteArrayOutputStream>> chunks = new ArrayDeque<>();
+    List<T> objects = new ArrayList<>(CHUNK_SIZE);
+    boolean closed = false;
+
+    public ParallelInfoWriter(InfoWriter<T> writer, int threads) {
+        this.writer = writer;
+        this.maxChunksInFlight = 2 * threads;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ParallelInfoWriter-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void put(T t) {
+        if (t == null) {
+            flush();
+            return;
+        }
+        objects.add(t);
+        if (objects.size() == CHUNK_SIZE)
+            submit();
+    }
+
+    private void submit() {
+        final List<T> objects = this.objects;
+        this.objects = new ArrayList<>(CHUNK_SIZE);
+        chunks.add(executor.submit(new Callable<ByteArrayOutputStream>() {
+            @Override
+            public ByteArrayOutputStream call() throws IOException {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                for (T object : objects)
+                    writer.writeRow(buffer, object);
+                return buffer;
+            }
+        }));
+        while (chunks.size() > maxChunksInFlight)
+            writeChunk();
+    }
+
+    private void writeChunk() {
+        try {
+            ByteArrayOutputStream buffer = chunks.poll().get();
+            writer.writeRaw(buffer.toByteArray(), buffer.size());
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Writes all objects put so far to the underlying writer.
+     */
+    public void flush() {
+        if (!objects.isEmpty())
+            submit();
+        while (!chunks.isEmpty())
+            writeChunk();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            flush();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.export;
+
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.mixcr.basictypes.VDJCObject;
+
+import java.util.Arrays;
+
+/**
+ * Values of gene features and reference points of a single exported object, computed on the first request (see
+ * {@link ExportPlan}). Instances are reused for consecutive objects.
+ */
+public final class RowContext {
+    final ExportPlan plan;
+    final NSequenceWithQuality[] features;
+    final boolean[] featureComputed;
+    final int[][] positions;
+    final boolean[] positionsComputed;
+    VDJCObject object;
+
+    RowContext(ExportPlan plan) {
+        this.plan = plan;
+        this.features = new NSequenceWithQuality[plan.numberOfFeatures()];
+        this.featureComputed = new boolean[features.length];
+        this.positions = new int[plan.numberOfReferencePoints()][];
+        this.positionsComputed = new boolean[positions.length];
+    }
+
+    void reset(VDJCObject object) {
+        this.object = object;
+        Arrays.fill(features, null);
+        Arrays.fill(featureComputed, false);
+        Arrays.fill(positionsComputed, false);
+    }
+
+    public VDJCObject getObject() {
+        return object;
+    }
+
+    /**
+     * Returns gene feature from the slot (same as {@link VDJCObject#getFeature(com.milaboratory.mixcr.reference.GeneFeature)}).
+     */
+    public NSequenceWithQuality getFeature(int slot) {
+        if (!featureComputed[slot]) {
+            features[slot] = object.getFeature(plan.features.get(slot));
+            featureComputed[slot] = true;
+        }
+        return features[slot];
+    }
+
+    /**
+     * Returns position of reference point from the slot in the target.
+     */
+    public int getPosition(int slot, int target) {
+        if (!positionsComputed[slot]) {
+            int numberOfTargets = object.numberOfTargets();
+            if (positions[slot] == null || positions[slot].length < numberOfTargets)
+                positions[slot] = new int[numberOfTargets];
+            for (int i = 0; i < numberOfTargets; ++i)
+                positions[slot][i] = object.getPartitionedTarget(i).getPartitioning()
+                        .getPosition(plan.referencePoints.get(slot));
+            positionsComputed[slot] = true;
+        }
+        return positions[slot][target];
+    }
+}
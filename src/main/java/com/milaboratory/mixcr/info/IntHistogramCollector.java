@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.info;
+
+import gnu.trove.iterator.TIntLongIterator;
+import gnu.trove.map.hash.TIntLongHashMap;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Histogram with integer keys (e.g. lengths); result is sorted by ascending key.
+ */
+public abstract class IntHistogramCollector<T> extends ShardedCollector<T, TIntLongHashMap> {
+    /**
+     * Returned by {@link #key(Object)} if object should not be counted
+     */
+    public static final int NO_KEY = Integer.MIN_VALUE;
+
+    protected abstract int key(T object);
+
+    @Override
+    protected TIntLongHashMap createShard() {
+        return new TIntLongHashMap();
+    }
+
+    @Override
+    protected void put(TIntLongHashMap shard, T object, long weight) {
+        int key = key(object);
+        if (key != NO_KEY)
+            shard.adjustOrPutValue(key, weight, weight);
+    }
+
+    @Override
+    protected void merge(TIntLongHashMap to, TIntLongHashMap from) {
+        TIntLongIterator it = from.iterator();
+        while (it.hasNext()) {
+            it.advance();
+            to.adjustOrPutValue(it.key(), it.value(), it.value());
+        }
+    }
+
+    @Override
+    public Map<String, Long> getResult() {
+        TIntLongHashMap histogram = getMerged();
+        int[] keys = histogram.keys();
+        Arrays.sort(keys);
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int key : keys)
+            result.put(Integer.toString(key), histogram.get(key));
+        return result;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.info;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base class for collectors accumulating values in per-thread shards without synchronization; shards are merged in
+ * {@link #end()}.
+ *
+ * @param <T> type of aggregated objects
+ * @param <S> type of shard
+ */
+public abstract class ShardedCollector<T, S> implements SummaryCollector<T> {
+    private final List<S> shards = new ArrayList<>();
+    private final ThreadLocal<S> shard = new ThreadLocal<S>() {
+        @Override
+        protected S initialValue() {
+            S s = createShard();
+            synchronized (shards) {
+                shards.add(s);
+            }
+            return s;
+        }
+    };
+    private volatile S merged;
+
+    protected abstract S createShard();
+
+    protected abstract void put(S shard, T object, long weight);
+
+    /**
+     * Adds values accumulated in {@code from} to {@code to}.
+     */
+    protected abstract void merge(S to, S from);
+
+    @Override
+    public final void put(T object, long weight) {
+        put(shard.get(), object, weight);
+    }
+
+    @Override
+    public void end() {
+        S result = createShard();
+        synchronized (shards) {
+            for (S s : shards)
+                merge(result, s);
+        }
+        merged = result;
+    }
+
+    protected final S getMerged() {
+        S result = merged;
+        if (result == null)
+            throw new IllegalStateException("end() was not invoked.");
+        return result;
+    }
+}
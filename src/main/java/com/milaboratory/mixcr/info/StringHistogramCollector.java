@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.info;
+
+import gnu.trove.iterator.TObjectLongIterator;
+import gnu.trove.map.hash.TObjectLongHashMap;
+
+import java.util.*;
+
+/**
+ * Histogram with string keys (e.g. gene names); result is sorted by descending value.
+ */
+public abstract class StringHistogramCollector<T> extends ShardedCollector<T, TObjectLongHashMap<String>> {
+    /**
+     * Returns histogram key for the object or {@code null} if object should not be counted.
+     */
+    protected abstract String key(T object);
+
+    @Override
+    protected TObjectLongHashMap<String> createShard() {
+        return new TObjectLongHashMap<>();
+    }
+
+    @Override
+    protected void put(TObjectLongHashMap<String> shard, T object, long weight) {
+        String key = key(object);
+        if (key != null)
+            shard.adjustOrPutValue(key, weight, weight);
+    }
+
+    @Override
+    protected void merge(TObjectLongHashMap<String> to, TObjectLongHashMap<String> from) {
+        TObjectLongIterator<String> it = from.iterator();
+        while (it.hasNext()) {
+            it.advance();
+            to.adjustOrPutValue(it.key(), it.value(), it.value());
+        }
+    }
+
+    @Override
+    public Map<String, Long> getResult() {
+        TObjectLongHashMap<String> histogram = getMerged();
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(histogram.size());
+        TObjectLongIterator<String> it = histogram.iterator();
+        while (it.hasNext()) {
+            it.advance();
+            entries.add(new AbstractMap.SimpleEntry<>(it.key(), it.value()));
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+                int c = Long.compare(o2.getValue(), o1.getValue());
+                return c != 0 ? c : o1.getKey().compareTo(o2.getKey());
+            }
+        });
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : entries)
+            result.put(entry.getKey(), entry.getValue());
+        return result;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.info;
+
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.mixcr.basictypes.Clone;
+import com.milaboratory.mixcr.basictypes.VDJCHit;
+import com.milaboratory.mixcr.basictypes.VDJCObject;
+import com.milaboratory.mixcr.reference.Allele;
+import com.milaboratory.mixcr.reference.GeneFeature;
+import com.milaboratory.mixcr.reference.GeneType;
+import gnu.trove.map.hash.TIntLongHashMap;
+
+/**
+ * Standard summaries of alignments and clones.
+ */
+public final class SummaryCollectors {
+    private SummaryCollectors() {
+    }
+
+    /**
+     * Usage of genes (or alleles) of the best hit of specified type. Objects without hit are not counted.
+     */
+    public static SummaryCollector<VDJCObject> geneUsage(final GeneType type, final boolean alleles) {
+        final String name = Character.toLowerCase(type.getLetter()) + (alleles ? "AlleleUsage" : "GeneUsage");
+        return new StringHistogramCollector<VDJCObject>() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            protected String key(VDJCObject object) {
+                VDJCHit hit = object.getBestHit(type);
+                if (hit == null)
+                    return null;
+                Allele allele = hit.getAllele();
+                return alleles ? allele.getName() : allele.getGene().getName();
+            }
+        };
+    }
+
+    /**
+     * Spectrum of nucleotide lengths of the gene feature (e.g. CDR3). Objects not covering the feature are not
+     * counted.
+     */
+    public static SummaryCollector<VDJCObject> featureLength(final GeneFeature feature) {
+        final String name = "lengthOf" + GeneFeature.encode(feature);
+        return new IntHistogramCollector<VDJCObject>() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            protected int key(VDJCObject object) {
+                NSequenceWithQuality seq = object.getFeature(feature);
+                return seq == null ? NO_KEY : seq.size();
+            }
+        };
+    }
+
+    /**
+     * Distribution of clone sizes: number of clones for each clone count (weight is ignored).
+     */
+    public static SummaryCollector<Clone> cloneSize() {
+        return new IntHistogramCollector<Clone>() {
+            @Override
+            public String getName() {
+                return "cloneSize";
+            }
+
+            @Override
+            protected void put(TIntLongHashMap shard, Clone object, long weight) {
+                super.put(shard, object, 1);
+            }
+
+            @Override
+            protected int key(Clone object) {
+                return (int) Math.min(object.getCount(), Integer.MAX_VALUE);
+            }
+        };
+    }
+}
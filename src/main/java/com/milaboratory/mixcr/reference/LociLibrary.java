@@ -28,7 +28,10 @@
  */
 package com.milaboratory.mixcr.reference;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static java.util.Collections.unmodifiableCollection;
 import static java.util.Collections.unmodifiableMap;
@@ -36,37 +39,116 @@ import static java.util.Collections.unmodifiableMap;
 //TODO documentation
 public class LociLibrary implements AlleleResolver {
     final SequenceBase base = new SequenceBase();
-    final List<Allele> allAlleles = new ArrayList<>();
+    final List<Allele> allAlleles = new CopyOnWriteArrayList<>();
     final Map<String, Integer> knownSpecies = new HashMap<>();
     final Map<String, String> properties = new HashMap<>();
-    final Map<Integer, Map<String, Allele>> alleles = new HashMap<>();
-    final Map<Integer, Map<String, Gene>> genes = new HashMap<>();
-    final Map<SpeciesAndLocus, LocusContainer> loci = new HashMap<>();
-
-    public void registerContainer(LocusContainer container) {
+    final Map<Integer, Map<String, Allele>> alleles = new ConcurrentHashMap<>();
+    final Map<Integer, Map<String, Gene>> genes = new ConcurrentHashMap<>();
+    final Map<SpeciesAndLocus, LocusContainer> loci = new ConcurrentHashMap<>();
+    /**
+     * Table of contents of the library read with {@link LociLibraryReader#readIndexed(java.io.InputStream, boolean)}: loci
+     * which are not yet loaded are parsed from {@link #data} on first access.
+     */
+    final Map<SpeciesAndLocus, TocEntry> toc = new LinkedHashMap<>();
+    byte[] data;
+    boolean withFR4Correction;
+
+    public synchronized void registerContainer(LocusContainer container) {
         if (loci.containsKey(container.getSpeciesAndLocus()))
             throw new IllegalArgumentException("This species/locus combination already registered. (" + container.getSpeciesAndLocus() + ")");
+        TocEntry entry = toc.get(container.getSpeciesAndLocus());
+        if (entry != null && !entry.uuid.equals(container.getUUID()))
+            throw new IllegalArgumentException("This species/locus combination already registered. (" + container.getSpeciesAndLocus() + ")");
 
-        loci.put(container.getSpeciesAndLocus(), container);
         container.setLibrary(this);
 
         Map<String, Allele> am = alleles.get(container.getSpeciesAndLocus().taxonId);
         if (am == null)
-            alleles.put(container.getSpeciesAndLocus().taxonId, am = new HashMap<>());
+            alleles.put(container.getSpeciesAndLocus().taxonId, am = new ConcurrentHashMap<>());
         am.putAll(container.nameToAllele);
         allAlleles.addAll(container.getAllAlleles());
 
         Map<String, Gene> gm = genes.get(container.getSpeciesAndLocus().taxonId);
         if (gm == null)
-            genes.put(container.getSpeciesAndLocus().taxonId, gm = new HashMap<>());
+            genes.put(container.getSpeciesAndLocus().taxonId, gm = new ConcurrentHashMap<>());
         gm.putAll(container.nameToGene);
+
+        // Container is published last: getLocus(...) reads loci without locking, so once the container is visible
+        // there, per-species maps and allAlleles must already contain its alleles and genes
+        loci.put(container.getSpeciesAndLocus(), container);
+    }
+
+    void addTocEntry(TocEntry entry) {
+        if (toc.containsKey(entry.speciesAndLocus) || loci.containsKey(entry.speciesAndLocus))
+            throw new IllegalArgumentException("This species/locus combination already registered. (" + entry.speciesAndLocus + ")");
+        toc.put(entry.speciesAndLocus, entry);
+    }
+
+    /**
+     * Returns all species/locus combinations available in this library (including not yet loaded ones).
+     */
+    public Set<SpeciesAndLocus> getAvailableLoci() {
+        Set<SpeciesAndLocus> result = new HashSet<>(toc.keySet());
+        result.addAll(loci.keySet());
+        return result;
+    }
+
+    /**
+     * Returns UUIDs of all locus containers of this library (including not yet loaded ones).
+     */
+    public Set<UUID> getContainerUUIDs() {
+        Set<UUID> result = new HashSet<>();
+        for (TocEntry entry : toc.values())
+            result.add(entry.uuid);
+        for (LocusContainer container : loci.values())
+            result.add(container.getUUID());
+        return result;
+    }
+
+    /**
+     * Returns {@code true} if container for the species/locus is already parsed (always {@code true} for libraries
+     * read without index).
+     */
+    public boolean isLoaded(SpeciesAndLocus speciesAndLocus) {
+        return loci.containsKey(speciesAndLocus);
+    }
+
+    private synchronized LocusContainer load(SpeciesAndLocus speciesAndLocus) {
+        LocusContainer container = loci.get(speciesAndLocus);
+        if (container != null)
+            return container;
+        TocEntry entry = toc.get(speciesAndLocus);
+        if (entry == null)
+            return null;
+        try {
+            LociLibraryReader.readLocus(this, entry);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        container = loci.get(speciesAndLocus);
+        if (container == null)
+            throw new IllegalStateException("Malformed library: no locus " + speciesAndLocus + " at specified position.");
+        return container;
+    }
+
+    private void loadAll() {
+        for (SpeciesAndLocus speciesAndLocus : toc.keySet())
+            getLocus(speciesAndLocus);
+    }
+
+    private void loadSpecies(int taxonId) {
+        for (SpeciesAndLocus speciesAndLocus : toc.keySet())
+            if (speciesAndLocus.taxonId == taxonId)
+                getLocus(speciesAndLocus);
     }
 
     public Map<SpeciesAndLocus, LocusContainer> getLociMap() {
+        loadAll();
         return unmodifiableMap(loci);
     }
 
     public Collection<LocusContainer> getLoci() {
+        loadAll();
         return unmodifiableCollection(loci.values());
     }
 
@@ -84,7 +166,7 @@ public class LociLibrary implements AlleleResolver {
 
     @Override
     public Allele getAllele(AlleleId id) {
-        final LocusContainer locusContainer = loci.get(id.getSpeciesAndLocus());
+        final LocusContainer locusContainer = getLocus(id.getSpeciesAndLocus());
 
         if (locusContainer == null)
             throw new IllegalArgumentException("No container for " + id.getSpeciesAndLocus());
@@ -93,11 +175,14 @@ public class LociLibrary implements AlleleResolver {
     }
 
     public LocusContainer getLocus(int taxonId, Locus locus) {
-        return loci.get(new SpeciesAndLocus(taxonId, locus));
+        return getLocus(new SpeciesAndLocus(taxonId, locus));
     }
 
     public LocusContainer getLocus(SpeciesAndLocus speciesAndLocus) {
-        return loci.get(speciesAndLocus);
+        LocusContainer container = loci.get(speciesAndLocus);
+        if (container == null && toc.containsKey(speciesAndLocus))
+            container = load(speciesAndLocus);
+        return container;
     }
 
     public String getProperty(String name) {
@@ -105,10 +190,12 @@ public class LociLibrary implements AlleleResolver {
     }
 
     public Allele getAllele(int species, String name) {
+        loadSpecies(species);
         return alleles.get(species).get(name);
     }
 
     public Gene getGene(int species, String name) {
+        loadSpecies(species);
         return genes.get(species).get(name);
     }
 
@@ -120,18 +207,37 @@ public class LociLibrary implements AlleleResolver {
     }
 
     public Collection<Allele> getAllAlleles(int species) {
+        loadSpecies(species);
         return Collections.unmodifiableCollection(alleles.get(species).values());
     }
 
     public Collection<Allele> getAllAlleles() {
+        loadAll();
         return Collections.unmodifiableCollection(allAlleles);
     }
 
     public Collection<Gene> getAllGenes(int species) {
+        loadSpecies(species);
         return Collections.unmodifiableCollection(genes.get(species).values());
     }
 
     public SequenceBase getBase() {
         return base;
     }
+
+    /**
+     * Position of not yet loaded locus in the library data.
+     */
+    static final class TocEntry {
+        final SpeciesAndLocus speciesAndLocus;
+        final UUID uuid;
+        final int from, to;
+
+        TocEntry(SpeciesAndLocus speciesAndLocus, UUID uuid, int from, int to) {
+            this.speciesAndLocus = speciesAndLocus;
+            this.uuid = uuid;
+            this.from = from;
+            this.to = to;
+        }
+    }
 }
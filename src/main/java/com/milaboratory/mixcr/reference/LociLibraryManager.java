@@ -28,27 +28,36 @@
  */
 package com.milaboratory.mixcr.reference;
 
+import com.google.common.io.ByteStreams;
 import com.milaboratory.mixcr.cli.Util;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.util.HashMap;
+import java.util.UUID;
 
 public final class LociLibraryManager implements AlleleResolver {
+    public static final String SNAPSHOT_EXTENSION = ".lls";
     private static volatile LociLibraryManager defualt;
 
-    private final HashMap<AlleleId, Allele> allAlleles = new HashMap<>();
+    private final HashMap<UUID, LociLibrary> containers = new HashMap<>();
     private final HashMap<String, LociLibrary> libraries = new HashMap<>();
 
     public void register(String name, LociLibrary library) {
-        for (Allele allele : library.getAllAlleles())
-            allAlleles.put(allele.getId(), allele);
+        // Only table of contents is touched here, loci are loaded on first access
+        for (UUID uuid : library.getContainerUUIDs())
+            containers.put(uuid, library);
         libraries.put(name, library);
     }
 
     public Allele getAllele(AlleleId id) {
-        return allAlleles.get(id);
+        LociLibrary library = containers.get(id.getContainerUUID());
+        if (library == null)
+            return null;
+        return library.getAllele(id);
     }
 
     public LociLibrary getLibrary(String name) {
@@ -61,16 +70,29 @@ public final class LociLibraryManager implements AlleleResolver {
                 if (defualt == null) {
                     try {
                         defualt = new LociLibraryManager();
+                        File settings = Util.getLocalSettingsDir().toFile();
+                        // Compiled snapshot of a library (see LociLibrarySnapshot) takes precedence over the library
+                        // file, if it was compiled from the same version of the file
+                        byte[] mi;
                         try (InputStream sample = LociLibraryManager.class.getClassLoader()
                                 .getResourceAsStream("reference/mi.ll")) {
-                            defualt.register("mi", LociLibraryReader.read(sample, true));
+                            mi = ByteStreams.toByteArray(sample);
                         }
-                        File settings = Util.getLocalSettingsDir().toFile();
+                        defualt.register("mi", readLibrary(mi, new File(settings, "mi" + SNAPSHOT_EXTENSION), true));
                         if (settings.exists())
                             for (File file : settings.listFiles()) {
-                                if (file.isFile() && file.getName().endsWith(".ll")) {
-                                    defualt.register(file.getName().substring(0, file.getName().length() - 3),
-                                            LociLibraryReader.read(file, false));
+                                if (!file.isFile())
+                                    continue;
+                                String name = file.getName();
+                                if (name.endsWith(".ll")) {
+                                    name = name.substring(0, name.length() - 3);
+                                    defualt.register(name, readLibrary(Files.readAllBytes(file.toPath()),
+                                            new File(settings, name + SNAPSHOT_EXTENSION), false));
+                                } else if (name.endsWith(SNAPSHOT_EXTENSION)) {
+                                    name = name.substring(0, name.length() - SNAPSHOT_EXTENSION.length());
+                                    // Snapshots without library file they were compiled from
+                                    if (!name.equals("mi") && !new File(settings, name + ".ll").isFile())
+                                        defualt.register(name, LociLibrarySnapshot.read(file));
                                 }
                             }
                     } catch (IOException e) {
@@ -80,4 +102,15 @@ public final class LociLibraryManager implements AlleleResolver {
             }
         return defualt;
     }
+
+    private static LociLibrary readLibrary(byte[] source, File snapshot, boolean withFR4Correction)
+            throws IOException {
+        if (snapshot.isFile()) {
+            if (LociLibrarySnapshot.isCompiledFrom(snapshot, LociLibrarySnapshot.digest(source)))
+                return LociLibrarySnapshot.read(snapshot);
+            System.err.println("WARNING: " + snapshot + " is ignored as it was compiled from other version of the " +
+                    "library; recompile it with 'mixcr compileSegments -f'.");
+        }
+        return LociLibraryReader.readIndexed(new ByteArrayInputStream(source), withFR4Correction);
+    }
 }
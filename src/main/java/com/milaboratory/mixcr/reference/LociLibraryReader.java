@@ -28,6 +28,7 @@
  */
 package com.milaboratory.mixcr.reference;
 
+import com.google.common.io.ByteStreams;
 import com.milaboratory.core.mutations.Mutations;
 import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.core.sequence.SequencesUtils;
@@ -46,8 +47,20 @@ public class LociLibraryReader {
     final boolean withFR4Correction;
     final CountingInputStream countingInputStream;
     final DataInputStream stream;
-    final LociLibrary library = new LociLibrary();
+    final LociLibrary library;
     long beginOfCurrentBlock = 0;
+    /**
+     * Only build table of contents of the library, skipping content of loci
+     */
+    boolean indexOnly = false;
+    /**
+     * Don't add sequence parts to the library (they were already added while building table of contents)
+     */
+    boolean skipSequences = false;
+    // Locus being skipped in index-only mode
+    SpeciesAndLocus skippedLocus;
+    UUID skippedLocusUUID;
+    long skippedLocusBegin;
     LociLibraryReaderListener listener = new LociLibraryReaderListener();
     LocusContainer container;
     EnumMap<GeneType, List<Gene>> genes;
@@ -57,9 +70,14 @@ public class LociLibraryReader {
     Map<String, Allele> nameToAlleles;
 
     LociLibraryReader(InputStream stream, boolean withFR4Correction) {
+        this(stream, withFR4Correction, new LociLibrary());
+    }
+
+    LociLibraryReader(InputStream stream, boolean withFR4Correction, LociLibrary library) {
         this.countingInputStream = new CountingInputStream(stream);
         this.stream = new DataInputStream(countingInputStream);
         this.withFR4Correction = withFR4Correction;
+        this.library = library;
     }
 
     public static LociLibrary read(File file, boolean withFR4Correction) throws IOException {
@@ -81,6 +99,42 @@ public class LociLibraryReader {
         return reader.library;
     }
 
+    /**
+     * Reads only table of contents of the library (species, loci and their positions in the file) and sequence parts;
+     * locus containers (with all their genes and alleles) are parsed on first access to the corresponding
+     * species/locus. Raw content of the library is kept in memory.
+     */
+    public static LociLibrary readIndexed(File file, boolean withFR4Correction) throws IOException {
+        try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(file))) {
+            return readIndexed(bis, withFR4Correction);
+        }
+    }
+
+    /**
+     * See {@link #readIndexed(File, boolean)}.
+     */
+    public static LociLibrary readIndexed(InputStream stream, boolean withFR4Correction) throws IOException {
+        byte[] data = ByteStreams.toByteArray(stream);
+        LociLibraryReader reader = new LociLibraryReader(new ByteArrayInputStream(data), withFR4Correction);
+        reader.indexOnly = true;
+        reader.checkMagic();
+        reader.readToEnd();
+        reader.library.data = data;
+        reader.library.withFR4Correction = withFR4Correction;
+        return reader.library;
+    }
+
+    /**
+     * Parses locus container from the data of indexed library and registers it in the library.
+     */
+    static void readLocus(LociLibrary library, LociLibrary.TocEntry entry) throws IOException {
+        LociLibraryReader reader = new LociLibraryReader(
+                new ByteArrayInputStream(library.data, entry.from, entry.to - entry.from),
+                library.withFR4Correction, library);
+        reader.skipSequences = true;
+        reader.readToEnd();
+    }
+
     public LociLibraryReader setListener(LociLibraryReaderListener listener) {
         this.listener = listener;
         return this;
@@ -131,7 +185,7 @@ public class LociLibraryReader {
             }
         }
 
-        if (container != null)
+        if (container != null || skippedLocus != null)
             throw new IOException("Premature end of stream.");
     }
 
@@ -152,6 +206,15 @@ public class LociLibraryReader {
         long msb = stream.readLong();
         UUID uuid = new UUID(msb, lsb);
 
+        if (indexOnly) {
+            if (skippedLocus != null)
+                throw new IOException("Nested locus.");
+            skippedLocus = new SpeciesAndLocus(taxonId, locus);
+            skippedLocusUUID = uuid;
+            skippedLocusBegin = beginOfCurrentBlock;
+            return;
+        }
+
         genes = new EnumMap<>(GeneType.class);
         for (GeneType gt : GeneType.values())
             genes.put(gt, new ArrayList<Gene>());
@@ -198,6 +261,9 @@ public class LociLibraryReader {
                 mutations[i] = stream.readInt();
         }
 
+        if (skippedLocus != null)
+            return;
+
         //Adding
         String geneName = alleleName.substring(0, alleleName.lastIndexOf('*'));
         Gene gene = nameToGenes.get(geneName);
@@ -242,6 +308,13 @@ public class LociLibraryReader {
     }
 
     private void endLocus() {
+        if (skippedLocus != null) {
+            library.addTocEntry(new LociLibrary.TocEntry(skippedLocus, skippedLocusUUID,
+                    (int) skippedLocusBegin, (int) countingInputStream.getBytesRead()));
+            skippedLocus = null;
+            skippedLocusUUID = null;
+            return;
+        }
         for (Map.Entry<GeneType, List<Allele>> e : alleles.entrySet())
             e.setValue(Collections.unmodifiableList(
                     Arrays.asList(
@@ -281,6 +354,8 @@ public class LociLibraryReader {
             inflater.end();
         } else
             seqContent = Bit2Array.readFrom(stream);
+        if (skipSequences)
+            return;
         NucleotideSequence seq = SequencesUtils.convertBit2ArrayToNSequence(seqContent);
         library.base.put(accession, from, seq);
         listener.sequencePart(beginOfCurrentBlock, countingInputStream.getBytesRead(), from, seq);
@@ -289,6 +364,8 @@ public class LociLibraryReader {
     private void readMeta() throws IOException {
         String key = stream.readUTF();
         String value = stream.readUTF();
+        if (skippedLocus != null)
+            return;
         if (container == null)
             library.properties.put(key, value);
         else
@@ -297,7 +374,7 @@ public class LociLibraryReader {
     }
 
     private void readSpeciesName() throws IOException {
-        if (container != null)
+        if (container != null || skippedLocus != null)
             throw new IOException("Illegal place for \"common species name\" record.");
         int taxonId = stream.readInt();
         String name = stream.readUTF();
@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.reference;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.sequence.NucleotideSequence;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Compiled (fully resolved) form of a loci library, suitable for memory mapping.
+ *
+ * <p>Unlike {@code *.ll} files, snapshot contains final sequences and reference points of all alleles (allelic
+ * variant mutations, sequence base fragments and FR4 correction are already applied), so reading it requires no
+ * computations. Sequences and reference points are not copied to heap on load: alleles are lightweight views (see
+ * {@link SnapshotAllele}) decoding their data from the mapped file on first access, so several processes working with
+ * the same snapshot share its pages.</p>
+ *
+ * <p>Snapshot stores digest of the {@code *.ll} file it was compiled from (see {@link #digest(byte[])}), so outdated
+ * snapshots can be detected (see {@link #isCompiledFrom(File, byte[])}).</p>
+ *
+ * <pre>
+ * file     = MAGIC byte[DIGEST_LENGTH](sourceDigest) long(pointsOffset) long(sequencesOffset) header points sequences
+ * header   = int(n) (UTF(key) UTF(value))*n          library properties
+ *            int(n) (UTF(name) int(taxonId))*n        common species names
+ *            int(n) (int(from) int(length) long(offset))*n       sequence segments
+ *            int(n) locus*n
+ * locus    = UTF(locus) int(taxonId) long(lsb) long(msb) int(n) (UTF(key) UTF(value))*n int(n) allele*n
+ * allele   = byte(geneType) UTF(name) byte(flags) int(segment)
+ * points   = int[TOTAL_NUMBER_OF_REFERENCE_POINTS] per allele, in order of appearance
+ * sequence = 2-bit packed nucleotides, four per byte starting from the lowest bits
+ * </pre>
+ */
+public final class LociLibrarySnapshot {
+    static final String MAGIC = "MiXCR.LLS.V01";
+    static final byte[] MAGIC_BYTES = MAGIC.getBytes(StandardCharsets.US_ASCII);
+    static final byte REFERENCE_FLAG = 1, FUNCTIONAL_FLAG = 2;
+    static final String DIGEST_ALGORITHM = "SHA-1";
+    static final int DIGEST_LENGTH = 20;
+
+    private LociLibrarySnapshot() {
+    }
+
+    /**
+     * Calculates digest of the content of {@code *.ll} file.
+     *
+     * @param source content of the library file
+     * @return digest
+     */
+    public static byte[] digest(byte[] source) {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM).digest(source);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes compiled snapshot of the library.
+     *
+     * @param library      library
+     * @param sourceDigest digest of the library file (see {@link #digest(byte[])})
+     * @param file         output file
+     * @throws IOException if an I/O error occurs
+     */
+    public static void write(LociLibrary library, byte[] sourceDigest, File file) throws IOException {
+        if (sourceDigest.length != DIGEST_LENGTH)
+            throw new IllegalArgumentException("Wrong digest length.");
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream(),
+                pointsBytes = new ByteArrayOutputStream(),
+                sequenceBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes),
+                points = new DataOutputStream(pointsBytes);
+
+        writeMap(header, library.properties);
+
+        header.writeInt(library.knownSpecies.size());
+        for (Map.Entry<String, Integer> e : library.knownSpecies.entrySet()) {
+            header.writeUTF(e.getKey());
+            header.writeInt(e.getValue());
+        }
+
+        // Assigning segments
+        List<LocusContainer> loci = new ArrayList<>(library.getLoci());
+        Map<String, Integer> segmentIds = new HashMap<>();
+        List<Segment> segments = new ArrayList<>();
+        Map<Allele, Integer> alleleSegments = new HashMap<>();
+        for (LocusContainer container : loci)
+            for (GeneType type : GeneType.values())
+                for (Allele allele : container.getAlleles(type)) {
+                    int segment = -1;
+                    if (allele instanceof ReferenceAllele) {
+                        ReferenceAllele ra = (ReferenceAllele) allele;
+                        Range range = definedRange(ra.getPartitioning());
+                        if (range != null)
+                            range = library.getBase().getAvailableRange(ra.getAccession(), range);
+                        if (range != null) {
+                            String key = ra.getAccession() + ":" + range;
+                            Integer id = segmentIds.get(key);
+                            if (id == null) {
+                                segmentIds.put(key, id = segments.size());
+                                segments.add(writeSequence(sequenceBytes, range.getLower(),
+                                        library.getBase().get(ra.getAccession(), range)));
+                            }
+                            segment = id;
+                        }
+                    } else if (allele instanceof AllelicVariant) {
+                        segment = segments.size();
+                        segments.add(writeSequence(sequenceBytes, 0, ((AllelicVariant) allele).sequence));
+                    } else
+                        throw new IllegalArgumentException("Library must be read from *.ll file: " + allele.getName());
+                    alleleSegments.put(allele, segment);
+                }
+
+        header.writeInt(segments.size());
+        for (Segment segment : segments) {
+            header.writeInt(segment.from);
+            header.writeInt(segment.length);
+            header.writeLong(segment.offset);
+        }
+
+        header.writeInt(loci.size());
+        for (LocusContainer container : loci) {
+            header.writeUTF(container.getLocus().getId());
+            header.writeInt(container.getSpeciesAndLocus().taxonId);
+            header.writeLong(container.getUUID().getLeastSignificantBits());
+            header.writeLong(container.getUUID().getMostSignificantBits());
+            writeMap(header, container.properties);
+            header.writeInt(container.getAllAlleles().size());
+            for (GeneType type : GeneType.values())
+                for (Allele allele : container.getAlleles(type)) {
+                    header.writeByte(type.id());
+                    header.writeUTF(allele.getName());
+                    header.writeByte((allele.isReference() ? REFERENCE_FLAG : 0)
+                            | (allele.isFunctional() ? FUNCTIONAL_FLAG : 0));
+                    header.writeInt(alleleSegments.get(allele));
+                    for (int point : allele.getPartitioning().points)
+                        points.writeInt(point);
+                }
+        }
+        header.flush();
+        points.flush();
+
+        long pointsOffset = MAGIC_BYTES.length + DIGEST_LENGTH + 16 + headerBytes.size(),
+                sequencesOffset = pointsOffset + pointsBytes.size();
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            output.write(MAGIC_BYTES);
+            output.write(sourceDigest);
+            output.writeLong(pointsOffset);
+            output.writeLong(sequencesOffset);
+            headerBytes.writeTo(output);
+            pointsBytes.writeTo(output);
+            sequenceBytes.writeTo(output);
+        }
+    }
+
+    /**
+     * Checks whether snapshot was compiled from the library file with specified digest.
+     *
+     * @param file         snapshot file
+     * @param sourceDigest digest of the library file (see {@link #digest(byte[])})
+     * @return false if snapshot was compiled from other (e.g. previous version of) library file or is not a snapshot
+     * @throws IOException if an I/O error occurs
+     */
+    public static boolean isCompiledFrom(File file, byte[] sourceDigest) throws IOException {
+        byte[] magic = new byte[MAGIC_BYTES.length], digest = new byte[DIGEST_LENGTH];
+        try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            input.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC_BYTES))
+                return false;
+            input.readFully(digest);
+        } catch (EOFException e) {
+            return false;
+        }
+        return Arrays.equals(digest, sourceDigest);
+    }
+
+    /**
+     * Maps snapshot file into memory and creates library backed by it.
+     *
+     * @param file snapshot file
+     * @return library
+     * @throws IOException if an I/O error occurs
+     */
+    public static LociLibrary read(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            // Mapping stays valid after the channel is closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+
+        byte[] magic = new byte[MAGIC_BYTES.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC_BYTES))
+            throw new IOException("Not a loci library snapshot: " + file);
+        buffer.position(buffer.position() + DIGEST_LENGTH);
+        long pointsOffset = buffer.getLong(), sequencesOffset = buffer.getLong();
+        if (pointsOffset > Integer.MAX_VALUE || sequencesOffset > buffer.capacity())
+            throw new IOException("Malformed snapshot: " + file);
+
+        byte[] headerBytes = new byte[(int) pointsOffset - buffer.position()];
+        buffer.get(headerBytes);
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBytes));
+
+        LociLibrary library = new LociLibrary();
+        readMap(header, library.properties);
+
+        int count = header.readInt();
+        for (int i = 0; i < count; ++i) {
+            String name = header.readUTF();
+            library.knownSpecies.put(name, header.readInt());
+        }
+
+        Segment[] segments = new Segment[header.readInt()];
+        for (int i = 0; i < segments.length; ++i)
+            segments[i] = new Segment(header.readInt(), header.readInt(), header.readLong());
+
+        int alleleIndex = 0;
+        count = header.readInt();
+        for (int i = 0; i < count; ++i) {
+            String locusId = header.readUTF();
+            Locus locus = Locus.fromId(locusId);
+            if (locus == null)
+                throw new IOException("Unknown locus: " + locusId);
+            int taxonId = header.readInt();
+            long lsb = header.readLong();
+            long msb = header.readLong();
+
+            EnumMap<GeneType, List<Gene>> genes = new EnumMap<>(GeneType.class);
+            EnumMap<GeneType, List<Allele>> alleles = new EnumMap<>(GeneType.class);
+            for (GeneType gt : GeneType.values()) {
+                genes.put(gt, new ArrayList<Gene>());
+                alleles.put(gt, new ArrayList<Allele>());
+            }
+            Map<String, Gene> nameToGenes = new HashMap<>();
+            Map<String, Allele> nameToAlleles = new HashMap<>();
+            List<Gene> allGenes = new ArrayList<>();
+            LocusContainer container = new LocusContainer(new UUID(msb, lsb), new SpeciesAndLocus(taxonId, locus),
+                    genes, alleles, Collections.unmodifiableMap(nameToGenes),
+                    Collections.unmodifiableMap(nameToAlleles), Collections.unmodifiableList(allGenes));
+            container.setLibrary(library);
+            readMap(header, container.properties);
+
+            int alleleCount = header.readInt();
+            for (int j = 0; j < alleleCount; ++j) {
+                GeneType type = GeneType.get(header.readByte());
+                if (type == null)
+                    throw new IOException("Unknown gene type.");
+                String alleleName = header.readUTF();
+                byte flags = header.readByte();
+                int segment = header.readInt();
+
+                String geneName = alleleName.substring(0, alleleName.lastIndexOf('*'));
+                Gene gene = nameToGenes.get(geneName);
+                if (gene == null) {
+                    List<Gene> gs = genes.get(type);
+                    gs.add(gene = new Gene(gs.size(), geneName, GeneGroup.get(locus, type), container));
+                    nameToGenes.put(geneName, gene);
+                    allGenes.add(gene);
+                }
+
+                Allele allele = new SnapshotAllele(gene, alleleName, (flags & FUNCTIONAL_FLAG) != 0,
+                        (flags & REFERENCE_FLAG) != 0, buffer,
+                        pointsOffset + 4L * BasicReferencePoint.TOTAL_NUMBER_OF_REFERENCE_POINTS * alleleIndex++,
+                        segment == -1 ? null : segments[segment].shift(sequencesOffset));
+                gene.alleles.add(allele);
+                alleles.get(type).add(allele);
+                if (nameToAlleles.put(alleleName, allele) != null)
+                    throw new IOException("Duplicate allele: " + alleleName);
+            }
+
+            for (Map.Entry<GeneType, List<Allele>> e : alleles.entrySet())
+                e.setValue(Collections.unmodifiableList(e.getValue()));
+            for (Map.Entry<GeneType, List<Gene>> e : genes.entrySet())
+                e.setValue(Collections.unmodifiableList(e.getValue()));
+
+            library.registerContainer(container);
+        }
+
+        return library;
+    }
+
+    private static Range definedRange(ReferencePoints points) {
+        int min = Integer.MAX_VALUE, max = -1;
+        for (int point : points.points)
+            if (point >= 0) {
+                min = Math.min(min, point);
+                max = Math.max(max, point);
+            }
+        return max == -1 ? null : new Range(min, max);
+    }
+
+    private static Segment writeSequence(ByteArrayOutputStream output, int from, NucleotideSequence sequence) {
+        Segment segment = new Segment(from, sequence.size(), output.size());
+        for (int i = 0; i < sequence.size(); i += 4) {
+            int b = 0;
+            for (int j = 0; j < 4 && i + j < sequence.size(); ++j)
+                b |= sequence.codeAt(i + j) << (2 * j);
+            output.write(b);
+        }
+        return segment;
+    }
+
+    private static void writeMap(DataOutputStream output, Map<String, String> map) throws IOException {
+        output.writeInt(map.size());
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            output.writeUTF(e.getKey());
+            output.writeUTF(e.getValue());
+        }
+    }
+
+    private static void readMap(DataInputStream input, Map<String, String> map) throws IOException {
+        int size = input.readInt();
+        for (int i = 0; i < size; ++i) {
+            String key = input.readUTF();
+            map.put(key, input.readUTF());
+        }
+    }
+
+    /**
+     * Packed nucleotide sequence covering positions {@code [from, from + length)} in coordinates of allele reference
+     * points, stored at {@code offset} of the sequences section (absolute file offset for segments of loaded snapshot).
+     */
+    static final class Segment {
+        final int from, length;
+        final long offset;
+
+        Segment(int from, int length, long offset) {
+            this.from = from;
+            this.length = length;
+            this.offset = offset;
+        }
+
+        Segment shift(long delta) {
+            return new Segment(from, length, offset + delta);
+        }
+
+        NucleotideSequence get(ByteBuffer buffer, Range range) {
+            int lower = range.getLower() - from, upper = range.getUpper() - from;
+            if (lower < 0 || upper > length)
+                return null;
+            char[] chars = new char[upper - lower];
+            for (int i = lower; i < upper; ++i) {
+                byte b = buffer.get((int) (offset + (i >>> 2)));
+                chars[i - lower] = NucleotideSequence.ALPHABET.symbolFromCode((byte) ((b >>> (2 * (i & 3))) & 3));
+            }
+            NucleotideSequence seq = new NucleotideSequence(new String(chars));
+            return range.isReverse() ? seq.getReverseComplement() : seq;
+        }
+    }
+}
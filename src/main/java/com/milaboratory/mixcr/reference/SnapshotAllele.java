@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.reference;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.sequence.NucleotideSequence;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Allele backed by memory-mapped {@link LociLibrarySnapshot}. Reference points and sequence are read from the
+ * snapshot on first access.
+ */
+final class SnapshotAllele extends Allele {
+    final boolean isReference;
+    final ByteBuffer buffer;
+    final long pointsOffset;
+    final LociLibrarySnapshot.Segment segment;
+    volatile ReferencePoints referencePoints;
+
+    SnapshotAllele(Gene gene, String name, boolean isFunctional, boolean isReference,
+                   ByteBuffer buffer, long pointsOffset, LociLibrarySnapshot.Segment segment) {
+        super(gene, name, isFunctional);
+        this.isReference = isReference;
+        this.buffer = buffer;
+        this.pointsOffset = pointsOffset;
+        this.segment = segment;
+    }
+
+    @Override
+    public boolean isReference() {
+        return isReference;
+    }
+
+    @Override
+    protected NucleotideSequence getSequence(Range range) {
+        if (segment == null)
+            return null;
+        return segment.get(buffer, range);
+    }
+
+    @Override
+    public ReferencePoints getPartitioning() {
+        ReferencePoints rp = referencePoints;
+        if (rp == null) {
+            int[] points = new int[BasicReferencePoint.TOTAL_NUMBER_OF_REFERENCE_POINTS];
+            for (int i = 0; i < points.length; ++i)
+                points[i] = buffer.getInt((int) pointsOffset + 4 * i);
+            referencePoints = rp = new ReferencePoints(points);
+        }
+        return rp;
+    }
+}
@@ -29,6 +29,7 @@
 package com.milaboratory.mixcr.reference.builder;
 
 import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.OutputPort;
 import com.milaboratory.core.Range;
 import com.milaboratory.core.alignment.Aligner;
 import com.milaboratory.core.alignment.Alignment;
@@ -45,7 +46,10 @@ import com.milaboratory.util.StringUtil;
 import gnu.trove.map.TObjectIntMap;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -60,6 +64,10 @@ import static com.milaboratory.mixcr.reference.builder.FastaLocusBuilderParamete
  */
 public class FastaLocusBuilder {
     public static final int LINE_WIDTH = 80;
+    /**
+     * Number of FASTA records parsed by a single task
+     */
+    static final int CHUNK_SIZE = 64;
 
     /**
      * Target locus
@@ -93,6 +101,10 @@ public class FastaLocusBuilder {
      * Determines whether builder should process alleles with non-standard names
      */
     private boolean allowNonStandardAlleleNames = false;
+    /**
+     * Number of threads used to parse records and to compile genes
+     */
+    private int threads = 1;
 
     public FastaLocusBuilder(Locus locus, FastaLocusBuilderParameters parameters) {
         if (locus == null || parameters == null)
@@ -126,6 +138,17 @@ public class FastaLocusBuilder {
         return this;
     }
 
+    /**
+     * Sets number of threads used to parse FASTA records and to compile genes. Messages and results do not depend on
+     * the number of threads.
+     */
+    public FastaLocusBuilder setThreads(int threads) {
+        if (threads <= 0)
+            throw new IllegalArgumentException();
+        this.threads = threads;
+        return this;
+    }
+
     private void errorOrException(String message) {
         if (exceptionOnError)
             throw new FastaLocusBuilderException(message);
@@ -164,115 +187,170 @@ public class FastaLocusBuilder {
     }
 
     public void importAllelesFromStream(InputStream stream) {
+        OutputPort<FastaReader.RawFastaRecord> records = new FastaReader<>(stream, null).asRawRecordsPort();
+
+        if (threads == 1) {
+            for (FastaReader.RawFastaRecord rec : CUtils.it(records))
+                addAllele(parseRecord(rec));
+            return;
+        }
+
+        // Records are parsed in parallel by chunks and added to genes in the order of input file
+        ExecutorService executor = createExecutor();
+        try {
+            ArrayDeque<Future<List<ParsedRecord>>> chunks = new ArrayDeque<>();
+            List<FastaReader.RawFastaRecord> chunk = new ArrayList<>(CHUNK_SIZE);
+            FastaReader.RawFastaRecord rec;
+            do {
+                rec = records.take();
+                if (rec != null)
+                    chunk.add(rec);
+                if (chunk.size() == CHUNK_SIZE || (rec == null && !chunk.isEmpty())) {
+                    final List<FastaReader.RawFastaRecord> toParse = chunk;
+                    chunks.add(executor.submit(new Callable<List<ParsedRecord>>() {
+                        @Override
+                        public List<ParsedRecord> call() {
+                            List<ParsedRecord> result = new ArrayList<>(toParse.size());
+                            for (FastaReader.RawFastaRecord r : toParse)
+                                result.add(parseRecord(r));
+                            return result;
+                        }
+                    }));
+                    chunk = new ArrayList<>(CHUNK_SIZE);
+                }
+                while (chunks.size() > (rec == null ? 0 : 2 * threads))
+                    for (ParsedRecord parsed : getResult(chunks.poll()))
+                        addAllele(parsed);
+            } while (rec != null);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Extracts all information about allele from FASTA record. Does not modify state of the builder, so may be called
+     * concurrently; messages are collected in the returned object.
+     */
+    private ParsedRecord parseRecord(FastaReader.RawFastaRecord rec) {
         // Saving in local variables for compactness of extraction code
         Pattern alleleNameExtractionPattern = parameters.getAlleleNameExtractionPattern();
         Pattern functionalGenePattern = parameters.getFunctionalAllelePattern();
         Pattern referenceAllelePattern = parameters.getReferenceAllelePattern();
         int[] referencePointPositions = parameters.getReferencePointPositions();
 
-        for (FastaReader.RawFastaRecord rec :
-                CUtils.it(new FastaReader<>(stream, null).asRawRecordsPort())) {
-            //Extracting allele name from header
-            Matcher matcher = alleleNameExtractionPattern.matcher(rec.description);
-            String alleleName;
-            if (matcher.find())
-                alleleName = matcher.group(1);
-            else {
-                String errorMessage = "Header does'n contain allele name pattern: " + rec.description;
-                errorOrException(errorMessage);
-                continue;
-            }
-
-            // Parsing allele name
-            matcher = ALLELE_NAME_PATTERN.matcher(alleleName);
-
-            String geneName;
-
-            // Checking
-            if (matcher.matches()) {
-                // Extracting gene name
-                geneName = matcher.group(GENE_NAME_GROUP);
-
-                // Checking locus decoded from allele name
-                if (!checkLocus(matcher.group(LOCUS_GROUP)))
-                    warning("Allele from different locus(?): " + alleleName);
+        MessageLog log = new MessageLog();
+
+        //Extracting allele name from header
+        Matcher matcher = alleleNameExtractionPattern.matcher(rec.description);
+        String alleleName;
+        if (matcher.find())
+            alleleName = matcher.group(1);
+        else {
+            String errorMessage = "Header does'n contain allele name pattern: " + rec.description;
+            log.errorOrException(errorMessage);
+            return new ParsedRecord(null, false, log);
+        }
 
-                // Checking gene type decoded from allele name
-                if (Character.toUpperCase(matcher.group(GENE_TYPE_LETTER_GROUP).charAt(0)) !=
-                        parameters.getGeneType().getLetter())
-                    warning("Allele of different gene type(?): " + alleleName);
+        // Parsing allele name
+        matcher = ALLELE_NAME_PATTERN.matcher(alleleName);
+
+        String geneName;
+
+        // Checking
+        if (matcher.matches()) {
+            // Extracting gene name
+            geneName = matcher.group(GENE_NAME_GROUP);
+
+            // Checking locus decoded from allele name
+            if (!checkLocus(matcher.group(LOCUS_GROUP)))
+                log.warning("Allele from different locus(?): " + alleleName);
+
+            // Checking gene type decoded from allele name
+            if (Character.toUpperCase(matcher.group(GENE_TYPE_LETTER_GROUP).charAt(0)) !=
+                    parameters.getGeneType().getLetter())
+                log.warning("Allele of different gene type(?): " + alleleName);
+        } else {
+            String errorMessage = "Allele name doesn't match standard pattern: " + alleleName;
+            if (!allowNonStandardAlleleNames) {
+                log.exception(errorMessage);
+                return new ParsedRecord(null, false, log);
             } else {
-                String errorMessage = "Allele name doesn't match standard pattern: " + alleleName;
-                if (!allowNonStandardAlleleNames)
-                    throw new FastaLocusBuilderException(errorMessage);
-                else {
-                    geneName = alleleName;
-                    alleleName += "*00";
-                    errorMessage += ". Changed to: " + alleleName;
-                    error(errorMessage);
-                }
+                geneName = alleleName;
+                alleleName += "*00";
+                errorMessage += ". Changed to: " + alleleName;
+                log.error(errorMessage);
             }
+        }
 
-            // Detecting whether allele is functional
-            boolean isFunctional = functionalGenePattern.matcher(rec.description).find();
+        // Detecting whether allele is functional
+        boolean isFunctional = functionalGenePattern.matcher(rec.description).find();
 
-            // Parsing sequence
-            StringWithMapping seqWithPositionMapping = StringWithMapping.removeSymbol(rec.sequence, parameters.getPaddingChar());
-            NucleotideSequence seq = new NucleotideSequence(seqWithPositionMapping.getModifiedString());
+        // Parsing sequence
+        StringWithMapping seqWithPositionMapping = StringWithMapping.removeSymbol(rec.sequence, parameters.getPaddingChar());
+        NucleotideSequence seq = new NucleotideSequence(seqWithPositionMapping.getModifiedString());
 
-            // If sequence contain wildcards, skip it
-            if (seq.containsWildcards()) {
-                warning("Skipping " + alleleName + " because it's sequence contains wildcards.");
-                continue;
-            }
+        // If sequence contain wildcards, skip it
+        if (seq.containsWildcards()) {
+            log.warning("Skipping " + alleleName + " because it's sequence contains wildcards.");
+            return new ParsedRecord(null, false, log);
+        }
 
-            // Calculating reference points
-            int[] referencePoints = new int[referencePointPositions.length];
-            for (int i = 0; i < referencePointPositions.length; i++)
-                referencePoints[i] = getPosition(seqWithPositionMapping, i);
+        // Calculating reference points
+        int[] referencePoints = new int[referencePointPositions.length];
+        for (int i = 0; i < referencePointPositions.length; i++)
+            referencePoints[i] = getPosition(seqWithPositionMapping, i);
 
-            boolean isFirst = false, isReference;
+        // Creating allele info (isReference flag is calculated when allele is added to gene)
+        AlleleInfo alleleInfo = new AlleleInfo(geneName, alleleName, seq, isFunctional,
+                false, referencePoints);
 
-            // Adding allele to corresponding gene
-            GeneInfo gene;
-            if ((gene = genes.get(geneName)) == null) {
-                // If gene doesn't exist - create it
-                genes.put(geneName, gene = new GeneInfo(geneName));
-                // This allele is first for this gene
-                isFirst = true;
-            }
+        // Checking conserved amino-acids:
+        checkAllele(alleleInfo, log);
 
-            // Calculating isReference flag
-            if (referenceAllelePattern == null)
-                isReference = isFirst;
-            else
-                isReference = referenceAllelePattern.matcher(rec.description).find();
+        return new ParsedRecord(alleleInfo,
+                referenceAllelePattern != null && referenceAllelePattern.matcher(rec.description).find(), log);
+    }
 
-            // Creating allele info
-            AlleleInfo alleleInfo = new AlleleInfo(geneName, alleleName, seq, isFunctional,
-                    isReference, referencePoints);
+    private void addAllele(ParsedRecord record) {
+        replay(record.log);
+        AlleleInfo alleleInfo = record.allele;
+        if (alleleInfo == null)
+            return;
+
+        boolean isFirst = false;
+
+        // Adding allele to corresponding gene
+        GeneInfo gene;
+        if ((gene = genes.get(alleleInfo.geneName)) == null) {
+            // If gene doesn't exist - create it
+            genes.put(alleleInfo.geneName, gene = new GeneInfo(alleleInfo.geneName));
+            // This allele is first for this gene
+            isFirst = true;
+        }
 
-            // Checking conserved amino-acids:
-            checkAllele(alleleInfo);
+        // Calculating isReference flag
+        if (parameters.getReferenceAllelePattern() == null)
+            alleleInfo.isReference = isFirst;
+        else
+            alleleInfo.isReference = record.matchesReferencePattern;
 
-            // Checking if this allele is unique
-            if (gene.alleles.containsKey(alleleName)) {
-                errorOrException("Duplicate records for allele " + alleleName);
-                continue;
-            }
+        // Checking if this allele is unique
+        if (gene.alleles.containsKey(alleleInfo.alleleName)) {
+            errorOrException("Duplicate records for allele " + alleleInfo.alleleName);
+            return;
+        }
 
-            // Adding allele to gene
-            gene.alleles.put(alleleName, alleleInfo);
+        // Adding allele to gene
+        gene.alleles.put(alleleInfo.alleleName, alleleInfo);
 
-            // Calculating severalReferenceAlleles flag
-            if (alleleInfo.isReference && gene.reference != null && gene.reference.isReference)
-                gene.severalReferenceAlleles = true;
+        // Calculating severalReferenceAlleles flag
+        if (alleleInfo.isReference && gene.reference != null && gene.reference.isReference)
+            gene.severalReferenceAlleles = true;
 
-            // If allele is first for tis gene, add it to reference slot
-            // Also reset this slot for first "reference" allele occurred
-            if (isFirst || (!gene.reference.isReference && alleleInfo.isReference))
-                gene.reference = alleleInfo;
-        }
+        // If allele is first for tis gene, add it to reference slot
+        // Also reset this slot for first "reference" allele occurred
+        if (isFirst || (!gene.reference.isReference && alleleInfo.isReference))
+            gene.reference = alleleInfo;
     }
 
     private int getPosition(StringWithMapping seqWithPositionMapping, int refPointIndex) {
@@ -309,11 +387,43 @@ public class FastaLocusBuilder {
     }
 
     public void compile() {
-        // Compiling all genes one by one
         List<String> toRemove = new ArrayList<>();
-        for (GeneInfo gene : genes.values())
-            if (!gene.compile())
-                toRemove.add(gene.geneName);
+        if (threads == 1) {
+            // Compiling all genes one by one
+            for (GeneInfo gene : genes.values()) {
+                MessageLog log = new MessageLog();
+                boolean compiled = gene.compile(log);
+                replay(log);
+                if (!compiled)
+                    toRemove.add(gene.geneName);
+            }
+        } else {
+            // Compiling genes in parallel, messages are printed in the same order as for sequential compilation
+            List<GeneInfo> geneList = new ArrayList<>(genes.values());
+            List<MessageLog> logs = new ArrayList<>(geneList.size());
+            List<Future<Boolean>> results = new ArrayList<>(geneList.size());
+            ExecutorService executor = createExecutor();
+            try {
+                for (final GeneInfo gene : geneList) {
+                    final MessageLog log = new MessageLog();
+                    logs.add(log);
+                    results.add(executor.submit(new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() {
+                            return gene.compile(log);
+                        }
+                    }));
+                }
+                for (int i = 0; i < geneList.size(); ++i) {
+                    boolean compiled = getResult(results.get(i));
+                    replay(logs.get(i));
+                    if (!compiled)
+                        toRemove.add(geneList.get(i).geneName);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
 
         // Removing genes that failed to compile
         for (String r : toRemove) {
@@ -450,6 +560,13 @@ public class FastaLocusBuilder {
     }
 
     public boolean checkAllele(AlleleInfo alleleInfo) {
+        MessageLog log = new MessageLog();
+        boolean result = checkAllele(alleleInfo, log);
+        replay(log);
+        return result;
+    }
+
+    private boolean checkAllele(AlleleInfo alleleInfo, MessageLog log) {
         if (!alleleInfo.isFunctional)
             return true;
 
@@ -459,12 +576,12 @@ public class FastaLocusBuilder {
                 throw new RuntimeException();
             int position = alleleInfo.referencePoints[index];
             if (position < 0 || alleleInfo.baseSequence.size() < position + 3) {
-                warning("absent conserved Cys in functional allele " + alleleInfo.alleleName);
+                log.warning("absent conserved Cys in functional allele " + alleleInfo.alleleName);
                 return false;
             }
             byte aa = GeneticCode.getAminoAcid(getTriplet(alleleInfo.baseSequence, position));
             if (aa != AminoAcidAlphabet.C) {
-                warning(AminoAcidSequence.ALPHABET.codeToSymbol(aa) + " instead of conserved Cys" +
+                log.warning(AminoAcidSequence.ALPHABET.codeToSymbol(aa) + " instead of conserved Cys" +
                         " in functional allele " + alleleInfo.alleleName);
                 return false;
             }
@@ -476,7 +593,9 @@ public class FastaLocusBuilder {
         for (GeneInfo gene : genes.values()) {
             for (AlleleInfo alleleInfo : gene.finalList) {
                 if (alleleInfo.isReference) {
-                    String accession = UUID.randomUUID().toString() + "-" + alleleInfo.alleleName;
+                    // Accession is derived from allele content to make output reproducible
+                    String accession = UUID.nameUUIDFromBytes((alleleInfo.alleleName + ":" + alleleInfo.baseSequence)
+                            .getBytes(StandardCharsets.UTF_8)).toString() + "-" + alleleInfo.alleleName;
                     writer.writeSequencePart(accession, 0, alleleInfo.baseSequence);
                     writer.writeAllele(parameters.getGeneType(), alleleInfo.alleleName, true,
                             alleleInfo.isFunctional, accession, alleleInfo.referencePoints, null, null, null);
@@ -488,6 +607,99 @@ public class FastaLocusBuilder {
         }
     }
 
+    private void replay(MessageLog log) {
+        for (Message message : log.messages)
+            switch (message.kind) {
+                case Message.WARNING:
+                    warning(message.text);
+                    break;
+                case Message.ERROR:
+                    error(message.text);
+                    break;
+                case Message.ERROR_OR_EXCEPTION:
+                    errorOrException(message.text);
+                    break;
+                default:
+                    throw new FastaLocusBuilderException(message.text);
+            }
+    }
+
+    private ExecutorService createExecutor() {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "FastaLocusBuilder-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Messages produced by a task running concurrently with other tasks; printed (or thrown) by the builder in the
+     * order of tasks.
+     */
+    private static final class MessageLog {
+        final List<Message> messages = new ArrayList<>();
+
+        void warning(String text) {
+            messages.add(new Message(Message.WARNING, text));
+        }
+
+        void error(String text) {
+            messages.add(new Message(Message.ERROR, text));
+        }
+
+        void errorOrException(String text) {
+            messages.add(new Message(Message.ERROR_OR_EXCEPTION, text));
+        }
+
+        void exception(String text) {
+            messages.add(new Message(Message.EXCEPTION, text));
+        }
+    }
+
+    private static final class Message {
+        static final int WARNING = 0, ERROR = 1, ERROR_OR_EXCEPTION = 2, EXCEPTION = 3;
+        final int kind;
+        final String text;
+
+        Message(int kind, String text) {
+            this.kind = kind;
+            this.text = text;
+        }
+    }
+
+    private static final class ParsedRecord {
+        /**
+         * Null if record was skipped
+         */
+        final AlleleInfo allele;
+        final boolean matchesReferencePattern;
+        final MessageLog log;
+
+        ParsedRecord(AlleleInfo allele, boolean matchesReferencePattern, MessageLog log) {
+            this.allele = allele;
+            this.matchesReferencePattern = matchesReferencePattern;
+            this.log = log;
+        }
+    }
+
     private static final class SeqPartitioning extends SequencePartitioning {
         final TObjectIntMap<ReferencePoint> refMapping;
         final int[] referencePoints;
@@ -522,18 +734,18 @@ public class FastaLocusBuilder {
             this.geneName = geneName;
         }
 
-        public boolean compile() {
+        public boolean compile(MessageLog log) {
             if (parameters.doAlignAlleles()) {
                 // Find reference allele
                 AlleleInfo reference = this.reference;
 
                 // Checks
                 if (!reference.isReference && !parameters.firstOccurredAlleleIsReference()) {
-                    errorOrException("No reference allele for gene " + geneName + ". Sipping.");
+                    log.errorOrException("No reference allele for gene " + geneName + ". Sipping.");
                     return false;
                 }
                 if (severalReferenceAlleles) {
-                    errorOrException("Several reference alleles for " + geneName + ". Sipping.");
+                    log.errorOrException("Several reference alleles for " + geneName + ". Sipping.");
                     return false;
                 }
 
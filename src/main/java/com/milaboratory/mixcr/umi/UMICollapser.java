@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.umi;
+
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.OutputPortCloseable;
+import com.milaboratory.core.io.sequence.PairedRead;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReadImpl;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.SequenceBuilder;
+import com.milaboratory.core.sequence.SequenceQualityBuilder;
+import gnu.trove.map.hash.TLongLongHashMap;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collapses reads with the same UMI into a single consensus read. Consensus reads are numbered consecutively from 0
+ * and keep description of the first read of the group. The number of collapsed reads is kept aside by read id until
+ * it is taken with {@link #takeMultiplicity(long)}, so it survives the aligner regardless of what the aligner does with
+ * read descriptions. Reads without UMI are passed as is.
+ */
+public final class UMICollapser implements OutputPortCloseable<SequenceRead> {
+    public static final byte MAX_QUALITY = 45;
+    public static final byte MIN_QUALITY = 2;
+    final UMIGrouper grouper;
+    /**
+     * Multiplicities (greater than 1) of produced reads that were not yet taken, guarded by itself
+     */
+    final TLongLongHashMap multiplicities = new TLongLongHashMap();
+    long id = 0, numberOfGroups = 0;
+
+    public UMICollapser(final OutputPort<? extends SequenceRead> input, final UMIExtractor extractor,
+                        int maxReadsInMemory) {
+        this.grouper = new UMIGrouper(new OutputPort<UMITaggedRead>() {
+            @Override
+            public UMITaggedRead take() {
+                SequenceRead read = input.take();
+                return read == null ? null : extractor.extract(read);
+            }
+        }, maxReadsInMemory);
+    }
+
+    @Override
+    public synchronized SequenceRead take() {
+        List<UMITaggedRead> group = grouper.take();
+        if (group == null)
+            return null;
+        ++numberOfGroups;
+        long id = this.id++;
+        UMITaggedRead first = group.get(0);
+        if (group.size() == 1)
+            return withId(first.read, id);
+        synchronized (multiplicities) {
+            multiplicities.put(id, group.size());
+        }
+        int numberOfReads = first.read.numberOfReads();
+        SingleRead[] reads = new SingleRead[numberOfReads];
+        NSequenceWithQuality[] mates = new NSequenceWithQuality[group.size()];
+        for (int i = 0; i < numberOfReads; ++i) {
+            for (int j = 0; j < mates.length; ++j)
+                mates[j] = group.get(j).read.getRead(i).getData();
+            reads[i] = new SingleReadImpl(id, consensus(mates), first.read.getRead(i).getDescription());
+        }
+        return numberOfReads == 1 ? reads[0] : new PairedRead(reads[0], reads[1]);
+    }
+
+    private static SequenceRead withId(SequenceRead read, long id) {
+        if (read instanceof PairedRead)
+            return new PairedRead(withId(read.getRead(0), id), withId(read.getRead(1), id));
+        return withId(read.getRead(0), id);
+    }
+
+    private static SingleRead withId(SingleRead read, long id) {
+        return new SingleReadImpl(id, read.getData(), read.getDescription());
+    }
+
+    /**
+     * Builds quality-weighted consensus of sequences starting at the same position. Each position gets the
+     * nucleotide with the highest sum of qualities, and quality equal to the difference between this sum and the sum
+     * of qualities of other nucleotides. Consensus is truncated to the length covered by at least half of sequences.
+     */
+    public static NSequenceWithQuality consensus(NSequenceWithQuality... sequences) {
+        int[] lengths = new int[sequences.length];
+        for (int i = 0; i < sequences.length; ++i)
+            lengths[i] = sequences[i].size();
+        Arrays.sort(lengths);
+        int length = lengths[(lengths.length - 1) / 2];
+
+        SequenceBuilder<NucleotideSequence> sequenceBuilder = NucleotideSequence.ALPHABET.createBuilder()
+                .ensureCapacity(length);
+        SequenceQualityBuilder qualityBuilder = new SequenceQualityBuilder().ensureCapacity(length);
+        long[] weights = new long[NucleotideSequence.ALPHABET.size()];
+        for (int position = 0; position < length; ++position) {
+            Arrays.fill(weights, 0);
+            long total = 0;
+            for (NSequenceWithQuality sequence : sequences) {
+                if (sequence.size() <= position)
+                    continue;
+                byte quality = sequence.getQuality().value(position);
+                weights[sequence.getSequence().codeAt(position)] += quality;
+                total += quality;
+            }
+            int best = 0;
+            for (int i = 1; i < weights.length; ++i)
+                if (weights[i] > weights[best])
+                    best = i;
+            long quality = 2 * weights[best] - total;
+            sequenceBuilder.append((byte) best);
+            qualityBuilder.append((byte) Math.max(MIN_QUALITY, Math.min(MAX_QUALITY, quality)));
+        }
+        return new NSequenceWithQuality(sequenceBuilder.createAndDestroy(), qualityBuilder.createAndDestroy());
+    }
+
+    /**
+     * Returns number of original reads collapsed into the read with given id (1 for reads without UMI or with unique
+     * UMI) and forgets it, so must be invoked exactly once for each produced read.
+     */
+    public long takeMultiplicity(long readId) {
+        long multiplicity;
+        synchronized (multiplicities) {
+            multiplicity = multiplicities.remove(readId);
+        }
+        return multiplicity == multiplicities.getNoEntryValue() ? 1 : multiplicity;
+    }
+
+    /**
+     * Returns number of input reads (all input is consumed on the first invocation of {@link #take()}).
+     */
+    public long getNumberOfReads() {
+        return grouper.getNumberOfReads();
+    }
+
+    /**
+     * Returns number of reads produced so far.
+     */
+    public synchronized long getNumberOfGroups() {
+        return numberOfGroups;
+    }
+
+    @Override
+    public void close() {
+        grouper.close();
+    }
+}
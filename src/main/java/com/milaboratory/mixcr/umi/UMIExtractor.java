@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.umi;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.io.sequence.PairedRead;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReadImpl;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts unique molecular identifier (UMI) from a read.
+ */
+public abstract class UMIExtractor {
+    /**
+     * Returns read tagged with UMI (UMI is {@code null} if it can't be extracted from the read).
+     */
+    public abstract UMITaggedRead extract(SequenceRead read);
+
+    /**
+     * Creates extractor taking UMI from description of the first read by the regular expression. If pattern contains
+     * a capturing group, UMI is the value of the first group, otherwise UMI is the whole match.
+     */
+    public static UMIExtractor fromDescription(String regex) {
+        return new DescriptionExtractor(Pattern.compile(regex));
+    }
+
+    /**
+     * Creates extractor taking first {@code length} nucleotides of the first read as UMI. UMI is trimmed from the
+     * read.
+     */
+    public static UMIExtractor fromSequencePrefix(int length) {
+        if (length <= 0)
+            throw new IllegalArgumentException();
+        return new PrefixExtractor(length);
+    }
+
+    private static final class DescriptionExtractor extends UMIExtractor {
+        final Pattern pattern;
+
+        DescriptionExtractor(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public UMITaggedRead extract(SequenceRead read) {
+            String description = read.getRead(0).getDescription();
+            if (description == null)
+                return new UMITaggedRead(null, read);
+            Matcher matcher = pattern.matcher(description);
+            if (!matcher.find())
+                return new UMITaggedRead(null, read);
+            return new UMITaggedRead(matcher.groupCount() == 0 ? matcher.group() : matcher.group(1), read);
+        }
+    }
+
+    private static final class PrefixExtractor extends UMIExtractor {
+        final int length;
+
+        PrefixExtractor(int length) {
+            this.length = length;
+        }
+
+        @Override
+        public UMITaggedRead extract(SequenceRead read) {
+            SingleRead r1 = read.getRead(0);
+            NSequenceWithQuality data = r1.getData();
+            if (data.size() <= length)
+                return new UMITaggedRead(null, read);
+            String umi = data.getSequence().getRange(0, length).toString();
+            SingleRead trimmed = new SingleReadImpl(r1.getId(), data.getRange(new Range(length, data.size())),
+                    r1.getDescription());
+            return new UMITaggedRead(umi, read instanceof PairedRead ?
+                    new PairedRead(trimmed, read.getRead(1)) : trimmed);
+        }
+    }
+}
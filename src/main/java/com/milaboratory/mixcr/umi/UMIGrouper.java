@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.umi;
+
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.OutputPortCloseable;
+import com.milaboratory.core.io.sequence.PairedRead;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReadImpl;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.mixcr.util.TempFileManager;
+import com.milaboratory.primitivio.PrimitivI;
+import com.milaboratory.primitivio.PrimitivO;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Groups reads by UMI using bounded amount of memory: reads are accumulated in chunks of at most
+ * {@code maxReadsInMemory} reads, each chunk is sorted by UMI and (if input does not fit into a single chunk) written
+ * to a temporary file; then sorted chunks are merged. Groups are returned in the order of UMIs, reads inside a group
+ * are in the order of input. Each read without UMI forms a separate group.
+ */
+public final class UMIGrouper implements OutputPortCloseable<List<UMITaggedRead>> {
+    final OutputPort<UMITaggedRead> input;
+    final int maxReadsInMemory;
+    final List<Run> runs = new ArrayList<>();
+    PriorityQueue<Run> queue;
+    long numberOfReads = 0;
+    boolean closed = false;
+
+    public UMIGrouper(OutputPort<UMITaggedRead> input, int maxReadsInMemory) {
+        if (maxReadsInMemory <= 0)
+            throw new IllegalArgumentException();
+        this.input = input;
+        this.maxReadsInMemory = maxReadsInMemory;
+    }
+
+    private void init() {
+        if (queue != null)
+            return;
+        List<UMITaggedRead> chunk = new ArrayList<>();
+        UMITaggedRead read;
+        boolean spill = false;
+        while ((read = input.take()) != null) {
+            chunk.add(read);
+            ++numberOfReads;
+            if (chunk.size() == maxReadsInMemory) {
+                Collections.sort(chunk, UMITaggedRead.COMPARATOR);
+                runs.add(new FileRun(chunk));
+                chunk.clear();
+                spill = true;
+            }
+        }
+        if (!chunk.isEmpty()) {
+            Collections.sort(chunk, UMITaggedRead.COMPARATOR);
+            runs.add(spill ? new FileRun(chunk) : new MemoryRun(chunk));
+        }
+        queue = new PriorityQueue<>(Math.max(1, runs.size()), RUN_COMPARATOR);
+        for (Run run : runs)
+            if (run.advance())
+                queue.add(run);
+    }
+
+    /**
+     * Returns number of reads consumed from input (all reads are consumed on the first invocation of {@link #take()}).
+     */
+    public synchronized long getNumberOfReads() {
+        return numberOfReads;
+    }
+
+    /**
+     * Returns number of chunks written to disk.
+     */
+    public synchronized int getNumberOfSpilledChunks() {
+        int result = 0;
+        for (Run run : runs)
+            if (run instanceof FileRun)
+                ++result;
+        return result;
+    }
+
+    @Override
+    public synchronized List<UMITaggedRead> take() {
+        if (closed)
+            return null;
+        init();
+        Run run = queue.poll();
+        if (run == null) {
+            close();
+            return null;
+        }
+        List<UMITaggedRead> group = new ArrayList<>();
+        UMITaggedRead first = run.current;
+        while (run != null) {
+            group.add(run.current);
+            if (run.advance())
+                queue.add(run);
+            if (first.umi == null)
+                break;
+            run = queue.peek();
+            if (run == null || !first.umi.equals(run.current.umi))
+                break;
+            queue.poll();
+        }
+        return group;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        for (Run run : runs)
+            run.close();
+    }
+
+    static final Comparator<Run> RUN_COMPARATOR = new Comparator<Run>() {
+        @Override
+        public int compare(Run o1, Run o2) {
+            return UMITaggedRead.COMPARATOR.compare(o1.current, o2.current);
+        }
+    };
+
+    private static abstract class Run implements AutoCloseable {
+        UMITaggedRead current;
+
+        /**
+         * Moves to the next read of the run, returns false if run is exhausted.
+         */
+        abstract boolean advance();
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class MemoryRun extends Run {
+        final List<UMITaggedRead> reads;
+        int position = 0;
+
+        MemoryRun(List<UMITaggedRead> reads) {
+            this.reads = reads;
+        }
+
+        @Override
+        boolean advance() {
+            if (position == reads.size()) {
+                current = null;
+                return false;
+            }
+            current = reads.get(position);
+            reads.set(position++, null);
+            return true;
+        }
+    }
+
+    private static final class FileRun extends Run {
+        final File file;
+        final int size;
+        PrimitivI input;
+        int position = 0;
+
+        FileRun(List<UMITaggedRead> reads) {
+            this.file = TempFileManager.getTempFile();
+            this.size = reads.size();
+            PrimitivO output;
+            try {
+                output = new PrimitivO(new BufferedOutputStream(new FileOutputStream(file), 65536));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            try {
+                for (UMITaggedRead read : reads)
+                    write(output, read);
+            } finally {
+                output.close();
+            }
+        }
+
+        @Override
+        boolean advance() {
+            if (position == size) {
+                current = null;
+                close();
+                return false;
+            }
+            try {
+                if (input == null)
+                    input = new PrimitivI(new BufferedInputStream(new FileInputStream(file), 65536));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            current = read(input);
+            ++position;
+            return true;
+        }
+
+        @Override
+        public void close() {
+            if (input != null) {
+                input.close();
+                input = null;
+            }
+            file.delete();
+        }
+    }
+
+    static void write(PrimitivO output, UMITaggedRead read) {
+        output.writeByte(read.umi == null ? 0 : 1);
+        if (read.umi != null)
+            output.writeUTF(read.umi);
+        output.writeLong(read.read.getId());
+        output.writeByte(read.read.numberOfReads());
+        for (int i = 0; i < read.read.numberOfReads(); ++i) {
+            output.writeObject(read.read.getRead(i).getData());
+            output.writeObject(read.read.getRead(i).getDescription());
+        }
+    }
+
+    static UMITaggedRead read(PrimitivI input) {
+        String umi = input.readByte() == 0 ? null : input.readUTF();
+        long id = input.readLong();
+        int numberOfReads = input.readByte();
+        SingleRead[] reads = new SingleRead[numberOfReads];
+        for (int i = 0; i < numberOfReads; ++i)
+            reads[i] = new SingleReadImpl(id, input.readObject(NSequenceWithQuality.class),
+                    input.readObject(String.class));
+        return new UMITaggedRead(umi, numberOfReads == 1 ? reads[0] : new PairedRead(reads[0], reads[1]));
+    }
+}
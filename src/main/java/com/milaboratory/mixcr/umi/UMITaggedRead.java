@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.umi;
+
+import com.milaboratory.core.io.sequence.SequenceRead;
+
+import java.util.Comparator;
+
+/**
+ * Read together with its unique molecular identifier.
+ */
+public final class UMITaggedRead {
+    /**
+     * Orders reads by UMI (reads without UMI first) and then by read id.
+     */
+    static final Comparator<UMITaggedRead> COMPARATOR = new Comparator<UMITaggedRead>() {
+        @Override
+        public int compare(UMITaggedRead o1, UMITaggedRead o2) {
+            if (o1.umi == null || o2.umi == null) {
+                if (o1.umi != o2.umi)
+                    return o1.umi == null ? -1 : 1;
+            } else {
+                int c = o1.umi.compareTo(o2.umi);
+                if (c != 0)
+                    return c;
+            }
+            return Long.compare(o1.read.getId(), o2.read.getId());
+        }
+    };
+
+    /**
+     * UMI or {@code null} if read has no UMI
+     */
+    public final String umi;
+    public final SequenceRead read;
+
+    public UMITaggedRead(String umi, SequenceRead read) {
+        this.umi = umi;
+        this.read = read;
+    }
+}
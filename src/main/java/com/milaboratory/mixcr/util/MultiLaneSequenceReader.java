@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import com.google.common.util.concurrent.Futures;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SequenceReaderCloseable;
+import com.milaboratory.util.CanReportProgress;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Reads several inputs (e.g. lanes of one sample) as a single stream of reads. Inputs are read concurrently by
+ * separate threads (each thread reads ahead a bounded number of reads), and chunks of {@link #CHUNK_SIZE} reads are
+ * taken from the inputs in turn, so all inputs are read simultaneously. Read ids are assigned sequentially in the order
+ * reads are returned. Output depends only on the content of inputs (not on the timing of lane threads).
+ */
+public final class MultiLaneSequenceReader implements SequenceReaderCloseable<SequenceRead>, CanReportProgress {
+    /**
+     * Number of reads in one chunk passed from lane thread to consumer
+     */
+    static final int CHUNK_SIZE = 1024;
+    /**
+     * Maximal number of chunks read ahead by each lane thread
+     */
+    static final int BUFFER_CHUNKS = 4;
+    private static final Future<SequenceRead[]> END = Futures.immediateFuture(null);
+
+    final List<Lane> lanes = new ArrayList<>();
+    /**
+     * Lane to take the next chunk from
+     */
+    int currentLane = 0;
+    int activeLanes;
+    SequenceRead[] chunk = new SequenceRead[0];
+    int position = 0;
+    long numberOfReads = 0;
+    volatile boolean finished = false;
+
+    public MultiLaneSequenceReader(List<? extends SequenceReaderCloseable<? extends SequenceRead>> readers) {
+        if (readers.isEmpty())
+            throw new IllegalArgumentException();
+        for (int i = 0; i < readers.size(); ++i)
+            lanes.add(new Lane(readers.get(i), i));
+        activeLanes = lanes.size();
+        for (Lane lane : lanes)
+            lane.thread.start();
+    }
+
+    @Override
+    public synchronized SequenceRead take() {
+        while (position == chunk.length) {
+            if (finished)
+                return null;
+            while (lanes.get(currentLane).done)
+                currentLane = (currentLane + 1) % lanes.size();
+            Lane lane = lanes.get(currentLane);
+            SequenceRead[] c;
+            try {
+                c = lane.chunks.take().get();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error reading input " + (currentLane + 1) + ".", e.getCause());
+            }
+            if (c == null) {
+                lane.done = true;
+                if (--activeLanes == 0)
+                    finished = true;
+                continue;
+            }
+            currentLane = (currentLane + 1) % lanes.size();
+            chunk = c;
+            position = 0;
+        }
+        SequenceRead read = chunk[position++];
+        long id = numberOfReads++;
+        return read.getId() == id ? read : ReadsSubsampler.withId(read, id);
+    }
+
+    @Override
+    public synchronized long getNumberOfReads() {
+        return numberOfReads;
+    }
+
+    @Override
+    public double getProgress() {
+        double progress = 0;
+        for (Lane lane : lanes)
+            if (lane.done || finished)
+                progress += 1;
+            else if (lane.reader instanceof CanReportProgress)
+                progress += ((CanReportProgress) lane.reader).getProgress();
+        return progress / lanes.size();
+    }
+
+    @Override
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public void close() {
+        RuntimeException error = null;
+        for (Lane lane : lanes) {
+            lane.closed = true;
+            lane.thread.interrupt();
+            lane.chunks.clear();
+            try {
+                lane.reader.close();
+            } catch (RuntimeException e) {
+                error = e;
+            }
+        }
+        if (error != null)
+            throw error;
+    }
+
+    private static final class Lane implements Runnable {
+        final SequenceReaderCloseable<? extends SequenceRead> reader;
+        final BlockingQueue<Future<SequenceRead[]>> chunks = new ArrayBlockingQueue<>(BUFFER_CHUNKS);
+        final Thread thread;
+        volatile boolean closed = false;
+        /**
+         * All reads of the lane were taken by consumer
+         */
+        volatile boolean done = false;
+
+        Lane(SequenceReaderCloseable<? extends SequenceRead> reader, int index) {
+            this.reader = reader;
+            this.thread = new Thread(this, "Lane-" + (index + 1));
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                try {
+                    List<SequenceRead> chunk = new ArrayList<>(CHUNK_SIZE);
+                    SequenceRead read;
+                    while (!closed) {
+                        read = reader.take();
+                        if (read != null)
+                            chunk.add(read);
+                        if (chunk.size() == CHUNK_SIZE || (read == null && !chunk.isEmpty())) {
+                            chunks.put(Futures.immediateFuture(chunk.toArray(new SequenceRead[chunk.size()])));
+                            chunk.clear();
+                        }
+                        if (read == null)
+                            break;
+                    }
+                    chunks.put(END);
+                } catch (RuntimeException e) {
+                    chunks.put(Futures.<SequenceRead[]>immediateFailedFuture(e));
+                }
+            } catch (InterruptedException e) {
+                // Closed
+            }
+        }
+    }
+}
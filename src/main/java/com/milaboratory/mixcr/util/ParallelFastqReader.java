@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import cc.redberry.pipe.CUtils;
+import com.google.common.util.concurrent.Futures;
+import com.milaboratory.core.io.sequence.PairedRead;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SequenceReaderCloseable;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReadImpl;
+import com.milaboratory.core.io.sequence.fastq.SingleFastqReader;
+import com.milaboratory.util.CanReportProgress;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multi-threaded reader of single- or paired-end FASTQ files (optionally gzip-compressed). Decompression is performed
+ * by {@link ParallelGzipInputStream}; decompressed data is split into chunks of whole records by a separate thread
+ * and chunks are parsed in parallel. Reads are returned in the order of input files with sequential ids starting
+ * from 0.
+ */
+public final class ParallelFastqReader implements SequenceReaderCloseable<SequenceRead>, CanReportProgress {
+    /**
+     * Number of records in one chunk
+     */
+    static final int CHUNK_SIZE = 1024;
+    private static final Future<SequenceRead[]> END = Futures.immediateFuture(null);
+
+    final ExecutorService executor;
+    final ParallelGzipInputStream[] inputs;
+    final boolean replaceWildcards;
+    final BlockingQueue<Future<SequenceRead[]>> chunks;
+    final Thread splitter;
+    volatile boolean closed = false, finished = false;
+    SequenceRead[] chunk = new SequenceRead[0];
+    int position = 0;
+    long numberOfReads = 0;
+
+    /**
+     * @param threads          number of threads used for decompression and parsing
+     * @param replaceWildcards same as for {@link SingleFastqReader}
+     * @param files            one (single-end) or two (paired-end) files
+     */
+    public ParallelFastqReader(int threads, boolean replaceWildcards, String... files) throws IOException {
+        if (files.length != 1 && files.length != 2)
+            throw new IllegalArgumentException();
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ParallelFastqReader-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.replaceWildcards = replaceWildcards;
+        this.chunks = new ArrayBlockingQueue<>(4 * threads);
+        this.inputs = new ParallelGzipInputStream[files.length];
+        try {
+            for (int i = 0; i < files.length; ++i)
+                inputs[i] = new ParallelGzipInputStream(new File(files[i]), executor, 4 * threads);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        this.splitter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    split();
+                    put(END);
+                } catch (InterruptedException e) {
+                    // Closed
+                } catch (Throwable e) {
+                    try {
+                        put(Futures.<SequenceRead[]>immediateFailedFuture(e));
+                    } catch (InterruptedException e1) {
+                        // Closed
+                    }
+                }
+            }
+        }, "ParallelFastqReader");
+        this.splitter.setDaemon(true);
+        this.splitter.start();
+    }
+
+    private void put(Future<SequenceRead[]> chunk) throws InterruptedException {
+        if (!closed)
+            chunks.put(chunk);
+    }
+
+    private void split() throws IOException, InterruptedException {
+        RecordsSplitter[] splitters = new RecordsSplitter[inputs.length];
+        for (int i = 0; i < inputs.length; ++i)
+            splitters[i] = new RecordsSplitter(inputs[i]);
+        long firstId = 0;
+        while (!closed) {
+            final byte[][] data = new byte[inputs.length][];
+            int records = -1;
+            for (int i = 0; i < inputs.length; ++i) {
+                data[i] = splitters[i].next();
+                int r = data[i] == null ? 0 : splitters[i].lastRecords;
+                if (records != -1 && records != r)
+                    throw new IOException("Different number of reads in paired-end files.");
+                records = r;
+            }
+            if (records == 0)
+                return;
+            final long id = firstId;
+            final int count = records;
+            put(executor.submit(new Callable<SequenceRead[]>() {
+                @Override
+                public SequenceRead[] call() throws Exception {
+                    return parse(data, id, count);
+                }
+            }));
+            firstId += records;
+        }
+    }
+
+    private SequenceRead[] parse(byte[][] data, long firstId, int count) throws IOException {
+        SequenceRead[] result = new SequenceRead[count];
+        SingleRead[][] reads = new SingleRead[data.length][];
+        for (int i = 0; i < data.length; ++i) {
+            reads[i] = new SingleRead[count];
+            int j = 0;
+            try (SingleFastqReader reader = new SingleFastqReader(new ByteArrayInputStream(data[i]), replaceWildcards)) {
+                for (SingleRead read : CUtils.it(reader)) {
+                    if (j == count)
+                        throw new IOException("Wrong FASTQ format.");
+                    reads[i][j] = new SingleReadImpl(firstId + j, read.getData(), read.getDescription());
+                    ++j;
+                }
+            }
+            if (j != count)
+                throw new IOException("Wrong FASTQ format.");
+        }
+        for (int j = 0; j < count; ++j)
+            result[j] = data.length == 1 ? reads[0][j] : new PairedRead(reads[0][j], reads[1][j]);
+        return result;
+    }
+
+    @Override
+    public synchronized SequenceRead take() {
+        while (position == chunk.length) {
+            if (finished)
+                return null;
+            try {
+                SequenceRead[] c = chunks.take().get();
+                if (c == null) {
+                    finished = true;
+                    return null;
+                }
+                chunk = c;
+                position = 0;
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        ++numberOfReads;
+        return chunk[position++];
+    }
+
+    @Override
+    public synchronized long getNumberOfReads() {
+        return numberOfReads;
+    }
+
+    @Override
+    public double getProgress() {
+        long size = inputs[0].getFileSize();
+        return size == 0 ? 1.0 : Math.min(1.0, 1.0 * inputs[0].getCompressedBytesRead() / size);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (splitter != null)
+            splitter.interrupt();
+        chunks.clear();
+        for (ParallelGzipInputStream input : inputs)
+            if (input != null)
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Splits stream into chunks of whole FASTQ records (four lines each).
+     */
+    static final class RecordsSplitter {
+        final InputStream is;
+        final byte[] buffer = new byte[1 << 16];
+        int position = 0, limit = 0;
+        int lastRecords;
+
+        RecordsSplitter(InputStream is) {
+            this.is = is;
+        }
+
+        /**
+         * Returns next chunk of at most {@link #CHUNK_SIZE} records or null at the end of stream; number of records
+         * in returned chunk is stored in {@link #lastRecords}.
+         */
+        byte[] next() throws IOException {
+            ByteArrayOutputStream chunk = new ByteArrayOutputStream(CHUNK_SIZE * 256);
+            int lines = 0, target = 4 * CHUNK_SIZE;
+            // Empty lines (e.g. at the end of file) are not counted
+            boolean lineStarted = false;
+            while (lines < target) {
+                if (position == limit) {
+                    limit = is.read(buffer);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        break;
+                    }
+                }
+                int i = position;
+                for (; i < limit && lines < target; ++i)
+                    if (buffer[i] == '\n') {
+                        if (lineStarted)
+                            ++lines;
+                        lineStarted = false;
+                    } else if (buffer[i] != '\r')
+                        lineStarted = true;
+                chunk.write(buffer, position, i - position);
+                position = i;
+            }
+            // Last line without line break
+            if (lineStarted)
+                ++lines;
+            lastRecords = (lines + 3) / 4;
+            return lastRecords == 0 ? null : chunk.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import com.google.common.util.concurrent.Futures;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Input stream decompressing file in background. For BGZF files (gzip members with block size in extra field, e.g.
+ * produced by bgzip) blocks are inflated in parallel by the given executor; other gzip files (single- or
+ * multi-member) are inflated by a separate thread, ahead of the consumer; uncompressed files are read ahead by a
+ * separate thread.
+ *
+ * <p>Only BGZF input is inflated in parallel: boundaries of members of ordinary gzip files are not stored and can't be
+ * reliably found without inflating the data (gzip header bytes may occur inside of compressed data), and a single
+ * deflate stream can't be split at all.</p>
+ */
+public final class ParallelGzipInputStream extends InputStream {
+    /**
+     * Size of blocks produced for uncompressed files and for gzip files without block size information
+     */
+    static final int BLOCK_SIZE = 1 << 20;
+    private static final Future<byte[]> END = Futures.immediateFuture(null);
+
+    final File file;
+    final AtomicLong compressedBytesRead = new AtomicLong();
+    final BlockingQueue<Future<byte[]>> blocks;
+    final Thread reader;
+    volatile boolean closed = false;
+    byte[] block = new byte[0];
+    int position = 0;
+    boolean finished = false;
+
+    /**
+     * @param file     file to read
+     * @param executor executor used to inflate blocks of BGZF files
+     * @param depth    maximal number of blocks read ahead
+     */
+    public ParallelGzipInputStream(File file, final ExecutorService executor, int depth) throws IOException {
+        this.file = file;
+        this.blocks = new ArrayBlockingQueue<>(depth);
+        final InputStream raw = new CountingStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        raw.mark(1 << 15);
+        final boolean gzip, bgzf;
+        try {
+            gzip = raw.read() == 0x1f && raw.read() == 0x8b;
+            raw.reset();
+            bgzf = gzip && readBgzfBlock(raw, true) != null;
+            raw.reset();
+        } catch (IOException e) {
+            raw.close();
+            throw e;
+        }
+        this.reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (InputStream is = raw) {
+                    if (bgzf)
+                        readBgzf(is, executor);
+                    else
+                        readStream(gzip ? new GZIPInputStream(is, 1 << 16) : is);
+                    put(END);
+                } catch (InterruptedException e) {
+                    // Closed
+                } catch (Throwable e) {
+                    try {
+                        put(Futures.<byte[]>immediateFailedFuture(e));
+                    } catch (InterruptedException e1) {
+                        // Closed
+                    }
+                }
+            }
+        }, "ParallelGzipInputStream");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * Returns number of bytes read from the underlying file.
+     */
+    public long getCompressedBytesRead() {
+        return compressedBytesRead.get();
+    }
+
+    public long getFileSize() {
+        return file.length();
+    }
+
+    private void put(Future<byte[]> block) throws InterruptedException {
+        if (!closed)
+            blocks.put(block);
+    }
+
+    private void readStream(InputStream is) throws IOException, InterruptedException {
+        while (!closed) {
+            byte[] buffer = new byte[BLOCK_SIZE];
+            int size = 0, read;
+            while (size < buffer.length && (read = is.read(buffer, size, buffer.length - size)) >= 0)
+                size += read;
+            if (size == 0)
+                return;
+            put(Futures.immediateFuture(size == buffer.length ? buffer : copyOf(buffer, size)));
+        }
+    }
+
+    private void readBgzf(InputStream is, ExecutorService executor) throws IOException, InterruptedException {
+        byte[] member;
+        while (!closed && (member = readBgzfBlock(is, false)) != null) {
+            final byte[] m = member;
+            put(executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return inflate(m);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Reads whole BGZF block (gzip member) or returns null at the end of stream or (if {@code test} is true) if
+     * the member has no block size field.
+     */
+    static byte[] readBgzfBlock(InputStream is, boolean test) throws IOException {
+        byte[] header = new byte[12];
+        int read = readFully(is, header, 0, header.length);
+        if (read == 0)
+            return null;
+        if (read != header.length || (header[0] & 0xFF) != 0x1f || (header[1] & 0xFF) != 0x8b
+                || header[2] != 8 || (header[3] & 4) == 0) {
+            if (test)
+                return null;
+            throw new IOException("Not a BGZF block.");
+        }
+        int xLength = (header[10] & 0xFF) | (header[11] & 0xFF) << 8;
+        if (test && xLength > 1024)
+            return null;
+        byte[] extra = new byte[xLength];
+        if (readFully(is, extra, 0, xLength) != xLength)
+            throw new EOFException();
+        int blockSize = -1;
+        for (int i = 0; i + 4 <= xLength; ) {
+            int length = (extra[i + 2] & 0xFF) | (extra[i + 3] & 0xFF) << 8;
+            if (extra[i] == 'B' && extra[i + 1] == 'C' && length == 2 && i + 6 <= xLength) {
+                blockSize = ((extra[i + 4] & 0xFF) | (extra[i + 5] & 0xFF) << 8) + 1;
+                break;
+            }
+            i += 4 + length;
+        }
+        if (blockSize == -1) {
+            if (test)
+                return null;
+            throw new IOException("Not a BGZF block.");
+        }
+        if (test)
+            return header;
+        byte[] block = new byte[blockSize];
+        System.arraycopy(header, 0, block, 0, header.length);
+        System.arraycopy(extra, 0, block, header.length, xLength);
+        int offset = header.length + xLength;
+        if (readFully(is, block, offset, blockSize - offset) != blockSize - offset)
+            throw new EOFException();
+        return block;
+    }
+
+    static byte[] inflate(byte[] block) throws IOException {
+        int xLength = (block[10] & 0xFF) | (block[11] & 0xFF) << 8;
+        int dataOffset = 12 + xLength, dataLength = block.length - dataOffset - 8;
+        int size = (block[block.length - 4] & 0xFF) | (block[block.length - 3] & 0xFF) << 8
+                | (block[block.length - 2] & 0xFF) << 16 | (block[block.length - 1] & 0xFF) << 24;
+        byte[] result = new byte[size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(block, dataOffset, dataLength);
+            int inflated = 0;
+            while (inflated < size) {
+                int r = inflater.inflate(result, inflated, size - inflated);
+                if (r == 0 && (inflater.finished() || inflater.needsInput()))
+                    throw new IOException("Corrupted BGZF block.");
+                inflated += r;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    private static int readFully(InputStream is, byte[] buffer, int offset, int length) throws IOException {
+        int total = 0, read;
+        while (total < length && (read = is.read(buffer, offset + total, length - total)) >= 0)
+            total += read;
+        return total;
+    }
+
+    private static byte[] copyOf(byte[] array, int size) {
+        byte[] result = new byte[size];
+        System.arraycopy(array, 0, result, 0, size);
+        return result;
+    }
+
+    private boolean nextBlock() throws IOException {
+        while (!finished && position == block.length) {
+            try {
+                byte[] b = blocks.take().get();
+                if (b == null)
+                    finished = true;
+                else {
+                    block = b;
+                    position = 0;
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                throw new IOException(e.getCause());
+            }
+        }
+        return !finished;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlock())
+            return -1;
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (!nextBlock())
+            return -1;
+        int size = Math.min(len, block.length - position);
+        System.arraycopy(block, position, b, off, size);
+        position += size;
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        reader.interrupt();
+        blocks.clear();
+    }
+
+    private final class CountingStream extends FilterInputStream {
+        long mark = 0;
+
+        CountingStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                compressedBytesRead.incrementAndGet();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0)
+                compressedBytesRead.addAndGet(read);
+            return read;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            super.mark(readlimit);
+            mark = compressedBytesRead.get();
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            super.reset();
+            compressedBytesRead.set(mark);
+        }
+    }
+}
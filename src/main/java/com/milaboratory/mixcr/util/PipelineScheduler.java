@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.Processor;
+import cc.redberry.pipe.VoidProcessor;
+import com.milaboratory.mixcr.cli.ReportHelper;
+import com.milaboratory.mixcr.cli.ReportWriter;
+import com.milaboratory.mixcr.cli.Util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adjusts chunk size and queue depth of a "read - buffer - process in parallel" pipeline at runtime.
+ *
+ * <p>Chunk size is chosen so that processing of a single chunk by a single thread takes about {@link
+ * #TARGET_CHUNK_NANOS} (large chunks for cheap items, small chunks for expensive ones). Queue depth is increased when
+ * processing threads wait on an empty queue while the producer is blocked by a full one (bursty input), and decreased
+ * when the queue stays nearly full (producer outruns processing, so buffered items only waste memory). Total number of
+ * buffered items is additionally bounded by {@link #MAX_BUFFERED_ITEMS}.</p>
+ *
+ * <p>Usage: {@code unchunked(new ParallelProcessor(buffered(chunked(input)), chunked(processor), threads))}. One
+ * instance serves one pipeline; measurements and chosen values can be written to report.</p>
+ */
+public final class PipelineScheduler implements ReportWriter {
+    /**
+     * Target time of processing of a single chunk by a single thread
+     */
+    public static final long TARGET_CHUNK_NANOS = 2000000L;
+    /**
+     * Minimal time between two adjustments of parameters
+     */
+    public static final long ADJUSTMENT_INTERVAL_NANOS = 100000000L;
+    /**
+     * Upper bound for {@code queueDepth * chunkSize}
+     */
+    public static final int MAX_BUFFERED_ITEMS = 1 << 16;
+
+    final int minChunkSize, maxChunkSize, minQueueDepth, maxQueueDepth;
+    volatile int chunkSize, queueDepth;
+    volatile boolean chunking = false;
+
+    // Range of chosen values (guarded by this)
+    int chunkSizeLo, chunkSizeHi, queueDepthLo, queueDepthHi;
+
+    // Measurements
+    final AtomicLong readItems = new AtomicLong(), readNanos = new AtomicLong(),
+            processedItems = new AtomicLong(), processingNanos = new AtomicLong(),
+            takes = new AtomicLong(), emptyTakes = new AtomicLong(), fullPuts = new AtomicLong(),
+            occupancySum = new AtomicLong(), depthSum = new AtomicLong();
+
+    // Measurements at the moment of last adjustment (guarded by this)
+    long lastProcessedItems, lastProcessingNanos, lastTakes, lastEmptyTakes, lastFullPuts,
+            lastOccupancySum, lastDepthSum;
+    volatile long nextAdjustment = System.nanoTime() + ADJUSTMENT_INTERVAL_NANOS;
+
+    /**
+     * Creates scheduler for a chunked pipeline with specified number of processing threads.
+     *
+     * @param threads number of processing threads
+     */
+    public PipelineScheduler(int threads) {
+        this(64, 1, 4096, Math.max(16, threads), threads, 64 * threads);
+    }
+
+    public PipelineScheduler(int chunkSize, int minChunkSize, int maxChunkSize,
+                             int queueDepth, int minQueueDepth, int maxQueueDepth) {
+        if (minChunkSize <= 0 || minChunkSize > chunkSize || chunkSize > maxChunkSize ||
+                minQueueDepth <= 0 || minQueueDepth > queueDepth || queueDepth > maxQueueDepth)
+            throw new IllegalArgumentException();
+        this.minChunkSize = minChunkSize;
+        this.maxChunkSize = maxChunkSize;
+        this.minQueueDepth = minQueueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.chunkSize = chunkSizeLo = chunkSizeHi = chunkSize;
+        this.queueDepth = queueDepthLo = queueDepthHi = queueDepth;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Returns throughput of input port, items per second of time spent in reading.
+     *
+     * @return throughput of input port
+     */
+    public double getInputThroughput() {
+        long nanos = readNanos.get();
+        return nanos == 0 ? Double.NaN : 1E9 * readItems.get() / nanos;
+    }
+
+    /**
+     * Returns throughput of processing stage, items per second per thread.
+     *
+     * @return throughput of processing stage
+     */
+    public double getProcessingThroughput() {
+        long nanos = processingNanos.get();
+        return nanos == 0 ? Double.NaN : 1E9 * processedItems.get() / nanos;
+    }
+
+    /**
+     * Returns mean fraction of queue capacity occupied at the moment of take.
+     *
+     * @return mean queue occupancy
+     */
+    public double getMeanQueueOccupancy() {
+        long depth = depthSum.get();
+        return depth == 0 ? Double.NaN : 1.0 * occupancySum.get() / depth;
+    }
+
+    /**
+     * Returns fraction of takes from the queue which had to wait for the producer.
+     *
+     * @return fraction of takes from empty queue
+     */
+    public double getEmptyTakesFraction() {
+        long t = takes.get();
+        return t == 0 ? Double.NaN : 1.0 * emptyTakes.get() / t;
+    }
+
+    /**
+     * Groups input items into chunks of current chunk size.
+     *
+     * @param input input port
+     * @return port of chunks
+     */
+    public <T> OutputPort<List<T>> chunked(final OutputPort<T> input) {
+        chunking = true;
+        return new OutputPort<List<T>>() {
+            boolean finished = false;
+
+            @Override
+            public synchronized List<T> take() {
+                if (finished)
+                    return null;
+                maybeAdjust();
+                int size = chunkSize;
+                List<T> chunk = new ArrayList<>(size);
+                long start = System.nanoTime();
+                T item;
+                while (chunk.size() < size)
+                    if ((item = input.take()) == null) {
+                        finished = true;
+                        break;
+                    } else
+                        chunk.add(item);
+                readNanos.addAndGet(System.nanoTime() - start);
+                readItems.addAndGet(chunk.size());
+                return chunk.isEmpty() ? null : chunk;
+            }
+        };
+    }
+
+    /**
+     * Wraps processor to process chunks produced by {@link #chunked(OutputPort)} and to measure processing time.
+     *
+     * @param processor processor of single items
+     * @return processor of chunks
+     */
+    public <I, O> Processor<List<I>, List<O>> chunked(final Processor<I, O> processor) {
+        return new Processor<List<I>, List<O>>() {
+            @Override
+            public List<O> process(List<I> input) {
+                long start = System.nanoTime();
+                List<O> output = new ArrayList<>(input.size());
+                for (I item : input)
+                    output.add(processor.process(item));
+                processingNanos.addAndGet(System.nanoTime() - start);
+                processedItems.addAndGet(input.size());
+                return output;
+            }
+        };
+    }
+
+    /**
+     * Wraps processor to measure processing time (for pipelines without chunking).
+     *
+     * @param processor processor
+     * @return processor with the same behaviour
+     */
+    public <T> VoidProcessor<T> measured(final VoidProcessor<T> processor) {
+        return new VoidProcessor<T>() {
+            @Override
+            public void process(T input) {
+                long start = System.nanoTime();
+                processor.process(input);
+                processingNanos.addAndGet(System.nanoTime() - start);
+                processedItems.incrementAndGet();
+            }
+        };
+    }
+
+    /**
+     * Returns buffered port with queue of current depth, filled by a separate thread. Thread is started on the first
+     * take.
+     *
+     * @param input input port
+     * @return buffered port
+     */
+    public <T> OutputPort<T> buffered(OutputPort<T> input) {
+        return new Buffer<>(input);
+    }
+
+    public static <T> OutputPort<T> unchunked(final OutputPort<List<T>> input) {
+        return new OutputPort<T>() {
+            List<T> chunk = null;
+            int position = 0;
+
+            @Override
+            public synchronized T take() {
+                while (chunk == null || position == chunk.size()) {
+                    if ((chunk = input.take()) == null)
+                        return null;
+                    position = 0;
+                }
+                return chunk.get(position++);
+            }
+        };
+    }
+
+    void maybeAdjust() {
+        if (System.nanoTime() < nextAdjustment)
+            return;
+        adjust();
+    }
+
+    synchronized void adjust() {
+        long now = System.nanoTime();
+        if (now < nextAdjustment)
+            return;
+        nextAdjustment = now + ADJUSTMENT_INTERVAL_NANOS;
+
+        long items = processedItems.get(), nanos = processingNanos.get();
+        long dItems = items - lastProcessedItems, dNanos = nanos - lastProcessingNanos;
+        lastProcessedItems = items;
+        lastProcessingNanos = nanos;
+
+        int chunkSize = this.chunkSize;
+        if (chunking && dItems > 0) {
+            double nanosPerItem = Math.max(1.0, 1.0 * dNanos / dItems);
+            int target = clamp((int) Math.min(Integer.MAX_VALUE, TARGET_CHUNK_NANOS / nanosPerItem),
+                    minChunkSize, maxChunkSize);
+            // Moving half way to the target to smooth fluctuations
+            chunkSize = clamp((chunkSize + target + 1) / 2, minChunkSize, maxChunkSize);
+        }
+
+        long t = takes.get(), e = emptyTakes.get(), f = fullPuts.get(),
+                o = occupancySum.get(), d = depthSum.get();
+        long dTakes = t - lastTakes, dEmpty = e - lastEmptyTakes, dFull = f - lastFullPuts,
+                dOccupancy = o - lastOccupancySum, dDepth = d - lastDepthSum;
+        lastTakes = t;
+        lastEmptyTakes = e;
+        lastFullPuts = f;
+        lastOccupancySum = o;
+        lastDepthSum = d;
+
+        int queueDepth = this.queueDepth;
+        if (dTakes > 0) {
+            if (dEmpty * 10 > dTakes && dFull > 0)
+                // Consumers starve while producer is blocked from time to time: more slack is needed
+                queueDepth = queueDepth * 2;
+            else if (dEmpty == 0 && dOccupancy * 4 > dDepth * 3)
+                // Queue stays nearly full: producer outruns consumers
+                queueDepth = queueDepth * 3 / 4;
+        }
+        queueDepth = clamp(queueDepth, minQueueDepth,
+                Math.max(minQueueDepth, Math.min(maxQueueDepth, MAX_BUFFERED_ITEMS / chunkSize)));
+
+        this.chunkSize = chunkSize;
+        this.queueDepth = queueDepth;
+        chunkSizeLo = Math.min(chunkSizeLo, chunkSize);
+        chunkSizeHi = Math.max(chunkSizeHi, chunkSize);
+        queueDepthLo = Math.min(queueDepthLo, queueDepth);
+        queueDepthHi = Math.max(queueDepthHi, queueDepth);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    @Override
+    public synchronized void writeReport(ReportHelper helper) {
+        if (chunking)
+            helper.writeField("Pipeline chunk size (final / min / max)",
+                    chunkSize + " / " + chunkSizeLo + " / " + chunkSizeHi);
+        helper.writeField("Pipeline queue depth (final / min / max)",
+                queueDepth + " / " + queueDepthLo + " / " + queueDepthHi);
+        if (readNanos.get() != 0)
+            helper.writeField("Input throughput, items per second", Math.round(getInputThroughput()));
+        if (processingNanos.get() != 0)
+            helper.writeField("Processing throughput, items per second per thread",
+                    Math.round(getProcessingThroughput()));
+        if (depthSum.get() != 0)
+            helper.writeField("Mean queue occupancy, percent",
+                    Util.PERCENT_FORMAT.format(100.0 * getMeanQueueOccupancy()) + "%");
+        if (takes.get() != 0)
+            helper.writePercentField("Takes from empty queue, percent", emptyTakes.get(), takes.get());
+    }
+
+    final class Buffer<T> implements OutputPort<T>, Runnable {
+        final OutputPort<T> input;
+        final ArrayDeque<T> queue = new ArrayDeque<>();
+        boolean started = false, finished = false;
+        Throwable error = null;
+
+        Buffer(OutputPort<T> input) {
+            this.input = input;
+        }
+
+        @Override
+        public synchronized T take() {
+            if (!started) {
+                started = true;
+                Thread thread = new Thread(this, "PipelineScheduler buffer");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            boolean waited = false;
+            try {
+                while (queue.isEmpty() && !finished) {
+                    waited = true;
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            if (queue.isEmpty()) {
+                if (error != null)
+                    throw new RuntimeException(error);
+                return null;
+            }
+            takes.incrementAndGet();
+            if (waited)
+                emptyTakes.incrementAndGet();
+            occupancySum.addAndGet(queue.size());
+            depthSum.addAndGet(queueDepth);
+            T item = queue.poll();
+            notifyAll();
+            return item;
+        }
+
+        @Override
+        public void run() {
+            try {
+                T item;
+                while ((item = input.take()) != null) {
+                    synchronized (this) {
+                        boolean waited = false;
+                        while (queue.size() >= queueDepth) {
+                            waited = true;
+                            wait();
+                        }
+                        if (waited)
+                            fullPuts.incrementAndGet();
+                        queue.add(item);
+                        notifyAll();
+                    }
+                    maybeAdjust();
+                }
+            } catch (Throwable e) {
+                synchronized (this) {
+                    error = e;
+                }
+            } finally {
+                synchronized (this) {
+                    finished = true;
+                    notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import cc.redberry.pipe.OutputPort;
+import com.milaboratory.core.io.sequence.SequenceRead;
+
+/**
+ * Bounds the displacement of processing results from the order of input reads when results are consumed as soon as
+ * they are ready. A read is released to processing only if its id is less than {@code lowest + size}, where {@code
+ * lowest} is the minimal id of a read which result was not yet consumed ({@link #complete(long)}). Thus any result is
+ * preceded by at most {@code size - 1} results of reads with greater ids, and initial order can be restored using a
+ * buffer of {@code size} elements.
+ *
+ * <p>Ids of input reads must be consecutive and start from the id passed to constructor (0 by default). The size
+ * must be greater than the number of reads that may be accumulated upstream of processing (e.g. size of chunks),
+ * otherwise the pipeline will deadlock.</p>
+ */
+public final class ReadsOrderWindow {
+    final int size;
+    final boolean[] completed;
+    long lowest;
+
+    public ReadsOrderWindow(int size) {
+        this(size, 0);
+    }
+
+    /**
+     * @param size    window size
+     * @param firstId id of the first read (e.g. number of reads skipped on resume from checkpoint)
+     */
+    public ReadsOrderWindow(int size, long firstId) {
+        if (size <= 0 || firstId < 0)
+            throw new IllegalArgumentException();
+        this.size = size;
+        this.completed = new boolean[size];
+        this.lowest = firstId;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns port that blocks on reads exceeding the window until results of preceding reads are consumed.
+     *
+     * @param input input reads
+     * @return port that releases only reads inside the window
+     */
+    public <R extends SequenceRead> OutputPort<R> limit(final OutputPort<R> input) {
+        return new OutputPort<R>() {
+            @Override
+            public R take() {
+                R read = input.take();
+                if (read != null)
+                    await(read.getId());
+                return read;
+            }
+        };
+    }
+
+    synchronized void await(long readId) {
+        try {
+            while (readId >= lowest + size)
+                wait();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Marks result for the read with specified id as consumed. Must be invoked for each read (including ones that
+     * were filtered out or failed to align).
+     *
+     * @param readId read id
+     */
+    public synchronized void complete(long readId) {
+        assert readId >= lowest && readId < lowest + size;
+        completed[(int) (readId % size)] = true;
+        int index;
+        boolean moved = false;
+        while (completed[index = (int) (lowest % size)]) {
+            completed[index] = false;
+            ++lowest;
+            moved = true;
+        }
+        if (moved)
+            notifyAll();
+    }
+}
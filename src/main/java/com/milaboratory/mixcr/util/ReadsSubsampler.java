@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import cc.redberry.pipe.OutputPort;
+import com.milaboratory.core.io.sequence.PairedRead;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReadImpl;
+
+import java.util.*;
+
+/**
+ * Deterministic subsampling of input reads. Sampled reads are returned in the order of input and renumbered with
+ * consecutive ids starting from 0.
+ */
+public final class ReadsSubsampler {
+    private ReadsSubsampler() {
+    }
+
+    /**
+     * Returns port with each read of the input taken with probability {@code fraction}. Decision for each read is made
+     * by hash of its id and seed, so the same reads are selected on each run with the same seed and selection does not
+     * depend on position of reads in the input (e.g. on the flow cell).
+     */
+    public static OutputPort<SequenceRead> hashSample(final OutputPort<? extends SequenceRead> input,
+                                                      final double fraction, final long seed) {
+        if (fraction <= 0 || fraction > 1)
+            throw new IllegalArgumentException();
+        return new OutputPort<SequenceRead>() {
+            long id = 0;
+
+            @Override
+            public synchronized SequenceRead take() {
+                SequenceRead read;
+                while ((read = input.take()) != null)
+                    if (isSampled(read.getId(), fraction, seed))
+                        return withId(read, id++);
+                return null;
+            }
+        };
+    }
+
+    static boolean isSampled(long readId, double fraction, long seed) {
+        return (mix(readId ^ mix(seed)) >>> 11) * 0x1.0p-53 < fraction;
+    }
+
+    /**
+     * SplitMix64 finalizer
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Reads whole input and selects uniformly at random (reservoir sampling with given seed) at most {@code count}
+     * reads.
+     *
+     * @return sampled reads in the order of input
+     */
+    public static Sample reservoirSample(OutputPort<? extends SequenceRead> input, int count, long seed) {
+        if (count <= 0)
+            throw new IllegalArgumentException();
+        Random random = new Random(seed);
+        SequenceRead[] reservoir = new SequenceRead[count];
+        long total = 0;
+        SequenceRead read;
+        while ((read = input.take()) != null) {
+            if (total < count)
+                reservoir[(int) total] = read;
+            else {
+                long j = (long) (random.nextDouble() * (total + 1));
+                if (j < count)
+                    reservoir[(int) j] = read;
+            }
+            ++total;
+        }
+        int size = (int) Math.min(total, count);
+        SequenceRead[] sampled = Arrays.copyOf(reservoir, size);
+        Arrays.sort(sampled, new Comparator<SequenceRead>() {
+            @Override
+            public int compare(SequenceRead o1, SequenceRead o2) {
+                return Long.compare(o1.getId(), o2.getId());
+            }
+        });
+        List<SequenceRead> reads = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i)
+            reads.add(withId(sampled[i], i));
+        return new Sample(reads, total);
+    }
+
+    public static final class Sample {
+        final List<SequenceRead> reads;
+        final long totalReads;
+
+        Sample(List<SequenceRead> reads, long totalReads) {
+            this.reads = reads;
+            this.totalReads = totalReads;
+        }
+
+        public List<SequenceRead> getReads() {
+            return reads;
+        }
+
+        public long getTotalReads() {
+            return totalReads;
+        }
+
+        /**
+         * Returns fraction of input reads in the sample
+         */
+        public double getSamplingRate() {
+            return totalReads == 0 ? 1.0 : 1.0 * reads.size() / totalReads;
+        }
+    }
+
+    /**
+     * Returns copy of the read with the new id.
+     */
+    public static SequenceRead withId(SequenceRead read, long id) {
+        if (read.getId() == id)
+            return read;
+        if (read instanceof PairedRead)
+            return new PairedRead(withId(read.getRead(0), id), withId(read.getRead(1), id));
+        return withId(read.getRead(0), id);
+    }
+
+    private static SingleRead withId(SingleRead read, long id) {
+        return new SingleReadImpl(id, read.getData(), read.getDescription());
+    }
+}
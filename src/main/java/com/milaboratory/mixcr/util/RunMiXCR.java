@@ -4,7 +4,6 @@ import cc.redberry.pipe.CUtils;
 import cc.redberry.pipe.OutputPort;
 import cc.redberry.pipe.OutputPortCloseable;
 import cc.redberry.pipe.blocks.ParallelProcessor;
-import cc.redberry.pipe.util.Chunk;
 import cc.redberry.pipe.util.Indexer;
 import cc.redberry.pipe.util.OrderedOutputPort;
 import com.milaboratory.core.io.sequence.SequenceRead;
@@ -34,9 +33,6 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
 
-import static cc.redberry.pipe.CUtils.chunked;
-import static cc.redberry.pipe.CUtils.unchunked;
-
 /**
  * @author Dmitry Bolotin
  * @author Stanislav Poslavsky
@@ -63,6 +59,8 @@ public final class RunMiXCR {
                 }
             }, assembler, parameters.threads);
 
+            report.setPipelineScheduler(assemblerRunner.getPipelineScheduler());
+
             //start progress reporting
             SmartProgressReporter.startProgressReport(assemblerRunner);
 
@@ -96,14 +94,17 @@ public final class RunMiXCR {
 
         AlignerReport report = new AlignerReport();
         aligner.setEventsListener(report);
+        PipelineScheduler scheduler = new PipelineScheduler(parameters.threads);
+        report.setPipelineScheduler(scheduler);
 
         try (SequenceReaderCloseable<? extends SequenceRead> reader = parameters.createReader()) {
 
             //start progress reporting
             SmartProgressReporter.startProgressReport("align", (CanReportProgress) reader);
 
-            OutputPort<Chunk<SequenceRead>> mainInputReads = CUtils.buffered((OutputPort) chunked(reader, 64), 16);
-            OutputPort<VDJCAlignmentResult> alignments = unchunked(new ParallelProcessor(mainInputReads, chunked(aligner), parameters.threads));
+            OutputPort<List<SequenceRead>> mainInputReads = scheduler.buffered(scheduler.chunked((OutputPort) reader));
+            OutputPort<VDJCAlignmentResult> alignments = PipelineScheduler.unchunked(
+                    new ParallelProcessor(mainInputReads, scheduler.chunked(aligner), parameters.threads));
             List<VDJCAlignments> als = new ArrayList<>();
             int ind = 0;
             for (VDJCAlignmentResult t : CUtils.it(new OrderedOutputPort<>(alignments, new Indexer<VDJCAlignmentResult>() {
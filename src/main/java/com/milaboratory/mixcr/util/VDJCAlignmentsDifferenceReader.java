@@ -1,6 +1,7 @@
 package com.milaboratory.mixcr.util;
 
 import cc.redberry.pipe.OutputPort;
+import com.milaboratory.mixcr.basictypes.SortedVDJCAlignmentsPort;
 import com.milaboratory.mixcr.basictypes.VDJCAlignments;
 import com.milaboratory.mixcr.basictypes.VDJCAlignmentsReader;
 import com.milaboratory.mixcr.basictypes.VDJCHit;
@@ -34,8 +35,8 @@ public class VDJCAlignmentsDifferenceReader
     public VDJCAlignmentsDifferenceReader(String first, String second,
                                           GeneFeature featureToCompare,
                                           int hitsCompareLevel) throws IOException {
-        this(new VDJCAlignmentsReader(first, LociLibraryManager.getDefault()),
-                new VDJCAlignmentsReader(second, LociLibraryManager.getDefault()),
+        this(new SortedVDJCAlignmentsPort(new VDJCAlignmentsReader(first, LociLibraryManager.getDefault())),
+                new SortedVDJCAlignmentsPort(new VDJCAlignmentsReader(second, LociLibraryManager.getDefault())),
                 featureToCompare, hitsCompareLevel);
     }
 
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.vdjaligners;
+
+import com.google.common.base.Supplier;
+import com.google.common.cache.CacheStats;
+import com.milaboratory.util.CanReportProgress;
+import com.milaboratory.util.CanReportProgressAndStage;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Low-overhead instrumentation of {@link VDJCAligner}. Collects per-stage timing histograms (with logarithmic bins),
+ * sampled per-thread allocated bytes (if supported by JVM) and hit ratios of registered caches.
+ *
+ * <p>All methods are thread-safe.</p>
+ */
+public final class AlignerProfiler {
+    /**
+     * Reads are sampled for allocation measurement with rate 1 / (ALLOCATION_SAMPLING_MASK + 1)
+     */
+    static final int ALLOCATION_SAMPLING_MASK = 0x3F;
+    static final int BINS = 64;
+
+    public enum Stage {
+        Merging("Paired reads overlap"),
+        VAlignment("V alignment"),
+        JAlignment("J alignment"),
+        DAlignment("D alignment"),
+        CAlignment("C alignment"),
+        Total("Total per read");
+        public final String name;
+
+        Stage(String name) {
+            this.name = name;
+        }
+    }
+
+    final AtomicLongArray[] histograms = new AtomicLongArray[Stage.values().length];
+    final AtomicLongArray totalNanos = new AtomicLongArray(Stage.values().length);
+    final AtomicLong sampledReads = new AtomicLong(), allocatedBytes = new AtomicLong();
+    final Map<String, Supplier<CacheStats>> caches = Collections.synchronizedMap(new LinkedHashMap<String, Supplier<CacheStats>>());
+    final com.sun.management.ThreadMXBean threadMXBean;
+    final long startTime = System.nanoTime();
+    final ThreadLocal<ThreadState> threadState = new ThreadLocal<ThreadState>() {
+        @Override
+        protected ThreadState initialValue() {
+            return new ThreadState();
+        }
+    };
+
+    public AlignerProfiler() {
+        for (int i = 0; i < histograms.length; i++)
+            histograms[i] = new AtomicLongArray(BINS);
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean sunBean = null;
+        try {
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                sunBean = (com.sun.management.ThreadMXBean) bean;
+                if (sunBean.isThreadAllocatedMemorySupported())
+                    sunBean.setThreadAllocatedMemoryEnabled(true);
+                else
+                    sunBean = null;
+            }
+        } catch (UnsupportedOperationException | NoClassDefFoundError e) {
+            sunBean = null;
+        }
+        this.threadMXBean = sunBean;
+    }
+
+    /**
+     * Registers cache, to report its hit ratio.
+     */
+    public void addCache(String name, Supplier<CacheStats> stats) {
+        caches.put(name, stats);
+    }
+
+    public void record(Stage stage, long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        histograms[stage.ordinal()].incrementAndGet(BINS - 1 - Long.numberOfLeadingZeros(nanos | 1));
+        totalNanos.addAndGet(stage.ordinal(), nanos);
+    }
+
+    /**
+     * Marks the beginning of processing of a read. Nested calls (e.g. when one aligner delegates to another) are
+     * ignored, only the outermost pair of beginRead / endRead is measured.
+     */
+    public long beginRead() {
+        ThreadState state = threadState.get();
+        if (state.depth++ != 0)
+            return 0;
+        state.sampled = threadMXBean != null && (++state.reads & ALLOCATION_SAMPLING_MASK) == 0;
+        if (state.sampled)
+            state.allocatedAtStart = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        return System.nanoTime();
+    }
+
+    public void endRead(long start) {
+        ThreadState state = threadState.get();
+        if (--state.depth != 0)
+            return;
+        record(Stage.Total, System.nanoTime() - start);
+        if (state.sampled) {
+            long allocated = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - state.allocatedAtStart;
+            if (allocated >= 0) {
+                allocatedBytes.addAndGet(allocated);
+                sampledReads.incrementAndGet();
+            }
+        }
+    }
+
+    public boolean isAllocationMeasurementSupported() {
+        return threadMXBean != null;
+    }
+
+    public long getCount(Stage stage) {
+        long count = 0;
+        AtomicLongArray histogram = histograms[stage.ordinal()];
+        for (int i = 0; i < BINS; i++)
+            count += histogram.get(i);
+        return count;
+    }
+
+    public long getTotalNanos(Stage stage) {
+        return totalNanos.get(stage.ordinal());
+    }
+
+    /**
+     * Returns mean time of the stage in nanoseconds, or NaN if there were no invocations of the stage
+     */
+    public double getMeanNanos(Stage stage) {
+        long count = getCount(stage);
+        return count == 0 ? Double.NaN : 1.0 * getTotalNanos(stage) / count;
+    }
+
+    /**
+     * Returns upper bound of histogram bin containing the specified quantile of stage timings (in nanoseconds).
+     */
+    public long getQuantileNanos(Stage stage, double quantile) {
+        AtomicLongArray histogram = histograms[stage.ordinal()];
+        long[] values = new long[BINS];
+        long count = 0;
+        for (int i = 0; i < BINS; i++)
+            count += (values[i] = histogram.get(i));
+        if (count == 0)
+            return -1;
+        long threshold = (long) Math.ceil(quantile * count), sum = 0;
+        for (int i = 0; i < BINS - 1; i++)
+            if ((sum += values[i]) >= threshold)
+                return 1L << (i + 1);
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns mean number of bytes allocated by aligner per read (sampled), or NaN if not available.
+     */
+    public double getMeanAllocatedBytesPerRead() {
+        long reads = sampledReads.get();
+        return reads == 0 ? Double.NaN : 1.0 * allocatedBytes.get() / reads;
+    }
+
+    /**
+     * Returns hit ratios of registered caches
+     */
+    public Map<String, Double> getCacheHitRates() {
+        Map<String, Double> result = new LinkedHashMap<>();
+        synchronized (caches) {
+            for (Map.Entry<String, Supplier<CacheStats>> entry : caches.entrySet())
+                result.put(entry.getKey(), entry.getValue().get().hitRate());
+        }
+        return result;
+    }
+
+    /**
+     * Returns short single-line summary of current statistics.
+     */
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        long reads = getCount(Stage.Total);
+        double seconds = (System.nanoTime() - startTime) / 1E9;
+        sb.append(String.format("%.0f reads/s", reads / seconds));
+        ArrayList<String> parts = new ArrayList<>();
+        for (Stage stage : Stage.values())
+            if (stage != Stage.Total && getCount(stage) != 0)
+                parts.add(String.format("%s %.1fus", stage.name().substring(0, 1), getMeanNanos(stage) / 1000));
+        for (Map.Entry<String, Double> entry : getCacheHitRates().entrySet())
+            parts.add(String.format("%s %.0f%%", entry.getKey(), entry.getValue() * 100));
+        if (!parts.isEmpty()) {
+            sb.append("; ");
+            for (int i = 0; i < parts.size(); i++) {
+                if (i != 0)
+                    sb.append(", ");
+                sb.append(parts.get(i));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Wraps progress reporter so that live summary of profiler is shown in the stage name.
+     */
+    public CanReportProgressAndStage withSummary(final String stage, final CanReportProgress progress) {
+        return new CanReportProgressAndStage() {
+            @Override
+            public String getStage() {
+                return stage + " (" + getSummary() + ")";
+            }
+
+            @Override
+            public double getProgress() {
+                return progress.getProgress();
+            }
+
+            @Override
+            public boolean isFinished() {
+                return progress.isFinished();
+            }
+        };
+    }
+
+    private static final class ThreadState {
+        int depth;
+        long reads;
+        boolean sampled;
+        long allocatedAtStart;
+    }
+}
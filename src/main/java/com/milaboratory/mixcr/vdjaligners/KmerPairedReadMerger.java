@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.vdjaligners;
+
+import cc.redberry.pipe.Processor;
+import com.milaboratory.core.PairedEndReadsLayout;
+import com.milaboratory.core.PairedTarget;
+import com.milaboratory.core.alignment.Alignment;
+import com.milaboratory.core.io.sequence.PairedRead;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.SequenceBuilder;
+import com.milaboratory.core.sequence.SequenceQuality;
+import com.milaboratory.core.sequence.SequenceQualityBuilder;
+import com.milaboratory.mitools.merger.PairedReadMergingResult;
+
+import java.util.Arrays;
+
+/**
+ * Paired-end reads merger that finds overlap offset by k-mer voting instead of scanning all possible overlaps.
+ *
+ * <p>K-mers of the second read (oriented according to the reads layout) are indexed in a sorted array; each k-mer of
+ * the first read votes for the offset at which it is found in the second read. Only offsets with the largest number
+ * of votes are verified by mismatch counting, and the first one satisfying minimal overlap and identity is used.
+ * Qualities in the overlap are merged as in the "SumSubtraction" algorithm: qualities of matching letters are summed,
+ * for mismatches the letter with the higher quality is taken with the difference of qualities.</p>
+ *
+ * <p>Offset {@code d} means that position {@code i} of the second read corresponds to position {@code i + d} of the
+ * first one. Callers that already know the offset (e.g. from positions of V gene alignments in both reads, see {@link
+ * #offsetHint(Alignment, Alignment)} and {@link VDJCAlignerWithMerge}) can pass it as a hint, which is verified before
+ * voting.</p>
+ */
+public final class KmerPairedReadMerger implements Processor<PairedRead, PairedReadMergingResult> {
+    public static final int DEFAULT_K = 12;
+    public static final byte MAX_QUALITY = 45;
+    public static final byte MIN_QUALITY = 2;
+    /**
+     * Number of top-voted offsets to verify
+     */
+    static final int OFFSETS_TO_VERIFY = 2;
+    /**
+     * Minimal number of k-mer votes for offset to be verified
+     */
+    static final int MIN_VOTES = 2;
+
+    final PairedEndReadsLayout readsLayout;
+    final int k, minimalOverlap;
+    final double minimalIdentity;
+
+    public KmerPairedReadMerger(PairedEndReadsLayout readsLayout, int minimalOverlap, double minimalIdentity) {
+        this(readsLayout, DEFAULT_K, minimalOverlap, minimalIdentity);
+    }
+
+    public KmerPairedReadMerger(PairedEndReadsLayout readsLayout, int k, int minimalOverlap, double minimalIdentity) {
+        if (k <= 0 || k > 15 || minimalOverlap < k)
+            throw new IllegalArgumentException();
+        this.readsLayout = readsLayout;
+        this.k = k;
+        this.minimalOverlap = minimalOverlap;
+        this.minimalIdentity = minimalIdentity;
+    }
+
+    /**
+     * Creates merger with minimal overlap and identity taken from merger parameters of aligner.
+     *
+     * @param parameters aligner parameters
+     */
+    public static KmerPairedReadMerger create(VDJCAlignerParameters parameters) {
+        int minimalOverlap = Math.max(DEFAULT_K, parameters.getMergerParameters().getMinimalOverlap());
+        return new KmerPairedReadMerger(parameters.getReadsLayout(), minimalOverlap,
+                parameters.getMergerParameters().getMinimalIdentity());
+    }
+
+    @Override
+    public PairedReadMergingResult process(PairedRead read) {
+        return process(read, Integer.MIN_VALUE);
+    }
+
+    /**
+     * Merges reads verifying the hinted offset first.
+     *
+     * @param read       paired read
+     * @param offsetHint expected offset of the second read relative to the first one for the first target produced
+     *                   by reads layout, or {@link Integer#MIN_VALUE} if unknown
+     */
+    public PairedReadMergingResult process(PairedRead read, int offsetHint) {
+        PairedTarget[] targets = readsLayout.createTargets(read);
+        Overlap best = null;
+        for (int t = 0; t < targets.length; ++t) {
+            NSequenceWithQuality s1 = targets[t].targets[0], s2 = targets[t].targets[1];
+            Overlap overlap = null;
+            if (t == 0 && offsetHint != Integer.MIN_VALUE)
+                overlap = verify(s1, s2, offsetHint);
+            if (overlap == null)
+                overlap = vote(s1, s2);
+            if (overlap != null && (best == null || overlap.score() > best.score())) {
+                best = overlap;
+                best.s1 = s1;
+                best.s2 = s2;
+            }
+        }
+        if (best == null)
+            return new PairedReadMergingResult(read);
+        return new PairedReadMergingResult(read, merge(best), best.length, best.mismatches);
+    }
+
+    /**
+     * Calculates offset of the second target relative to the first one from the alignments of the same reference
+     * sequence with both of them.
+     *
+     * @param alignment1 alignment with the first target
+     * @param alignment2 alignment with the second target
+     * @return offset or {@link Integer#MIN_VALUE} if alignments do not share reference positions
+     */
+    public static int offsetHint(Alignment<NucleotideSequence> alignment1, Alignment<NucleotideSequence> alignment2) {
+        if (alignment1 == null || alignment2 == null || !alignment1.getSequence1().equals(alignment2.getSequence1()))
+            return Integer.MIN_VALUE;
+        int from = Math.max(alignment1.getSequence1Range().getFrom(), alignment2.getSequence1Range().getFrom()),
+                to = Math.min(alignment1.getSequence1Range().getTo(), alignment2.getSequence1Range().getTo());
+        for (int position = from; position < to; ++position) {
+            int p1 = alignment1.convertPosition(position), p2 = alignment2.convertPosition(position);
+            if (p1 >= 0 && p2 >= 0)
+                return p1 - p2;
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    Overlap vote(NSequenceWithQuality s1, NSequenceWithQuality s2) {
+        NucleotideSequence seq1 = s1.getSequence(), seq2 = s2.getSequence();
+        int size1 = seq1.size(), size2 = seq2.size();
+        if (size1 < minimalOverlap || size2 < minimalOverlap)
+            return null;
+
+        // Index of k-mers of the second sequence: (kmer << 32) | position, sorted
+        long[] index = new long[size2];
+        int indexSize = 0;
+        int mask = (1 << (2 * k)) - 1, kmer = 0, valid = 0;
+        for (int i = 0; i < size2; ++i) {
+            byte code = seq2.codeAt(i);
+            if (code > 3) {
+                valid = 0;
+                continue;
+            }
+            kmer = ((kmer << 2) | code) & mask;
+            if (++valid >= k)
+                index[indexSize++] = ((long) kmer << 32) | (i - k + 1);
+        }
+        Arrays.sort(index, 0, indexSize);
+
+        // Offsets in [-(size2 - minimalOverlap), size1 - minimalOverlap]
+        int shift = size2 - minimalOverlap;
+        int[] votes = new int[size1 + size2 - 2 * minimalOverlap + 1];
+        kmer = valid = 0;
+        for (int i = 0; i < size1; ++i) {
+            byte code = seq1.codeAt(i);
+            if (code > 3) {
+                valid = 0;
+                continue;
+            }
+            kmer = ((kmer << 2) | code) & mask;
+            if (++valid < k)
+                continue;
+            int position1 = i - k + 1;
+            int p = Arrays.binarySearch(index, 0, indexSize, (long) kmer << 32);
+            if (p < 0)
+                p = -p - 1;
+            for (; p < indexSize && (int) (index[p] >>> 32) == kmer; ++p) {
+                int offset = position1 - (int) index[p] + shift;
+                if (offset >= 0 && offset < votes.length)
+                    ++votes[offset];
+            }
+        }
+
+        // Verifying top-voted offsets
+        Overlap best = null;
+        for (int n = 0; n < OFFSETS_TO_VERIFY; ++n) {
+            int top = -1;
+            for (int i = 0; i < votes.length; ++i)
+                if (votes[i] >= MIN_VOTES && (top == -1 || votes[i] > votes[top]))
+                    top = i;
+            if (top == -1)
+                break;
+            votes[top] = 0;
+            Overlap overlap = verify(s1, s2, top - shift);
+            if (overlap != null && (best == null || overlap.score() > best.score()))
+                best = overlap;
+        }
+        return best;
+    }
+
+    Overlap verify(NSequenceWithQuality s1, NSequenceWithQuality s2, int offset) {
+        NucleotideSequence seq1 = s1.getSequence(), seq2 = s2.getSequence();
+        int from = Math.max(0, offset), to = Math.min(seq1.size(), offset + seq2.size());
+        int length = to - from;
+        if (length < minimalOverlap)
+            return null;
+        int maxMismatches = (int) (length * (1.0 - minimalIdentity)), mismatches = 0;
+        for (int i = from; i < to; ++i)
+            if (seq1.codeAt(i) != seq2.codeAt(i - offset) && ++mismatches > maxMismatches)
+                return null;
+        return new Overlap(offset, length, mismatches);
+    }
+
+    static NSequenceWithQuality merge(Overlap overlap) {
+        NSequenceWithQuality s1 = overlap.s1, s2 = overlap.s2;
+        NucleotideSequence seq1 = s1.getSequence(), seq2 = s2.getSequence();
+        SequenceQuality q1 = s1.getQuality(), q2 = s2.getQuality();
+        int offset = overlap.offset;
+        // If the second read starts before the first one, fragment is shorter than reads and parts outside the
+        // overlap are adapters
+        int from = Math.max(0, offset),
+                to = offset < 0 ? Math.min(seq1.size(), offset + seq2.size()) : Math.max(seq1.size(), offset + seq2.size());
+
+        SequenceBuilder<NucleotideSequence> sequenceBuilder = NucleotideSequence.ALPHABET.createBuilder()
+                .ensureCapacity(to - from);
+        SequenceQualityBuilder qualityBuilder = new SequenceQualityBuilder().ensureCapacity(to - from);
+        for (int i = from; i < to; ++i) {
+            int j = i - offset;
+            boolean in1 = i < seq1.size(), in2 = j >= 0 && j < seq2.size();
+            if (in1 && in2) {
+                byte c1 = seq1.codeAt(i), c2 = seq2.codeAt(j), v1 = q1.value(i), v2 = q2.value(j);
+                if (c1 == c2) {
+                    sequenceBuilder.append(c1);
+                    qualityBuilder.append((byte) Math.min(MAX_QUALITY, v1 + v2));
+                } else {
+                    sequenceBuilder.append(v1 >= v2 ? c1 : c2);
+                    qualityBuilder.append((byte) Math.max(MIN_QUALITY, Math.abs(v1 - v2)));
+                }
+            } else if (in1) {
+                sequenceBuilder.append(seq1.codeAt(i));
+                qualityBuilder.append(q1.value(i));
+            } else {
+                sequenceBuilder.append(seq2.codeAt(j));
+                qualityBuilder.append(q2.value(j));
+            }
+        }
+        return new NSequenceWithQuality(sequenceBuilder.createAndDestroy(), qualityBuilder.createAndDestroy());
+    }
+
+    static final class Overlap {
+        final int offset, length, mismatches;
+        NSequenceWithQuality s1, s2;
+
+        Overlap(int offset, int length, int mismatches) {
+            this.offset = offset;
+            this.length = length;
+            this.mismatches = mismatches;
+        }
+
+        int score() {
+            return length - 4 * mismatches;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.vdjaligners;
+
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.mixcr.reference.Locus;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+/**
+ * Lightweight minimizer sketch of reference sequences of several loci. Used to assign a read a short list of candidate
+ * loci before actual alignment, so that V and J genes are searched only among alleles of these loci.
+ *
+ * <p>Minimizers are calculated over canonical k-mers (minimal of the k-mer and its reverse complement), so the result
+ * of classification doesn't depend on the strand of the read.</p>
+ *
+ * <p>Loci are encoded as bit masks: bit {@code locus.ordinal()} is set for each locus in the set.</p>
+ */
+public final class LociSketch {
+    public static final int DEFAULT_K = 11, DEFAULT_W = 6, DEFAULT_MIN_HITS = 3;
+    public static final float DEFAULT_RELATIVE_THRESHOLD = 0.5f;
+
+    final int k, w, minHits;
+    final float relativeThreshold;
+    final long kMask;
+    final TLongIntHashMap minimizers = new TLongIntHashMap();
+    int lociMask = 0;
+
+    public LociSketch() {
+        this(DEFAULT_K, DEFAULT_W, DEFAULT_MIN_HITS, DEFAULT_RELATIVE_THRESHOLD);
+    }
+
+    /**
+     * @param k                 k-mer length (max 31)
+     * @param w                 number of consecutive k-mers in minimizer window
+     * @param minHits           minimal number of minimizers of the read found in the locus to consider it as a
+     *                          candidate
+     * @param relativeThreshold locus is considered as a candidate if number of minimizers found in this locus is
+     *                          greater or equal to relativeThreshold * (number of minimizers found in the best locus)
+     */
+    public LociSketch(int k, int w, int minHits, float relativeThreshold) {
+        if (k <= 0 || k > 31 || w <= 0)
+            throw new IllegalArgumentException();
+        this.k = k;
+        this.w = w;
+        this.minHits = minHits;
+        this.relativeThreshold = relativeThreshold;
+        this.kMask = (1L << (2 * k)) - 1;
+    }
+
+    /**
+     * Adds reference sequence of a particular locus to the sketch. Not thread-safe, sketch should be fully built
+     * before it is used for classification.
+     */
+    public void add(Locus locus, NucleotideSequence sequence) {
+        int bit = 1 << locus.ordinal();
+        lociMask |= bit;
+        TLongArrayList mins = minimizers(sequence);
+        for (int i = 0; i < mins.size(); ++i) {
+            long m = mins.getQuick(i);
+            minimizers.put(m, minimizers.get(m) | bit);
+        }
+    }
+
+    /**
+     * Returns number of loci added to the sketch.
+     */
+    public int numberOfLoci() {
+        return Integer.bitCount(lociMask);
+    }
+
+    /**
+     * Returns bit mask of candidate loci for a read (both mates of a paired-end read may be passed at once), or 0 if
+     * there is not enough information to select any locus.
+     */
+    public int classify(NucleotideSequence... sequences) {
+        int[] counts = new int[Locus.values().length];
+        for (NucleotideSequence sequence : sequences) {
+            TLongArrayList mins = minimizers(sequence);
+            for (int i = 0; i < mins.size(); ++i) {
+                int mask = minimizers.get(mins.getQuick(i));
+                while (mask != 0) {
+                    ++counts[Integer.numberOfTrailingZeros(mask)];
+                    mask &= mask - 1;
+                }
+            }
+        }
+
+        int best = 0;
+        for (int count : counts)
+            best = Math.max(best, count);
+
+        if (best < minHits)
+            return 0;
+
+        int result = 0;
+        float threshold = best * relativeThreshold;
+        for (int i = 0; i < counts.length; ++i)
+            if (counts[i] >= threshold && counts[i] > 0)
+                result |= 1 << i;
+        return result;
+    }
+
+    TLongArrayList minimizers(NucleotideSequence sequence) {
+        TLongArrayList result = new TLongArrayList();
+        int size = sequence.size();
+        if (size < k)
+            return result;
+
+        // Hashes of canonical k-mers for the current window (circular buffer)
+        long[] window = new long[w];
+        long forward = 0, reverse = 0, lastMin = -1;
+        int shift = 2 * (k - 1), valid = 0, kmers = 0;
+        for (int i = 0; i < size; ++i) {
+            int code = sequence.codeAt(i);
+            if (code > 3) {
+                // Non-ACGT letter breaks k-mer
+                valid = kmers = 0;
+                continue;
+            }
+            forward = ((forward << 2) | code) & kMask;
+            reverse = (reverse >>> 2) | ((long) (3 - code) << shift);
+            if (++valid < k)
+                continue;
+
+            window[kmers++ % w] = hash(Math.min(forward, reverse));
+
+            if (kmers < w && i != size - 1)
+                continue;
+
+            long min = Long.MAX_VALUE;
+            for (int j = Math.min(kmers, w) - 1; j >= 0; --j)
+                min = Math.min(min, window[j]);
+            if (min != lastMin) {
+                result.add(min);
+                lastMin = min;
+            }
+        }
+        return result;
+    }
+
+    static long hash(long key) {
+        // MurmurHash3 finalizer
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb3fe1a85ec53L;
+        key ^= key >>> 33;
+        return key & Long.MAX_VALUE;
+    }
+}
@@ -30,6 +30,7 @@ package com.milaboratory.mixcr.vdjaligners;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import com.milaboratory.core.alignment.Aligner;
 import com.milaboratory.core.alignment.Alignment;
@@ -78,6 +79,10 @@ public final class SingleDAligner {
         this.alleles = new ArrayList<>(alleles);
     }
 
+    public CacheStats getCacheStats() {
+        return resultsCache.stats();
+    }
+
     List<PreVDJCHit> align0(NucleotideSequence sequence, Set<Locus> loci, int from, int to) {
         if (from > to)
             throw new IllegalArgumentException();
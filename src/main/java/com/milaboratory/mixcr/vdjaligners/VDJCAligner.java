@@ -44,6 +44,8 @@ public abstract class VDJCAligner<R extends SequenceRead> implements Processor<R
     protected final EnumMap<GeneType, List<Allele>> allelesToAlign = new EnumMap<>(GeneType.class);
     protected final List<Allele> usedAlleles = new ArrayList<>();
     protected VDJCAlignerEventListener listener = null;
+    protected volatile boolean lociPreClassification = false;
+    protected volatile AlignerProfiler profiler = null;
 
     protected VDJCAligner(VDJCAlignerParameters parameters) {
         this.parameters = parameters.clone();
@@ -65,6 +67,52 @@ public abstract class VDJCAligner<R extends SequenceRead> implements Processor<R
             listener.onSuccessfulAlignment(read, alignment);
     }
 
+    /**
+     * Enables restriction of V and J alleles search space for each read to the loci selected by fast pre-classification
+     * of the read (see {@link LociSketch}). Must be set before aligner initialization.
+     */
+    public void setLociPreClassification(boolean lociPreClassification) {
+        if (initialized)
+            throw new IllegalStateException("Aligner is already initialized.");
+        this.lociPreClassification = lociPreClassification;
+    }
+
+    /**
+     * Sets profiler to collect timing and allocation statistics. Must be set before processing of reads.
+     */
+    public void setProfiler(AlignerProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public AlignerProfiler getProfiler() {
+        return profiler;
+    }
+
+    @Override
+    public final VDJCAlignmentResult<R> process(R read) {
+        AlignerProfiler profiler = this.profiler;
+        if (profiler == null)
+            return process0(read);
+        long start = profiler.beginRead();
+        try {
+            return process0(read);
+        } finally {
+            profiler.endRead(start);
+        }
+    }
+
+    protected abstract VDJCAlignmentResult<R> process0(R read);
+
+    protected final long beginStage() {
+        return profiler == null ? 0 : System.nanoTime();
+    }
+
+    protected final void endStage(AlignerProfiler.Stage stage, long start) {
+        AlignerProfiler profiler = this.profiler;
+        if (profiler != null)
+            profiler.record(stage, System.nanoTime() - start);
+    }
+
     public boolean isInitialized() {
         return initialized;
     }
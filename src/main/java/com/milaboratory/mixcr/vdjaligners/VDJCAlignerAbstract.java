@@ -33,11 +33,10 @@ import com.milaboratory.core.alignment.batch.BatchAlignerWithBase;
 import com.milaboratory.core.io.sequence.SequenceRead;
 import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.mixcr.reference.Allele;
-import com.milaboratory.mixcr.reference.GeneType;
-
-import java.util.List;
+import com.milaboratory.mixcr.vdjaligners.VDJCReferenceEngine.VJAligners;
 
 public abstract class VDJCAlignerAbstract<R extends SequenceRead> extends VDJCAligner<R> {
+    protected volatile VDJCReferenceEngine referenceEngine = null;
     protected volatile SingleDAligner singleDAligner = null;
     protected volatile BatchAlignerWithBase<NucleotideSequence, Allele, AlignmentHit<NucleotideSequence, Allele>> vAligner = null;
     protected volatile BatchAlignerWithBase<NucleotideSequence, Allele, AlignmentHit<NucleotideSequence, Allele>> jAligner = null;
@@ -47,28 +46,48 @@ public abstract class VDJCAlignerAbstract<R extends SequenceRead> extends VDJCAl
         super(parameters);
     }
 
-    @SuppressWarnings("unchecked")
-    private BatchAlignerWithBase<NucleotideSequence, Allele, AlignmentHit<NucleotideSequence, Allele>> createKAligner(GeneType geneType) {
-        if (parameters.getVJCGeneAlignerParameters(geneType) != null &&
-                !allelesToAlign.get(geneType).isEmpty()) {
-            BatchAlignerWithBase<NucleotideSequence, Allele, AlignmentHit<NucleotideSequence, Allele>> aligner =
-                    (BatchAlignerWithBase) parameters.getVJCGeneAlignerParameters(geneType).getParameters().createAligner();
-            for (Allele a : allelesToAlign.get(geneType))
-                aligner.addReference(a.getFeature(parameters.getVJCGeneAlignerParameters(geneType).getGeneFeatureToAlign()), a);
-            return aligner;
-        }
-        return null;
+    /**
+     * Sets reference indexes to use instead of building own ones. Engine must be built with the same parameters and
+     * alleles as this aligner. Must be set before aligner initialization.
+     *
+     * @param referenceEngine reference indexes
+     */
+    public void setReferenceEngine(VDJCReferenceEngine referenceEngine) {
+        if (initialized)
+            throw new IllegalStateException("Aligner is already initialized.");
+        this.referenceEngine = referenceEngine;
+    }
+
+    /**
+     * Returns reference indexes used by this aligner (initializes aligner if necessary).
+     *
+     * @return reference indexes used by this aligner
+     */
+    public VDJCReferenceEngine getReferenceEngine() {
+        ensureInitialized();
+        return referenceEngine;
     }
 
     @Override
     protected void init() {
-        DAlignerParameters dAlignerParameters = parameters.getDAlignerParameters();
-        List<Allele> dAlleles = allelesToAlign.get(GeneType.Diversity);
-        if (dAlignerParameters != null && dAlleles.size() != 0)
-            singleDAligner = new SingleDAligner(dAlignerParameters,
-                    allelesToAlign.get(GeneType.Diversity));
-        vAligner = createKAligner(GeneType.Variable);
-        jAligner = createKAligner(GeneType.Joining);
-        cAligner = createKAligner(GeneType.Constant);
+        VDJCReferenceEngine engine = referenceEngine;
+        if (engine == null)
+            referenceEngine = engine = new VDJCReferenceEngine(parameters, allelesToAlign, lociPreClassification, profiler);
+        else if (!engine.isCompatible(parameters, allelesToAlign))
+            throw new IllegalStateException("Reference engine was built for different parameters or alleles.");
+        singleDAligner = engine.singleDAligner;
+        vAligner = engine.vAligner;
+        jAligner = engine.jAligner;
+        cAligner = engine.cAligner;
+    }
+
+    /**
+     * Returns V and J aligners restricted to the candidate loci of the read (see {@link
+     * VDJCReferenceEngine#getVJAligners(NucleotideSequence...)}).
+     *
+     * @param sequences sequences of the read (e.g. both mates of paired-end read)
+     */
+    protected final VJAligners getVJAligners(NucleotideSequence... sequences) {
+        return referenceEngine.getVJAligners(sequences);
     }
 }
@@ -40,6 +40,7 @@ import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.mixcr.basictypes.VDJCAlignments;
 import com.milaboratory.mixcr.basictypes.VDJCHit;
 import com.milaboratory.mixcr.reference.*;
+import com.milaboratory.mixcr.vdjaligners.VDJCReferenceEngine.VJAligners;
 
 import java.util.*;
 
@@ -49,7 +50,7 @@ public final class VDJCAlignerPVFirst extends VDJCAlignerAbstract<PairedRead> {
     }
 
     @Override
-    public VDJCAlignmentResult<PairedRead> process(final PairedRead input) {
+    protected VDJCAlignmentResult<PairedRead> process0(final PairedRead input) {
         ensureInitialized();
 
         PairedTarget[] targets = getTargets(input);
@@ -57,6 +58,14 @@ public final class VDJCAlignerPVFirst extends VDJCAlignerAbstract<PairedRead> {
         // Creates helper classes for each PTarget
         PAlignmentHelper[] helpers = createInitialHelpers(targets);
 
+        return process(input, helpers);
+    }
+
+    /**
+     * Continues alignment of the read with V genes already aligned to its targets (see {@link
+     * #createInitialHelpers(PairedTarget[])}).
+     */
+    VDJCAlignmentResult<PairedRead> process(final PairedRead input, PAlignmentHelper[] helpers) {
         // Main alignment logic
         for (PAlignmentHelper helper : helpers) {
             if (!helper.hasVHits())
@@ -117,23 +126,28 @@ public final class VDJCAlignerPVFirst extends VDJCAlignerAbstract<PairedRead> {
     }
 
     PAlignmentHelper[] createInitialHelpers(PairedTarget[] target) {
+        // Both targets contain the same reads (in different orientations), so classification is done once
+        VJAligners aligners = getVJAligners(target[0].targets[0].getSequence(), target[0].targets[1].getSequence());
         PAlignmentHelper[] result = new PAlignmentHelper[target.length];
         for (int i = 0; i < target.length; i++)
-            result[i] = createInitialHelper(target[i]);
+            result[i] = createInitialHelper(aligners, target[i]);
         return result;
     }
 
-    PAlignmentHelper createInitialHelper(PairedTarget target) {
-        return new PAlignmentHelper(target,
-                vAligner.align(target.targets[0].getSequence()),
-                vAligner.align(target.targets[1].getSequence())
-        );
+    PAlignmentHelper createInitialHelper(VJAligners aligners, PairedTarget target) {
+        long start = beginStage();
+        AlignmentResult<AlignmentHit<NucleotideSequence, Allele>>
+                vResult0 = aligners.vAligner.align(target.targets[0].getSequence()),
+                vResult1 = aligners.vAligner.align(target.targets[1].getSequence());
+        endStage(AlignerProfiler.Stage.VAlignment, start);
+        return new PAlignmentHelper(aligners, target, vResult0, vResult1);
     }
 
     static final PreVDJCHit[] zeroArray = new PreVDJCHit[0];
     static final AlignmentHit<NucleotideSequence, Allele>[] zeroKArray = new AlignmentHit[0];
 
     final class PAlignmentHelper {
+        final VJAligners aligners;
         final PairedTarget target;
         final AlignmentResult<AlignmentHit<NucleotideSequence, Allele>>[] vResults;
         AlignmentResult<AlignmentHit<NucleotideSequence, Allele>>[] jResults;
@@ -141,7 +155,9 @@ public final class VDJCAlignerPVFirst extends VDJCAlignerAbstract<PairedRead> {
         VDJCHit[] dHits = null, cHits = null;
         PairedHit bestVHits;
 
-        PAlignmentHelper(PairedTarget target, AlignmentResult<AlignmentHit<NucleotideSequence, Allele>>... vResults) {
+        PAlignmentHelper(VJAligners aligners, PairedTarget target,
+                         AlignmentResult<AlignmentHit<NucleotideSequence, Allele>>... vResults) {
+            this.aligners = aligners;
             this.target = target;
             this.vResults = vResults;
             this.vHits = extractDoubleHits(vResults);
@@ -151,6 +167,27 @@ public final class VDJCAlignerPVFirst extends VDJCAlignerAbstract<PairedRead> {
             //);
         }
 
+        /**
+         * Returns offset of the second target relative to the first one given by the highest-scoring V allele aligned
+         * to both of them (see {@link KmerPairedReadMerger#offsetHint(Alignment, Alignment)}), or {@link
+         * Integer#MIN_VALUE} if there is no such allele.
+         */
+        int offsetHint() {
+            PairedHit best = null;
+            float bestScore = 0;
+            for (PairedHit hit : vHits) {
+                if (hit.hit0 == null || hit.hit1 == null)
+                    continue;
+                float score = hit.hit0.getAlignment().getScore() + hit.hit1.getAlignment().getScore();
+                if (best == null || score > bestScore) {
+                    best = hit;
+                    bestScore = score;
+                }
+            }
+            return best == null ? Integer.MIN_VALUE :
+                    KmerPairedReadMerger.offsetHint(best.hit0.getAlignment(), best.hit1.getAlignment());
+        }
+
         void sortAndFilterBasedOnVEndScore() {
             // Calculating vEndScores
             for (PairedHit hit : vHits)
@@ -287,10 +324,12 @@ public final class VDJCAlignerPVFirst extends VDJCAlignerAbstract<PairedRead> {
          */
         @SuppressWarnings("unchecked")
         void performJAlignment() {
+            long start = beginStage();
             jHits = extractDoubleHits(jResults = new AlignmentResult[]{
                     performJAlignment(0),
                     performJAlignment(1)
             });
+            endStage(AlignerProfiler.Stage.JAlignment, start);
 
             calculateScoreAndSort(jHits);
         }
@@ -303,8 +342,11 @@ public final class VDJCAlignerPVFirst extends VDJCAlignerAbstract<PairedRead> {
             PairedHit bestVHit = vHits[0];
             PairedHit bestJHit = jHits[0];
 
+            long start;
+
             //Alignment of D gene
             if (singleDAligner != null) {
+                start = beginStage();
                 PreVDJCHit[][] preDHits = new PreVDJCHit[2][];
                 Arrays.fill(preDHits, zeroArray);
 
@@ -324,10 +366,12 @@ public final class VDJCAlignerPVFirst extends VDJCAlignerAbstract<PairedRead> {
 
                 dHits = PreVDJCHit.combine(getDAllelesToAlign(),
                         parameters.getFeatureToAlign(GeneType.Diversity), preDHits);
+                endStage(AlignerProfiler.Stage.DAlignment, start);
             }
 
             //Alignment of C gene
             if (cAligner != null) {
+                start = beginStage();
                 AlignmentHit<NucleotideSequence, Allele>[][] results = new AlignmentHit[2][];
                 Arrays.fill(results, zeroKArray);
                 for (int i = 0; i < 2; ++i) {
@@ -341,6 +385,7 @@ public final class VDJCAlignerPVFirst extends VDJCAlignerAbstract<PairedRead> {
                 }
                 cHits = combine(getCAllelesToAlign(),
                         parameters.getFeatureToAlign(GeneType.Constant), results);
+                endStage(AlignerProfiler.Stage.CAlignment, start);
             }
         }
 
@@ -362,7 +407,7 @@ public final class VDJCAlignerPVFirst extends VDJCAlignerAbstract<PairedRead> {
                     || vHit.getAlignment().getSequence2Range().getTo() == targetSequence.size())
                 return null;
 
-            return jAligner.align(targetSequence,
+            return aligners.jAligner.align(targetSequence,
                     vHit.getAlignment().getSequence2Range().getTo(),
                     targetSequence.size());
         }
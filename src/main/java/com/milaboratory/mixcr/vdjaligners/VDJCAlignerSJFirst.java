@@ -39,6 +39,7 @@ import com.milaboratory.mixcr.reference.Allele;
 import com.milaboratory.mixcr.reference.GeneFeature;
 import com.milaboratory.mixcr.reference.GeneType;
 import com.milaboratory.mixcr.reference.Locus;
+import com.milaboratory.mixcr.vdjaligners.VDJCReferenceEngine.VJAligners;
 
 import java.util.EnumMap;
 import java.util.EnumSet;
@@ -51,14 +52,16 @@ public final class VDJCAlignerSJFirst extends VDJCAlignerAbstract<SingleRead> {
     }
 
     @Override
-    public VDJCAlignmentResult<SingleRead> process(SingleRead input) {
+    protected VDJCAlignmentResult<SingleRead> process0(SingleRead input) {
         ensureInitialized();
 
         NSequenceWithQuality target = input.getData();
         NSequenceWithQuality targetRC = target.getReverseComplement();
 
-        KVJResultsForSingle vjResultForward = align(target, false);
-        KVJResultsForSingle vjResultReverse = align(targetRC, true);
+        VJAligners aligners = getVJAligners(target.getSequence());
+
+        KVJResultsForSingle vjResultForward = align(aligners, target, false);
+        KVJResultsForSingle vjResultReverse = align(aligners, targetRC, true);
 
         if (!vjResultForward.isFull() && !vjResultReverse.isFull()) {
             if (!vjResultForward.hasKJHits() && !vjResultReverse.hasKJHits())
@@ -112,38 +115,45 @@ public final class VDJCAlignerSJFirst extends VDJCAlignerAbstract<SingleRead> {
         }
     }
 
-    private KVJResultsForSingle align(NSequenceWithQuality input, boolean isRC) {
+    private KVJResultsForSingle align(VJAligners aligners, NSequenceWithQuality input, boolean isRC) {
         NucleotideSequence sequence = input.getSequence();
 
-        ensureInitialized();
-
         AlignmentResult<AlignmentHit<NucleotideSequence, Allele>> vResult, jResult;
+        long start;
 
         switch (parameters.getVJAlignmentOrder()) {
             case VThenJ:
-                vResult = vAligner.align(sequence);
+                start = beginStage();
+                vResult = aligners.vAligner.align(sequence);
+                endStage(AlignerProfiler.Stage.VAlignment, start);
 
                 //If there is no results for V return
                 if (!vResult.hasHits())
                     return new KVJResultsForSingle(input, vResult, null, isRC);
 
                 //Searching for J gene
-                jResult = jAligner.align(sequence,
+                start = beginStage();
+                jResult = aligners.jAligner.align(sequence,
                         vResult.getBestHit().getAlignment().getSequence2Range().getTo(),
                         sequence.size());
+                endStage(AlignerProfiler.Stage.JAlignment, start);
 
                 //Returning result
                 return new KVJResultsForSingle(input, vResult, jResult, isRC);
             case JThenV:
-                jResult = jAligner.align(sequence);
+                start = beginStage();
+                jResult = aligners.jAligner.align(sequence);
+                endStage(AlignerProfiler.Stage.JAlignment, start);
 
                 //If there is no results for J return
                 if (!jResult.hasHits())
                     return new KVJResultsForSingle(input, null, jResult, isRC);
 
                 //Searching for V gene
-                vResult = vAligner.align(sequence, 0,
+                start = beginStage();
+                vResult = aligners.vAligner.align(sequence, 0,
                         jResult.getBestHit().getAlignment().getSequence2Range().getFrom());
+                endStage(AlignerProfiler.Stage.VAlignment, start);
 
                 //Returning result
                 return new KVJResultsForSingle(input, vResult, jResult, isRC);
@@ -177,7 +187,9 @@ public final class VDJCAlignerSJFirst extends VDJCAlignerAbstract<SingleRead> {
         public void alignDC() {
             NucleotideSequence sequence = target.getSequence();
 
+            long start;
             if (singleDAligner != null) {
+                start = beginStage();
                 //Alignment of D gene
                 int from = vResult.getBestHit().getAlignment().getSequence2Range().getTo(),
                         to = jResult.getBestHit().getAlignment().getSequence2Range().getFrom();
@@ -185,13 +197,16 @@ public final class VDJCAlignerSJFirst extends VDJCAlignerAbstract<SingleRead> {
                         getPossibleDLoci(), from, to);
                 dHits = PreVDJCHit.convert(getDAllelesToAlign(),
                         parameters.getFeatureToAlign(GeneType.Diversity), dResult);
+                endStage(AlignerProfiler.Stage.DAlignment, start);
             }
 
             if (cAligner != null) {
+                start = beginStage();
                 int from = jResult.getBestHit().getAlignment().getSequence2Range().getTo();
                 AlignmentResult<AlignmentHit<NucleotideSequence, Allele>> res = cAligner.align(sequence, from, target.size());
 
                 cHits = createHits(res.getHits(), parameters.getFeatureToAlign(GeneType.Constant));
+                endStage(AlignerProfiler.Stage.CAlignment, start);
             }
         }
 
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.vdjaligners;
+
+import cc.redberry.pipe.Processor;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.milaboratory.core.io.sequence.PairedRead;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.mitools.merger.PairedReadMergingResult;
+import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+
+import java.util.Arrays;
+
+/**
+ * Short-circuits alignment of exact duplicate reads. Results of alignment (both successful and failed) are cached by
+ * sequences of the read (single read or both mates of a paired read), so that when a read with exactly the same
+ * sequences arrives, cached hits are transferred to the new read id and qualities without actual alignment.
+ *
+ * <p>Overlapping of paired reads (see {@link VDJCAlignerWithMerge}) depends on qualities of the reads, so for cached
+ * results with merged targets the new read is merged again, and if merging gives different sequence (e.g. because of
+ * different qualities) the read is aligned as usual; cached results of paired reads without merged targets are used
+ * only if the new read can't be merged either. Failed results of such reads are not cached.</p>
+ *
+ * <p>Events for cached results are replayed to the listener, so reports are the same as without cache.</p>
+ */
+public final class VDJCAlignerWithCache<R extends SequenceRead> implements Processor<R, VDJCAlignmentResult<R>> {
+    final VDJCAligner<R> aligner;
+    final Cache<ReadKey, CachedResult> cache;
+    final ThreadLocal<CapturedEvents> events = new ThreadLocal<CapturedEvents>() {
+        @Override
+        protected CapturedEvents initialValue() {
+            return new CapturedEvents();
+        }
+    };
+    volatile VDJCAlignerEventListener listener = null;
+
+    public VDJCAlignerWithCache(VDJCAligner<R> aligner, int maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException();
+        this.aligner = aligner;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        aligner.setEventsListener(new CapturingListener());
+    }
+
+    public VDJCAligner<R> getAligner() {
+        return aligner;
+    }
+
+    public void setEventsListener(VDJCAlignerEventListener listener) {
+        this.listener = listener;
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    @Override
+    public VDJCAlignmentResult<R> process(R read) {
+        ReadKey key = new ReadKey(read);
+        CachedResult cached = cache.getIfPresent(key);
+
+        VDJCAlignmentResult<R> result;
+        if (cached != null && (result = cached.apply(read)) != null)
+            return result;
+
+        CapturedEvents ev = events.get();
+        ev.reset();
+        result = aligner.process(read);
+        cached = createCachedResult(read, result.alignment, ev);
+        if (cached != null)
+            cache.put(key, cached);
+        return result;
+    }
+
+    private CachedResult createCachedResult(SequenceRead read, VDJCAlignments alignments, CapturedEvents events) {
+        // Something unexpected happened, nothing to cache
+        if (alignments == null && events.failCause == null && !events.overlapped)
+            return null;
+
+        if (alignments == null)
+            // Outcome depends on whether (and how) reads were merged, i.e. on their qualities
+            return isMerging(read) ? null : new CachedResult(null, events.failCause, events.overlapped, null);
+
+        int[] sources = new int[alignments.numberOfTargets()];
+        for (int i = 0; i < sources.length; ++i) {
+            NucleotideSequence target = alignments.getTarget(i).getSequence();
+            sources[i] = -1;
+            for (int r = 0; r < read.numberOfReads() && sources[i] == -1; ++r) {
+                NucleotideSequence seq = read.getRead(r).getData().getSequence();
+                boolean forward = target.equals(seq),
+                        reverse = target.equals(seq.getReverseComplement());
+                // Palindromic sequence: orientation (and so qualities) is ambiguous
+                if (forward && reverse)
+                    return null;
+                if (forward)
+                    sources[i] = 2 * r;
+                else if (reverse)
+                    sources[i] = 2 * r + 1;
+            }
+        }
+
+        return new CachedResult(alignments, null, events.overlapped, sources);
+    }
+
+    private final class CachedResult {
+        final VDJCAlignments template;
+        final VDJCAlignmentFailCause failCause;
+        final boolean overlapped;
+        /**
+         * For each target of template: 2 * (index of read) + (1 if reverse complement), or -1 if target is not one of
+         * the reads (e.g. merged sequence)
+         */
+        final int[] targetSources;
+
+        CachedResult(VDJCAlignments template, VDJCAlignmentFailCause failCause,
+                     boolean overlapped, int[] targetSources) {
+            this.template = template;
+            this.failCause = failCause;
+            this.overlapped = overlapped;
+            this.targetSources = targetSources;
+        }
+
+        /**
+         * Returns result for the read or {@code null} if cached result can't be applied to it.
+         */
+        VDJCAlignmentResult<R> apply(R read) {
+            VDJCAlignerEventListener listener = VDJCAlignerWithCache.this.listener;
+
+            if (template == null) {
+                if (listener != null) {
+                    if (failCause != null)
+                        listener.onFailedAlignment(read, failCause);
+                    if (overlapped)
+                        listener.onSuccessfulOverlap(read, null);
+                }
+                return new VDJCAlignmentResult<>(read);
+            }
+
+            NSequenceWithQuality[] targets = new NSequenceWithQuality[targetSources.length];
+            boolean merged = false;
+            for (int i = 0; i < targets.length; ++i) {
+                int source = targetSources[i];
+                if (source == -1) {
+                    // Merged target, qualities of the overlap are calculated from qualities of both mates
+                    NSequenceWithQuality target = merge(read);
+                    if (target == null || !target.getSequence().equals(template.getTarget(i).getSequence()))
+                        return null;
+                    targets[i] = target;
+                    merged = true;
+                } else {
+                    NSequenceWithQuality data = read.getRead(source >> 1).getData();
+                    targets[i] = (source & 1) == 0 ? data : data.getReverseComplement();
+                }
+            }
+
+            // Reads were not merged for the cached result, but may be merged with qualities of this read
+            if (!merged && isMerging(read) && merge(read) != null)
+                return null;
+
+            VDJCAlignments alignments = new VDJCAlignments(read.getId(), template, targets);
+            if (template.getDescriptions() != null) {
+                String[] descriptions = new String[read.numberOfReads()];
+                for (int i = 0; i < descriptions.length; ++i)
+                    descriptions[i] = read.getRead(i).getDescription();
+                alignments.setDescriptions(descriptions);
+            }
+
+            if (listener != null) {
+                listener.onSuccessfulAlignment(read, alignments);
+                if (overlapped)
+                    listener.onSuccessfulOverlap(read, alignments);
+            }
+
+            return new VDJCAlignmentResult<>(read, alignments);
+        }
+    }
+
+    private boolean isMerging(SequenceRead read) {
+        return aligner instanceof VDJCAlignerWithMerge && read instanceof PairedRead;
+    }
+
+    private NSequenceWithQuality merge(R read) {
+        if (!isMerging(read))
+            return null;
+        PairedReadMergingResult merged = ((VDJCAlignerWithMerge) aligner).merger.process((PairedRead) read);
+        return merged.isSuccessful() ? merged.getOverlappedSequence() : null;
+    }
+
+    private final class CapturingListener implements VDJCAlignerEventListener {
+        @Override
+        public void onFailedAlignment(SequenceRead read, VDJCAlignmentFailCause cause) {
+            events.get().failCause = cause;
+            VDJCAlignerEventListener listener = VDJCAlignerWithCache.this.listener;
+            if (listener != null)
+                listener.onFailedAlignment(read, cause);
+        }
+
+        @Override
+        public void onSuccessfulAlignment(SequenceRead read, VDJCAlignments alignment) {
+            VDJCAlignerEventListener listener = VDJCAlignerWithCache.this.listener;
+            if (listener != null)
+                listener.onSuccessfulAlignment(read, alignment);
+        }
+
+        @Override
+        public void onSuccessfulOverlap(SequenceRead read, VDJCAlignments alignments) {
+            events.get().overlapped = true;
+            VDJCAlignerEventListener listener = VDJCAlignerWithCache.this.listener;
+            if (listener != null)
+                listener.onSuccessfulOverlap(read, alignments);
+        }
+    }
+
+    private static final class CapturedEvents {
+        VDJCAlignmentFailCause failCause;
+        boolean overlapped;
+
+        void reset() {
+            failCause = null;
+            overlapped = false;
+        }
+    }
+
+    private static final class ReadKey {
+        final NucleotideSequence[] sequences;
+        final int hash;
+
+        ReadKey(SequenceRead read) {
+            this.sequences = new NucleotideSequence[read.numberOfReads()];
+            for (int i = 0; i < sequences.length; ++i)
+                sequences[i] = read.getRead(i).getData().getSequence();
+            this.hash = Arrays.hashCode(sequences);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ReadKey)) return false;
+            ReadKey that = (ReadKey) o;
+            return hash == that.hash && Arrays.equals(sequences, that.sequences);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
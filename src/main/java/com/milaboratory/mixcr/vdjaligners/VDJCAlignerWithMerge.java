@@ -28,6 +28,7 @@
  */
 package com.milaboratory.mixcr.vdjaligners;
 
+import cc.redberry.pipe.Processor;
 import com.milaboratory.core.io.sequence.PairedRead;
 import com.milaboratory.core.io.sequence.SingleReadImpl;
 import com.milaboratory.mitools.merger.MismatchOnlyPairedReadMerger;
@@ -42,7 +43,7 @@ import com.milaboratory.mixcr.reference.Allele;
 public final class VDJCAlignerWithMerge extends VDJCAligner<PairedRead> {
     final VDJCAlignerSJFirst singleAligner;
     final VDJCAlignerPVFirst pairedAligner;
-    final MismatchOnlyPairedReadMerger merger;
+    volatile Processor<PairedRead, PairedReadMergingResult> merger;
 
     public VDJCAlignerWithMerge(VDJCAlignerParameters parameters) {
         super(parameters);
@@ -53,6 +54,16 @@ public final class VDJCAlignerWithMerge extends VDJCAligner<PairedRead> {
                         parameters.getReadsLayout()));
     }
 
+    /**
+     * Sets merger of paired reads to use instead of default {@link MismatchOnlyPairedReadMerger} (e.g. {@link
+     * KmerPairedReadMerger}). Must be set before processing of reads.
+     *
+     * @param merger paired reads merger
+     */
+    public void setMerger(Processor<PairedRead, PairedReadMergingResult> merger) {
+        this.merger = merger;
+    }
+
     @Override
     public int addAllele(Allele allele) {
         singleAligner.addAllele(allele);
@@ -67,13 +78,50 @@ public final class VDJCAlignerWithMerge extends VDJCAligner<PairedRead> {
         super.setEventsListener(listener);
     }
 
+    @Override
+    public void setProfiler(AlignerProfiler profiler) {
+        singleAligner.setProfiler(profiler);
+        pairedAligner.setProfiler(profiler);
+        super.setProfiler(profiler);
+    }
+
+    @Override
+    public void setLociPreClassification(boolean lociPreClassification) {
+        singleAligner.setLociPreClassification(lociPreClassification);
+        pairedAligner.setLociPreClassification(lociPreClassification);
+        super.setLociPreClassification(lociPreClassification);
+    }
+
     @Override
     protected void init() {
+        // Single set of reference indexes (and D cache) for both merged and unmerged reads
+        VDJCReferenceEngine engine = new VDJCReferenceEngine(parameters, allelesToAlign, lociPreClassification, profiler);
+        singleAligner.setReferenceEngine(engine);
+        pairedAligner.setReferenceEngine(engine);
     }
 
     @Override
-    public VDJCAlignmentResult<PairedRead> process(final PairedRead read) {
+    protected VDJCAlignmentResult<PairedRead> process0(final PairedRead read) {
+        ensureInitialized();
+        long start = beginStage();
+        Processor<PairedRead, PairedReadMergingResult> merger = this.merger;
         PairedReadMergingResult merged = merger.process(read);
+        endStage(AlignerProfiler.Stage.Merging, start);
+        if (!merged.isSuccessful() && merger instanceof KmerPairedReadMerger) {
+            // V genes are aligned to both reads anyway to align them separately; positions of V alignment in the
+            // reads give expected offset of the overlap, which is verified by merger before voting
+            VDJCAlignerPVFirst.PAlignmentHelper[] helpers =
+                    pairedAligner.createInitialHelpers(pairedAligner.getTargets(read));
+            int offsetHint = helpers[0].offsetHint();
+            if (offsetHint != Integer.MIN_VALUE) {
+                start = beginStage();
+                merged = ((KmerPairedReadMerger) merger).process(read, offsetHint);
+                endStage(AlignerProfiler.Stage.Merging, start);
+            }
+            if (!merged.isSuccessful()) {
+                return pairedAligner.process(read, helpers);
+            }
+        }
         if (merged.isSuccessful()) {
             VDJCAlignments alignment = singleAligner.process(
                     new SingleReadImpl(read.getId(), merged.getOverlappedSequence(), "")).alignment;
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.vdjaligners;
+
+import com.google.common.base.Supplier;
+import com.google.common.cache.CacheStats;
+import com.milaboratory.core.alignment.batch.AlignmentHit;
+import com.milaboratory.core.alignment.batch.BatchAlignerWithBase;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.mixcr.reference.Allele;
+import com.milaboratory.mixcr.reference.GeneType;
+import com.milaboratory.mixcr.reference.Locus;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Reference indexes used by aligners: V, J and C batch aligners, D aligner (with its cache of results) and loci
+ * sketch for pre-classification of reads. Engine is immutable after construction (aligners restricted to subsets of
+ * loci are built lazily in a thread-safe way), so a single instance can be shared by several aligners built with the
+ * same parameters and alleles (e.g. merged and unmerged paths of {@link VDJCAlignerWithMerge}).
+ */
+public final class VDJCReferenceEngine {
+    final VDJCAlignerParameters parameters;
+    final EnumMap<GeneType, List<Allele>> alleles;
+    final SingleDAligner singleDAligner;
+    final BatchAlignerWithBase<NucleotideSequence, Allele, AlignmentHit<NucleotideSequence, Allele>> vAligner, jAligner, cAligner;
+    final VJAligners defaultVJAligners;
+    final LociSketch lociSketch;
+    private final AtomicReferenceArray<VJAligners> vjAlignersByLoci;
+
+    /**
+     * Builds reference indexes.
+     *
+     * @param parameters            aligner parameters
+     * @param alleles               alleles to align with, by gene type
+     * @param lociPreClassification build loci sketch for pre-classification of reads (see {@link LociSketch})
+     * @param profiler              profiler to register D cache in, may be null
+     */
+    public VDJCReferenceEngine(VDJCAlignerParameters parameters, Map<GeneType, List<Allele>> alleles,
+                               boolean lociPreClassification, AlignerProfiler profiler) {
+        this.parameters = parameters;
+        this.alleles = new EnumMap<>(GeneType.class);
+        for (GeneType geneType : GeneType.values()) {
+            List<Allele> list = alleles.get(geneType);
+            this.alleles.put(geneType, list == null ? new ArrayList<Allele>() : new ArrayList<>(list));
+        }
+
+        DAlignerParameters dAlignerParameters = parameters.getDAlignerParameters();
+        List<Allele> dAlleles = this.alleles.get(GeneType.Diversity);
+        if (dAlignerParameters != null && dAlleles.size() != 0) {
+            final SingleDAligner dAligner = singleDAligner = new SingleDAligner(dAlignerParameters, dAlleles);
+            if (profiler != null)
+                profiler.addCache("D cache", new Supplier<CacheStats>() {
+                    @Override
+                    public CacheStats get() {
+                        return dAligner.getCacheStats();
+                    }
+                });
+        } else
+            singleDAligner = null;
+        vAligner = createKAligner(GeneType.Variable, 0);
+        jAligner = createKAligner(GeneType.Joining, 0);
+        cAligner = createKAligner(GeneType.Constant, 0);
+        defaultVJAligners = new VJAligners(vAligner, jAligner);
+
+        LociSketch sketch = null;
+        if (lociPreClassification) {
+            sketch = new LociSketch();
+            for (GeneType geneType : new GeneType[]{GeneType.Variable, GeneType.Joining, GeneType.Constant}) {
+                if (parameters.getFeatureToAlign(geneType) == null)
+                    continue;
+                for (Allele a : this.alleles.get(geneType))
+                    sketch.add(a.getLocus(), a.getFeature(parameters.getFeatureToAlign(geneType)));
+            }
+            if (sketch.numberOfLoci() <= 1)
+                sketch = null;
+        }
+        lociSketch = sketch;
+        vjAlignersByLoci = sketch == null ? null : new AtomicReferenceArray<VJAligners>(1 << Locus.values().length);
+    }
+
+    @SuppressWarnings("unchecked")
+    private BatchAlignerWithBase<NucleotideSequence, Allele, AlignmentHit<NucleotideSequence, Allele>> createKAligner(GeneType geneType,
+                                                                                                                     int lociMask) {
+        if (parameters.getVJCGeneAlignerParameters(geneType) != null &&
+                !alleles.get(geneType).isEmpty()) {
+            BatchAlignerWithBase<NucleotideSequence, Allele, AlignmentHit<NucleotideSequence, Allele>> aligner =
+                    (BatchAlignerWithBase) parameters.getVJCGeneAlignerParameters(geneType).getParameters().createAligner();
+            boolean empty = true;
+            for (Allele a : alleles.get(geneType))
+                if (lociMask == 0 || (lociMask & (1 << a.getLocus().ordinal())) != 0) {
+                    aligner.addReference(a.getFeature(parameters.getVJCGeneAlignerParameters(geneType).getGeneFeatureToAlign()), a);
+                    empty = false;
+                }
+            return empty ? null : aligner;
+        }
+        return null;
+    }
+
+    /**
+     * Returns {@code true} if engine was built for the same parameters and alleles as specified, so it can be used by
+     * the aligner with them.
+     */
+    boolean isCompatible(VDJCAlignerParameters parameters, Map<GeneType, List<Allele>> alleles) {
+        if (!this.parameters.equals(parameters))
+            return false;
+        for (GeneType geneType : GeneType.values()) {
+            List<Allele> list = alleles.get(geneType);
+            if (!this.alleles.get(geneType).equals(list == null ? new ArrayList<Allele>() : list))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns V and J aligners restricted to the candidate loci of the read (see {@link LociSketch}), or default
+     * aligners (with all alleles) if pre-classification is disabled or the read can't be reliably classified.
+     *
+     * @param sequences sequences of the read (e.g. both mates of paired-end read)
+     */
+    public VJAligners getVJAligners(NucleotideSequence... sequences) {
+        if (lociSketch == null)
+            return defaultVJAligners;
+
+        int mask = lociSketch.classify(sequences);
+
+        if (mask == 0 || mask == lociSketch.lociMask)
+            return defaultVJAligners;
+
+        VJAligners aligners = vjAlignersByLoci.get(mask);
+        if (aligners == null) {
+            BatchAlignerWithBase<NucleotideSequence, Allele, AlignmentHit<NucleotideSequence, Allele>>
+                    v = createKAligner(GeneType.Variable, mask),
+                    j = createKAligner(GeneType.Joining, mask);
+            aligners = v == null || j == null ? defaultVJAligners : new VJAligners(v, j);
+            // Another thread may have already created aligners for the same loci, use them
+            if (!vjAlignersByLoci.compareAndSet(mask, null, aligners))
+                aligners = vjAlignersByLoci.get(mask);
+        }
+        return aligners;
+    }
+
+    public static final class VJAligners {
+        final BatchAlignerWithBase<NucleotideSequence, Allele, AlignmentHit<NucleotideSequence, Allele>> vAligner, jAligner;
+
+        VJAligners(BatchAlignerWithBase<NucleotideSequence, Allele, AlignmentHit<NucleotideSequence, Allele>> vAligner,
+                   BatchAlignerWithBase<NucleotideSequence, Allele, AlignmentHit<NucleotideSequence, Allele>> jAligner) {
+            this.vAligner = vAligner;
+            this.jAligner = jAligner;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.assembler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ReadToCloneIndexTest {
+    static List<ReadToCloneMapping> mappings() {
+        List<ReadToCloneMapping> mappings = new ArrayList<>();
+        // Every third alignment is absent (dropped), clone index = alignment id % 97
+        for (long i = 0; i < 10000; ++i)
+            if (i % 3 != 0)
+                mappings.add(new ReadToCloneMapping(i, 10 * i, (int) (i % 97), i % 2 == 0, i % 5 == 0));
+        return mappings;
+    }
+
+    @Test
+    public void testByAlignments() throws Exception {
+        List<ReadToCloneMapping> mappings = mappings();
+        Collections.sort(mappings, ReadToCloneMapping.ALIGNMENTS_COMPARATOR);
+        try (ReadToCloneIndex index = new ReadToCloneIndex(mappings.iterator(),
+                ReadToCloneIndex.Ordering.ByAlignments)) {
+            Assert.assertEquals(mappings.size(), index.size());
+            // Reverse order of requests
+            for (long i = 10010; i >= -1; --i) {
+                ReadToCloneMapping mapping = index.getByAlignmentsId(i);
+                if (i < 0 || i >= 10000 || i % 3 == 0) {
+                    Assert.assertNull(mapping);
+                    continue;
+                }
+                Assert.assertEquals(i, mapping.getAlignmentsId());
+                Assert.assertEquals(10 * i, mapping.getReadId());
+                Assert.assertEquals(i % 97, mapping.getCloneIndex());
+                Assert.assertEquals(i % 2 == 0, mapping.isClustered());
+                Assert.assertEquals(i % 5 == 0, mapping.isMapped());
+            }
+        }
+    }
+
+    @Test
+    public void testByClones() throws Exception {
+        List<ReadToCloneMapping> mappings = mappings();
+        Collections.sort(mappings, ReadToCloneMapping.CLONE_COMPARATOR);
+        try (ReadToCloneIndex index = new ReadToCloneIndex(mappings.iterator(),
+                ReadToCloneIndex.Ordering.ByClones)) {
+            for (int clone = 100; clone >= 0; --clone) {
+                List<Long> expected = new ArrayList<>();
+                for (ReadToCloneMapping mapping : mappings)
+                    if (mapping.getCloneIndex() == clone)
+                        expected.add(mapping.getReadId());
+                long[] actual = index.getReadIdsByClone(clone);
+                Assert.assertEquals(expected.size(), actual.length);
+                for (int i = 0; i < actual.length; ++i)
+                    Assert.assertEquals((long) expected.get(i), actual[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        try (ReadToCloneIndex index = new ReadToCloneIndex(new ArrayList<ReadToCloneMapping>().iterator(),
+                ReadToCloneIndex.Ordering.ByClones)) {
+            Assert.assertEquals(0, index.getReadIdsByClone(0).length);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotSorted() throws Exception {
+        List<ReadToCloneMapping> mappings = mappings();
+        Collections.sort(mappings, ReadToCloneMapping.CLONE_COMPARATOR);
+        new ReadToCloneIndex(mappings.iterator(), ReadToCloneIndex.Ordering.ByAlignments).close();
+    }
+}
@@ -41,6 +41,7 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -103,4 +104,57 @@ public class IOTest {
             Assert.assertEquals(numberOfReads, reader.getNumberOfReads());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testResume() throws Exception {
+        VDJCAlignerParameters parameters = VDJCParametersPresets.getByName("default");
+        LociLibrary ll = LociLibraryManager.getDefault().getLibrary("mi");
+
+        VDJCAlignerSJFirst aligner = new VDJCAlignerSJFirst(parameters);
+        for (Allele allele : ll.getLocus(Species.HomoSapiens, Locus.IGH).getAllAlleles())
+            if (parameters.containsRequiredFeature(allele))
+                aligner.addAllele(allele);
+
+        List<VDJCAlignments> alignemntsList = new ArrayList<>();
+        try (SingleFastqReader reader =
+                     new SingleFastqReader(
+                             IOTest.class.getClassLoader()
+                                     .getResourceAsStream("sequences/sample_IGH_R1.fastq"), true)) {
+            for (SingleRead read : CUtils.it(reader)) {
+                VDJCAlignmentResult<SingleRead> result = aligner.process(read);
+                if (result.alignment != null)
+                    alignemntsList.add(result.alignment);
+            }
+        }
+        assertTrue(alignemntsList.size() > 10);
+
+        File file = File.createTempFile("resume", ".vdjca");
+        file.deleteOnExit();
+        int half = alignemntsList.size() / 2;
+
+        // Interrupted run: alignments after the checkpoint are partially written
+        VDJCAlignmentsWriter writer = VDJCAlignmentsWriter.createResumable(file);
+        writer.header(aligner);
+        for (int i = 0; i < half; ++i)
+            writer.write(alignemntsList.get(i));
+        long position = writer.checkpoint();
+        for (int i = half; i < half + 3; ++i)
+            writer.write(alignemntsList.get(i));
+        writer.checkpoint();
+
+        try (VDJCAlignmentsWriter resumed = VDJCAlignmentsWriter.resume(file, position,
+                aligner.getParameters(), aligner.getUsedAlleles())) {
+            for (int i = half; i < alignemntsList.size(); ++i)
+                resumed.write(alignemntsList.get(i));
+            resumed.setNumberOfProcessedReads(100);
+        }
+
+        try (VDJCAlignmentsReader reader = new VDJCAlignmentsReader(file.getAbsolutePath(), ll)) {
+            int i = 0;
+            for (VDJCAlignments alignments : CUtils.it(reader))
+                assertEquals(alignemntsList.get(i++), alignments);
+            assertEquals(alignemntsList.size(), i);
+            Assert.assertEquals(100, reader.getNumberOfReads());
+        }
+    }
+}
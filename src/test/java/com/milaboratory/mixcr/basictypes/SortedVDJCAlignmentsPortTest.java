@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.basictypes;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.fastq.SingleFastqReader;
+import com.milaboratory.mixcr.reference.*;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignerParameters;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignerSJFirst;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignmentResult;
+import com.milaboratory.mixcr.vdjaligners.VDJCParametersPresets;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SortedVDJCAlignmentsPortTest {
+    @Test
+    public void test1() throws Exception {
+        VDJCAlignerParameters parameters = VDJCParametersPresets.getByName("default");
+        LociLibrary ll = LociLibraryManager.getDefault().getLibrary("mi");
+
+        List<VDJCAlignments> alignmentsList = new ArrayList<>();
+        try (SingleFastqReader reader =
+                     new SingleFastqReader(
+                             SortedVDJCAlignmentsPortTest.class.getClassLoader()
+                                     .getResourceAsStream("sequences/sample_IGH_R1.fastq"), true)) {
+            VDJCAlignerSJFirst aligner = new VDJCAlignerSJFirst(parameters);
+            for (Allele allele : ll.getLocus(Species.HomoSapiens, Locus.IGH).getAllAlleles())
+                if (parameters.containsRequiredFeature(allele))
+                    aligner.addAllele(allele);
+
+            for (SingleRead read : CUtils.it(reader)) {
+                VDJCAlignmentResult<SingleRead> result = aligner.process(read);
+                if (result.alignment != null)
+                    alignmentsList.add(result.alignment);
+            }
+
+            int window = 7;
+            // Reversing blocks of alignments: each alignment is preceded by at most (window - 1) alignments with
+            // greater read ids
+            List<VDJCAlignments> shuffled = new ArrayList<>();
+            for (int i = 0; i < alignmentsList.size(); i += window) {
+                List<VDJCAlignments> block = new ArrayList<>(
+                        alignmentsList.subList(i, Math.min(i + window, alignmentsList.size())));
+                Collections.reverse(block);
+                shuffled.addAll(block);
+            }
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (VDJCAlignmentsWriter writer = new VDJCAlignmentsWriter(bos)) {
+                writer.setReorderWindow(window);
+                writer.header(aligner);
+                for (VDJCAlignments alignments : shuffled)
+                    writer.write(alignments);
+                writer.setNumberOfProcessedReads(reader.getNumberOfReads());
+            }
+
+            assertTrue(alignmentsList.size() > 10);
+
+            try (SortedVDJCAlignmentsPort port = new SortedVDJCAlignmentsPort(
+                    new VDJCAlignmentsReader(new ByteArrayInputStream(bos.toByteArray()), ll))) {
+                assertEquals(window, port.getReader().getReorderWindow());
+                int i = 0;
+                for (VDJCAlignments alignments : CUtils.it(port))
+                    assertEquals(alignmentsList.get(i++), alignments);
+                assertEquals(alignmentsList.size(), i);
+            }
+        }
+    }
+}
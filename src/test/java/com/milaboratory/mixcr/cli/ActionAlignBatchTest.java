@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.cli;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+
+public class ActionAlignBatchTest {
+    @Test
+    public void testManifest1() throws Exception {
+        File manifest = File.createTempFile("manifest", ".txt");
+        manifest.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(manifest)) {
+            writer.println("# sample plate");
+            writer.println("s1_R1.fastq s1_R2.fastq s1.vdjca");
+            writer.println();
+            writer.println("  s2.fasta\ts2.vdjca  ");
+        }
+        List<ActionAlignBatch.Sample> samples = ActionAlignBatch.parseManifest(manifest.getAbsolutePath());
+        Assert.assertEquals(2, samples.size());
+        Assert.assertTrue(samples.get(0).isPaired());
+        Assert.assertEquals(Arrays.asList("s1_R1.fastq", "s1_R2.fastq"), samples.get(0).inputs);
+        Assert.assertEquals("s1.vdjca", samples.get(0).output);
+        Assert.assertFalse(samples.get(1).isPaired());
+        Assert.assertEquals("s2.fasta", samples.get(1).getInputForReport());
+        Assert.assertEquals("s2.vdjca", samples.get(1).output);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testManifestWrongLine() throws Exception {
+        File manifest = File.createTempFile("manifest", ".txt");
+        manifest.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(manifest)) {
+            writer.println("s1.vdjca");
+        }
+        ActionAlignBatch.parseManifest(manifest.getAbsolutePath());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.cli;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+public class ActionServerTest {
+    @Test
+    public void testLimitThreads() throws Exception {
+        Assert.assertArrayEquals(new String[]{"align", "-t", "4", "-s", "hs", "R1.fastq", "out.vdjca"},
+                ActionServer.limitThreads(new String[]{"align", "-s", "hs", "R1.fastq", "out.vdjca"},
+                        Main.createActions(), 4));
+        Assert.assertArrayEquals(new String[]{"align", "-t", "4", "R1.fastq", "out.vdjca"},
+                ActionServer.limitThreads(new String[]{"align", "-t", "32", "R1.fastq", "out.vdjca"},
+                        Main.createActions(), 4));
+        Assert.assertArrayEquals(new String[]{"align", "--threads", "2", "R1.fastq", "out.vdjca"},
+                ActionServer.limitThreads(new String[]{"align", "--threads", "2", "R1.fastq", "out.vdjca"},
+                        Main.createActions(), 4));
+        // No threads option
+        Assert.assertArrayEquals(new String[]{"versionInfo", "out.vdjca"},
+                ActionServer.limitThreads(new String[]{"versionInfo", "out.vdjca"}, Main.createActions(), 4));
+    }
+
+    @Test
+    public void testToken() throws Exception {
+        Path dir = Files.createTempDirectory("mixcr");
+        Path file = dir.resolve("server.token");
+        try {
+            String token = ActionServer.writeToken(file);
+            Assert.assertEquals(64, token.length());
+            Assert.assertEquals(token, new String(Files.readAllBytes(file), "UTF-8"));
+            Assert.assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+            Assert.assertNotEquals(token, ActionServer.writeToken(file));
+
+            Assert.assertTrue(ActionServer.checkToken(token, token));
+            Assert.assertFalse(ActionServer.checkToken(token, token.substring(1)));
+            Assert.assertFalse(ActionServer.checkToken(token, null));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testReportFileName() throws Exception {
+        Assert.assertEquals("report.txt", ActionServer.reportFileName(
+                new String[]{"align", "-r", "report.txt", "R1.fastq", "out.vdjca"}, Main.createActions()));
+        Assert.assertNull(ActionServer.reportFileName(
+                new String[]{"align", "R1.fastq", "out.vdjca"}, Main.createActions()));
+        // -r is not a report option here
+        Assert.assertNull(ActionServer.reportFileName(
+                new String[]{"exportAlignmentsPretty", "-r", "ATTA", "in.vdjca"}, Main.createActions()));
+    }
+}
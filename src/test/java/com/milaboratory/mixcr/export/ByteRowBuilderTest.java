@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.export;
+
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.DecimalFormat;
+import java.util.Random;
+
+public class ByteRowBuilderTest {
+    @Test
+    public void testNumbers() throws Exception {
+        DecimalFormat format = new DecimalFormat("#.#");
+        Random random = new Random(42);
+        ByteRowBuilder builder = new ByteRowBuilder();
+        long[] longs = {0, 1, -1, 9, 10, Long.MAX_VALUE, Long.MIN_VALUE, Integer.MIN_VALUE};
+        for (long l : longs) {
+            builder.reset();
+            Assert.assertEquals(Long.toString(l), builder.append(l).toString());
+        }
+        float[] floats = {0f, -0f, 1f, -1f, 0.05f, -0.05f, 0.15f, 0.25f, 12.95f, 123f, 9_999_999f, 1.0E7f, 3.3E10f,
+                Float.NaN, Float.POSITIVE_INFINITY, Float.MIN_VALUE};
+        for (float f : floats) {
+            builder.reset();
+            Assert.assertEquals(Float.toString(f), builder.append(f).toString());
+            builder.reset();
+            Assert.assertEquals(format.format(f), builder.appendOneDigit(f).toString());
+        }
+        for (int i = 0; i < 100_000; ++i) {
+            float f = i % 2 == 0 ? random.nextInt(2000) - 1000 : (random.nextFloat() - 0.5f) * 2000;
+            long l = random.nextLong();
+            builder.reset();
+            Assert.assertEquals(Float.toString(f), builder.append(f).toString());
+            builder.reset();
+            Assert.assertEquals(format.format(f), builder.appendOneDigit(f).toString());
+            builder.reset();
+            Assert.assertEquals(Long.toString(l), builder.append(l).toString());
+        }
+    }
+
+    @Test
+    public void testStrings() throws Exception {
+        NSequenceWithQuality seq = new NSequenceWithQuality("ATTAGACA", "IIIIG#II");
+        ByteRowBuilder builder = new ByteRowBuilder();
+        builder.append(seq.getSequence()).append('\t').append(seq.getQuality()).append('\t').append("IGHV3-23*01")
+                .append('\t').append("αβ");
+        Assert.assertEquals("ATTAGACA\tIIIIG#II\tIGHV3-23*01\tαβ", builder.toString());
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.export;
+
+import com.milaboratory.core.sequence.NucleotideSequence;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ColumnarWriterTest {
+    static abstract class Typed implements TypedFieldExtractor<Integer> {
+        final String header;
+        final ColumnType type;
+
+        Typed(String header, ColumnType type) {
+            this.header = header;
+            this.type = type;
+        }
+
+        @Override
+        public String getHeader() {
+            return header;
+        }
+
+        @Override
+        public ColumnType getColumnType() {
+            return type;
+        }
+
+        @Override
+        public String extractValue(Integer object) {
+            Object value = extractTypedValue(object);
+            return value == null ? "" : value.toString();
+        }
+    }
+
+    static final String[] GENES = {"TRBV12-3*00", "TRBV5-1*00", "TRBV7-2*00"};
+
+    static List<FieldExtractor<? super Integer>> extractors() {
+        List<FieldExtractor<? super Integer>> extractors = new ArrayList<>();
+        extractors.add(new Typed("count", ColumnType.Int64) {
+            @Override
+            public Object extractTypedValue(Integer object) {
+                return object % 7 == 0 ? null : (long) object - 100;
+            }
+        });
+        extractors.add(new Typed("fraction", ColumnType.Float64) {
+            @Override
+            public Object extractTypedValue(Integer object) {
+                return object / 1000.0;
+            }
+        });
+        extractors.add(new Typed("nSeq", ColumnType.Nucleotides) {
+            @Override
+            public Object extractTypedValue(Integer object) {
+                return sequence(object);
+            }
+        });
+        extractors.add(new Typed("bestVHit", ColumnType.Dictionary) {
+            @Override
+            public Object extractTypedValue(Integer object) {
+                return GENES[object % GENES.length];
+            }
+        });
+        extractors.add(new FieldExtractor<Integer>() {
+            @Override
+            public String getHeader() {
+                return "text";
+            }
+
+            @Override
+            public String extractValue(Integer object) {
+                return "row" + object;
+            }
+        });
+        return extractors;
+    }
+
+    static NucleotideSequence sequence(int i) {
+        StringBuilder sb = new StringBuilder();
+        for (int j = 0; j < i % 11; ++j)
+            sb.append("ACGT".charAt((i + j * 3) % 4));
+        return new NucleotideSequence(sb.toString());
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        int count = 250;
+        try (ColumnarWriter<Integer> writer = new ColumnarWriter<>(bos, extractors(), 100)) {
+            for (int i = 0; i < count; ++i)
+                writer.put(i);
+        }
+
+        int row = 0, groups = 0;
+        try (ColumnarReader reader = new ColumnarReader(new ByteArrayInputStream(bos.toByteArray()))) {
+            ColumnarReader.RowGroup group;
+            while ((group = reader.next()) != null) {
+                ++groups;
+                Assert.assertEquals(Arrays.asList("count", "fraction", "nSeq", "bestVHit", "text"),
+                        group.getColumnNames());
+                Assert.assertEquals(ColumnType.Text, group.getType("text"));
+                ColumnarReader.Column counts = group.getColumn("count"),
+                        fractions = group.getColumn("fraction"),
+                        sequences = group.getColumn("nSeq"),
+                        genes = group.getColumn("bestVHit"),
+                        texts = group.getColumn("text");
+                for (int i = 0; i < group.size(); ++i, ++row) {
+                    if (row % 7 == 0)
+                        Assert.assertTrue(counts.isNull(i));
+                    else
+                        Assert.assertEquals(row - 100, counts.getLong(i));
+                    Assert.assertEquals(row / 1000.0, fractions.getDouble(i), 0.0);
+                    Assert.assertEquals(sequence(row), sequences.getNucleotides(i));
+                    Assert.assertEquals(GENES[row % GENES.length], genes.getString(i));
+                    Assert.assertEquals("row" + row, texts.getString(i));
+                }
+            }
+        }
+        Assert.assertEquals(count, row);
+        Assert.assertEquals(3, groups);
+    }
+
+    @Test
+    public void testStatisticsAndProjection() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ColumnarWriter<Integer> writer = new ColumnarWriter<>(bos, extractors(), 100)) {
+            for (int i = 0; i < 150; ++i)
+                writer.put(i);
+        }
+
+        try (ColumnarReader reader = new ColumnarReader(new ByteArrayInputStream(bos.toByteArray()))) {
+            ColumnarReader.RowGroup group = reader.next("fraction");
+            ColumnStatistics statistics = group.getStatistics("count");
+            Assert.assertEquals(15, statistics.getNullCount());
+            Assert.assertEquals(-99L, statistics.getMin());
+            Assert.assertEquals(-1L, statistics.getMax());
+            Assert.assertEquals(0, group.getStatistics("nSeq").getMin());
+            Assert.assertEquals(10, group.getStatistics("nSeq").getMax());
+            Assert.assertEquals(GENES[0], group.getStatistics("bestVHit").getMin());
+            Assert.assertEquals(0.099, group.getColumn("fraction").getDouble(99), 0.0);
+            try {
+                group.getColumn("count");
+                Assert.fail();
+            } catch (IllegalArgumentException e) {
+            }
+
+            group = reader.next("text");
+            Assert.assertEquals(50, group.size());
+            Assert.assertEquals("row149", group.getColumn("text").getString(49));
+            Assert.assertNull(reader.next());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.export;
+
+import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+import com.milaboratory.mixcr.reference.ReferencePoint;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+public class ExportPlanTest {
+    static FieldExtractor parse(String... args) {
+        return FieldExtractors.parse(OutputMode.ScriptingFriendly, VDJCAlignments.class, args);
+    }
+
+    @Test
+    public void testDeduplication() throws Exception {
+        List<FieldExtractor<?>> extractors = new ArrayList<>();
+        extractors.add(parse("-nFeature", "CDR3"));
+        extractors.add(parse("-qFeature", "CDR3"));
+        extractors.add(parse("-aaFeature", "CDR3"));
+        extractors.add(parse("-nFeature", "FR3"));
+        extractors.add(parse("-defaultAnchorPoints"));
+        extractors.add(parse("-positionOf", "CDR3Begin"));
+        extractors.add(parse("-vHit"));
+        ExportPlan plan = ExportPlan.compile(extractors);
+        Assert.assertNotNull(plan);
+        Assert.assertEquals(2, plan.numberOfFeatures());
+        // -positionOf CDR3Begin is one of default reference points
+        Assert.assertEquals(new HashSet<>(Arrays.asList(ReferencePoint.DefaultReferencePoints)).size(),
+                plan.numberOfReferencePoints());
+
+        extractors.clear();
+        extractors.add(parse("-vHit"));
+        Assert.assertNull(ExportPlan.compile(extractors));
+    }
+}
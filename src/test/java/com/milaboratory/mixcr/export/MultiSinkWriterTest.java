@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.export;
+
+import cc.redberry.pipe.Processor;
+import cc.redberry.primitives.Filter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+public class MultiSinkWriterTest {
+    static final Filter<Integer> EVEN = new Filter<Integer>() {
+        @Override
+        public boolean accept(Integer object) {
+            return object % 2 == 0;
+        }
+    };
+
+    @Test
+    public void testFanOut() throws Exception {
+        ByteArrayOutputStream all = new ByteArrayOutputStream(),
+                even = new ByteArrayOutputStream(),
+                first = new ByteArrayOutputStream();
+        InfoWriter<Integer> allWriter = new InfoWriter<>(all),
+                evenWriter = new InfoWriter<>(even),
+                firstWriter = new InfoWriter<>(first);
+        allWriter.attachInfoProvider(new ParallelInfoWriterTest.Square());
+        evenWriter.attachInfoProvider(new ParallelInfoWriterTest.Square());
+        evenWriter.attachInfoProvider(new ParallelInfoWriterTest.Value());
+        firstWriter.attachInfoProvider(new ParallelInfoWriterTest.Value());
+
+        try (MultiSinkWriter<Integer> writer = new MultiSinkWriter<>()) {
+            writer.addSink(allWriter, null, Long.MAX_VALUE, 1);
+            writer.addSink(evenWriter, EVEN, Long.MAX_VALUE, 3);
+            writer.addSink(firstWriter, null, 3, 1);
+            for (int i = 0; i < 5000; ++i)
+                writer.put(i);
+            Assert.assertFalse(writer.isFinished());
+        }
+
+        String[] allLines = all.toString().split("\n");
+        Assert.assertEquals(5001, allLines.length);
+        Assert.assertEquals("square", allLines[0]);
+        Assert.assertEquals("16", allLines[5]);
+
+        String[] evenLines = even.toString().split("\n");
+        Assert.assertEquals(2501, evenLines.length);
+        Assert.assertEquals("16\t4", evenLines[3]);
+
+        Assert.assertEquals("value\n0\n1\n2\n", first.toString());
+    }
+
+    @Test
+    public void testFinished() throws Exception {
+        try (MultiSinkWriter<Integer> writer = new MultiSinkWriter<>()) {
+            InfoWriter<Integer> infoWriter = new InfoWriter<>(new ByteArrayOutputStream());
+            infoWriter.attachInfoProvider(new ParallelInfoWriterTest.Square());
+            writer.addSink(infoWriter, EVEN, 2, 1);
+            writer.put(1);
+            writer.put(2);
+            Assert.assertFalse(writer.isFinished());
+            writer.put(4);
+            Assert.assertTrue(writer.isFinished());
+        }
+    }
+
+    @Test
+    public void testConversion() throws Exception {
+        ByteArrayOutputStream even = new ByteArrayOutputStream();
+        InfoWriter<Integer> evenWriter = new InfoWriter<>(even);
+        evenWriter.attachInfoProvider(new ParallelInfoWriterTest.Square());
+        try (MultiSinkWriter<Integer> writer = new MultiSinkWriter<>()) {
+            // Converts accepted objects to their numbers among accepted ones
+            writer.addSink(evenWriter, EVEN, new Processor<Integer, Integer>() {
+                int position = 0;
+
+                @Override
+                public Integer process(Integer input) {
+                    return position++;
+                }
+            }, Long.MAX_VALUE, 1);
+            for (int i = 0; i < 10; ++i)
+                writer.put(i);
+        }
+        Assert.assertEquals("square\n0\n1\n4\n9\n16\n", even.toString());
+    }
+}
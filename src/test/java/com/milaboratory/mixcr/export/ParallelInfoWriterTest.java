@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.export;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+public class ParallelInfoWriterTest {
+    static final class Square implements FieldExtractor<Integer> {
+        @Override
+        public String getHeader() {
+            return "square";
+        }
+
+        @Override
+        public String extractValue(Integer object) {
+            return Long.toString(1L * object * object);
+        }
+    }
+
+    static final class Value implements FieldExtractor<Integer> {
+        @Override
+        public String getHeader() {
+            return "value";
+        }
+
+        @Override
+        public String extractValue(Integer object) {
+            return Integer.toString(object);
+        }
+    }
+
+    static byte[] export(int threads, int count) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (InfoWriter<Integer> writer = new InfoWriter<>(bos)) {
+            writer.attachInfoProvider(new Square());
+            writer.attachInfoProvider(new Value());
+            if (threads == 1)
+                for (int i = 0; i < count; ++i)
+                    writer.put(i);
+            else
+                try (ParallelInfoWriter<Integer> parallelWriter = new ParallelInfoWriter<>(writer, threads)) {
+                    for (int i = 0; i < count; ++i)
+                        parallelWriter.put(i);
+                }
+        }
+        return bos.toByteArray();
+    }
+
+    @Test
+    public void test1() throws Exception {
+        for (int count : new int[]{0, 1, ParallelInfoWriter.CHUNK_SIZE, 50_000})
+            Assert.assertArrayEquals(export(1, count), export(4, count));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.info;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+public class HistogramCollectorTest {
+    @Test
+    public void testShardsMerged() throws Exception {
+        final IntHistogramCollector<Integer> collector = new IntHistogramCollector<Integer>() {
+            @Override
+            public String getName() {
+                return "mod";
+            }
+
+            @Override
+            protected int key(Integer object) {
+                return object < 0 ? NO_KEY : object % 3;
+            }
+        };
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = -10; i < 3000; ++i)
+                        collector.put(i, 2);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        collector.end();
+
+        Map<String, Long> result = collector.getResult();
+        Assert.assertEquals(Arrays.asList("0", "1", "2"), Arrays.asList(result.keySet().toArray()));
+        for (Long value : result.values())
+            Assert.assertEquals(4 * 1000 * 2L, (long) value);
+    }
+
+    @Test
+    public void testStringOrder() throws Exception {
+        StringHistogramCollector<String> collector = new StringHistogramCollector<String>() {
+            @Override
+            public String getName() {
+                return "words";
+            }
+
+            @Override
+            protected String key(String object) {
+                return object.isEmpty() ? null : object;
+            }
+        };
+        for (String word : new String[]{"b", "a", "c", "c", "", "b", "c"})
+            collector.put(word, 1);
+        collector.end();
+        Map<String, Long> result = collector.getResult();
+        Assert.assertEquals(Arrays.asList("c", "b", "a"), Arrays.asList(result.keySet().toArray()));
+        Assert.assertEquals(3L, (long) result.get("c"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNotEnded() throws Exception {
+        new StringHistogramCollector<String>() {
+            @Override
+            public String getName() {
+                return "words";
+            }
+
+            @Override
+            protected String key(String object) {
+                return object;
+            }
+        }.getResult();
+    }
+}
@@ -118,6 +118,33 @@ public class LociLibraryIOTest {
         Assert.assertTrue(allele.getPartitioning() != null);
     }
 
+    @Test
+    public void test4ReadIndexed() throws Exception {
+        LociLibrary eager = LociLibraryReader.read(
+                LociLibraryReader.class.getClassLoader().getResourceAsStream("reference/mi.ll"), true);
+        LociLibrary indexed = LociLibraryReader.readIndexed(
+                LociLibraryReader.class.getClassLoader().getResourceAsStream("reference/mi.ll"), true);
+
+        SpeciesAndLocus trb = new SpeciesAndLocus(Species.HomoSapiens, Locus.TRB);
+        assertEquals(eager.getLociMap().keySet(), indexed.getAvailableLoci());
+        assertFalse(indexed.isLoaded(trb));
+
+        LocusContainer container = indexed.getLocus(trb);
+        assertNotNull(container);
+        assertTrue(indexed.isLoaded(trb));
+        assertFalse(indexed.isLoaded(new SpeciesAndLocus(Species.HomoSapiens, Locus.IGH)));
+        assertEquals(eager.getLocus(trb).getUUID(), container.getUUID());
+
+        for (Allele allele : eager.getLocus(trb).getAllAlleles()) {
+            Allele a = indexed.getAllele(allele.getId());
+            assertEquals(allele.getName(), a.getName());
+            assertEquals(allele.getFeature(GeneFeature.GermlineVCDR3Part), a.getFeature(GeneFeature.GermlineVCDR3Part));
+        }
+
+        assertEquals(eager.getAllAlleles().size(), indexed.getAllAlleles().size());
+        assertTrue(indexed.isLoaded(new SpeciesAndLocus(Species.HomoSapiens, Locus.IGH)));
+    }
+
     @Test
     @Ignore
     public void test3ReadLL1() throws Exception {
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.reference;
+
+import com.google.common.io.ByteStreams;
+import com.milaboratory.mixcr.util.TempFileManager;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class LociLibrarySnapshotTest {
+    @Test
+    public void test1() throws Exception {
+        byte[] source = ByteStreams.toByteArray(
+                LociLibraryReader.class.getClassLoader().getResourceAsStream("reference/mi.ll"));
+        LociLibrary library = LociLibraryReader.read(new ByteArrayInputStream(source), true);
+        File file = TempFileManager.getTempFile();
+        LociLibrarySnapshot.write(library, LociLibrarySnapshot.digest(source), file);
+        LociLibrary snapshot = LociLibrarySnapshot.read(file);
+
+        assertTrue(LociLibrarySnapshot.isCompiledFrom(file, LociLibrarySnapshot.digest(source)));
+        source[source.length - 1] ^= 1;
+        assertFalse(LociLibrarySnapshot.isCompiledFrom(file, LociLibrarySnapshot.digest(source)));
+
+        assertEquals(library.getLociMap().keySet(), snapshot.getLociMap().keySet());
+        assertEquals(library.getAllAlleles().size(), snapshot.getAllAlleles().size());
+
+        GeneFeature[] features = {GeneFeature.VRegion, GeneFeature.FR3, GeneFeature.GermlineVCDR3Part,
+                GeneFeature.DRegion, GeneFeature.GermlineJCDR3Part, GeneFeature.FR4};
+        for (LocusContainer container : library.getLoci()) {
+            LocusContainer sc = snapshot.getLocus(container.getSpeciesAndLocus());
+            assertEquals(container.getUUID(), sc.getUUID());
+            for (GeneType type : GeneType.values()) {
+                assertEquals(container.getGenes(type).size(), sc.getGenes(type).size());
+                assertEquals(container.getAlleles(type).size(), sc.getAlleles(type).size());
+                for (int i = 0; i < container.getAlleles(type).size(); ++i) {
+                    Allele expected = container.getAllele(type, i), actual = sc.getAllele(type, i);
+                    assertEquals(expected.getName(), actual.getName());
+                    assertEquals(expected.getId(), actual.getId());
+                    assertEquals(expected.isReference(), actual.isReference());
+                    assertEquals(expected.isFunctional(), actual.isFunctional());
+                    assertEquals(expected.getPartitioning(), actual.getPartitioning());
+                    for (GeneFeature feature : features)
+                        assertEquals(expected.getFeature(feature), actual.getFeature(feature));
+                }
+            }
+        }
+    }
+}
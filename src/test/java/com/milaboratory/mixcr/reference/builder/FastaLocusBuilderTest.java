@@ -39,6 +39,9 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.UUID;
 
 import static com.milaboratory.mixcr.reference.ReferencePoint.*;
 
@@ -155,6 +158,57 @@ public class FastaLocusBuilderTest {
         Assert.assertEquals(expected, allele.getFeature(GeneFeature.DRegion));
     }
 
+    @Test
+    public void testParallelImport() throws Exception {
+        FastaLocusBuilderParameters parameters =
+                new FastaLocusBuilderParameters(GeneType.Diversity,
+                        "^[^\\|]+\\|([^\\|]+)",
+                        "^[^\\|]+\\|[^\\|]+\\|[^\\|]+\\|[\\(\\[]?F",
+                        "^[^\\|]+\\|[^\\|]+\\*01", '.',
+                        null, true,
+                        new AffineGapAlignmentScoring<>(NucleotideSequence.ALPHABET, 1, -4, -21, -2),
+                        new AnchorPointPositionInfo(DBegin, 0),
+                        new AnchorPointPositionInfo(DEnd, AnchorPointPositionInfo.END_OF_SEQUENCE));
+
+        Random random = new Random(12345);
+        StringBuilder fasta = new StringBuilder();
+        char[] letters = {'A', 'C', 'G', 'T'};
+        for (int i = 0; i < 300; ++i) {
+            char[] seq = new char[20 + random.nextInt(20)];
+            for (int j = 0; j < seq.length; ++j)
+                seq[j] = letters[random.nextInt(4)];
+            for (int a = 1; a <= 3; ++a) {
+                fasta.append(">X|IGHD").append(i).append("-1*0").append(a).append("|Homo sapiens|F|\n")
+                        .append(seq).append("\n");
+                seq[random.nextInt(seq.length)] = letters[random.nextInt(4)];
+            }
+        }
+        byte[] input = fasta.toString().getBytes(StandardCharsets.US_ASCII);
+
+        byte[] expected = importAndWrite(parameters, input, 1);
+        Assert.assertArrayEquals(expected, importAndWrite(parameters, input, 4));
+
+        LociLibrary ll = LociLibraryReader.read(new ByteArrayInputStream(expected), false);
+        Assert.assertEquals(900, ll.getAllAlleles().size());
+    }
+
+    private static byte[] importAndWrite(FastaLocusBuilderParameters parameters, byte[] input, int threads)
+            throws Exception {
+        FastaLocusBuilder builder = new FastaLocusBuilder(Locus.IGH, parameters)
+                .setThreads(threads).noExceptionOnError()
+                .setLoggingStream(null).setFinalReportStream(null);
+        builder.importAllelesFromStream(new ByteArrayInputStream(input));
+        builder.compile();
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        LociLibraryWriter writer = new LociLibraryWriter(bos);
+        writer.writeMagic();
+        writer.writeBeginOfLocus(Species.HomoSapiens, Locus.IGH, new UUID(1, 2));
+        builder.writeAlleles(writer);
+        writer.writeEndOfLocus();
+        return bos.toByteArray();
+    }
+
     private static AminoAcidSequence tr(StringWithMapping sm, int from, int to) {
         String str = sm.getModifiedString();
         int sFrom = sm.convertPosition(from);
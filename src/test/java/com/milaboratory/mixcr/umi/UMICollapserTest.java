@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.umi;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReadImpl;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class UMICollapserTest {
+    @Test
+    public void testConsensus() throws Exception {
+        NSequenceWithQuality consensus = UMICollapser.consensus(
+                new NSequenceWithQuality("ATTAGACA", "IIIIIIII"),
+                new NSequenceWithQuality("ATTCGACA", "IIII#III"),
+                new NSequenceWithQuality("ATTAGACAT", "IIIIIIIII"));
+        Assert.assertEquals("ATTAGACA", consensus.getSequence().toString());
+        Assert.assertTrue(consensus.getQuality().value(3) < consensus.getQuality().value(2));
+    }
+
+    @Test
+    public void testCollapse() throws Exception {
+        String[] umis = {"AAAA", "CCCC", "GGGG", "TTTT"};
+        List<SingleRead> reads = new ArrayList<>();
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 1000; ++i) {
+            String umi = umis[i % 3 == 0 ? 0 : i % umis.length];
+            reads.add(new SingleReadImpl(i, new NSequenceWithQuality(umi + "ATTAGACA"), "R" + i));
+            Integer count = expected.get(umi);
+            expected.put(umi, count == null ? 1 : count + 1);
+        }
+        // Reads without UMI are passed as is
+        reads.add(new SingleReadImpl(1000, new NSequenceWithQuality("AAA"), "short"));
+
+        for (int maxReadsInMemory : new int[]{10_000, 77}) {
+            UMICollapser collapser = new UMICollapser(CUtils.asOutputPort(reads),
+                    UMIExtractor.fromSequencePrefix(4), maxReadsInMemory);
+            Map<String, Integer> actual = new HashMap<>();
+            long id = 0, total = 0;
+            for (SequenceRead read : CUtils.it(collapser)) {
+                Assert.assertEquals(id++, read.getId());
+                long multiplicity = collapser.takeMultiplicity(read.getId());
+                // Multiplicity is forgotten once taken
+                Assert.assertEquals(1, collapser.takeMultiplicity(read.getId()));
+                total += multiplicity;
+                // Original description of the first read of the group is kept
+                String description = read.getRead(0).getDescription();
+                if (description.equals("short"))
+                    continue;
+                Assert.assertEquals("ATTAGACA", read.getRead(0).getData().getSequence().toString());
+                int i = Integer.parseInt(description.substring(1));
+                actual.put(umis[i % 3 == 0 ? 0 : i % umis.length], (int) multiplicity);
+            }
+            Assert.assertEquals(expected, actual);
+            Assert.assertEquals(reads.size(), total);
+            Assert.assertEquals(reads.size(), collapser.getNumberOfReads());
+            Assert.assertEquals(expected.size() + 1, collapser.getNumberOfGroups());
+        }
+    }
+
+    @Test
+    public void testDescriptionExtractor() throws Exception {
+        UMIExtractor extractor = UMIExtractor.fromDescription("UMI:([ACGTN]+)");
+        UMITaggedRead read = extractor.extract(new SingleReadImpl(0, new NSequenceWithQuality("ATTAGACA"),
+                "read1 UMI:ACGTT x"));
+        Assert.assertEquals("ACGTT", read.umi);
+        Assert.assertNull(extractor.extract(new SingleReadImpl(0, new NSequenceWithQuality("ATTAGACA"),
+                "read1")).umi);
+    }
+}
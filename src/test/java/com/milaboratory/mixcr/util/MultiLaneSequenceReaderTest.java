@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SequenceReaderCloseable;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReadImpl;
+import com.milaboratory.core.io.sequence.fastq.SingleFastqReader;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MultiLaneSequenceReaderTest {
+    @Test
+    public void test1() throws Exception {
+        String file = MultiLaneSequenceReaderTest.class.getClassLoader()
+                .getResource("sequences/sample_IGH_R1.fastq").getFile();
+
+        List<SingleRead> expected = new ArrayList<>();
+        try (SingleFastqReader reader = new SingleFastqReader(file, true)) {
+            SingleRead read;
+            while ((read = reader.take()) != null)
+                expected.add(read);
+        }
+
+        List<SequenceReaderCloseable<? extends SequenceRead>> lanes = new ArrayList<>();
+        for (int i = 0; i < 3; ++i)
+            lanes.add(new SingleFastqReader(file, true));
+        try (MultiLaneSequenceReader reader = new MultiLaneSequenceReader(lanes)) {
+            // Chunks are taken from lanes in turn
+            long id = 0;
+            for (int from = 0; from < expected.size(); from += MultiLaneSequenceReader.CHUNK_SIZE)
+                for (int lane = 0; lane < 3; ++lane)
+                    for (SingleRead e : expected.subList(from,
+                            Math.min(expected.size(), from + MultiLaneSequenceReader.CHUNK_SIZE))) {
+                        SequenceRead a = reader.take();
+                        Assert.assertEquals(id++, a.getId());
+                        Assert.assertEquals(e.getData(), a.getRead(0).getData());
+                    }
+            Assert.assertNull(reader.take());
+            Assert.assertTrue(reader.isFinished());
+            Assert.assertEquals(3 * expected.size(), reader.getNumberOfReads());
+        }
+    }
+
+    @Test
+    public void testLanesAreReadSimultaneously() throws Exception {
+        int lanesCount = 3, size = 10 * MultiLaneSequenceReader.CHUNK_SIZE;
+        List<SequenceReaderCloseable<? extends SequenceRead>> lanes = new ArrayList<>();
+        for (int i = 0; i < lanesCount; ++i)
+            lanes.add(new TestLane(i, i == 1 ? size / 2 : size));
+        long[] counts = new long[lanesCount];
+        try (MultiLaneSequenceReader reader = new MultiLaneSequenceReader(lanes)) {
+            SequenceRead read;
+            long id = 0;
+            while ((read = reader.take()) != null) {
+                Assert.assertEquals(id++, read.getId());
+                int lane = Integer.parseInt(read.getRead(0).getDescription());
+                ++counts[lane];
+                // Every lane (until its end) progresses by at most one chunk ahead of others
+                for (int i = 0; i < lanesCount; ++i)
+                    if (counts[i] < ((TestLane) lanes.get(i)).size)
+                        Assert.assertTrue(counts[lane] - counts[i] <= MultiLaneSequenceReader.CHUNK_SIZE);
+            }
+            Assert.assertEquals(size * 5 / 2, reader.getNumberOfReads());
+        }
+        Assert.assertArrayEquals(new long[]{size, size / 2, size}, counts);
+    }
+
+    private static final class TestLane implements SequenceReaderCloseable<SingleRead> {
+        final int lane, size;
+        int numberOfReads = 0;
+
+        TestLane(int lane, int size) {
+            this.lane = lane;
+            this.size = size;
+        }
+
+        @Override
+        public SingleRead take() {
+            if (numberOfReads == size)
+                return null;
+            return new SingleReadImpl(numberOfReads++, new NSequenceWithQuality("ATTAGACA"), Integer.toString(lane));
+        }
+
+        @Override
+        public long getNumberOfReads() {
+            return numberOfReads;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import com.milaboratory.core.io.sequence.PairedRead;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.fastq.PairedFastqReader;
+import com.milaboratory.core.io.sequence.fastq.SingleFastqReader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+public class ParallelFastqReaderTest {
+    static String resource(String name) {
+        return ParallelFastqReaderTest.class.getClassLoader().getResource(name).getFile();
+    }
+
+    @Test
+    public void testPaired() throws Exception {
+        String r1 = resource("sequences/sample_IGH_R1.fastq"), r2 = resource("sequences/sample_IGH_R2.fastq");
+        int count = 0;
+        try (PairedFastqReader expected = new PairedFastqReader(r1, r2, true);
+             ParallelFastqReader actual = new ParallelFastqReader(3, true, r1, r2)) {
+            PairedRead e;
+            while ((e = expected.take()) != null) {
+                PairedRead a = (PairedRead) actual.take();
+                Assert.assertEquals(e.getId(), a.getId());
+                for (int i = 0; i < 2; ++i) {
+                    Assert.assertEquals(e.getRead(i).getData(), a.getRead(i).getData());
+                    Assert.assertEquals(e.getRead(i).getDescription(), a.getRead(i).getDescription());
+                }
+                ++count;
+            }
+            Assert.assertNull(actual.take());
+            Assert.assertEquals(count, actual.getNumberOfReads());
+        }
+        Assert.assertTrue(count > 0);
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        String r1 = resource("sequences/sample_IGH_R1.fastq");
+        File gzip = File.createTempFile("reads", ".fastq.gz");
+        gzip.deleteOnExit();
+        try (InputStream is = new FileInputStream(r1);
+             OutputStream os = new GZIPOutputStream(new FileOutputStream(gzip))) {
+            copy(is, os);
+        }
+        assertSameReads(r1, gzip);
+    }
+
+    @Test
+    public void testBgzf() throws Exception {
+        String r1 = resource("sequences/sample_IGH_R1.fastq");
+        File bgzf = File.createTempFile("reads", ".fastq.gz");
+        bgzf.deleteOnExit();
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        try (InputStream is = new FileInputStream(r1)) {
+            copy(is, data);
+        }
+        byte[] bytes = data.toByteArray();
+        try (OutputStream os = new FileOutputStream(bgzf)) {
+            // Small blocks, so records span block boundaries
+            for (int i = 0; i < bytes.length; i += 1000)
+                writeBgzfBlock(os, bytes, i, Math.min(1000, bytes.length - i));
+            writeBgzfBlock(os, bytes, 0, 0);
+        }
+        assertSameReads(r1, bgzf);
+    }
+
+    static void assertSameReads(String expectedFile, File actualFile) throws Exception {
+        try (SingleFastqReader expected = new SingleFastqReader(expectedFile, true);
+             ParallelFastqReader actual = new ParallelFastqReader(2, true, actualFile.getAbsolutePath())) {
+            SingleRead e;
+            while ((e = expected.take()) != null) {
+                SequenceRead a = actual.take();
+                Assert.assertEquals(e.getId(), a.getId());
+                Assert.assertEquals(e.getData(), a.getRead(0).getData());
+            }
+            Assert.assertNull(actual.take());
+        }
+    }
+
+    static void copy(InputStream is, OutputStream os) throws IOException {
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = is.read(buffer)) > 0)
+            os.write(buffer, 0, read);
+    }
+
+    static void writeBgzfBlock(OutputStream os, byte[] data, int offset, int length) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        byte[] compressed = new byte[length + 1024];
+        int size = 0;
+        while (!deflater.finished())
+            size += deflater.deflate(compressed, size, compressed.length - size);
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        int blockSize = 18 + size + 8 - 1;
+        os.write(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+                (byte) blockSize, (byte) (blockSize >> 8)});
+        os.write(compressed, 0, size);
+        writeInt(os, (int) crc.getValue());
+        writeInt(os, length);
+    }
+
+    static void writeInt(OutputStream os, int value) throws IOException {
+        for (int i = 0; i < 4; ++i)
+            os.write(value >> (8 * i));
+    }
+}
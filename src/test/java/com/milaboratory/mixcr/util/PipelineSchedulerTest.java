@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.Processor;
+import cc.redberry.pipe.blocks.ParallelProcessor;
+import com.milaboratory.mixcr.cli.ReportHelper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class PipelineSchedulerTest {
+    @Test
+    public void test1() throws Exception {
+        List<Integer> input = new ArrayList<>();
+        for (int i = 0; i < 300000; ++i)
+            input.add(i);
+
+        PipelineScheduler scheduler = new PipelineScheduler(4);
+        OutputPort<List<Integer>> chunks = scheduler.buffered(scheduler.chunked(CUtils.asOutputPort(input)));
+        OutputPort<Long> results = PipelineScheduler.unchunked(
+                new ParallelProcessor<>(chunks, scheduler.chunked(new Processor<Integer, Long>() {
+                    @Override
+                    public Long process(Integer input) {
+                        return 2L * input;
+                    }
+                }), 4));
+
+        List<Long> output = new ArrayList<>();
+        for (Long l : CUtils.it(results))
+            output.add(l);
+        Collections.sort(output);
+
+        Assert.assertEquals(input.size(), output.size());
+        for (int i = 0; i < input.size(); ++i)
+            Assert.assertEquals(2L * i, (long) output.get(i));
+
+        Assert.assertTrue(scheduler.getChunkSize() >= 1 && scheduler.getChunkSize() <= 4096);
+        Assert.assertTrue(scheduler.getQueueDepth() >= 4 && scheduler.getQueueDepth() <= 256);
+        Assert.assertTrue(scheduler.getProcessingThroughput() > 0);
+        scheduler.writeReport(new ReportHelper(System.out));
+    }
+
+    @Test
+    public void testChunkSizeFollowsProcessingCost() throws Exception {
+        PipelineScheduler scheduler = new PipelineScheduler(4);
+        // Expensive items: 1 ms per item
+        scheduler.processedItems.set(100);
+        scheduler.processingNanos.set(100 * 1000000L);
+        scheduler.nextAdjustment = 0;
+        scheduler.adjust();
+        Assert.assertTrue(scheduler.getChunkSize() < 64);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.OutputPort;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReadImpl;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReadsSubsamplerTest {
+    static List<SingleRead> reads(int count) {
+        List<SingleRead> reads = new ArrayList<>();
+        for (int i = 0; i < count; ++i)
+            reads.add(new SingleReadImpl(i, new NSequenceWithQuality("ATTAGACA"), "R" + i));
+        return reads;
+    }
+
+    static List<String> descriptions(OutputPort<? extends SequenceRead> port) {
+        List<String> result = new ArrayList<>();
+        long id = 0;
+        for (SequenceRead read : CUtils.it(port)) {
+            Assert.assertEquals(id++, read.getId());
+            result.add(read.getRead(0).getDescription());
+        }
+        return result;
+    }
+
+    @Test
+    public void testHashSample() throws Exception {
+        List<String> s1 = descriptions(ReadsSubsampler.hashSample(CUtils.asOutputPort(reads(10000)), 0.1, 1));
+        List<String> s2 = descriptions(ReadsSubsampler.hashSample(CUtils.asOutputPort(reads(10000)), 0.1, 1));
+        List<String> s3 = descriptions(ReadsSubsampler.hashSample(CUtils.asOutputPort(reads(10000)), 0.1, 2));
+        Assert.assertEquals(s1, s2);
+        Assert.assertNotEquals(s1, s3);
+        Assert.assertTrue(s1.size() > 800 && s1.size() < 1200);
+    }
+
+    @Test
+    public void testReservoirSample() throws Exception {
+        ReadsSubsampler.Sample sample = ReadsSubsampler.reservoirSample(CUtils.asOutputPort(reads(1000)), 100, 1);
+        Assert.assertEquals(1000, sample.getTotalReads());
+        Assert.assertEquals(0.1, sample.getSamplingRate(), 1E-10);
+        List<String> s1 = descriptions(CUtils.asOutputPort(sample.getReads()));
+        Assert.assertEquals(100, s1.size());
+        List<String> s2 = descriptions(CUtils.asOutputPort(
+                ReadsSubsampler.reservoirSample(CUtils.asOutputPort(reads(1000)), 100, 1).getReads()));
+        Assert.assertEquals(s1, s2);
+
+        sample = ReadsSubsampler.reservoirSample(CUtils.asOutputPort(reads(10)), 100, 1);
+        Assert.assertEquals(10, sample.getReads().size());
+        Assert.assertEquals(1.0, sample.getSamplingRate(), 0.0);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.vdjaligners;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AlignerProfilerTest {
+    @Test
+    public void test1() throws Exception {
+        AlignerProfiler profiler = new AlignerProfiler();
+        for (int i = 0; i < 90; i++)
+            profiler.record(AlignerProfiler.Stage.VAlignment, 1000);
+        for (int i = 0; i < 10; i++)
+            profiler.record(AlignerProfiler.Stage.VAlignment, 100000);
+
+        Assert.assertEquals(100, profiler.getCount(AlignerProfiler.Stage.VAlignment));
+        Assert.assertEquals(0, profiler.getCount(AlignerProfiler.Stage.JAlignment));
+        Assert.assertEquals(10900.0, profiler.getMeanNanos(AlignerProfiler.Stage.VAlignment), 1E-6);
+        Assert.assertEquals(1024, profiler.getQuantileNanos(AlignerProfiler.Stage.VAlignment, 0.5));
+        Assert.assertEquals(131072, profiler.getQuantileNanos(AlignerProfiler.Stage.VAlignment, 0.99));
+        Assert.assertEquals(-1, profiler.getQuantileNanos(AlignerProfiler.Stage.JAlignment, 0.5));
+    }
+
+    @Test
+    public void testNestedReads() throws Exception {
+        AlignerProfiler profiler = new AlignerProfiler();
+        long outer = profiler.beginRead();
+        long inner = profiler.beginRead();
+        profiler.endRead(inner);
+        profiler.endRead(outer);
+        Assert.assertEquals(1, profiler.getCount(AlignerProfiler.Stage.Total));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.vdjaligners;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.PairedEndReadsLayout;
+import com.milaboratory.core.io.sequence.PairedRead;
+import com.milaboratory.core.io.sequence.SingleReadImpl;
+import com.milaboratory.core.io.sequence.fastq.PairedFastqReader;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.SequenceQuality;
+import com.milaboratory.mitools.merger.MismatchOnlyPairedReadMerger;
+import com.milaboratory.mitools.merger.PairedReadMergingResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class KmerPairedReadMergerTest {
+    @Test
+    public void testSynthetic() throws Exception {
+        Random random = new Random(12345);
+        KmerPairedReadMerger merger = new KmerPairedReadMerger(PairedEndReadsLayout.Opposite, 17, 0.9);
+        for (int n = 0; n < 100; ++n) {
+            NucleotideSequence fragment = randomSequence(random, 250 + random.nextInt(200));
+            int r1Length = 150 + random.nextInt(100), r2Length = 150 + random.nextInt(100);
+            if (r1Length + r2Length < fragment.size() + 20)
+                continue;
+            NSequenceWithQuality r1 = withQuality(fragment.getRange(0, r1Length)),
+                    r2 = withQuality(fragment.getRange(fragment.size() - r2Length, fragment.size()))
+                            .getReverseComplement();
+            PairedRead read = new PairedRead(new SingleReadImpl(n, r1, ""), new SingleReadImpl(n, r2, ""));
+
+            PairedReadMergingResult result = merger.process(read);
+            Assert.assertTrue(result.isSuccessful());
+            Assert.assertEquals(fragment, result.getOverlappedSequence().getSequence());
+
+            // Correct hint gives the same result, wrong hint is ignored
+            int offset = fragment.size() - r2Length;
+            Assert.assertEquals(fragment, merger.process(read, offset).getOverlappedSequence().getSequence());
+            Assert.assertEquals(fragment, merger.process(read, offset + 3).getOverlappedSequence().getSequence());
+        }
+    }
+
+    @Test
+    public void testHintIsVerifiedFirst() throws Exception {
+        Random random = new Random(54321);
+        KmerPairedReadMerger merger = new KmerPairedReadMerger(PairedEndReadsLayout.Opposite, 12, 20, 0.85);
+        NucleotideSequence fragment = randomSequence(random, 200);
+
+        // Overlap of 20 nucleotides with two mismatches: no common k-mers, so voting can't find it
+        char[] mutated = fragment.toString().toCharArray();
+        for (int position : new int[]{96, 103})
+            mutated[position] = mutated[position] == 'A' ? 'C' : 'A';
+        NSequenceWithQuality r1 = withQuality(fragment.getRange(0, 110)),
+                r2 = withQuality(new NucleotideSequence(new String(mutated)).getRange(90, 200))
+                        .getReverseComplement();
+        PairedRead read = new PairedRead(new SingleReadImpl(0, r1, ""), new SingleReadImpl(0, r2, ""));
+
+        Assert.assertFalse(merger.process(read).isSuccessful());
+        Assert.assertFalse(merger.process(read, 91).isSuccessful());
+        PairedReadMergingResult result = merger.process(read, 90);
+        Assert.assertTrue(result.isSuccessful());
+        Assert.assertEquals(fragment, result.getOverlappedSequence().getSequence());
+    }
+
+    @Test
+    public void testAgreesWithMismatchOnlyMerger() throws Exception {
+        VDJCAlignerParameters parameters = VDJCParametersPresets.getByName("default");
+        MismatchOnlyPairedReadMerger expected = new MismatchOnlyPairedReadMerger(
+                parameters.getMergerParameters().overrideReadsLayout(parameters.getReadsLayout()));
+        KmerPairedReadMerger actual = KmerPairedReadMerger.create(parameters);
+        int merged = 0, same = 0;
+        try (PairedFastqReader reader =
+                     new PairedFastqReader(
+                             KmerPairedReadMergerTest.class.getClassLoader()
+                                     .getResourceAsStream("sequences/sample_IGH_R1.fastq"),
+                             KmerPairedReadMergerTest.class.getClassLoader()
+                                     .getResourceAsStream("sequences/sample_IGH_R2.fastq"), true)) {
+            for (PairedRead read : CUtils.it(reader)) {
+                PairedReadMergingResult e = expected.process(read), a = actual.process(read);
+                if (!e.isSuccessful())
+                    continue;
+                ++merged;
+                if (a.isSuccessful() && e.getOverlappedSequence().getSequence()
+                        .equals(a.getOverlappedSequence().getSequence()))
+                    ++same;
+            }
+        }
+        Assert.assertTrue(same >= 0.95 * merged);
+    }
+
+    static NucleotideSequence randomSequence(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; ++i)
+            chars[i] = "ACGT".charAt(random.nextInt(4));
+        return new NucleotideSequence(new String(chars));
+    }
+
+    static NSequenceWithQuality withQuality(NucleotideSequence sequence) {
+        return new NSequenceWithQuality(sequence, SequenceQuality.getUniformQuality((byte) 30, sequence.size()));
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.vdjaligners;
+
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.mixcr.reference.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LociSketchTest {
+    @Test
+    public void test1() throws Exception {
+        LociLibrary ll = LociLibraryManager.getDefault().getLibrary("mi");
+        LociSketch sketch = new LociSketch();
+        for (Locus locus : new Locus[]{Locus.TRB, Locus.IGH})
+            for (Allele allele : ll.getLocus(Species.HomoSapiens, locus).getAlleles(GeneType.Joining))
+                if (allele.getPartitioning().isAvailable(GeneFeature.JRegion))
+                    sketch.add(locus, allele.getFeature(GeneFeature.JRegion));
+
+        Assert.assertEquals(2, sketch.numberOfLoci());
+
+        for (Locus locus : new Locus[]{Locus.TRB, Locus.IGH})
+            for (Allele allele : ll.getLocus(Species.HomoSapiens, locus).getAlleles(GeneType.Joining)) {
+                if (!allele.getPartitioning().isAvailable(GeneFeature.JRegion))
+                    continue;
+                NucleotideSequence seq = allele.getFeature(GeneFeature.JRegion);
+                int mask = sketch.classify(seq);
+                Assert.assertTrue((mask & (1 << locus.ordinal())) != 0);
+                Assert.assertEquals(mask, sketch.classify(seq.getReverseComplement()));
+            }
+    }
+
+    @Test
+    public void test2() throws Exception {
+        LociSketch sketch = new LociSketch(5, 3, 1, 0.5f);
+        sketch.add(Locus.TRA, new NucleotideSequence("ATTAGACAGATTAGACCA"));
+        Assert.assertEquals(0, sketch.classify(new NucleotideSequence("CCCC")));
+        Assert.assertEquals(1 << Locus.TRA.ordinal(), sketch.classify(new NucleotideSequence("GACAGATTAGA")));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.vdjaligners;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.io.sequence.PairedRead;
+import com.milaboratory.core.io.sequence.SingleReadImpl;
+import com.milaboratory.core.io.sequence.fastq.PairedFastqReader;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.core.sequence.SequenceQuality;
+import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+import com.milaboratory.mixcr.cli.AlignerReport;
+import com.milaboratory.mixcr.reference.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class VDJCAlignerWithCacheTest {
+    @Test
+    public void test1() throws Exception {
+        VDJCAlignerParameters parameters = VDJCParametersPresets.getByName("default");
+        LociLibrary ll = LociLibraryManager.getDefault().getLibrary("mi");
+
+        List<PairedRead> reads = new ArrayList<>();
+        try (PairedFastqReader reader =
+                     new PairedFastqReader(
+                             VDJCAlignerWithCacheTest.class.getClassLoader()
+                                     .getResourceAsStream("sequences/sample_IGH_R1.fastq"),
+                             VDJCAlignerWithCacheTest.class.getClassLoader()
+                                     .getResourceAsStream("sequences/sample_IGH_R2.fastq"), true)) {
+            for (PairedRead read : CUtils.it(reader))
+                reads.add(read);
+        }
+
+        // Each read is repeated twice
+        int n = reads.size();
+        for (int i = 0; i < n; ++i) {
+            PairedRead read = reads.get(i);
+            reads.add(new PairedRead(
+                    new SingleReadImpl(n + i, read.getR1().getData(), read.getR1().getDescription()),
+                    new SingleReadImpl(n + i, read.getR2().getData(), read.getR2().getDescription())));
+        }
+
+        VDJCAlignerWithMerge plainAligner = new VDJCAlignerWithMerge(parameters);
+        VDJCAlignerWithMerge aligner = new VDJCAlignerWithMerge(parameters);
+        for (Allele allele : ll.getLocus(Species.HomoSapiens, Locus.IGH).getAllAlleles())
+            if (parameters.containsRequiredFeature(allele)) {
+                plainAligner.addAllele(allele);
+                aligner.addAllele(allele);
+            }
+
+        AlignerReport plainReport = new AlignerReport(), report = new AlignerReport();
+        plainAligner.setEventsListener(plainReport);
+        VDJCAlignerWithCache<PairedRead> cachedAligner = new VDJCAlignerWithCache<>(aligner, 1000);
+        cachedAligner.setEventsListener(report);
+
+        for (PairedRead read : reads) {
+            VDJCAlignmentResult<PairedRead> expected = plainAligner.process(read);
+            VDJCAlignmentResult<PairedRead> actual = cachedAligner.process(read);
+            Assert.assertEquals(expected.alignment, actual.alignment);
+        }
+
+        Assert.assertTrue(cachedAligner.getStats().hitCount() >= n / 2);
+        Assert.assertEquals(plainReport.getSuccesses(), report.getSuccesses());
+        Assert.assertEquals(plainReport.getTotal(), report.getTotal());
+        Assert.assertEquals(plainReport.getAlignedOverlap(), report.getAlignedOverlap());
+        Assert.assertEquals(plainReport.getNonAlignedOverlap(), report.getNonAlignedOverlap());
+    }
+
+    @Test
+    public void testDuplicatesWithDifferentQualities() throws Exception {
+        VDJCAlignerParameters parameters = VDJCParametersPresets.getByName("default");
+        LociLibrary ll = LociLibraryManager.getDefault().getLibrary("mi");
+
+        VDJCAlignerWithMerge plainAligner = new VDJCAlignerWithMerge(parameters);
+        VDJCAlignerWithMerge aligner = new VDJCAlignerWithMerge(parameters);
+        for (Allele allele : ll.getLocus(Species.HomoSapiens, Locus.IGH).getAllAlleles())
+            if (parameters.containsRequiredFeature(allele)) {
+                plainAligner.addAllele(allele);
+                aligner.addAllele(allele);
+            }
+        VDJCAlignerWithCache<PairedRead> cachedAligner = new VDJCAlignerWithCache<>(aligner, 1000);
+
+        int merged = 0;
+        try (PairedFastqReader reader =
+                     new PairedFastqReader(
+                             VDJCAlignerWithCacheTest.class.getClassLoader()
+                                     .getResourceAsStream("sequences/sample_IGH_R1.fastq"),
+                             VDJCAlignerWithCacheTest.class.getClassLoader()
+                                     .getResourceAsStream("sequences/sample_IGH_R2.fastq"), true)) {
+            for (PairedRead read : CUtils.it(reader)) {
+                // Same sequences, different qualities
+                PairedRead duplicate = new PairedRead(
+                        new SingleReadImpl(read.getId(), withQuality(read.getR1().getData(), (byte) 25),
+                                read.getR1().getDescription()),
+                        new SingleReadImpl(read.getId(), withQuality(read.getR2().getData(), (byte) 35),
+                                read.getR2().getDescription()));
+
+                Assert.assertEquals(plainAligner.process(read).alignment, cachedAligner.process(read).alignment);
+                VDJCAlignments expected = plainAligner.process(duplicate).alignment,
+                        actual = cachedAligner.process(duplicate).alignment;
+                Assert.assertEquals(expected, actual);
+                if (expected == null)
+                    continue;
+                if (expected.numberOfTargets() == 1)
+                    ++merged;
+                for (int i = 0; i < expected.numberOfTargets(); ++i)
+                    Assert.assertEquals(expected.getTarget(i), actual.getTarget(i));
+            }
+        }
+        Assert.assertTrue(merged > 0);
+    }
+
+    private static NSequenceWithQuality withQuality(NSequenceWithQuality data, byte quality) {
+        return new NSequenceWithQuality(data.getSequence(),
+                SequenceQuality.getUniformQuality(quality, data.size()));
+    }
+}
@@ -86,6 +86,9 @@ public class VDJCAlignerWithMergeTest {
                             ++leftHit;
                 }
             }
+
+            // Merged and unmerged paths share the same reference indexes
+            Assert.assertSame(aligner.singleAligner.getReferenceEngine(), aligner.pairedAligner.getReferenceEngine());
         }
 
         //for (VDJCAlignments alignments : alignemntsList) {